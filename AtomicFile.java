@@ -0,0 +1,580 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes a file so that a crash at any point leaves either the old or the
+ * new version in place, never a mix of the two.
+ *
+ * A write goes to a temporary file, which is given a trailer holding the
+ * length and CRC32 checksum of everything before it and is then forced to
+ * disk. The current file is kept as the previous generation and the
+ * temporary file is renamed into its place.
+ *
+ * Reading checks the trailer. The checksum is worked out as the content is
+ * read rather than in a pass of its own, so a file is read once; the read
+ * that reaches the end of the content fails if it does not match. If the
+ * current file is missing, is not the length its trailer gives or fails
+ * its checksum the previous generation is read instead, as it is when the
+ * reader given to read cannot parse the current file. Files written before
+ * trailers were added have none and are read as they are, but only while
+ * neither generation has a trailer, as a file cut short loses its trailer
+ * too.
+ */
+public class AtomicFile {
+
+	static final int TRAILER_MAGIC = 0x434D434B;
+	static final int TRAILER_SIZE  = 16;
+
+	private final File file;
+	private final File previousFile;
+	private final File temporaryFile;
+
+	AtomicFile(String filename) {
+
+		if (filename == null) {
+			throw new NullPointerException("The filename cannot be null.");
+		}
+
+		this.file          = new File(filename);
+		this.previousFile  = new File(filename + ".prev");
+		this.temporaryFile = new File(filename + ".tmp");
+	}
+
+	/**
+	 * A getter for the current file.
+	 * @return File
+	 * @author David Jones
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * A getter for the previous generation of the file.
+	 * @return File
+	 * @author David Jones
+	 */
+	public File getPreviousFile() {
+		return this.previousFile;
+	}
+
+	/**
+	 * Checks whether either generation of the file exists.
+	 *
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean exists() {
+		return this.file.exists() || this.previousFile.exists();
+	}
+
+	/**
+	 * Returns the newest generation of the file that passes its checksum,
+	 * or null if neither generation exists.
+	 *
+	 * @return File
+	 * @throws IOException if no generation passes its checksum
+	 * @author David Jones
+	 */
+	public File verify() throws IOException {
+		List<File> generations = this.generations(true);
+		return generations.isEmpty() ? null : generations.get(0);
+	}
+
+	/**
+	 * Opens the newest generation that is whole. The stream ends where the
+	 * trailer starts and checks the checksum as it is read: the read that
+	 * reaches the end throws an IOException if the checksum does not match,
+	 * so nothing read should be kept until the end has been reached. Unlike
+	 * read, a generation that fails its checksum is not passed over. Returns
+	 * null if neither generation exists.
+	 *
+	 * @return InputStream
+	 * @throws IOException if no generation is whole
+	 * @author David Jones
+	 */
+	public InputStream openRead() throws IOException {
+		List<File> generations = this.generations(false);
+		if (generations.isEmpty()) {
+			return null;
+		}
+
+		return open(generations.get(0));
+	}
+
+	/**
+	 * Reads the newest generation that passes its checksum and that the
+	 * reader can make sense of. A generation the reader fails on, with an
+	 * IOException or a RuntimeException, is passed over for the previous
+	 * one, so a file that is damaged in a way its checksum cannot show is
+	 * not the end of the data. The checksum is checked as the reader reads,
+	 * and the read that reaches the end of the content throws an IOException
+	 * if it does not match; whatever the reader leaves unread is checked
+	 * once it returns. The reader may be called more than once and should
+	 * only keep what it reads once it has read all of it.
+	 *
+	 * @param  Reader what to read each generation with
+	 * @return boolean whether a generation was read, false if neither exists
+	 * @throws IOException if no generation can be read, with the failure of the newest
+	 * @author David Jones
+	 */
+	public boolean read(Reader reader) throws IOException {
+		List<File> generations = this.generations(false);
+		IOException failure = null;
+
+		for (int i = 0; i < generations.size(); i++) {
+			LimitedInputStream input = open(generations.get(i));
+
+			try {
+				reader.read(input);
+				input.finish();
+				return true;
+			} catch (IOException ex) {
+				failure = addFailure(failure, ex);
+			} catch (RuntimeException ex) {
+				failure = addFailure(failure, new IOException("The file '" + generations.get(i) + "' could not be read.", ex));
+			} finally {
+				input.close();
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the generations that are whole, newest first, without
+	 * checking their checksums: each must end in a trailer that gives its
+	 * length, or be a file from before trailers under the same rule as
+	 * verify. For readers that check the parts they read themselves.
+	 *
+	 * @return List<File>
+	 * @throws IOException if both generations exist but neither is whole
+	 * @author David Jones
+	 */
+	public List<File> completeGenerations() throws IOException {
+		return this.generations(false);
+	}
+
+	/**
+	 * Starts a write to the temporary file. Pass the stream returned to
+	 * finishWrite once everything is written, or to failWrite on error.
+	 *
+	 * @return CheckedOutputStream
+	 * @author David Jones
+	 */
+	public CheckedOutputStream startWrite() throws IOException {
+		FileOutputStream output = new FileOutputStream(this.temporaryFile);
+		return new CheckedOutputStream(new BufferedOutputStream(output, 65536), new CRC32());
+	}
+
+	/**
+	 * Adds the trailer to a write started by startWrite, forces it to disk
+	 * and moves it into place, keeping the old file as the previous
+	 * generation.
+	 *
+	 * @param  CheckedOutputStream the stream returned by startWrite
+	 * @return void
+	 * @author David Jones
+	 */
+	public void finishWrite(CheckedOutputStream output) throws IOException {
+		try {
+			output.flush();
+
+			long length = this.temporaryFile.length();
+			long crc    = output.getChecksum().getValue();
+
+			DataOutputStream trailer = new DataOutputStream(output);
+			trailer.writeLong(length);
+			trailer.writeInt((int) crc);
+			trailer.writeInt(TRAILER_MAGIC);
+			trailer.flush();
+
+		} catch (IOException ex) {
+			this.failWrite(output);
+			throw ex;
+		}
+
+		output.close();
+
+		// The data has to be on disk before the rename can be
+		RandomAccessFile written = new RandomAccessFile(this.temporaryFile, "rw");
+		try {
+			written.getFD().sync();
+		} finally {
+			written.close();
+		}
+
+		if (this.file.exists()) {
+			Files.move(this.file.toPath(), this.previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		Files.move(this.temporaryFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(this.file.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Abandons a write started by startWrite, leaving the current file
+	 * as it was.
+	 *
+	 * @param  CheckedOutputStream the stream returned by startWrite
+	 * @return void
+	 * @author David Jones
+	 */
+	public void failWrite(CheckedOutputStream output) {
+		try {
+			output.close();
+		} catch (IOException ex) {
+			// The temporary file is deleted anyway
+		}
+
+		this.temporaryFile.delete();
+	}
+
+	/**
+	 * Returns the existing generations that pass the checks, newest first.
+	 * A file without a trailer is only taken as one written before trailers
+	 * while no generation has a trailer; once one does, a file without is
+	 * one that was cut short.
+	 */
+	private List<File> generations(boolean checksums) throws IOException {
+		File[] files = { this.file, this.previousFile };
+		boolean trailers = false;
+
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].exists() && hasTrailer(files[i])) {
+				trailers = true;
+			}
+		}
+
+		List<File> generations = new ArrayList<File>(files.length);
+		IOException failure = null;
+
+		for (int i = 0; i < files.length; i++) {
+			if (!files[i].exists()) {
+				continue;
+			}
+
+			try {
+				if (!hasTrailer(files[i])) {
+					if (trailers) {
+						throw new IOException("The file '" + files[i] + "' has no trailer and was cut short.");
+					}
+				} else if (checksums) {
+					checkTrailer(files[i]);
+				} else {
+					checkLength(files[i]);
+				}
+
+				generations.add(files[i]);
+			} catch (IOException ex) {
+				failure = addFailure(failure, ex);
+			}
+		}
+
+		if (generations.isEmpty() && failure != null) {
+			throw failure;
+		}
+
+		return generations;
+	}
+
+	private static IOException addFailure(IOException failure, IOException ex) {
+		if (failure == null) {
+			return ex;
+		}
+
+		failure.addSuppressed(ex);
+		return failure;
+	}
+
+	/**
+	 * Opens a generation that has been found whole. A file with a trailer is
+	 * checked against the checksum in it as it is read.
+	 */
+	private static LimitedInputStream open(File file) throws IOException {
+		long content = contentLength(file);
+
+		if (content == file.length()) {
+			return new LimitedInputStream(new FileInputStream(file), file, content, false, 0);
+		}
+
+		int expected;
+		RandomAccessFile trailer = new RandomAccessFile(file, "r");
+		try {
+			trailer.seek(content + 8);
+			expected = trailer.readInt();
+		} finally {
+			trailer.close();
+		}
+
+		return new LimitedInputStream(new FileInputStream(file), file, content, true, expected);
+	}
+
+	/**
+	 * Checks whether a file ends in a trailer.
+	 *
+	 * @param  File the file
+	 * @return boolean
+	 * @author David Jones
+	 */
+	static boolean hasTrailer(File file) throws IOException {
+		return contentLength(file) != file.length();
+	}
+
+	/**
+	 * Returns the length of the file without its trailer, or the whole
+	 * length for a file written before trailers were added.
+	 *
+	 * @param  File the file
+	 * @return long
+	 * @author David Jones
+	 */
+	static long contentLength(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			long length = input.length();
+
+			if (length < TRAILER_SIZE) {
+				return length;
+			}
+
+			input.seek(length - 4);
+			if (input.readInt() != TRAILER_MAGIC) {
+				return length;
+			}
+
+			return length - TRAILER_SIZE;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Checks that a file with a trailer has the length and checksum given
+	 * in the trailer.
+	 *
+	 * @param  File the file
+	 * @return void
+	 * @throws IOException if the file does not match its trailer
+	 * @author David Jones
+	 */
+	private static void checkTrailer(File file) throws IOException {
+		long content = contentLength(file);
+
+		DataInputStream input = new DataInputStream(new FileInputStream(file));
+		try {
+			CRC32 checksum = new CRC32();
+			byte[] block   = new byte[65536];
+			long remaining = content;
+
+			while (remaining > 0) {
+				int read = input.read(block, 0, (int) Math.min(block.length, remaining));
+				if (read < 0) {
+					throw new IOException("The file '" + file + "' ended early.");
+				}
+
+				checksum.update(block, 0, read);
+				remaining -= read;
+			}
+
+			long length = input.readLong();
+			int expected = input.readInt();
+
+			if (length != content || expected != (int) checksum.getValue()) {
+				throw new IOException("The file '" + file + "' failed its checksum.");
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Checks that a file with a trailer has the length given in the
+	 * trailer, without reading the rest of it.
+	 *
+	 * @param  File the file
+	 * @return void
+	 * @throws IOException if the file does not match its trailer
+	 * @author David Jones
+	 */
+	private static void checkLength(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			long content = input.length() - TRAILER_SIZE;
+			input.seek(content);
+
+			if (input.readLong() != content) {
+				throw new IOException("The file '" + file + "' is not the length its trailer gives.");
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Forces a rename in the directory to disk. Not every platform can open
+	 * a directory, and there the rename is left to the file system.
+	 *
+	 * @param  File the directory
+	 * @return void
+	 * @author David Jones
+	 */
+	private static void syncDirectory(File directory) {
+		try {
+			FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException ex) {
+			// Directories cannot be opened on this platform
+		}
+	}
+
+	/**
+	 * Reads the content of one generation of the file.
+	 */
+	interface Reader {
+
+		void read(InputStream input) throws IOException;
+	}
+
+	/**
+	 * Stops reading at the start of the trailer and, for a file that has
+	 * one, checks the checksum when the last byte before it is read.
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+
+		private final File file;
+		private final int expected;
+		private final CRC32 checksum;
+		private long remaining;
+
+		/**
+		 * @param InputStream the file, from its start
+		 * @param File the file, for messages
+		 * @param long the length of the content
+		 * @param boolean whether the file has a trailer to check against
+		 * @param int the checksum the trailer gives
+		 */
+		LimitedInputStream(InputStream input, File file, long limit, boolean checked, int expected) {
+			super(input);
+			this.file      = file;
+			this.remaining = limit;
+			this.checksum  = checked ? new CRC32() : null;
+			this.expected  = expected;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+
+			int value = super.read();
+			if (value < 0) {
+				throw new IOException("The file '" + this.file + "' ended early.");
+			}
+
+			if (this.checksum != null) {
+				this.checksum.update(value);
+			}
+			this.consumed(1);
+
+			return value;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+
+			int read = super.read(bytes, offset, (int) Math.min(length, this.remaining));
+			if (read < 0) {
+				throw new IOException("The file '" + this.file + "' ended early.");
+			}
+
+			if (this.checksum != null) {
+				this.checksum.update(bytes, offset, read);
+			}
+			this.consumed(read);
+
+			return read;
+		}
+
+		@Override
+		public long skip(long count) throws IOException {
+			if (this.checksum == null) {
+				long skipped = super.skip(Math.min(count, this.remaining));
+				this.remaining -= skipped;
+				return skipped;
+			}
+
+			// Skipped bytes still count towards the checksum
+			byte[] block = new byte[(int) Math.min(8192, Math.max(count, 1))];
+			long skipped = 0;
+
+			while (skipped < count) {
+				int read = this.read(block, 0, (int) Math.min(block.length, count - skipped));
+				if (read < 0) {
+					break;
+				}
+
+				skipped += read;
+			}
+
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), this.remaining);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * Reads whatever is left of the content, so that the checksum is
+		 * checked however much the caller read.
+		 */
+		void finish() throws IOException {
+			byte[] block = new byte[65536];
+			while (this.read(block, 0, block.length) >= 0) {
+				// Only the checksum is wanted
+			}
+		}
+
+		private void consumed(int count) throws IOException {
+			this.remaining -= count;
+
+			if (this.remaining == 0 && this.checksum != null && (int) this.checksum.getValue() != this.expected) {
+				throw new IOException("The file '" + this.file + "' failed its checksum.");
+			}
+		}
+	}
+}
@@ -0,0 +1,256 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+import java.util.zip.CheckedOutputStream;
+
+public class AtomicFileTest {
+
+	private final String FILENAME = "atomic-test.txt";
+
+	@Before
+	public void setUp() {
+		this.deleteFiles();
+	}
+
+	@After
+	public void tearDown() {
+		this.deleteFiles();
+	}
+
+	@Test
+	public void testWriteAndReadBack() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+
+		assertEquals("The content should be read back without the trailer.", "first", this.read(atomicFile));
+		assertEquals("The trailer should be added to the file.", 5 + AtomicFile.TRAILER_SIZE, new File(FILENAME).length());
+		assertFalse("The temporary file should be moved into place.", new File(FILENAME + ".tmp").exists());
+	}
+
+	@Test
+	public void testReadFallsBackToThePreviousGeneration() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+		this.write(atomicFile, "second");
+
+		this.corrupt(FILENAME);
+
+		assertEquals("The previous generation should be read.", "first", this.read(atomicFile));
+	}
+
+	@Test
+	public void testReadFallsBackWhenTheCurrentFileIsMissing() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+		this.write(atomicFile, "second");
+
+		// As after a crash between the two renames
+		new File(FILENAME).delete();
+
+		assertEquals("The previous generation should be read.", "first", this.read(atomicFile));
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadFailsWhenEveryGenerationIsCorrupt() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+		this.write(atomicFile, "second");
+
+		this.corrupt(FILENAME);
+		this.corrupt(FILENAME + ".prev");
+
+		this.read(atomicFile);
+	}
+
+	@Test
+	public void testOpenReadFailsAtTheEndOfACorruptFile() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+
+		this.corrupt(FILENAME);
+
+		InputStream input = atomicFile.openRead();
+		assertEquals("The content should be readable up to its last byte.", 4, input.read(new byte[4]));
+
+		try {
+			input.read();
+			fail("The read that reaches the end should check the checksum.");
+		} catch (IOException ex) {
+			// Expected
+		} finally {
+			input.close();
+		}
+	}
+
+	@Test
+	public void testReadChecksWhatTheReaderLeavesUnread() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+		this.write(atomicFile, "second");
+
+		// The reader below stops at the first byte, so only the checksum can catch this
+		this.corruptLast(FILENAME);
+
+		final List<Integer> read = new ArrayList<Integer>();
+		assertTrue(atomicFile.read(new AtomicFile.Reader() {
+			@Override
+			public void read(InputStream input) throws IOException {
+				read.add(input.read());
+			}
+		}));
+
+		assertEquals("The previous generation should be read after the current one fails.", Arrays.asList((int) 's', (int) 'f'), read);
+	}
+
+	@Test
+	public void testFailedWriteLeavesTheFileInPlace() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+
+		CheckedOutputStream output = atomicFile.startWrite();
+		output.write("half".getBytes("UTF-8"));
+		atomicFile.failWrite(output);
+
+		assertEquals("The last good write should be kept.", "first", this.read(atomicFile));
+		assertFalse("The temporary file should be removed.", new File(FILENAME + ".tmp").exists());
+	}
+
+	@Test
+	public void testReadsAFileWithoutATrailer() throws IOException {
+		FileOutputStream output = new FileOutputStream(FILENAME);
+		output.write("older".getBytes("UTF-8"));
+		output.close();
+
+		assertEquals("A file written before trailers should be read whole.", "older", this.read(new AtomicFile(FILENAME)));
+	}
+
+	@Test
+	public void testATruncatedFileIsNotTakenForOneWithoutATrailer() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+		this.write(atomicFile, "second");
+
+		this.truncate(FILENAME, 10);
+
+		assertEquals("The previous generation should be read.", "first", this.read(atomicFile));
+	}
+
+	@Test
+	public void testReadFallsBackWhenTheCurrentFileCannotBeParsed() throws IOException {
+		AtomicFile atomicFile = new AtomicFile(FILENAME);
+		this.write(atomicFile, "first");
+		this.write(atomicFile, "second");
+
+		final List<String> read = new ArrayList<String>();
+		assertTrue(atomicFile.read(new AtomicFile.Reader() {
+			@Override
+			public void read(InputStream input) throws IOException {
+				String content = new BufferedReader(new InputStreamReader(input, "UTF-8")).readLine();
+				if (content.equals("second")) {
+					throw new IllegalStateException("Cannot parse " + content);
+				}
+
+				read.add(content);
+			}
+		}));
+
+		assertEquals(Arrays.asList("first"), read);
+	}
+
+	@Test
+	public void testContactManagerLoadsThePreviousGenerationOfATruncatedFile() throws IOException {
+		ContactManagerImpl contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.flush();
+		contactManager.addNewContact("John Smith", "Some notes");
+		contactManager.flush();
+
+		this.truncate(FILENAME, 30);
+
+		ContactManagerImpl reloaded = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		assertEquals("The contacts from the previous flush should be loaded.", 1, reloaded.getContacts("").size());
+	}
+
+	@Test
+	public void testContactManagerLoadsThePreviousGenerationOfACorruptFile() throws IOException {
+		ContactManagerImpl contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.flush();
+		contactManager.addNewContact("John Smith", "Some notes");
+		contactManager.flush();
+
+		this.corrupt(FILENAME);
+
+		ContactManagerImpl reloaded = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		assertEquals("The contacts from the previous flush should be loaded.", 1, reloaded.getContacts("").size());
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void testContactManagerDoesNotStartEmptyWhenNothingCanBeLoaded() throws IOException {
+		ContactManagerImpl contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.flush();
+
+		this.corrupt(FILENAME);
+
+		new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+	}
+
+	private void write(AtomicFile atomicFile, String content) throws IOException {
+		CheckedOutputStream output = atomicFile.startWrite();
+		output.write(content.getBytes("UTF-8"));
+		atomicFile.finishWrite(output);
+	}
+
+	private String read(AtomicFile atomicFile) throws IOException {
+		final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+		atomicFile.read(new AtomicFile.Reader() {
+			@Override
+			public void read(InputStream input) throws IOException {
+				content.reset();
+
+				int value;
+				while ((value = input.read()) >= 0) {
+					content.write(value);
+				}
+			}
+		});
+
+		return content.toString("UTF-8");
+	}
+
+	private void corrupt(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		file.seek(0);
+		int value = file.read();
+		file.seek(0);
+		file.write(value ^ 0xFF);
+		file.close();
+	}
+
+	private void corruptLast(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		long position = file.length() - AtomicFile.TRAILER_SIZE - 1;
+		file.seek(position);
+		int value = file.read();
+		file.seek(position);
+		file.write(value ^ 0xFF);
+		file.close();
+	}
+
+	private void truncate(String filename, int count) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		file.setLength(file.length() - count);
+		file.close();
+	}
+
+	private void deleteFiles() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+		new File(FILENAME + ".tmp").delete();
+	}
+}
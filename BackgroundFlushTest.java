@@ -0,0 +1,191 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BackgroundFlushTest {
+
+	private final String FILENAME = "background-test.txt";
+
+	private CountingStore store;
+	private ContactManagerImpl contactManager;
+
+	@Before
+	public void setUp() {
+		this.deleteFiles();
+
+		this.store = new CountingStore(new BinaryStore(FILENAME));
+		this.contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), this.store);
+	}
+
+	@After
+	public void tearDown() {
+		this.store.release.countDown();
+		this.store.failing = false;
+		this.contactManager.stopBackgroundFlush();
+		this.deleteFiles();
+	}
+
+	@Test
+	public void testFlushAsyncCompletesOnceWritten() throws Exception {
+		this.contactManager.startBackgroundFlush(60000);
+		this.contactManager.addNewContact("David Jones", "Some notes");
+
+		this.contactManager.flushAsync().get(10, TimeUnit.SECONDS);
+
+		ContactManagerImpl reloaded = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		assertEquals("The contact should be on disk.", 1, reloaded.getContacts("").size());
+	}
+
+	@Test
+	public void testBurstsOfFlushesAreCoalesced() throws Exception {
+		this.store.release = new CountDownLatch(1);
+		this.contactManager.startBackgroundFlush(60000);
+
+		// The first write blocks, so every later flush queues behind it
+		this.contactManager.addNewContact("David Jones", "Some notes");
+		this.contactManager.flush();
+		this.store.started.await(10, TimeUnit.SECONDS);
+
+		CompletableFuture<Void> burst = this.contactManager.flushAsync();
+		for (int i = 0; i < 100; i++) {
+			assertSame("Every flush in the burst should join the same write.", burst, this.contactManager.flushAsync());
+		}
+
+		// Waiting on the burst's own write, as a new flush could start a third
+		this.store.release.countDown();
+		burst.get(10, TimeUnit.SECONDS);
+
+		assertEquals("The burst should be written in one go.", 2, this.store.flushes.get());
+	}
+
+	@Test
+	public void testChangesCarryOnWhileTheStoreWrites() throws Exception {
+		this.store.release = new CountDownLatch(1);
+		this.contactManager.startBackgroundFlush(60000);
+
+		this.contactManager.addNewContact("David Jones", "Some notes");
+		this.contactManager.flush();
+		this.store.started.await(10, TimeUnit.SECONDS);
+
+		// The write is held up in the store, which must not keep changes out
+		CompletableFuture.runAsync(new Runnable() {
+			@Override
+			public void run() {
+				contactManager.addNewContact("John Smith", "Some notes");
+			}
+		}).get(10, TimeUnit.SECONDS);
+
+		this.store.release.countDown();
+		this.contactManager.stopBackgroundFlush();
+
+		ContactManagerImpl reloaded = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		assertEquals("The contact added during the write should be written by the next.", 2, reloaded.getContacts("").size());
+	}
+
+	@Test
+	public void testChangesAreWrittenWithinTheStalenessBound() throws Exception {
+		this.contactManager.startBackgroundFlush(50);
+		this.contactManager.addNewContact("David Jones", "Some notes");
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (this.store.flushes.get() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals("The change should be written without a call to flush.", 1, this.store.flushes.get());
+	}
+
+	@Test
+	public void testStopWritesOutstandingChanges() {
+		this.contactManager.startBackgroundFlush(60000);
+		this.contactManager.addNewContact("David Jones", "Some notes");
+		this.contactManager.stopBackgroundFlush();
+
+		ContactManagerImpl reloaded = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		assertEquals("The contact should be on disk.", 1, reloaded.getContacts("").size());
+	}
+
+	@Test
+	public void testFailedBackgroundWriteIsReported() throws Exception {
+		this.store.failing = true;
+		this.contactManager.startBackgroundFlush(60000);
+		this.contactManager.addNewContact("David Jones", "Some notes");
+
+		try {
+			this.contactManager.flushAsync().get(10, TimeUnit.SECONDS);
+			fail("The future should fail with the write.");
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof UncheckedIOException);
+		}
+
+		try {
+			this.contactManager.flush();
+			fail("The next flush should throw the earlier failure.");
+		} catch (UncheckedIOException ex) {
+			// Expected
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStartingTwiceThrows() {
+		this.contactManager.startBackgroundFlush(60000);
+		this.contactManager.startBackgroundFlush(60000);
+	}
+
+	private void deleteFiles() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	/**
+	 * Counts the writes made, and can hold them up or make them fail.
+	 */
+	private static class CountingStore implements ContactManagerStore {
+
+		private final ContactManagerStore store;
+		private final AtomicInteger flushes = new AtomicInteger();
+		private final CountDownLatch started = new CountDownLatch(1);
+		private volatile CountDownLatch release = new CountDownLatch(0);
+		private volatile boolean failing;
+
+		CountingStore(ContactManagerStore store) {
+			this.store = store;
+		}
+
+		@Override
+		public void load(ContactManagerImpl contactManager) throws IOException {
+			this.store.load(contactManager);
+		}
+
+		@Override
+		public void flush(StoreSnapshot snapshot) throws IOException {
+			this.started.countDown();
+
+			try {
+				this.release.await();
+			} catch (InterruptedException ex) {
+				throw new InterruptedIOException();
+			}
+
+			if (this.failing) {
+				throw new IOException("The disk is full.");
+			}
+
+			this.store.flush(snapshot);
+			this.flushes.incrementAndGet();
+		}
+
+		@Override
+		public DirtySet recordsNeeded(DirtySet changes) {
+			return this.store.recordsNeeded(changes);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs writes on a single background thread on behalf of a contact manager.
+ *
+ * Requests made before the next write starts are coalesced, so a burst of
+ * flush calls costs one write. Each request returns a future that is
+ * completed once a write that started after the request has finished.
+ * Any change also makes sure a write starts within the staleness bound,
+ * whether or not anyone asks for one.
+ */
+public class BackgroundFlusher {
+
+	private final Runnable write;
+	private final long maxStalenessMillis;
+	private final ScheduledExecutorService executor;
+	private final Object lock = new Object();
+
+	private CompletableFuture<Void> pending;
+	private ScheduledFuture<?> stalenessWrite;
+	private RuntimeException lastFailure;
+	private boolean closed;
+
+	/**
+	 * Starts the background thread.
+	 *
+	 * @param Runnable the write to run, which may throw an unchecked exception
+	 * @param long the longest a change may wait before being written, in milliseconds
+	 */
+	BackgroundFlusher(Runnable write, long maxStalenessMillis) {
+
+		if (write == null) {
+			throw new NullPointerException("The write cannot be null.");
+		}
+
+		if (maxStalenessMillis < 1) {
+			throw new IllegalArgumentException("The staleness bound must be at least one millisecond.");
+		}
+
+		this.write = write;
+		this.maxStalenessMillis = maxStalenessMillis;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "contact-manager-flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * A getter for the staleness bound.
+	 * @return long
+	 * @author David Jones
+	 */
+	public long getMaxStalenessMillis() {
+		return this.maxStalenessMillis;
+	}
+
+	/**
+	 * Asks for a write. Joins the write that is waiting to start if there is
+	 * one, otherwise queues a new one.
+	 *
+	 * @return CompletableFuture<Void> completed when the write has finished
+	 * @author David Jones
+	 */
+	public CompletableFuture<Void> request() {
+		synchronized (this.lock) {
+			if (this.pending == null) {
+				this.pending = new CompletableFuture<Void>();
+				this.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						runWrite();
+					}
+				});
+			}
+
+			return this.pending;
+		}
+	}
+
+	/**
+	 * Records that something has changed, making sure a write starts within
+	 * the staleness bound.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void changed() {
+		synchronized (this.lock) {
+			if (this.closed || this.pending != null || this.stalenessWrite != null) {
+				return;
+			}
+
+			this.stalenessWrite = this.executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					request();
+				}
+			}, this.maxStalenessMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Throws, and forgets, the failure of the last write, so that a write
+	 * nobody waited on cannot fail silently.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void throwLastFailure() {
+		RuntimeException failure;
+
+		synchronized (this.lock) {
+			failure = this.lastFailure;
+			this.lastFailure = null;
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Writes anything outstanding, waits for it and stops the background
+	 * thread. Nothing else may be asked of the flusher once this is called.
+	 *
+	 * @return void
+	 * @throws CompletionException if the last write fails
+	 * @author David Jones
+	 */
+	public void close() {
+		synchronized (this.lock) {
+			this.closed = true;
+
+			// The last write covers every change, so no more are scheduled
+			if (this.stalenessWrite != null) {
+				this.stalenessWrite.cancel(false);
+				this.stalenessWrite = null;
+			}
+		}
+
+		CompletableFuture<Void> last = this.request();
+		this.executor.shutdown();
+
+		try {
+			last.join();
+		} finally {
+			try {
+				this.executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void runWrite() {
+		CompletableFuture<Void> current;
+
+		synchronized (this.lock) {
+			current = this.pending;
+			this.pending = null;
+
+			// This write covers every change made so far
+			if (this.stalenessWrite != null) {
+				this.stalenessWrite.cancel(false);
+				this.stalenessWrite = null;
+			}
+		}
+
+		try {
+			this.write.run();
+			current.complete(null);
+
+		} catch (RuntimeException ex) {
+			synchronized (this.lock) {
+				this.lastFailure = ex;
+			}
+
+			current.completeExceptionally(ex);
+
+			// The changes are still not on disk, so try again within the bound
+			this.changed();
+		}
+	}
+}
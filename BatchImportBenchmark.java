@@ -0,0 +1,115 @@
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares importing contacts and meetings one at a time against the
+ * batch methods.
+ *
+ * Run with: java BatchImportBenchmark [rows] [batch size]
+ * The defaults are 1,000,000 contacts and 1,000,000 meetings, imported in
+ * batches of 10,000. Give the JVM a few gigabytes of heap for the defaults.
+ */
+public class BatchImportBenchmark {
+
+	public static void main(String[] args) {
+
+		int rowCount  = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+		System.out.printf("%d contacts and %d meetings, batches of %d%n", rowCount, rowCount, batchSize);
+
+		// Warm up both paths before measuring
+		runOneAtATime(rowCount / 10);
+		runBatched(rowCount / 10, batchSize);
+
+		System.gc();
+		runOneAtATime(rowCount);
+
+		System.gc();
+		runBatched(rowCount, batchSize);
+	}
+
+	private static void runOneAtATime(int rowCount) {
+		ContactManagerImpl contactManager = newContactManager();
+		Random random = new Random(42);
+
+		long contactStart = System.nanoTime();
+		for (int i = 0; i < rowCount; i++) {
+			contactManager.addNewContact("Contact " + i, "Met at event " + random.nextInt(100));
+		}
+		long contactTime = System.nanoTime() - contactStart;
+
+		long meetingStart = System.nanoTime();
+		for (int i = 0; i < rowCount; i++) {
+			contactManager.addFutureMeeting(participants(contactManager, random, rowCount), futureDate(random));
+		}
+		long meetingTime = System.nanoTime() - meetingStart;
+
+		report("one at a time", rowCount, contactTime, meetingTime);
+	}
+
+	private static void runBatched(int rowCount, int batchSize) {
+		ContactManagerImpl contactManager = newContactManager();
+		Random random = new Random(42);
+
+		long contactStart = System.nanoTime();
+		for (int start = 0; start < rowCount; start += batchSize) {
+			int end = Math.min(rowCount, start + batchSize);
+			List<String> names = new ArrayList<String>(end - start);
+			List<String> notes = new ArrayList<String>(end - start);
+
+			for (int i = start; i < end; i++) {
+				names.add("Contact " + i);
+				notes.add("Met at event " + random.nextInt(100));
+			}
+
+			contactManager.addNewContacts(names, notes);
+		}
+		long contactTime = System.nanoTime() - contactStart;
+
+		long meetingStart = System.nanoTime();
+		for (int start = 0; start < rowCount; start += batchSize) {
+			int end = Math.min(rowCount, start + batchSize);
+			List<Set<Contact>> contacts = new ArrayList<Set<Contact>>(end - start);
+			List<Calendar> dates = new ArrayList<Calendar>(end - start);
+
+			for (int i = start; i < end; i++) {
+				contacts.add(participants(contactManager, random, rowCount));
+				dates.add(futureDate(random));
+			}
+
+			contactManager.addFutureMeetings(contacts, dates);
+		}
+		long meetingTime = System.nanoTime() - meetingStart;
+
+		report("batched", rowCount, contactTime, meetingTime);
+	}
+
+	private static ContactManagerImpl newContactManager() {
+		// Use a store that is never written to so the working directory is left alone
+		return new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore("benchmark-unused.txt"));
+	}
+
+	private static Set<Contact> participants(ContactManagerImpl contactManager, Random random, int contactCount) {
+		Set<Contact> contacts = new HashSet<Contact>();
+		contacts.add(contactManager.getContacts().get(1 + random.nextInt(contactCount)));
+		contacts.add(contactManager.getContacts().get(1 + random.nextInt(contactCount)));
+		return contacts;
+	}
+
+	private static Calendar futureDate(Random random) {
+		Calendar date = Calendar.getInstance();
+		date.add(Calendar.MINUTE, 1 + random.nextInt(1000000));
+		return date;
+	}
+
+	private static void report(String name, int rowCount, long contactTime, long meetingTime) {
+		System.out.printf("%-14s contacts %8.0f rows/s, meetings %8.0f rows/s%n", name,
+			rowCount / (contactTime / 1e9), rowCount / (meetingTime / 1e9));
+	}
+}
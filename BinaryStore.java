@@ -0,0 +1,341 @@
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves the whole contact manager to a single file in a compact, versioned
+ * binary format.
+ *
+ * The file is laid out as:
+ *
+ *   magic "CMGR", format version
+ *   last contact ID, last meeting ID
+ *   contacts: count, then id, name, notes
+ *   meetings: count, then type, id, epoch millis, contact count,
+ *             contact IDs, and notes for past meetings
+ *
+ * Each name or note is written as a string reference: NEW_STRING followed
+ * by the string as length and UTF-8 bytes, which gives the string the next
+ * index, or the index of a string written earlier. A note kept in
+ * CompressedNotes is written in full the first time its handle is met and
+ * by index after that, so each distinct note is written once, and the
+ * writer streams the records out keeping nothing but an index per note
+ * handle. Meetings refer to contacts by ID, so contacts are not copied
+ * into every meeting.
+ *
+ * Files of version 1, which put every string in a table ahead of the
+ * records, and files written by SerializedStore are still read, and are
+ * replaced by this format on the next flush.
+ *
+ * The file is written through an AtomicFile, which adds a checksum
+ * trailer and keeps the previous generation to fall back on.
+ */
+public class BinaryStore implements ContactManagerStore {
+
+	static final int MAGIC   = 0x434D4752;
+	static final int VERSION = 2;
+	static final int NEW_STRING = -1;
+
+	private final String filename;
+	private final AtomicFile atomicFile;
+
+	BinaryStore(String filename) {
+
+		if (filename == null) {
+			throw new NullPointerException("The filename cannot be null.");
+		}
+
+		this.filename   = filename;
+		this.atomicFile = new AtomicFile(filename);
+	}
+
+	/**
+	 * A getter for the filename.
+	 * @return String
+	 * @author David Jones
+	 */
+	public String getFilename() {
+		return this.filename;
+	}
+
+	/**
+	 * Checks that the file exists and returns a boolean outcome.
+	 *
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean fileExists() {
+		return this.atomicFile.exists();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void load(final ContactManagerImpl contactManager) throws IOException {
+		this.atomicFile.read(new AtomicFile.Reader() {
+			@Override
+			public void read(InputStream file) throws IOException {
+				BufferedInputStream buffered = new BufferedInputStream(file, 65536);
+				DataInputStream input = new DataInputStream(buffered);
+
+				buffered.mark(4);
+
+				if (input.readInt() != MAGIC) {
+					buffered.reset();
+					SerializedStore.read(buffered, contactManager);
+					return;
+				}
+
+				BinaryStore.read(input, contactManager);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void flush(StoreSnapshot snapshot) throws IOException {
+		CheckedOutputStream file = this.atomicFile.startWrite();
+
+		try {
+			DataOutputStream output = new DataOutputStream(file);
+
+			output.writeInt(MAGIC);
+			write(output, snapshot);
+			output.flush();
+
+		} catch (IOException ex) {
+			this.atomicFile.failWrite(file);
+			throw ex;
+		}
+
+		this.atomicFile.finishWrite(file);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public DirtySet recordsNeeded(DirtySet changes) {
+		// Every record is written on every flush
+		return DirtySet.everything();
+	}
+
+	/**
+	 * Writes everything after the magic number.
+	 *
+	 * @param  DataOutput where to write
+	 * @param  StoreSnapshot what to save
+	 * @return void
+	 * @author David Jones
+	 */
+	static void write(DataOutput output, StoreSnapshot snapshot) throws IOException {
+		Map<Integer, Contact> contacts = snapshot.getContacts();
+		Map<Integer, Meeting> meetings = snapshot.getMeetings();
+
+		output.writeInt(VERSION);
+		output.writeInt(snapshot.getIdAllocator().getLastContactId());
+		output.writeInt(snapshot.getIdAllocator().getLastMeetingId());
+
+		StringTable strings = new StringTable();
+
+		output.writeInt(contacts.size());
+		Iterator<Contact> contactIterator = contacts.values().iterator();
+		while (contactIterator.hasNext()) {
+			Contact contact = contactIterator.next();
+
+			output.writeInt(contact.getId());
+			strings.write(output, contact.getName());
+
+			if (contact instanceof ContactImpl && ((ContactImpl) contact).getCompressedNotes() != null) {
+				strings.write(output, ((ContactImpl) contact).getCompressedNotes(), ((ContactImpl) contact).getNotesHandle());
+			} else {
+				strings.write(output, contact.getNotes());
+			}
+		}
+
+		output.writeInt(meetings.size());
+		Iterator<Meeting> meetingIterator = meetings.values().iterator();
+		while (meetingIterator.hasNext()) {
+			Meeting meeting = meetingIterator.next();
+			boolean past = meeting instanceof PastMeeting;
+
+			output.writeByte(past ? RecordCodec.PAST_MEETING : RecordCodec.FUTURE_MEETING);
+			output.writeInt(meeting.getId());
+			output.writeLong(MeetingImpl.timeOf(meeting));
+
+			int[] participants = MeetingImpl.contactIdsOf(meeting);
+			output.writeInt(participants.length);
+
+			for (int j = 0; j < participants.length; j++) {
+				int contactId = participants[j];
+
+				if (!contacts.containsKey(contactId)) {
+					throw new IOException("Meeting " + meeting.getId() + " refers to the unknown contact " + contactId + ".");
+				}
+
+				output.writeInt(contactId);
+			}
+
+			if (meeting instanceof PastMeetingImpl && ((PastMeetingImpl) meeting).getCompressedNotes() != null) {
+				strings.write(output, ((PastMeetingImpl) meeting).getCompressedNotes(), ((PastMeetingImpl) meeting).getNotesHandle());
+			} else if (past) {
+				strings.write(output, ((PastMeeting) meeting).getNotes());
+			}
+		}
+	}
+
+	/**
+	 * Reads everything after the magic number into the contact manager.
+	 *
+	 * @param  DataInput where to read from
+	 * @param  ContactManagerImpl the contact manager to load into
+	 * @return void
+	 * @author David Jones
+	 */
+	static void read(DataInput input, ContactManagerImpl contactManager) throws IOException {
+		int version = input.readInt();
+		if (version != VERSION && version != 1) {
+			throw new IOException("Unsupported file version " + version + ".");
+		}
+
+		int lastContactId = input.readInt();
+		int lastMeetingId = input.readInt();
+
+		// Version 1 has every string up front, and version 2 adds each where it is first used
+		List<String> table = new ArrayList<String>();
+		if (version == 1) {
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				table.add(RecordCodec.readString(input));
+			}
+		}
+
+		CompressedNotes contactNotes = contactManager.getCompressedNotes();
+		int contactCount = input.readInt();
+		IntRecordMap<Contact> contacts = new IntRecordMap<Contact>(contactCount);
+
+		for (int i = 0; i < contactCount; i++) {
+			int id = input.readInt();
+			String name = readString(input, table, version);
+			contacts.put(id, new ContactImpl(id, name, readString(input, table, version), contactNotes));
+		}
+
+		int meetingCount = input.readInt();
+		RecordMap<Meeting> meetings = contactManager.newMeetingMap(meetingCount);
+		ContactResolver resolver = contactManager.getContactResolver();
+		CompressedNotes meetingNotes = contactManager.getMeetingNotes();
+
+		for (int i = 0; i < meetingCount; i++) {
+			byte type = input.readByte();
+			int id    = input.readInt();
+
+			long time = input.readLong();
+
+			int[] participants = new int[input.readInt()];
+
+			for (int j = 0; j < participants.length; j++) {
+				int contactId = input.readInt();
+
+				if (!contacts.containsKey(contactId)) {
+					throw new IOException("Meeting " + id + " refers to the unknown contact " + contactId + ".");
+				}
+
+				participants[j] = contactId;
+			}
+
+			if (type == RecordCodec.PAST_MEETING) {
+				meetings.put(id, new PastMeetingImpl(id, time, participants, resolver, meetingNotes, readString(input, table, version)));
+			} else if (type == RecordCodec.FUTURE_MEETING) {
+				meetings.put(id, new FutureMeetingImpl(id, time, participants, resolver));
+			} else {
+				throw new IOException("Unknown meeting type " + type + ".");
+			}
+		}
+
+		contactManager.setContacts(contacts);
+		contactManager.setMeetings(meetings);
+		contactManager.getIdAllocator().advanceContactIdTo(lastContactId);
+		contactManager.getIdAllocator().advanceMeetingIdTo(lastMeetingId);
+	}
+
+	/**
+	 * Reads a string reference, adding a new string to the table.
+	 */
+	private static String readString(DataInput input, List<String> table, int version) throws IOException {
+		int index = input.readInt();
+
+		if (index == NEW_STRING && version != 1) {
+			String value = RecordCodec.readString(input);
+			table.add(value);
+			return value;
+		}
+
+		if (index < 0 || index >= table.size()) {
+			throw new IOException("The string " + index + " has not been written.");
+		}
+
+		return table.get(index);
+	}
+
+	/**
+	 * Writes string references, counting the strings written so far and
+	 * remembering the index each note handle was written under.
+	 */
+	private static class StringTable {
+
+		private final Map<CompressedNotes, int[]> indexes = new IdentityHashMap<CompressedNotes, int[]>();
+		private int size;
+
+		/**
+		 * Writes the string in full.
+		 */
+		void write(DataOutput output, String value) throws IOException {
+			output.writeInt(NEW_STRING);
+			RecordCodec.writeString(output, value);
+			this.size++;
+		}
+
+		/**
+		 * Writes the note with the handle in full the first time, reading
+		 * it out of the compressed notes, and by index after that.
+		 */
+		void write(DataOutput output, CompressedNotes notes, int handle) throws IOException {
+			int[] written = this.indexes.get(notes);
+
+			if (written == null || handle >= written.length) {
+				int[] larger = new int[Math.max(handle + 1, notes.size())];
+				if (written != null) {
+					System.arraycopy(written, 0, larger, 0, written.length);
+				}
+
+				written = larger;
+				this.indexes.put(notes, written);
+			}
+
+			// Indexes are held one up, so zero means not written yet
+			if (written[handle] != 0) {
+				output.writeInt(written[handle] - 1);
+				return;
+			}
+
+			written[handle] = this.size + 1;
+			this.write(output, notes.get(handle));
+		}
+	}
+}
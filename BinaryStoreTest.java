@@ -0,0 +1,163 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.time.Clock;
+
+public class BinaryStoreTest {
+
+	private final String FILENAME = "binary-test.txt";
+
+	private Calendar aFutureDate;
+	private Calendar aPastDate;
+
+	@Before
+	public void setUp() {
+		Calendar futureDate = Calendar.getInstance();
+		futureDate.add(Calendar.YEAR, 1);
+		this.aFutureDate = futureDate;
+
+		Calendar pastDate = Calendar.getInstance();
+		pastDate.set(2010, 01, 01);
+		this.aPastDate = pastDate;
+
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	@After
+	public void tearDown() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	@Test
+	public void testFlushAndLoadKeepsEverything() {
+		ContactManagerImpl contactManager = this.newContactManager(new BinaryStore(FILENAME));
+		int davidId = contactManager.addNewContact("David Jones", "Some notes");
+		int johnId  = contactManager.addNewContact("John Smith", "Some notes");
+
+		contactManager.addFutureMeeting(contactManager.getContacts(davidId, johnId), this.aFutureDate);
+		contactManager.addNewPastMeeting(contactManager.getContacts(johnId), this.aPastDate, "Past notes");
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = this.newContactManager(new BinaryStore(FILENAME));
+		Contact john = reloaded.getContacts(johnId).iterator().next();
+
+		assertEquals("The contact name should be kept.", "John Smith", john.getName());
+		assertEquals("The meeting should keep both contacts.", 2, reloaded.getMeeting(1).getContacts().size());
+		assertEquals("The meeting date should be kept.", this.aFutureDate.getTimeInMillis(), reloaded.getMeeting(1).getDate().getTimeInMillis());
+		assertEquals("The past meeting notes should be kept.", "Past notes", reloaded.getPastMeeting(2).getNotes());
+		assertEquals("John should be found through the contact index.", 2, reloaded.getFutureMeetingList(john).size() + reloaded.getPastMeetingListFor(john).size());
+		assertEquals("New IDs should follow on from the saved ones.", 3, reloaded.addNewContact("Jane Doe", "Some notes"));
+	}
+
+	@Test
+	public void testFlushWritesRepeatedNotesOnce() {
+		ContactManagerImpl contactManager = this.newContactManager(new BinaryStore(FILENAME));
+		String notes = "A long note that every contact shares and should only be stored once in the file.";
+
+		contactManager.addNewContact("David Jones", notes);
+		contactManager.flush();
+		long lengthWithOneContact = new File(FILENAME).length();
+
+		for (int i = 0; i < 9; i++) {
+			contactManager.addNewContact("David Jones", notes);
+		}
+		contactManager.flush();
+
+		assertTrue(new File(FILENAME).length() - lengthWithOneContact < 9 * notes.length());
+	}
+
+	@Test
+	public void testLoadReadsTheOldSerializedFormat() {
+		ContactManagerImpl contactManager = this.newContactManager(new SerializedStore(FILENAME));
+		int id = contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.addNewPastMeeting(contactManager.getContacts(id), this.aPastDate, "Past notes");
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = this.newContactManager(new BinaryStore(FILENAME));
+
+		assertEquals("The contact manager should contain 1 contact", 1, reloaded.getContacts("").size());
+		assertEquals("The past meeting notes should be kept.", "Past notes", reloaded.getPastMeeting(1).getNotes());
+	}
+
+	@Test
+	public void testLoadReadsVersionOneWithItsStringTable() throws IOException {
+		DataOutputStream output = new DataOutputStream(new FileOutputStream(FILENAME));
+		output.writeInt(BinaryStore.MAGIC);
+		output.writeInt(1);
+		output.writeInt(1);
+		output.writeInt(1);
+
+		output.writeInt(3);
+		output.writeInt(11);
+		output.writeBytes("David Jones");
+		output.writeInt(10);
+		output.writeBytes("Some notes");
+		output.writeInt(10);
+		output.writeBytes("Past notes");
+
+		output.writeInt(1);
+		output.writeInt(1);
+		output.writeInt(0);
+		output.writeInt(1);
+
+		output.writeInt(1);
+		output.writeByte(RecordCodec.PAST_MEETING);
+		output.writeInt(1);
+		output.writeLong(this.aPastDate.getTimeInMillis());
+		output.writeInt(1);
+		output.writeInt(1);
+		output.writeInt(2);
+		output.close();
+
+		ContactManagerImpl reloaded = this.newContactManager(new BinaryStore(FILENAME));
+		Contact david = reloaded.getContacts(1).iterator().next();
+
+		assertEquals("David Jones", david.getName());
+		assertEquals("Some notes", david.getNotes());
+		assertEquals("Past notes", reloaded.getPastMeeting(1).getNotes());
+	}
+
+	@Test
+	public void testLoadReadsAFileSavedByTheFirstVersion() throws IOException {
+		// Serialized meetings holding a Calendar and a set of contacts, from before either field changed
+		InputStream saved = BinaryStoreTest.class.getResourceAsStream("/contacts-baseline.txt");
+		assertNotNull("The saved file should be on the test class path.", saved);
+
+		try {
+			Files.copy(saved, new File(FILENAME).toPath());
+		} finally {
+			saved.close();
+		}
+
+		ContactManagerImpl contactManager = this.newContactManager(new BinaryStore(FILENAME));
+		Contact alan = contactManager.getContacts(2).iterator().next();
+
+		Calendar date = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		date.clear();
+		date.set(2015, Calendar.MARCH, 10, 10, 30);
+
+		assertEquals(3, contactManager.getContacts("").size());
+		assertEquals("Alan Turing", alan.getName());
+		assertEquals("Bletchley", alan.getNotes());
+		assertEquals("Discussed the engine", contactManager.getPastMeeting(1).getNotes());
+		assertEquals(date.getTimeInMillis(), contactManager.getPastMeeting(1).getDate().getTimeInMillis());
+		assertEquals(2, contactManager.getPastMeeting(1).getContacts().size());
+		assertEquals(3, contactManager.getFutureMeeting(3).getContacts().size());
+		assertEquals("Alan should be found through the contact index.", 3, contactManager.getPastMeetingListFor(alan).size() + contactManager.getFutureMeetingList(alan).size());
+
+		contactManager.flush();
+		ContactManagerImpl reloaded = this.newContactManager(new BinaryStore(FILENAME));
+
+		assertEquals("Compilers", reloaded.getPastMeeting(2).getNotes());
+		assertEquals("New IDs should follow on from the saved ones.", 4, reloaded.addNewContact("Jane Doe", "Some notes"));
+	}
+
+	private ContactManagerImpl newContactManager(ContactManagerStore store) {
+		return new ContactManagerImpl(Clock.systemDefaultZone(), store);
+	}
+}
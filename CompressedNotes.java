@@ -0,0 +1,333 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Holds notes compressed, and identical notes only once.
+ *
+ * Adding a note gives back a handle to read it with. Notes are gathered
+ * into blocks of NOTES_PER_BLOCK, and a full block is deflated as a whole,
+ * so repeated wording between notes in a block is stored once. Every block
+ * after the first is deflated with the start of the first block as a
+ * preset dictionary, so wording shared with the earliest notes, such as a
+ * template, compresses well even in a block on its own.
+ *
+ * Reading a note inflates its block. Inflated blocks are kept in
+ * CACHED_BLOCKS slots, a block always going in the slot its number falls
+ * in, so reading notes near each other, as loading and saving do,
+ * inflates each block once.
+ *
+ * A note is matched with one added before by a 64-bit fingerprint of its
+ * characters, kept for every note, so adding a new note never inflates a
+ * block. Only a note whose fingerprint and length match is read back, and
+ * it is taken for the same note only if the text is equal, so two notes
+ * that happen to share a fingerprint are both kept.
+ *
+ * Notes are never taken out. A note no longer used by any record stays
+ * until the contact manager is loaded again. Adding is synchronized.
+ * Reading takes no lock: a deflated block never changes once it is
+ * published, the notes of the open block are held as they were added,
+ * and the slots hold inflated blocks that never change, so any number of
+ * threads can read while one adds.
+ */
+public class CompressedNotes {
+
+	static final int NOTES_PER_BLOCK = 64;
+	static final int CACHED_BLOCKS = 16;
+	static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private final IntRecordMap<int[]> handlesByHash;
+	private final AtomicReferenceArray<InflatedBlock> cache;
+	private long[] fingerprints;
+	private int[] lengths;
+	private long storedSize;
+
+	private volatile byte[][] blocks;
+	private volatile byte[] dictionary;
+	private volatile OpenBlock open;
+	private volatile int count;
+
+	CompressedNotes() {
+		this.handlesByHash = new IntRecordMap<int[]>();
+		this.cache         = new AtomicReferenceArray<InflatedBlock>(CACHED_BLOCKS);
+		this.fingerprints  = new long[NOTES_PER_BLOCK];
+		this.lengths       = new int[NOTES_PER_BLOCK];
+		this.storedSize    = 0;
+		this.blocks        = new byte[16][];
+		this.dictionary    = null;
+		this.open          = new OpenBlock(0);
+		this.count         = 0;
+	}
+
+	/**
+	 * Adds a note, or finds the same note added before.
+	 *
+	 * @param  String the note
+	 * @return int the handle to read the note back with
+	 * @throws NullPointerException if the note is null
+	 * @author David Jones
+	 */
+	public synchronized int add(String note) {
+
+		if (note == null) {
+			throw new NullPointerException("The note cannot be null.");
+		}
+
+		int hash = note.hashCode();
+		long fingerprint = this.fingerprint(note);
+		int[] handles = this.handlesByHash.get(hash);
+
+		if (handles != null) {
+			for (int i = 0; i < handles.length; i++) {
+				if (this.fingerprints[handles[i]] == fingerprint && this.lengths[handles[i]] == note.length() && this.get(handles[i]).equals(note)) {
+					return handles[i];
+				}
+			}
+		}
+
+		int handle = this.count;
+		if (handle == this.fingerprints.length) {
+			this.fingerprints = Arrays.copyOf(this.fingerprints, handle * 2);
+			this.lengths      = Arrays.copyOf(this.lengths, handle * 2);
+		}
+
+		this.fingerprints[handle] = fingerprint;
+		this.lengths[handle]      = note.length();
+
+		OpenBlock block = this.open;
+		block.notes[handle % NOTES_PER_BLOCK] = note;
+		this.storedSize += 4 + note.length();
+
+		// Publishing the count makes the note visible to readers
+		this.count = handle + 1;
+
+		if (this.count % NOTES_PER_BLOCK == 0) {
+			this.seal(block);
+		}
+
+		if (handles == null) {
+			this.handlesByHash.put(hash, new int[] {handle});
+		} else {
+			int[] more = Arrays.copyOf(handles, handles.length + 1);
+			more[handles.length] = handle;
+			this.handlesByHash.put(hash, more);
+		}
+
+		return handle;
+	}
+
+	/**
+	 * Returns the note with the given handle.
+	 *
+	 * @param  int the handle given when the note was added
+	 * @return String
+	 * @throws IllegalArgumentException if no note has the handle
+	 * @author David Jones
+	 */
+	public String get(int handle) {
+
+		if (handle < 0 || handle >= this.count) {
+			throw new IllegalArgumentException("There is no note with the handle " + handle + ".");
+		}
+
+		int block = handle / NOTES_PER_BLOCK;
+
+		// The open block may be sealed while it is read, in which case the
+		// deflated block has been published before the open block is replaced
+		OpenBlock openBlock = this.open;
+		if (openBlock.number == block) {
+			return openBlock.notes[handle % NOTES_PER_BLOCK];
+		}
+
+		byte[] notes = this.inflated(block);
+
+		int position = 0;
+		for (int i = handle % NOTES_PER_BLOCK; i > 0; i--) {
+			position += 4 + readInt(notes, position);
+		}
+
+		return new String(notes, position + 4, readInt(notes, position), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the number of different notes held.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the number of bytes the notes take up as they are held, not
+	 * counting the dictionary, the fingerprints or the blocks kept
+	 * inflated. The notes of the open block are counted at a byte a
+	 * character.
+	 *
+	 * @return long
+	 * @author David Jones
+	 */
+	public synchronized long getStoredSize() {
+		return this.storedSize;
+	}
+
+	/**
+	 * Deflates the open block, publishes it and starts a new one. The
+	 * first block is deflated on its own and becomes the dictionary for
+	 * the rest.
+	 */
+	private void seal(OpenBlock block) {
+		ByteArrayOutputStream plain = new ByteArrayOutputStream(NOTES_PER_BLOCK * 64);
+		long openSize = 0;
+
+		for (int i = 0; i < NOTES_PER_BLOCK; i++) {
+			byte[] bytes = block.notes[i].getBytes(StandardCharsets.UTF_8);
+			byte[] length = new byte[4];
+			writeInt(length, 0, bytes.length);
+
+			plain.write(length, 0, 4);
+			plain.write(bytes, 0, bytes.length);
+			openSize += 4 + block.notes[i].length();
+		}
+
+		byte[] notes = plain.toByteArray();
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		ByteArrayOutputStream output = new ByteArrayOutputStream(notes.length / 4 + 16);
+
+		try {
+			if (this.dictionary != null) {
+				deflater.setDictionary(this.dictionary);
+			}
+
+			deflater.setInput(notes);
+			deflater.finish();
+
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				output.write(buffer, 0, deflater.deflate(buffer));
+			}
+		} finally {
+			deflater.end();
+		}
+
+		if (this.dictionary == null) {
+			this.dictionary = Arrays.copyOf(notes, Math.min(notes.length, DICTIONARY_SIZE));
+		}
+
+		byte[][] published = this.blocks;
+		if (block.number == published.length) {
+			published = Arrays.copyOf(published, published.length * 2);
+		}
+
+		published[block.number] = output.toByteArray();
+		this.blocks = published;
+		this.storedSize += published[block.number].length - openSize;
+
+		this.cache.set(block.number % CACHED_BLOCKS, new InflatedBlock(block.number, notes));
+		this.open = new OpenBlock(block.number + 1);
+	}
+
+	private byte[] inflated(int block) {
+		InflatedBlock cached = this.cache.get(block % CACHED_BLOCKS);
+		if (cached != null && cached.number == block) {
+			return cached.notes;
+		}
+
+		byte[] deflated = this.blocks[block];
+		Inflater inflater = new Inflater();
+		ByteArrayOutputStream output = new ByteArrayOutputStream(deflated.length * 4);
+
+		try {
+			inflater.setInput(deflated);
+
+			byte[] buffer = new byte[4096];
+			while (!inflater.finished()) {
+				int length = inflater.inflate(buffer);
+
+				if (length == 0 && inflater.needsDictionary()) {
+					inflater.setDictionary(this.dictionary);
+				} else if (length == 0 && inflater.needsInput()) {
+					throw new IllegalStateException("Block " + block + " of the notes is cut short.");
+				}
+
+				output.write(buffer, 0, length);
+			}
+		} catch (DataFormatException ex) {
+			throw new IllegalStateException("Block " + block + " of the notes cannot be read.", ex);
+		} finally {
+			inflater.end();
+		}
+
+		byte[] notes = output.toByteArray();
+		this.cache.set(block % CACHED_BLOCKS, new InflatedBlock(block, notes));
+
+		return notes;
+	}
+
+	/**
+	 * A 64-bit FNV-1a hash of the characters, mixed so that every bit
+	 * depends on every character. Tests override this to give different
+	 * notes the same fingerprint.
+	 *
+	 * @param  String the note
+	 * @return long
+	 * @author David Jones
+	 */
+	long fingerprint(String note) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < note.length(); i++) {
+			hash = (hash ^ note.charAt(i)) * 0x100000001B3L;
+		}
+
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	private static void writeInt(byte[] bytes, int position, int value) {
+		bytes[position]     = (byte) (value >>> 24);
+		bytes[position + 1] = (byte) (value >>> 16);
+		bytes[position + 2] = (byte) (value >>> 8);
+		bytes[position + 3] = (byte) value;
+	}
+
+	private static int readInt(byte[] bytes, int position) {
+		return ((bytes[position] & 0xFF) << 24)
+			| ((bytes[position + 1] & 0xFF) << 16)
+			| ((bytes[position + 2] & 0xFF) << 8)
+			| (bytes[position + 3] & 0xFF);
+	}
+
+	/**
+	 * The block notes are being added to, holding them as they were added.
+	 */
+	private static class OpenBlock {
+
+		private final int number;
+		private final String[] notes;
+
+		OpenBlock(int number) {
+			this.number = number;
+			this.notes  = new String[NOTES_PER_BLOCK];
+		}
+	}
+
+	/**
+	 * A block as it was before it was deflated.
+	 */
+	private static class InflatedBlock {
+
+		private final int number;
+		private final byte[] notes;
+
+		InflatedBlock(int number, byte[] notes) {
+			this.number = number;
+			this.notes  = notes;
+		}
+	}
+}
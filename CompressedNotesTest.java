@@ -0,0 +1,184 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+
+public class CompressedNotesTest {
+
+	private final String FILENAME = "compressed-notes-test.txt";
+
+	@Before
+	public void setUp() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	@After
+	public void tearDown() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	@Test
+	public void testNotesAreReadBackAcrossBlocks() {
+		CompressedNotes notes = new CompressedNotes();
+		List<Integer> handles = new ArrayList<Integer>();
+
+		int count = CompressedNotes.NOTES_PER_BLOCK * (CompressedNotes.CACHED_BLOCKS + 4) + 5;
+		for (int i = 0; i < count; i++) {
+			handles.add(notes.add("Note " + i + " \u00e9\u4e2d"));
+		}
+
+		assertEquals(count, notes.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals("Note " + i + " \u00e9\u4e2d", notes.get(handles.get(i)));
+		}
+
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			int note = random.nextInt(count);
+			assertEquals("Note " + note + " \u00e9\u4e2d", notes.get(handles.get(note)));
+		}
+	}
+
+	@Test
+	public void testIdenticalNotesAreHeldOnce() {
+		CompressedNotes notes = new CompressedNotes();
+		int first = notes.add("Discussed the budget.");
+		notes.add("Something else");
+
+		assertEquals("The same note should give back the same handle.", first, notes.add(new String("Discussed the budget.")));
+		assertEquals(2, notes.size());
+	}
+
+	@Test
+	public void testNotesSharingAFingerprintAreBothKept() {
+		CompressedNotes notes = new CompressedNotes() {
+			@Override
+			long fingerprint(String note) {
+				return 42;
+			}
+		};
+
+		// Equal hash codes and lengths, so only the text tells them apart
+		int first = notes.add("Aa");
+		for (int i = 0; i < CompressedNotes.NOTES_PER_BLOCK; i++) {
+			notes.add("Filler " + i);
+		}
+		int second = notes.add("BB");
+
+		assertTrue("Different notes should not share a handle.", first != second);
+		assertEquals("Aa", notes.get(first));
+		assertEquals("BB", notes.get(second));
+		assertEquals("An equal note should still be found.", second, notes.add(new String("BB")));
+	}
+
+	@Test
+	public void testNotesLargerThanABlockAreKept() {
+		char[] large = new char[100000];
+		Arrays.fill(large, 'x');
+
+		CompressedNotes notes = new CompressedNotes();
+		int before = notes.add("");
+		int handle = notes.add(new String(large));
+		for (int i = 0; i < CompressedNotes.NOTES_PER_BLOCK * 2; i++) {
+			notes.add("After " + i);
+		}
+
+		assertEquals("", notes.get(before));
+		assertEquals(new String(large), notes.get(handle));
+	}
+
+	@Test
+	public void testRepetitiveNotesAreStoredCompressed() {
+		CompressedNotes notes = new CompressedNotes();
+		long plain = 0;
+
+		for (int i = 0; i < 10000; i++) {
+			String note = "Weekly review " + i + ". Attendees went through the open actions, agreed the priorities for the"
+				+ " coming week and noted no blockers. Follow up with the client about invoice " + (i * 7) + ".";
+			notes.add(note);
+			plain += note.length();
+		}
+
+		assertTrue("The notes should take up under a fifth of their plain size.", notes.getStoredSize() * 5 < plain);
+	}
+
+	@Test
+	public void testNotesAreReadWhileOthersAreAdded() throws Exception {
+		final CompressedNotes notes = new CompressedNotes();
+		final int count = CompressedNotes.NOTES_PER_BLOCK * (CompressedNotes.CACHED_BLOCKS * 4);
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		Thread[] readers = new Thread[4];
+		for (int r = 0; r < readers.length; r++) {
+			final Random random = new Random(r);
+
+			readers[r] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (notes.size() < count) {
+							int added = notes.size();
+							if (added > 0) {
+								int handle = random.nextInt(added);
+								assertEquals("Note " + handle, notes.get(handle));
+							}
+						}
+					} catch (Throwable ex) {
+						failures.add(ex);
+					}
+				}
+			});
+
+			readers[r].start();
+		}
+
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, notes.add("Note " + i));
+		}
+
+		for (int r = 0; r < readers.length; r++) {
+			readers[r].join(10000);
+		}
+
+		assertEquals(Collections.<Throwable>emptyList(), failures);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAnUnknownHandleIsRejected() {
+		new CompressedNotes().get(0);
+	}
+
+	@Test
+	public void testContactManagerNotesSurviveSavingAndSerializing() throws Exception {
+		Calendar past = Calendar.getInstance();
+		past.add(Calendar.YEAR, -1);
+
+		ContactManagerImpl contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		int davidId = contactManager.addNewContact("David Jones", "Likes tea.");
+		Contact david = contactManager.getContacts(davidId).iterator().next();
+		contactManager.addNewPastMeeting(contactManager.getContacts(davidId), past, "Talked about tea.");
+
+		PastMeeting meeting = contactManager.getPastMeetingListFor(david).get(0);
+		assertEquals("Likes tea.", david.getNotes());
+		assertEquals("Talked about tea.", meeting.getNotes());
+		assertEquals(2, contactManager.getCompressedNotes().size());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(bytes);
+		output.writeObject(meeting);
+		output.close();
+
+		PastMeeting copy = (PastMeeting) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals("The copy should hold the notes itself.", "Talked about tea.", copy.getNotes());
+
+		contactManager.flush();
+		ContactManagerImpl reloaded = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME));
+		Contact loaded = reloaded.getContacts(davidId).iterator().next();
+		assertEquals("Likes tea.", loaded.getNotes());
+		assertEquals("Talked about tea.", reloaded.getPastMeetingListFor(loaded).get(0).getNotes());
+	}
+}
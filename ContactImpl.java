@@ -1,10 +1,17 @@
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 class ContactImpl implements Contact, Serializable {
 
+	// Worked out from the class as first saved, before the notes could be compressed
+	private static final long serialVersionUID = -2100268627223590541L;
+
 	private int id;
 	private String name;
 	private String notes;
+	private transient CompressedNotes compressedNotes;
+	private transient int notesHandle;
 
 	ContactImpl(int id, String name, String notes) {
 
@@ -40,6 +47,26 @@ class ContactImpl implements Contact, Serializable {
 		this.notes = null;
 	}
 
+	/**
+	 * Builds a contact whose notes are added to the compressed notes given
+	 * rather than held by the contact. With no compressed notes given the
+	 * contact holds them itself.
+	 *
+	 * @param int the contact ID
+	 * @param String the name
+	 * @param String the notes
+	 * @param CompressedNotes where to keep the notes
+	 */
+	ContactImpl(int id, String name, String notes, CompressedNotes compressedNotes) {
+		this(id, name, notes);
+
+		if (compressedNotes != null) {
+			this.notes           = null;
+			this.compressedNotes = compressedNotes;
+			this.notesHandle     = compressedNotes.add(notes);
+		}
+	}
+
 	public int getId() {
 		return this.id;
 	}
@@ -49,14 +76,46 @@ class ContactImpl implements Contact, Serializable {
 	}
 
 	public String getNotes() {
-		if (this.notes != null) {
+		if (this.compressedNotes != null) {
+			return this.compressedNotes.get(this.notesHandle);
+		} else if (this.notes != null) {
 			return this.notes;
 		} else {
 			return "";
 		}
 	}
 
+	/**
+	 * A getter for the compressed notes the notes are kept in, or null if
+	 * the contact holds them itself.
+	 * @return CompressedNotes
+	 * @author David Jones
+	 */
+	CompressedNotes getCompressedNotes() {
+		return this.compressedNotes;
+	}
+
+	/**
+	 * A getter for the handle of the notes in the compressed notes.
+	 * @return int
+	 * @author David Jones
+	 */
+	int getNotesHandle() {
+		return this.notesHandle;
+	}
+
 	public void addNotes(String notes) {
 
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Writes the notes themselves, so a contact read back on its own still has them.
+	 */
+	private void writeObject(ObjectOutputStream output) throws IOException {
+		ObjectOutputStream.PutField fields = output.putFields();
+		fields.put("id", this.id);
+		fields.put("name", this.name);
+		fields.put("notes", this.compressedNotes != null ? this.getNotes() : this.notes);
+		output.writeFields();
+	}
+}
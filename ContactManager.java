@@ -1,6 +1,8 @@
+import java.io.UncheckedIOException;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
 * A class to manage your contacts and meetings.
@@ -95,6 +97,90 @@ public interface ContactManager {
 	*/
 	List<PastMeeting> getPastMeetingListFor(Contact contact);
 
+	/**
+	* Returns a page of the future meetings scheduled with this contact.
+	*
+	* The page holds at most the given number of meetings, chronologically
+	* sorted, that come after the cursor. Pass MeetingCursor.START for the
+	* first page and MeetingCursor.after the last meeting for the next one.
+	* A page shorter than the limit is the last.
+	*
+	* @param contact one of the users contacts
+	* @param cursor the position the meetings must come after
+	* @param limit the maximum number of meetings to return
+	* @return the page of future meeting(s) scheduled with this contact (maybe empty).
+	* @throws IllegalArgumentException if the contact does not exist or the limit is negative
+	* @throws NullPointerException if the contact or the cursor is null
+	*/
+	List<Meeting> getFutureMeetingList(Contact contact, MeetingCursor cursor, int limit);
+
+	/**
+	* Returns a page of the meetings that are scheduled for, or that took
+	* place on, the specified date.
+	*
+	* The page holds at most the given number of meetings, chronologically
+	* sorted, that come after the cursor.
+	*
+	* @param date the date
+	* @param cursor the position the meetings must come after
+	* @param limit the maximum number of meetings to return
+	* @return the page of meetings (maybe empty).
+	* @throws IllegalArgumentException if the limit is negative
+	* @throws NullPointerException if the date or the cursor is null
+	*/
+	List<Meeting> getMeetingListOn(Calendar date, MeetingCursor cursor, int limit);
+
+	/**
+	* Returns a page of the past meetings in which this contact has participated.
+	*
+	* The page holds at most the given number of meetings, chronologically
+	* sorted, that come after the cursor.
+	*
+	* @param contact one of the users contacts
+	* @param cursor the position the meetings must come after
+	* @param limit the maximum number of meetings to return
+	* @return the page of past meeting(s) (maybe empty).
+	* @throws IllegalArgumentException if the contact does not exist or the limit is negative
+	* @throws NullPointerException if the contact or the cursor is null
+	*/
+	List<PastMeeting> getPastMeetingListFor(Contact contact, MeetingCursor cursor, int limit);
+
+	/**
+	* Returns the future meetings scheduled with this contact as a stream.
+	*
+	* The stream is chronologically sorted and is read lazily, a page at a
+	* time, so a caller that only uses the first few meetings does not pay
+	* for the rest. Meetings added while the stream is in use may or may
+	* not be seen. What counts as the future is fixed when the stream is made.
+	*
+	* @param contact one of the users contacts
+	* @return the stream of future meeting(s) scheduled with this contact
+	* @throws IllegalArgumentException if the contact does not exist
+	* @throws NullPointerException if the contact is null
+	*/
+	Stream<Meeting> streamFutureMeetings(Contact contact);
+
+	/**
+	* Returns the meetings that are scheduled for, or that took place on,
+	* the specified date as a lazily read, chronologically sorted stream.
+	*
+	* @param date the date
+	* @return the stream of meetings
+	* @throws NullPointerException if the date is null
+	*/
+	Stream<Meeting> streamMeetingsOn(Calendar date);
+
+	/**
+	* Returns the past meetings in which this contact has participated as a
+	* lazily read, chronologically sorted stream.
+	*
+	* @param contact one of the users contacts
+	* @return the stream of past meeting(s)
+	* @throws IllegalArgumentException if the contact does not exist
+	* @throws NullPointerException if the contact is null
+	*/
+	Stream<PastMeeting> streamPastMeetingsFor(Contact contact);
+
 	/**
 	* Create a new record for a meeting that took place in the past.
 	*
@@ -133,6 +219,52 @@ public interface ContactManager {
 	*/
 	int addNewContact(String name, String notes);
 
+	/**
+	* Create many new contacts at once.
+	*
+	* The whole batch is checked before anything is added, so either
+	* every contact is added or none is. The contacts are given
+	* consecutive IDs in the order of the lists.
+	*
+	* @param names the names of the contacts.
+	* @param notes notes to be added about each contact, in the same order as the names.
+	* @return the IDs for the new contacts, in the same order
+	* @throws IllegalArgumentException if the lists differ in length, or any name or note is an empty string
+	* @throws NullPointerException if either list, or any name or note in them, is null
+	*/
+	int[] addNewContacts(List<String> names, List<String> notes);
+
+	/**
+	* Add many meetings to be held in the future at once.
+	*
+	* The whole batch is checked before anything is added, so either
+	* every meeting is added or none is.
+	*
+	* @param contacts the participants of each meeting
+	* @param dates the date of each meeting, in the same order as the participants
+	* @return the IDs for the new meetings, in the same order
+	* @throws IllegalArgumentException if the lists differ in length, any meeting is set
+	* for a time in the past, has no contacts, or any contact is unknown / non-existent.
+	* @throws NullPointerException if either list, or anything in them, is null
+	*/
+	int[] addFutureMeetings(List<Set<Contact>> contacts, List<Calendar> dates);
+
+	/**
+	* Create records for many meetings that took place in the past at once.
+	*
+	* The whole batch is checked before anything is added, so either
+	* every meeting is added or none is.
+	*
+	* @param contacts the participants of each meeting
+	* @param dates the date of each meeting, in the same order as the participants
+	* @param text messages to be added about each meeting, in the same order
+	* @return the IDs for the new meetings, in the same order
+	* @throws IllegalArgumentException if the lists differ in length, any meeting has no
+	* contacts, or any contact does not exist
+	* @throws NullPointerException if any of the lists, or anything in them, is null
+	*/
+	int[] addNewPastMeetings(List<Set<Contact>> contacts, List<Calendar> dates, List<String> text);
+
 	/**
 	* Returns a list with the contacts whose name contains that string.
 	*
@@ -145,6 +277,27 @@ public interface ContactManager {
 	*/
 	Set<Contact> getContacts(String name);
 
+	/**
+	* Returns the contacts whose name matches the string, ignoring case.
+	*
+	* @param name the name to search for
+	* @return a set with the contacts whose name matches, maybe empty.
+	* @throws NullPointerException if the parameter is null
+	*/
+	Set<Contact> getContactsIgnoreCase(String name);
+
+	/**
+	* Returns the contacts whose name starts with the string, ignoring case.
+	*
+	* This is meant for type-ahead lookups. The contacts are ordered
+	* by name. If the string is the empty string, every contact is returned.
+	*
+	* @param prefix the start of the name to search for
+	* @return a set with the contacts whose name starts with the prefix, maybe empty.
+	* @throws NullPointerException if the parameter is null
+	*/
+	Set<Contact> getContactsByPrefix(String prefix);
+
 	/**
 	* Returns a list containing the contacts that correspond to the IDs.
 	* Note that this method can be used to retrieve just one contact by passing only one ID.
@@ -156,11 +309,40 @@ public interface ContactManager {
 	*/
 	Set<Contact> getContacts(int... ids);
 
+	/**
+	* Returns the contacts whose notes use any of the words in the query.
+	*
+	* Words are matched ignoring case. The list is ranked with the best
+	* match first, favouring notes that use the words often and words
+	* that few other notes use.
+	*
+	* @param query the words to search for
+	* @return the list of matching contacts, best match first (maybe empty).
+	* @throws NullPointerException if the query is null
+	*/
+	List<Contact> searchContactNotes(String query);
+
+	/**
+	* Returns the past meetings whose notes use any of the words in the query.
+	*
+	* Words are matched ignoring case. The list is ranked with the best
+	* match first, favouring notes that use the words often and words
+	* that few other notes use.
+	*
+	* @param query the words to search for
+	* @return the list of matching past meetings, best match first (maybe empty).
+	* @throws NullPointerException if the query is null
+	*/
+	List<PastMeeting> searchMeetingNotes(String query);
+
 	/**
 	* Save all data to disk.
 	*
 	* This method must be executed when the program is
 	* closed and when/if the user requests it.
+	*
+	* @throws UncheckedIOException if the data cannot be written. The data
+	*         saved by the last successful flush is left in place.
 	*/
 	void flush();
 
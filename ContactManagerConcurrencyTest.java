@@ -0,0 +1,140 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+public class ContactManagerConcurrencyTest {
+
+	private static final int THREADS    = 8;
+	private static final int PER_THREAD = 500;
+
+	private ContactManagerImpl contactManager;
+	private Set<Contact>       contacts;
+	private Contact            contact;
+	private Calendar           aFutureDate;
+	private Calendar           aPastDate;
+	private final String       FILENAME = "contacts.txt";
+
+	@Before
+	public void setUp() {
+		// Make sure the cache file is deleted before the test begins
+		File cacheFile = new File(this.FILENAME);
+		if (cacheFile.exists()) {
+			cacheFile.delete();
+		}
+		new File(this.FILENAME + ".prev").delete();
+
+		Calendar futureDate = Calendar.getInstance();
+		futureDate.add(Calendar.YEAR, 1);
+		this.aFutureDate = futureDate;
+
+		Calendar pastDate = Calendar.getInstance();
+		pastDate.set(2010, 01, 01);
+		this.aPastDate = pastDate;
+
+		this.contactManager = new ContactManagerImpl();
+		int contactId = this.contactManager.addNewContact("David Jones", "Some notes");
+
+		this.contacts = this.contactManager.getContacts(contactId);
+		this.contact  = this.contacts.iterator().next();
+	}
+
+	@Test
+	public void testConcurrentAddNewContactGivesUniqueIds() throws Exception {
+		List<Future<List<Integer>>> results = this.runOnThreads(new Callable<List<Integer>>() {
+			@Override
+			public List<Integer> call() {
+				List<Integer> ids = new ArrayList<Integer>();
+				for (int i = 0; i < PER_THREAD; i++) {
+					ids.add(contactManager.addNewContact("John Smith", "Some notes"));
+				}
+				return ids;
+			}
+		});
+
+		Set<Integer> ids = new HashSet<Integer>();
+		for (Future<List<Integer>> result : results) {
+			ids.addAll(result.get());
+		}
+
+		assertEquals("Every new contact should have been given its own ID.", THREADS * PER_THREAD, ids.size());
+		assertEquals("No contacts should have been lost.", THREADS * PER_THREAD, this.contactManager.getContacts("John Smith").size());
+	}
+
+	@Test
+	public void testConcurrentAddMeetingsWhileQuerying() throws Exception {
+		List<Future<List<Integer>>> results = this.runOnThreads(new Callable<List<Integer>>() {
+			@Override
+			public List<Integer> call() {
+				List<Integer> ids = new ArrayList<Integer>();
+				for (int i = 0; i < PER_THREAD; i++) {
+					ids.add(contactManager.addFutureMeeting(contacts, aFutureDate));
+					contactManager.addNewPastMeeting(contacts, aPastDate, "Some notes");
+
+					contactManager.getFutureMeetingList(contact);
+					contactManager.getPastMeetingListFor(contact);
+					contactManager.getMeetingListOn(aFutureDate);
+				}
+				return ids;
+			}
+		});
+
+		Set<Integer> ids = new HashSet<Integer>();
+		for (Future<List<Integer>> result : results) {
+			ids.addAll(result.get());
+		}
+
+		assertEquals("Every new meeting should have been given its own ID.", THREADS * PER_THREAD, ids.size());
+		assertEquals("No future meetings should have been lost.", THREADS * PER_THREAD, this.contactManager.getFutureMeetingList(this.contact).size());
+		assertEquals("No past meetings should have been lost.", THREADS * PER_THREAD, this.contactManager.getPastMeetingListFor(this.contact).size());
+	}
+
+	@Test
+	public void testConcurrentAddMeetingNotesKeepsIndexesConsistent() throws Exception {
+		for (int i = 0; i < THREADS * PER_THREAD; i++) {
+			this.contactManager.addNewPastMeeting(this.contacts, this.aPastDate, "Old notes");
+		}
+
+		final int[] next = new int[1];
+		this.runOnThreads(new Callable<List<Integer>>() {
+			@Override
+			public List<Integer> call() {
+				for (int i = 0; i < PER_THREAD; i++) {
+					int id;
+					synchronized (next) {
+						id = ++next[0];
+					}
+					contactManager.addMeetingNotes(id, "New notes");
+					contactManager.searchMeetingNotes("notes");
+				}
+				return new ArrayList<Integer>();
+			}
+		});
+
+		assertTrue(this.contactManager.searchMeetingNotes("old").isEmpty());
+		assertEquals("Every meeting should be found by its new notes.", THREADS * PER_THREAD, this.contactManager.searchMeetingNotes("new").size());
+		assertEquals("No past meetings should have been lost.", THREADS * PER_THREAD, this.contactManager.getPastMeetingListFor(this.contact).size());
+	}
+
+	private List<Future<List<Integer>>> runOnThreads(Callable<List<Integer>> task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+		try {
+			List<Callable<List<Integer>>> tasks = new ArrayList<Callable<List<Integer>>>();
+			for (int i = 0; i < THREADS; i++) {
+				tasks.add(task);
+			}
+
+			List<Future<List<Integer>>> results = executor.invokeAll(tasks);
+			for (Future<List<Integer>> result : results) {
+				result.get();
+			}
+
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
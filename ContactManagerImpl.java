@@ -1,276 +1,551 @@
 import java.util.Set;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Calendar;
+import java.util.TimeZone;
+import java.time.Clock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.ArrayList;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An implementation of ContactManager that can be shared between threads.
+ *
+ * Queries take the read lock so they run alongside each other, and changes
+ * take the write lock so the maps and every index are updated together.
+ * IDs come from an IdAllocator, which is atomic on its own.
+ *
+ * Writes to the store happen on the thread calling flush, unless
+ * startBackgroundFlush has moved them onto a BackgroundFlusher. A flush
+ * holds the read lock only while it copies the records the store asks for
+ * into a StoreSnapshot, and the store writes the snapshot after the lock
+ * is let go.
+ */
+public class ContactManagerImpl implements ContactManager, Closeable {
+
+	private RecordMap<Meeting> meetings;
+	private IntRecordMap<Contact> contacts;
+	private IdAllocator idAllocator;
+	private MeetingIndexes meetingIndexes;
+	private ContactNameIndex contactNameIndex;
+	private NotesIndex contactNotesIndex;
+	private DirtySet dirtySet;
+	private final CompressedNotes compressedNotes = new CompressedNotes();
+	private final Clock clock;
+	private final boolean offHeapMeetings;
+	private final File archiveDirectory;
+	private final long archiveHorizonMillis;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Object flushLock = new Object();
+	private final List<TieredMeetingMap> openMeetingMaps = new ArrayList<TieredMeetingMap>();
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.File;
+	private final String FILENAME = "contacts.txt"; 
+	private final ContactManagerStore store;
+	private volatile MappedStore deferredStore;
+	private BackgroundFlusher backgroundFlusher;
+	private volatile int parallelScanThreshold = PARALLEL_SCAN_THRESHOLD;
+
+	/**
+	 * Looks up the contacts of the meetings held here. A meeting read under
+	 * the read lock, for example in a findMeetings filter running on another
+	 * thread, resolves its contacts while a writer may be waiting, so the
+	 * read lock is taken with tryLock, which does not queue behind writers.
+	 */
+	private final ContactResolver contactResolver = new ContactResolver() {
+		@Override
+		public Contact[] resolve(int[] ids) {
+			if (!lock.readLock().tryLock()) {
+				lock.readLock().lock();
+			}
+
+			try {
+				Contact[] contacts = new Contact[ids.length];
+				for (int i = 0; i < ids.length; i++) {
+					contacts[i] = findContact(ids[i]);
+				}
 
-public class ContactManagerImpl implements ContactManager {
+				return contacts;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
 
-	private LinkedHashMap<Integer, Meeting> meetings;
-	private LinkedHashMap<Integer, Contact> contacts;
+		@Override
+		public TimeZone getTimeZone() {
+			return TimeZone.getTimeZone(clock.getZone());
+		}
+	};
 
-	private final String FILENAME = "contacts.txt"; 
+	static final int PARALLEL_SCAN_THRESHOLD = 10000;
+	static final int EXPORT_CHUNK_SIZE = 1000;
 
 	ContactManagerImpl() {
-		this.meetings = new LinkedHashMap<Integer, Meeting>();
-		this.contacts = new LinkedHashMap<Integer, Contact>();
+		this(Clock.systemDefaultZone());
+	}
 
-		this.setCachedData();
+	/**
+	 * Builds a contact manager that reads the current time from the clock
+	 * given. The clock is read once per operation, so a fixed clock makes
+	 * the split between past and future meetings predictable in tests and
+	 * when replaying old data.
+	 *
+	 * @param Clock the clock to read the current time from
+	 */
+	ContactManagerImpl(Clock clock) {
+		this.clock = clock;
+		this.store = new BinaryStore(this.FILENAME);
+		this.offHeapMeetings = false;
+		this.archiveDirectory = null;
+		this.archiveHorizonMillis = 0;
+
+		this.initialise();
 	}
 
 	/**
-	 * A getter for the filename.
-	 * @return String
-	 * @author David Jones
+	 * Builds a contact manager that saves to and loads from the store given,
+	 * for example a JournalStore so that each flush only writes what has
+	 * changed.
+	 *
+	 * @param Clock the clock to read the current time from
+	 * @param ContactManagerStore the store to save to and load from
 	 */
-	public String getFilename() {
-		return this.FILENAME;
+	ContactManagerImpl(Clock clock, ContactManagerStore store) {
+		this(clock, store, false);
 	}
 
 	/**
-	 * A getter for the meetings.
-	 * @return LinkedHashMap<Integer, Meeting>
-	 * @author David Jones
+	 * Builds a contact manager that can keep its meetings outside the heap,
+	 * in an OffHeapMeetingMap, for a meeting history too large to keep as
+	 * objects. The indexes over the meetings stay on the heap. The date and
+	 * contact indexes hold their entries in primitive arrays, at about
+	 * twelve bytes a meeting and contact, and the index of meeting notes
+	 * holds about six bytes for each distinct word of a meeting's notes,
+	 * with an object only for each distinct word across all of them.
+	 *
+	 * @param Clock the clock to read the current time from
+	 * @param ContactManagerStore the store to save to and load from
+	 * @param boolean whether to keep the meetings outside the heap
 	 */
-	public LinkedHashMap<Integer, Meeting> getMeetings() {
-		return this.meetings;
+	ContactManagerImpl(Clock clock, ContactManagerStore store, boolean offHeapMeetings) {
+		this(clock, store, offHeapMeetings, null, 0);
 	}
 
 	/**
-	 * A getter for the contacts.
-	 * @return LinkedHashMap<Integer, Meeting>
-	 * @author David Jones
+	 * Builds a contact manager that can also keep meetings further in the
+	 * past than the horizon on disk, in a MeetingArchive file in the
+	 * directory given, so only recent and upcoming meetings are held in
+	 * memory. Archived meetings are still found by every query, as the
+	 * indexes over them stay in memory, and are read back from the file
+	 * when asked for. The store stays the copy of every meeting that is
+	 * kept; the archive file is deleted when it is no longer used, and
+	 * close has to be called to delete the last one.
+	 *
+	 * @param Clock the clock to read the current time from
+	 * @param ContactManagerStore the store to save to and load from
+	 * @param boolean whether to keep the meetings in memory outside the heap
+	 * @param File the directory to keep archived meetings in, or null not to archive any
+	 * @param long how long ago in milliseconds a meeting must have been to be archived
 	 */
-	public LinkedHashMap<Integer, Contact> getContacts() {
-		return this.contacts;
+	ContactManagerImpl(Clock clock, ContactManagerStore store, boolean offHeapMeetings, File archiveDirectory, long archiveHorizonMillis) {
+
+		if (archiveHorizonMillis < 0) {
+			throw new IllegalArgumentException("The archive horizon cannot be negative.");
+		}
+
+		this.clock = clock;
+		this.store = store;
+		this.offHeapMeetings = offHeapMeetings;
+		this.archiveDirectory = archiveDirectory;
+		this.archiveHorizonMillis = archiveHorizonMillis;
+
+		this.initialise();
 	}
 
 	/**
-	 * Setter for the meetings.
+	 * Sets up the empty maps and indexes and then loads any saved data.
 	 *
-	 * @param  LinkedHashMap<Integer, Contact> A linked hash map of meetings
 	 * @return void
 	 * @author David Jones
 	 */
-	public void setMeetings(LinkedHashMap<Integer, Meeting> meetings) {
-		this.meetings = meetings;
+	private void initialise() {
+
+		if (this.clock == null) {
+			throw new NullPointerException("The clock cannot be null.");
+		}
+
+		if (this.store == null) {
+			throw new NullPointerException("The store cannot be null.");
+		}
+
+		this.meetings = this.newMeetingMap(0);
+		this.contacts = new IntRecordMap<Contact>();
+		this.idAllocator = new IdAllocator();
+		this.meetingIndexes = this.takeIndexes(this.meetings);
+		this.contactNameIndex = new ContactNameIndex();
+		this.contactNotesIndex = new NotesIndex();
+		this.dirtySet = new DirtySet();
+
+		this.setCachedData();
+
+		// Everything loaded is already in the store
+		this.dirtySet.clear();
 	}
 
 	/**
-	 * Setter for the contacts.
-	 *
-	 * @param  LinkedHashMap<Integer, Contact> A linked hash map of contacts
-	 * @return void
-	 * @author David Jones 
+	 * A getter for the filename.
+	 * @return String
+	 * @author David Jones
 	 */
-	public void setContacts(LinkedHashMap<Integer, Contact> contacts) {
-		this.contacts = contacts;
+	public String getFilename() {
+		return this.FILENAME;
 	}
 
 	/**
-	 * Works out the ID that should be assigned to the object that
-	 * is being added to the map. Works out the highest ID and increments it by one.
-	 *
-	 * @return int
-	 * @access private
+	 * A getter for the store.
+	 * @return ContactManagerStore
+	 * @author David Jones
 	 */
-	private int workoutNextIdIncrement(Set<Integer> keys) {
+	public ContactManagerStore getStore() {
+		return this.store;
+	}
 
-		int maxKey = 0;
+	/**
+	 * A getter for the meetings. The map is the one the manager uses, so
+	 * it must not be changed and is not safe to read while other threads
+	 * are adding meetings.
+	 * @return RecordMap<Meeting>
+	 * @author David Jones
+	 */
+	public RecordMap<Meeting> getMeetings() {
+		this.ensureLoaded();
 
-		if (!keys.isEmpty()) {
-			Iterator<Integer> iterator = keys.iterator();
-			while (iterator.hasNext()) {
-				Integer i = iterator.next();
+		return this.meetings;
+	}
 
-				if (i > maxKey) {
-					maxKey = i;
-				}
-			}
-		}
+	/**
+	 * A getter for the contacts. The map is the one the manager uses, so
+	 * it must not be changed and is not safe to read while other threads
+	 * are adding contacts.
+	 * @return IntRecordMap<Contact>
+	 * @author David Jones
+	 */
+	public IntRecordMap<Contact> getContacts() {
+		this.ensureLoaded();
 
-		return maxKey + 1;
+		return this.contacts;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Returns an empty map of the kind the manager keeps its meetings in,
+	 * an OffHeapMeetingMap if it keeps them outside the heap and an
+	 * IntRecordMap otherwise, inside a TieredMeetingMap with an archive
+	 * file of its own if old meetings are archived. A store loading
+	 * meetings fills one of these so that setMeetings can take it without
+	 * copying, and so that old meetings go straight to the archive. A
+	 * TieredMeetingMap also builds the meeting indexes as it is filled,
+	 * and its archive file is deleted when the map is replaced or the
+	 * manager is closed.
+	 *
+	 * @param  int the expected number of meetings
+	 * @return RecordMap<Meeting>
+	 * @throws UncheckedIOException if the archive file cannot be created
 	 * @author David Jones
 	 */
-	@Override
-	public int addFutureMeeting(Set<Contact> contacts, Calendar date) throws NullPointerException, IllegalArgumentException {
-		if (contacts == null) {
-			throw new NullPointerException("Contacts cannot be null.");
+	public RecordMap<Meeting> newMeetingMap(int expectedSize) {
+		RecordMap<Meeting> meetings;
+		if (this.offHeapMeetings) {
+			meetings = new OffHeapMeetingMap(this.contactResolver, expectedSize);
+		} else {
+			meetings = new IntRecordMap<Meeting>(expectedSize);
 		}
 
-		if (date == null) {
-			throw new NullPointerException("Date cannot be null.");
+		if (this.archiveDirectory == null) {
+			return meetings;
 		}
 
-		Calendar currentDateTime = Calendar.getInstance();
-		if (!date.after(currentDateTime)) {
-			throw new IllegalArgumentException("Date must be a date in the future.");
+		File archiveFile;
+		try {
+			archiveFile = File.createTempFile("meetings-", ".archive", this.archiveDirectory);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("The meeting archive could not be created in '" + this.archiveDirectory + "'.", ex);
 		}
 
-		if (contacts.isEmpty()) {
-			throw new IllegalArgumentException("The set of contacts must have at least one contact.");
-		}
+		TieredMeetingMap tiered = new TieredMeetingMap(meetings, new MeetingArchive(archiveFile, this.contactResolver), this.clock, this.archiveHorizonMillis);
+		tiered.keepIndexes(new MeetingIndexes(TimeZone.getTimeZone(this.clock.getZone())));
 
-		if (!this.checkContactsExist(contacts)) {
-			throw new IllegalArgumentException("All contacts must exist in the contact manager. Use the method addNewContact to add a new contact.");
+		synchronized (this.openMeetingMaps) {
+			this.openMeetingMaps.add(tiered);
 		}
-		
-		int key = this.workoutNextIdIncrement(this.meetings.keySet());
-		Meeting newMeeting = new FutureMeetingImpl(key, date, contacts);
-		this.meetings.put(key, newMeeting);
 
-		return key;
+		return tiered;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Moves the meetings held in memory that are now further in the past
+	 * than the archive horizon into the archive, as they would be if the
+	 * meetings were loaded again. This can be called from time to time to
+	 * keep the meetings in memory few. Does nothing if old meetings are not
+	 * archived.
+	 *
+	 * @return int the number of meetings archived
 	 * @author David Jones
 	 */
-	@Override
-	public PastMeeting getPastMeeting(int id) throws IllegalStateException {
+	public int archiveMeetings() {
+		this.ensureLoaded();
+
+		this.lock.writeLock().lock();
+		try {
+			if (this.meetings instanceof TieredMeetingMap) {
+				return ((TieredMeetingMap) this.meetings).archive();
+			}
 
-		if (!this.meetings.containsKey(id)) {
-			return null;
+			return 0;
+		} finally {
+			this.lock.writeLock().unlock();
 		}
+	}
 
-		Meeting meeting = this.meetings.get(id);
-		Calendar now    = Calendar.getInstance();
+	/**
+	 * A getter for the clock.
+	 * @return Clock
+	 * @author David Jones
+	 */
+	public Clock getClock() {
+		return this.clock;
+	}
 
-		if (meeting.getDate().after(now)) {
-			throw new IllegalStateException("The selected meeting has a date in the future.");
-		}
-		
-		return (PastMeeting) meeting;
+	/**
+	 * A getter for the number of meetings at which findMeetings starts
+	 * filtering them in parallel.
+	 * @return int
+	 * @author David Jones
+	 */
+	public int getParallelScanThreshold() {
+		return this.parallelScanThreshold;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Sets the number of meetings at which findMeetings starts filtering
+	 * them in parallel. Below it the filter runs on the calling thread, where
+	 * it is cheaper than handing the work out.
+	 *
+	 * @param  int the threshold
+	 * @return void
+	 * @throws IllegalArgumentException if the threshold is negative
 	 * @author David Jones
 	 */
-	@Override
-	public FutureMeeting getFutureMeeting(int id) throws IllegalStateException {
-		
-		if (!this.meetings.containsKey(id)) {
-			return null;
+	public void setParallelScanThreshold(int threshold) {
+
+		if (threshold < 0) {
+			throw new IllegalArgumentException("The threshold cannot be negative.");
 		}
 
-		Meeting meeting = this.meetings.get(id);
-		Calendar now    = Calendar.getInstance();
+		this.parallelScanThreshold = threshold;
+	}
 
-		if (meeting.getDate().before(now)) {
-			throw new IllegalStateException("The selected meeting has a date in the past.");
-		}
+	/**
+	 * A getter for the resolver that meetings held by this manager look
+	 * their contacts up through. Stores pass it to the meetings they load.
+	 * @return ContactResolver
+	 * @author David Jones
+	 */
+	public ContactResolver getContactResolver() {
+		return this.contactResolver;
+	}
 
-		return (FutureMeeting) meeting;
+	/**
+	 * A getter for the compressed notes that the contacts and past meetings
+	 * held by this manager keep their notes in. Stores pass it to the
+	 * records they load.
+	 * @return CompressedNotes
+	 * @author David Jones
+	 */
+	public CompressedNotes getCompressedNotes() {
+		return this.compressedNotes;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * A getter for the compressed notes that past meetings keep their notes
+	 * in. This is null when the meetings are held off the heap, as they
+	 * already keep their notes there.
+	 * @return CompressedNotes
 	 * @author David Jones
 	 */
-	@Override
-	public Meeting getMeeting(int id) {
-		
-		if (!this.meetings.containsKey(id)) {
-			return null;
-		}
+	public CompressedNotes getMeetingNotes() {
+		return this.offHeapMeetings ? null : this.compressedNotes;
+	}
 
-		return this.meetings.get(id);
+	/**
+	 * A getter for the ID allocator.
+	 * @return IdAllocator
+	 * @author David Jones
+	 */
+	public IdAllocator getIdAllocator() {
+		return this.idAllocator;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Setter for the meetings.
+	 *
+	 * @param  Map<Integer, Meeting> A map of meetings, in the order to keep them in
+	 * @return void
 	 * @author David Jones
 	 */
-	@Override
-	public List<Meeting> getFutureMeetingList(Contact contact) throws IllegalArgumentException {
+	public void setMeetings(Map<Integer, Meeting> meetings) {
+		this.ensureLoaded();
 
-		if (!this.checkContactExists(contact)) {
-			throw new IllegalArgumentException("The contact does not exist. You can add a new contact using the addNewContact method.");
+		this.lock.writeLock().lock();
+		try {
+			this.replaceMeetings(meetings);
+			this.dirtySet.allChanged();
+			this.changed();
+		} finally {
+			this.lock.writeLock().unlock();
 		}
+	}
 
-		List<Meeting> futureMeetingList = new ArrayList<Meeting>();
+	/**
+	 * Replaces the meetings and the meeting indexes. A map of the kind
+	 * newMeetingMap gives is used as it is, along with the indexes it built
+	 * as it was filled, and any other map is copied into one. The caller
+	 * must hold the write lock.
+	 *
+	 * @param  Map<Integer, Meeting> A map of meetings
+	 * @return void
+	 * @author David Jones
+	 */
+	private void replaceMeetings(Map<Integer, Meeting> meetings) {
+		RecordMap<Meeting> previous = this.meetings;
+
+		if (this.isMeetingMap(meetings)) {
+			this.meetings = (RecordMap<Meeting>) meetings;
+		} else {
+			this.meetings = this.newMeetingMap(meetings.size());
+			this.meetings.putAll(meetings);
+		}
 
-		if (!this.meetings.isEmpty()) {
-			Set<Integer> keys = this.meetings.keySet();
-			Iterator iterator = keys.iterator();
+		// The map given may have been filled from the old one, so it can only be closed now
+		if (previous instanceof TieredMeetingMap && previous != this.meetings) {
+			this.closeMeetingMap((TieredMeetingMap) previous);
+		}
 
-			while (iterator.hasNext()) {
-				Meeting meeting = this.meetings.get(iterator.next());
-				Calendar now    = Calendar.getInstance();
+		this.idAllocator.advanceMeetingIdTo(IdAllocator.highestKey(this.meetings.keySet()));
+		this.meetingIndexes = this.takeIndexes(this.meetings);
+	}
 
-				if (!meeting.getDate().before(now)) {
-					Set<Contact> contacts = meeting.getContacts();
+	/**
+	 * Takes over the indexes a TieredMeetingMap kept while it was filled,
+	 * or builds them from the meetings of any other map.
+	 *
+	 * @param  RecordMap<Meeting> the map the manager now holds its meetings in
+	 * @return MeetingIndexes
+	 * @author David Jones
+	 */
+	private MeetingIndexes takeIndexes(RecordMap<Meeting> meetings) {
+		if (meetings instanceof TieredMeetingMap) {
+			MeetingIndexes indexes = ((TieredMeetingMap) meetings).takeIndexes();
+			if (indexes != null) {
+				return indexes;
+			}
+		}
 
-					Iterator<Contact> contactIterator = contacts.iterator();
-					while (contactIterator.hasNext()) {
-						Contact person = contactIterator.next();
+		MeetingIndexes indexes = new MeetingIndexes(TimeZone.getTimeZone(this.clock.getZone()));
 
-						if (person.getId() == contact.getId()) {
-							futureMeetingList.add(meeting);
-						}
-					}
-				}
-			}
+		Iterator<Meeting> iterator = meetings.values().iterator();
+		while (iterator.hasNext()) {
+			indexes.add(iterator.next());
 		}
 
-		if (!futureMeetingList.isEmpty()) {
-			Collections.sort(futureMeetingList, new MeetingComparator());
+		return indexes;
+	}
+
+	/**
+	 * Closes a map from newMeetingMap, deleting its archive file.
+	 *
+	 * @param  TieredMeetingMap the map, which is no longer used
+	 * @return void
+	 * @author David Jones
+	 */
+	private void closeMeetingMap(TieredMeetingMap meetings) {
+		synchronized (this.openMeetingMaps) {
+			this.openMeetingMaps.remove(meetings);
 		}
 
-		return futureMeetingList;
+		meetings.close();
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Checks whether a map of meetings is of the kind newMeetingMap gives,
+	 * so the manager can keep it as it is.
+	 *
+	 * @param  Map<Integer, Meeting> A map of meetings
+	 * @return boolean
 	 * @author David Jones
 	 */
-	@Override
-	public List<Meeting> getMeetingListOn(Calendar date) throws NullPointerException {
+	private boolean isMeetingMap(Map<Integer, Meeting> meetings) {
+		if (this.archiveDirectory != null) {
+			return meetings instanceof TieredMeetingMap && ((TieredMeetingMap) meetings).getArchive().getResolver() == this.contactResolver;
+		}
 
-		if (date == null) {
-			throw new NullPointerException("The date cannot be null.");
+		if (this.offHeapMeetings) {
+			return meetings instanceof OffHeapMeetingMap && ((OffHeapMeetingMap) meetings).getResolver() == this.contactResolver;
 		}
 
-		List<Meeting> meetings = new ArrayList<Meeting>();
+		return meetings instanceof IntRecordMap;
+	}
 
-		/**
-		 * In order to get matches for the date and not time we will need to set
-		 * the time components to zero.
-		 */
-		date.set(Calendar.HOUR, 0);
-		date.set(Calendar.MINUTE, 0);
-		date.set(Calendar.SECOND, 0);
+	/**
+	 * Setter for the contacts.
+	 *
+	 * @param  Map<Integer, Contact> A map of contacts, in the order to keep them in
+	 * @return void
+	 * @author David Jones 
+	 */
+	public void setContacts(Map<Integer, Contact> contacts) {
+		this.ensureLoaded();
 
-		Set<Integer> keys = this.meetings.keySet();
-		Iterator iterator = keys.iterator();
-		while (iterator.hasNext()) {
-			Meeting meeting = this.meetings.get(iterator.next());
-			Calendar meetingDate = meeting.getDate();
+		this.lock.writeLock().lock();
+		try {
+			this.replaceContacts(contacts);
+			this.dirtySet.allChanged();
+			this.changed();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
 
-			meetingDate.set(Calendar.HOUR, 0);
-			meetingDate.set(Calendar.MINUTE, 0);
-			meetingDate.set(Calendar.SECOND, 0);
+	/**
+	 * Replaces the contacts and rebuilds the contact indexes. An
+	 * IntRecordMap is used as it is, and any other map is copied into one.
+	 * The caller must hold the write lock.
+	 *
+	 * @param  Map<Integer, Contact> A map of contacts
+	 * @return void
+	 * @author David Jones
+	 */
+	private void replaceContacts(Map<Integer, Contact> contacts) {
+		this.contacts = contacts instanceof IntRecordMap ? (IntRecordMap<Contact>) contacts : new IntRecordMap<Contact>(contacts);
+		this.idAllocator.advanceContactIdTo(IdAllocator.highestKey(contacts.keySet()));
+		this.contactNameIndex.rebuild(contacts.values());
 
-			if (meetingDate.equals(date)) {
-				meetings.add(meeting);
-			}
+		this.contactNotesIndex.clear();
+		Iterator<Contact> iterator = contacts.values().iterator();
+		while (iterator.hasNext()) {
+			Contact contact = iterator.next();
+			this.contactNotesIndex.put(contact.getId(), contact.getNotes());
 		}
-
-		return meetings;
 	}
 
 	/**
@@ -278,35 +553,43 @@ public class ContactManagerImpl implements ContactManager {
 	 * @author David Jones
 	 */
 	@Override
-	public List<PastMeeting> getPastMeetingListFor(Contact contact) throws NullPointerException {
-
-		if (contact == null) {
-			throw new NullPointerException("The contact cannot be null.");
-		}
-
-		List<PastMeeting> meetings = new ArrayList<PastMeeting>();
+	public int addFutureMeeting(Set<Contact> contacts, Calendar date) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
 
-		Set<Integer> keys = this.meetings.keySet();
-		Iterator meetingIterator = keys.iterator();
+		this.lock.writeLock().lock();
+		try {
+			if (contacts == null) {
+				throw new NullPointerException("Contacts cannot be null.");
+			}
 
-		while (meetingIterator.hasNext()) {
-			Meeting meeting = this.meetings.get(meetingIterator.next());
+			if (date == null) {
+				throw new NullPointerException("Date cannot be null.");
+			}
 
-			if (meeting instanceof  PastMeeting) {
-				Set<Contact> contacts = meeting.getContacts();
-				Iterator<Contact> contactIterator = contacts.iterator();
+			long now = this.clock.millis();
+			if (date.getTimeInMillis() <= now) {
+				throw new IllegalArgumentException("Date must be a date in the future.");
+			}
 
-				while (contactIterator.hasNext()) {
-					Contact meetingContact = contactIterator.next();
+			if (contacts.isEmpty()) {
+				throw new IllegalArgumentException("The set of contacts must have at least one contact.");
+			}
 
-					if (meetingContact.getId() == contact.getId()) {
-						meetings.add((PastMeeting) meeting);
-					}
-				}
+			if (!this.checkContactsExist(contacts)) {
+				throw new IllegalArgumentException("All contacts must exist in the contact manager. Use the method addNewContact to add a new contact.");
 			}
+		
+			int key = this.idAllocator.nextMeetingId();
+			Meeting newMeeting = new FutureMeetingImpl(key, date.getTimeInMillis(), MeetingImpl.idsOf(contacts), this.contactResolver);
+			this.meetings.put(key, newMeeting);
+			this.indexMeeting(newMeeting);
+			this.dirtySet.meetingChanged(key);
+			this.changed();
+
+			return key;
+		} finally {
+			this.lock.writeLock().unlock();
 		}
-
-		return meetings;
 	}
 
 	/**
@@ -314,27 +597,25 @@ public class ContactManagerImpl implements ContactManager {
 	 * @author David Jones
 	 */
 	@Override
-	public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) throws NullPointerException, IllegalArgumentException {
-
-		if (contacts == null) {
-			throw new NullPointerException("Contacts cannot be null.");
-		}
+	public PastMeeting getPastMeeting(int id) throws IllegalStateException {
 
-		if (date == null) {
-			throw new NullPointerException("Date cannot be null.");
-		}
+		this.lock.readLock().lock();
+		try {
+			Meeting meeting = this.findMeeting(id);
+			if (meeting == null) {
+				return null;
+			}
 
-		if (text == null) {
-			throw new NullPointerException("Text cannot be null.");
-		}
+			long now        = this.clock.millis();
 
-		if (contacts.isEmpty()) {
-			throw new IllegalArgumentException("The set of contacts must have at least one contact.");
+			if (MeetingImpl.timeOf(meeting) > now) {
+				throw new IllegalStateException("The selected meeting has a date in the future.");
+			}
+		
+			return (PastMeeting) meeting;
+		} finally {
+			this.lock.readLock().unlock();
 		}
-
-		int key = this.workoutNextIdIncrement(this.meetings.keySet());
-		Meeting newPastMeeting = new PastMeetingImpl(key, date, contacts, text);
-		this.meetings.put(key, newPastMeeting);
 	}
 
 	/**
@@ -342,30 +623,25 @@ public class ContactManagerImpl implements ContactManager {
 	 * @author David Jones
 	 */
 	@Override
-	public PastMeeting addMeetingNotes(int id, String text) throws NullPointerException, IllegalArgumentException, IllegalStateException {
-		
-		if (text == null) {
-			throw new NullPointerException("The notes cannot be null.");
-		}
+	public FutureMeeting getFutureMeeting(int id) throws IllegalStateException {
 
-		Meeting meeting = this.getMeeting(id);
+		this.lock.readLock().lock();
+		try {
+			Meeting meeting = this.findMeeting(id);
+			if (meeting == null) {
+				return null;
+			}
 
-		if (meeting == null) {
-			throw new IllegalArgumentException("A meeting with the ID of '" + id + "' does not exist.");
-		}
+			long now        = this.clock.millis();
 
-		Calendar now = Calendar.getInstance();
+			if (MeetingImpl.timeOf(meeting) < now) {
+				throw new IllegalStateException("The selected meeting has a date in the past.");
+			}
 
-		if (meeting.getDate().after(now)) {
-			throw new IllegalStateException("The selected meeting exists but is a future meeting. An ID of a past meeting must be supplied.");
+			return (FutureMeeting) meeting;
+		} finally {
+			this.lock.readLock().unlock();
 		}
-
-		this.meetings.remove(meeting.getId());
-
-		Meeting pastMeeting = new PastMeetingImpl(meeting.getId(), meeting.getDate(), meeting.getContacts(), text);
-		this.meetings.put(pastMeeting.getId(), pastMeeting);
-
-		return (PastMeeting) pastMeeting;
 	}
 
 	/**
@@ -373,30 +649,14 @@ public class ContactManagerImpl implements ContactManager {
 	 * @author David Jones
 	 */
 	@Override
-	public int addNewContact(String name, String notes) throws NullPointerException, IllegalArgumentException {
-
-		if (name == null) {
-			throw new NullPointerException("Name cannot be null.");
-		}
-
-		if (notes == null) {
-			throw new NullPointerException("Notes cannot be null.");
-		}
-
-		if (name == "") {
-			throw new IllegalArgumentException("Name cannot be an empty string.");
-		}
+	public Meeting getMeeting(int id) {
 
-		if (notes == "") {
-			throw new IllegalArgumentException("Notes cannot be an empty string.");
+		this.lock.readLock().lock();
+		try {
+			return this.findMeeting(id);
+		} finally {
+			this.lock.readLock().unlock();
 		}
-
-		int id = this.workoutNextIdIncrement(this.contacts.keySet());
-
-		Contact contact = new ContactImpl(id, name, notes);
-		this.contacts.put(id, contact);
-
-		return id;
 	}
 
 	/**
@@ -404,26 +664,22 @@ public class ContactManagerImpl implements ContactManager {
 	 * @author David Jones
 	 */
 	@Override
-	public Set<Contact> getContacts(String name) throws NullPointerException {
-
-		if (name == null) {
-			throw new NullPointerException("The contact name cannot be null.");
-		}
+	public List<Meeting> getFutureMeetingList(Contact contact) throws IllegalArgumentException {
+		this.ensureLoaded();
 
-		Set<Contact> contacts = new HashSet<Contact>();
-		Set<Integer> keys     = this.contacts.keySet();
-		Iterator iterator     = keys.iterator();
+		this.lock.readLock().lock();
+		try {
+			if (!this.checkContactExists(contact)) {
+				throw new IllegalArgumentException("The contact does not exist. You can add a new contact using the addNewContact method.");
+			}
 
-		while (iterator.hasNext()) {
-			Contact contact    = this.contacts.get(iterator.next());
-			String contactName = contact.getName();
+			long now = this.clock.millis();
+			List<Integer> keys = this.meetingIndexes.getContactIndex().getMeetingIdsFrom(contact.getId(), now);
 
-			if (name.equals("") || contactName.equals(name)) {
-				contacts.add(contact);
-			}
+			return this.lookupMeetings(keys);
+		} finally {
+			this.lock.readLock().unlock();
 		}
-
-		return contacts;
 	}
 
 	/**
@@ -431,21 +687,886 @@ public class ContactManagerImpl implements ContactManager {
 	 * @author David Jones
 	 */
 	@Override
-	public Set<Contact> getContacts(int... ids) throws NullPointerException {
+	public List<Meeting> getMeetingListOn(Calendar date) throws NullPointerException {
+		this.ensureLoaded();
 
-		if (ids == null) {
-			throw new NullPointerException("The list of ids cannot be null.");
+		this.lock.readLock().lock();
+		try {
+			if (date == null) {
+				throw new NullPointerException("The date cannot be null.");
+			}
+
+			/**
+			 * In order to get matches for the date and not time we look up the
+			 * bucket for the calendar day the date shows. Neither the date passed
+			 * in nor the stored meeting dates are changed.
+			 */
+			List<Integer> keys = this.meetingIndexes.getDayIndex().on(MeetingDayIndex.epochDayOf(date));
+
+			return this.lookupMeetings(keys);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public List<PastMeeting> getPastMeetingListFor(Contact contact) throws NullPointerException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			if (contact == null) {
+				throw new NullPointerException("The contact cannot be null.");
+			}
+
+			List<PastMeeting> meetings = new ArrayList<PastMeeting>();
+
+			List<Integer> keys = this.meetingIndexes.getContactIndex().getMeetingIds(contact.getId());
+			Iterator<Integer> meetingIterator = keys.iterator();
+
+			while (meetingIterator.hasNext()) {
+				Meeting meeting = this.meetings.get(meetingIterator.next());
+
+				if (meeting instanceof  PastMeeting) {
+					meetings.add((PastMeeting) meeting);
+				}
+			}
+
+			return meetings;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public List<Meeting> getFutureMeetingList(Contact contact, MeetingCursor cursor, int limit) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			this.checkPageContact(contact);
+			checkPage(cursor, limit);
+
+			return this.futureMeetingPage(contact.getId(), cursor.atLeast(this.clock.millis()), limit);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public List<Meeting> getMeetingListOn(Calendar date, MeetingCursor cursor, int limit) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			if (date == null) {
+				throw new NullPointerException("The date cannot be null.");
+			}
+
+			checkPage(cursor, limit);
+
+			return this.meetingOnPage(MeetingDayIndex.epochDayOf(date), cursor, limit);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public List<PastMeeting> getPastMeetingListFor(Contact contact, MeetingCursor cursor, int limit) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			this.checkPageContact(contact);
+			checkPage(cursor, limit);
+
+			return this.pastMeetingPage(contact.getId(), cursor, limit);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Stream<Meeting> streamFutureMeetings(Contact contact) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			this.checkPageContact(contact);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+
+		final int contactId = contact.getId();
+		final long now = this.clock.millis();
+
+		return MeetingPageIterator.stream(new MeetingPageIterator.PageSource<Meeting>() {
+			@Override
+			public List<Meeting> page(MeetingCursor cursor, int limit) {
+				lock.readLock().lock();
+				try {
+					return futureMeetingPage(contactId, cursor.atLeast(now), limit);
+				} finally {
+					lock.readLock().unlock();
+				}
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Stream<Meeting> streamMeetingsOn(Calendar date) throws NullPointerException {
+		this.ensureLoaded();
+
+		if (date == null) {
+			throw new NullPointerException("The date cannot be null.");
+		}
+
+		// Worked out now, so later changes to the calendar make no difference
+		final long epochDay = MeetingDayIndex.epochDayOf(date);
+
+		return MeetingPageIterator.stream(new MeetingPageIterator.PageSource<Meeting>() {
+			@Override
+			public List<Meeting> page(MeetingCursor cursor, int limit) {
+				lock.readLock().lock();
+				try {
+					return meetingOnPage(epochDay, cursor, limit);
+				} finally {
+					lock.readLock().unlock();
+				}
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Stream<PastMeeting> streamPastMeetingsFor(Contact contact) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			this.checkPageContact(contact);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+
+		final int contactId = contact.getId();
+
+		return MeetingPageIterator.stream(new MeetingPageIterator.PageSource<PastMeeting>() {
+			@Override
+			public List<PastMeeting> page(MeetingCursor cursor, int limit) {
+				lock.readLock().lock();
+				try {
+					return pastMeetingPage(contactId, cursor, limit);
+				} finally {
+					lock.readLock().unlock();
+				}
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
+
+		this.lock.writeLock().lock();
+		try {
+			if (contacts == null) {
+				throw new NullPointerException("Contacts cannot be null.");
+			}
+
+			if (date == null) {
+				throw new NullPointerException("Date cannot be null.");
+			}
+
+			if (text == null) {
+				throw new NullPointerException("Text cannot be null.");
+			}
+
+			if (contacts.isEmpty()) {
+				throw new IllegalArgumentException("The set of contacts must have at least one contact.");
+			}
+
+			if (!this.checkContactsExist(contacts)) {
+				throw new IllegalArgumentException("All contacts must exist in the contact manager. Use the method addNewContact to add a new contact.");
+			}
+
+			int key = this.idAllocator.nextMeetingId();
+			Meeting newPastMeeting = new PastMeetingImpl(key, date.getTimeInMillis(), MeetingImpl.idsOf(contacts), this.contactResolver, this.getMeetingNotes(), text);
+			this.meetings.put(key, newPastMeeting);
+			this.indexMeeting(newPastMeeting);
+			this.dirtySet.meetingChanged(key);
+			this.changed();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public PastMeeting addMeetingNotes(int id, String text) throws NullPointerException, IllegalArgumentException, IllegalStateException {
+		this.ensureLoaded();
+
+		this.lock.writeLock().lock();
+		try {
+			if (text == null) {
+				throw new NullPointerException("The notes cannot be null.");
+			}
+
+			Meeting meeting = this.getMeeting(id);
+
+			if (meeting == null) {
+				throw new IllegalArgumentException("A meeting with the ID of '" + id + "' does not exist.");
+			}
+
+			long now = this.clock.millis();
+
+			if (MeetingImpl.timeOf(meeting) > now) {
+				throw new IllegalStateException("The selected meeting exists but is a future meeting. An ID of a past meeting must be supplied.");
+			}
+
+			this.meetings.remove(meeting.getId());
+			this.unindexMeeting(meeting);
+
+			Meeting pastMeeting = new PastMeetingImpl(meeting.getId(), MeetingImpl.timeOf(meeting), MeetingImpl.contactIdsOf(meeting), this.contactResolver, this.getMeetingNotes(), text);
+			this.meetings.put(pastMeeting.getId(), pastMeeting);
+			this.indexMeeting(pastMeeting);
+			this.dirtySet.meetingChanged(pastMeeting.getId());
+			this.changed();
+
+			return (PastMeeting) pastMeeting;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public int addNewContact(String name, String notes) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
+
+		this.lock.writeLock().lock();
+		try {
+			if (name == null) {
+				throw new NullPointerException("Name cannot be null.");
+			}
+
+			if (notes == null) {
+				throw new NullPointerException("Notes cannot be null.");
+			}
+
+			if (name.isEmpty()) {
+				throw new IllegalArgumentException("Name cannot be an empty string.");
+			}
+
+			if (notes.isEmpty()) {
+				throw new IllegalArgumentException("Notes cannot be an empty string.");
+			}
+
+			int id = this.idAllocator.nextContactId();
+
+			Contact contact = new ContactImpl(id, name, notes, this.compressedNotes);
+			this.contacts.put(id, contact);
+			this.contactNameIndex.add(contact);
+			this.contactNotesIndex.put(id, notes);
+			this.dirtySet.contactChanged(id);
+			this.changed();
+
+			return id;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public int[] addNewContacts(List<String> names, List<String> notes) throws NullPointerException, IllegalArgumentException {
+		this.ensureLoaded();
+
+		if (names == null || notes == null) {
+			throw new NullPointerException("The lists of names and notes cannot be null.");
+		}
+
+		if (names.size() != notes.size()) {
+			throw new IllegalArgumentException("There must be one note for each name.");
+		}
+
+		// Copy the lists so they cannot change between checking and adding
+		String[] nameArray  = names.toArray(new String[names.size()]);
+		String[] notesArray = notes.toArray(new String[notes.size()]);
+		int count = nameArray.length;
+
+		for (int i = 0; i < count; i++) {
+			if (nameArray[i] == null || notesArray[i] == null) {
+				throw new NullPointerException("Name and notes cannot be null (contact " + i + " of the batch).");
+			}
+
+			if (nameArray[i].isEmpty() || notesArray[i].isEmpty()) {
+				throw new IllegalArgumentException("Name and notes cannot be empty strings (contact " + i + " of the batch).");
+			}
+		}
+
+		int[] ids = new int[count];
+		if (count == 0) {
+			return ids;
+		}
+
+		this.lock.writeLock().lock();
+		try {
+			int first = this.idAllocator.reserveContactIds(count);
+
+			for (int i = 0; i < count; i++) {
+				int id = first + i;
+
+				Contact contact = new ContactImpl(id, nameArray[i], notesArray[i], this.compressedNotes);
+				this.contacts.put(id, contact);
+				this.contactNameIndex.add(contact);
+				this.contactNotesIndex.put(id, notesArray[i]);
+				this.dirtySet.contactChanged(id);
+
+				ids[i] = id;
+			}
+
+			this.changed();
+
+			return ids;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public int[] addFutureMeetings(List<Set<Contact>> contacts, List<Calendar> dates) throws NullPointerException, IllegalArgumentException {
+		return this.addMeetings(contacts, dates, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public int[] addNewPastMeetings(List<Set<Contact>> contacts, List<Calendar> dates, List<String> text) throws NullPointerException, IllegalArgumentException {
+
+		if (text == null) {
+			throw new NullPointerException("The list of notes cannot be null.");
+		}
+
+		return this.addMeetings(contacts, dates, text);
+	}
+
+	/**
+	 * Checks a whole batch of meetings and then adds them all under one
+	 * hold of the write lock, with one block of IDs. Past meetings are
+	 * added when notes are given, future meetings otherwise.
+	 *
+	 * @param  List<Set<Contact>> the participants of each meeting
+	 * @param  List<Calendar> the date of each meeting
+	 * @param  List<String> the notes of each past meeting, or null for future meetings
+	 * @return int[] the IDs of the new meetings
+	 * @author David Jones
+	 */
+	private int[] addMeetings(List<Set<Contact>> contacts, List<Calendar> dates, List<String> text) {
+		this.ensureLoaded();
+
+		if (contacts == null || dates == null) {
+			throw new NullPointerException("The lists of contacts and dates cannot be null.");
+		}
+
+		if (contacts.size() != dates.size() || (text != null && text.size() != contacts.size())) {
+			throw new IllegalArgumentException("The lists of contacts, dates and notes must be the same length.");
+		}
+
+		int count = contacts.size();
+		int[] ids = new int[count];
+		if (count == 0) {
+			return ids;
+		}
+
+		// Copy the batch so it cannot change between checking and adding
+		List<Set<Contact>> participants = new ArrayList<Set<Contact>>(contacts);
+		List<Calendar> meetingDates     = new ArrayList<Calendar>(dates);
+		List<String> notes              = text == null ? null : new ArrayList<String>(text);
+
+		this.lock.writeLock().lock();
+		try {
+			long now = this.clock.millis();
+
+			for (int i = 0; i < count; i++) {
+				Set<Contact> meetingContacts = participants.get(i);
+				Calendar date = meetingDates.get(i);
+
+				if (meetingContacts == null || date == null || (notes != null && notes.get(i) == null)) {
+					throw new NullPointerException("Contacts, date and notes cannot be null (meeting " + i + " of the batch).");
+				}
+
+				if (notes == null && date.getTimeInMillis() <= now) {
+					throw new IllegalArgumentException("Date must be a date in the future (meeting " + i + " of the batch).");
+				}
+
+				if (meetingContacts.isEmpty()) {
+					throw new IllegalArgumentException("The set of contacts must have at least one contact (meeting " + i + " of the batch).");
+				}
+
+				if (!this.checkContactsExist(meetingContacts)) {
+					throw new IllegalArgumentException("All contacts must exist in the contact manager (meeting " + i + " of the batch).");
+				}
+			}
+
+			int first = this.idAllocator.reserveMeetingIds(count);
+
+			for (int i = 0; i < count; i++) {
+				int id = first + i;
+
+				Meeting meeting;
+				if (notes == null) {
+					meeting = new FutureMeetingImpl(id, meetingDates.get(i).getTimeInMillis(), MeetingImpl.idsOf(participants.get(i)), this.contactResolver);
+				} else {
+					meeting = new PastMeetingImpl(id, meetingDates.get(i).getTimeInMillis(), MeetingImpl.idsOf(participants.get(i)), this.contactResolver, this.getMeetingNotes(), notes.get(i));
+				}
+
+				this.meetings.put(id, meeting);
+				this.indexMeeting(meeting);
+				this.dirtySet.meetingChanged(id);
+
+				ids[i] = id;
+			}
+
+			this.changed();
+
+			return ids;
+		} finally {
+			this.lock.writeLock().unlock();
 		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Set<Contact> getContacts(String name) throws NullPointerException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			if (name == null) {
+				throw new NullPointerException("The contact name cannot be null.");
+			}
+
+			if (name.equals("")) {
+				return new HashSet<Contact>(this.contacts.values());
+			}
+
+			return this.lookupContacts(this.contactNameIndex.getIds(name), new HashSet<Contact>());
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Set<Contact> getContactsIgnoreCase(String name) throws NullPointerException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			if (name == null) {
+				throw new NullPointerException("The contact name cannot be null.");
+			}
+
+			return this.lookupContacts(this.contactNameIndex.getIdsIgnoreCase(name), new HashSet<Contact>());
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Set<Contact> getContactsByPrefix(String prefix) throws NullPointerException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			if (prefix == null) {
+				throw new NullPointerException("The prefix cannot be null.");
+			}
+
+			return this.lookupContacts(this.contactNameIndex.getIdsByPrefix(prefix), new LinkedHashSet<Contact>());
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public List<Contact> searchContactNotes(String query) throws NullPointerException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			if (query == null) {
+				throw new NullPointerException("The query cannot be null.");
+			}
+
+			List<Integer> keys = this.contactNotesIndex.search(query);
+			List<Contact> contacts = new ArrayList<Contact>(keys.size());
+
+			Iterator<Integer> iterator = keys.iterator();
+			while (iterator.hasNext()) {
+				contacts.add(this.contacts.get(iterator.next()));
+			}
+
+			return contacts;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public List<PastMeeting> searchMeetingNotes(String query) throws NullPointerException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			if (query == null) {
+				throw new NullPointerException("The query cannot be null.");
+			}
+
+			List<Integer> keys = this.meetingIndexes.getNotesIndex().search(query);
+			List<PastMeeting> meetings = new ArrayList<PastMeeting>(keys.size());
+
+			Iterator<Integer> iterator = keys.iterator();
+			while (iterator.hasNext()) {
+				meetings.add((PastMeeting) this.meetings.get(iterator.next()));
+			}
+
+			return meetings;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Set<Contact> getContacts(int... ids) throws NullPointerException {
+
+		this.lock.readLock().lock();
+		try {
+			if (ids == null) {
+				throw new NullPointerException("The list of ids cannot be null.");
+			}
+
+			Set<Contact> contacts = new HashSet<Contact>();
+			int idsLength = ids.length;
+
+			for (int i = 0; i < idsLength; i++) {
+				Contact contact = this.findContact(ids[i]);
+				if (contact != null) {
+					contacts.add(contact);
+				}
+			}
+
+			return contacts;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns at most the given number of meetings scheduled from now on,
+	 * in chronological order.
+	 *
+	 * @param  int the maximum number of meetings to return
+	 * @return List<Meeting>
+	 * @author David Jones
+	 */
+	public List<Meeting> getNextMeetings(int limit) throws IllegalArgumentException {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			long now = this.clock.millis();
+			List<Integer> keys = this.meetingIndexes.getDateIndex().next(now, limit);
+
+			return this.lookupMeetings(keys);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns every meeting the filter accepts, in chronological order with
+	 * meetings at the same time ordered by ID.
+	 *
+	 * This is for queries no index can answer, so every meeting is tested.
+	 * Once there are at least getParallelScanThreshold meetings the filter
+	 * runs in parallel on the common fork-join pool. The filter must be
+	 * safe to call from several threads at once and must not call back into
+	 * the contact manager, as the scan holds the read lock until it ends.
+	 *
+	 * @param  Predicate<? super Meeting> the test a meeting has to pass
+	 * @return List<Meeting>
+	 * @throws NullPointerException if the filter is null
+	 * @author David Jones
+	 */
+	public List<Meeting> findMeetings(Predicate<? super Meeting> filter) throws NullPointerException {
+
+		if (filter == null) {
+			throw new NullPointerException("The filter cannot be null.");
+		}
+
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			// The date index is already in order, so the matches need no sorting
+			List<Integer> keys = this.meetingIndexes.getDateIndex().all();
+
+			Stream<Integer> ids = keys.stream();
+			if (keys.size() >= this.parallelScanThreshold) {
+				ids = ids.parallel();
+			}
+
+			final RecordMap<Meeting> meetings = this.meetings;
+
+			return ids.map(new Function<Integer, Meeting>() {
+				@Override
+				public Meeting apply(Integer id) {
+					return meetings.get(id.intValue());
+				}
+			}).filter(filter).collect(Collectors.<Meeting>toList());
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds the meeting to the contact, date, day and notes indexes.
+	 *
+	 * @param  Meeting the meeting that has been put into the meetings map
+	 * @return void
+	 * @author David Jones
+	 */
+	private void indexMeeting(Meeting meeting) {
+		this.meetingIndexes.add(meeting);
+	}
+
+	/**
+	 * Removes the meeting from the contact, date, day and notes indexes.
+	 *
+	 * @param  Meeting the meeting that has been taken out of the meetings map
+	 * @return void
+	 * @author David Jones
+	 */
+	private void unindexMeeting(Meeting meeting) {
+		this.meetingIndexes.remove(meeting);
+	}
+
+	/**
+	 * Turns a list of meeting IDs from one of the indexes into the meetings
+	 * themselves, keeping the order of the IDs.
+	 *
+	 * @param  List<Integer> the meeting IDs
+	 * @return List<Meeting>
+	 * @author David Jones
+	 */
+	private List<Meeting> lookupMeetings(List<Integer> keys) {
+
+		List<Meeting> meetings = new ArrayList<Meeting>(keys.size());
+
+		Iterator<Integer> iterator = keys.iterator();
+		while (iterator.hasNext()) {
+			meetings.add(this.meetings.get(iterator.next()));
+		}
+
+		return meetings;
+	}
+
+	/**
+	 * Turns meeting IDs from one of the indexes into the meetings of the
+	 * given type, keeping the order of the IDs. IDs are read from the
+	 * iterator only until the limit is reached.
+	 *
+	 * @param  Iterator<Integer> the meeting IDs
+	 * @param  Class<T> the type of meeting to keep
+	 * @param  int the maximum number of meetings to return
+	 * @return List<T>
+	 * @author David Jones
+	 */
+	private <T extends Meeting> List<T> lookupMeetings(Iterator<Integer> keys, Class<T> type, int limit) {
+
+		List<T> meetings = new ArrayList<T>(Math.min(limit, 64));
 
-		Set<Contact> contacts = new HashSet<Contact>();
-		int idsLength = ids.length;
+		while (meetings.size() < limit && keys.hasNext()) {
+			Meeting meeting = this.meetings.get(keys.next());
 
-		for (int i = 0; i < idsLength; i++) {
-			if (this.contacts.containsKey(ids[i])) {
-				contacts.add(this.contacts.get(ids[i]));
+			if (type.isInstance(meeting)) {
+				meetings.add(type.cast(meeting));
 			}
 		}
 
+		return meetings;
+	}
+
+	/**
+	 * Returns a page of the contact's meetings after the cursor. The caller
+	 * must hold the read lock.
+	 *
+	 * @param  int the contact ID
+	 * @param  MeetingCursor the position the meetings must be after, no earlier than now
+	 * @param  int the maximum number of meetings to return
+	 * @return List<Meeting>
+	 * @author David Jones
+	 */
+	private List<Meeting> futureMeetingPage(int contactId, MeetingCursor cursor, int limit) {
+		return this.lookupMeetings(this.meetingIndexes.getContactIndex().getMeetingIdsAfter(contactId, cursor), Meeting.class, limit);
+	}
+
+	/**
+	 * Returns a page of the meetings on the day after the cursor. The caller
+	 * must hold the read lock.
+	 *
+	 * @param  long the epoch day
+	 * @param  MeetingCursor the position the meetings must be after
+	 * @param  int the maximum number of meetings to return
+	 * @return List<Meeting>
+	 * @author David Jones
+	 */
+	private List<Meeting> meetingOnPage(long epochDay, MeetingCursor cursor, int limit) {
+		return this.lookupMeetings(this.meetingIndexes.getDayIndex().after(epochDay, cursor), Meeting.class, limit);
+	}
+
+	/**
+	 * Returns a page of the contact's past meetings after the cursor. The
+	 * caller must hold the read lock.
+	 *
+	 * @param  int the contact ID
+	 * @param  MeetingCursor the position the meetings must be after
+	 * @param  int the maximum number of meetings to return
+	 * @return List<PastMeeting>
+	 * @author David Jones
+	 */
+	private List<PastMeeting> pastMeetingPage(int contactId, MeetingCursor cursor, int limit) {
+		return this.lookupMeetings(this.meetingIndexes.getContactIndex().getMeetingIdsAfter(contactId, cursor), PastMeeting.class, limit);
+	}
+
+	/**
+	 * Checks the contact a page or stream of meetings is asked for. The
+	 * caller must hold the read lock.
+	 *
+	 * @param  Contact the contact
+	 * @return void
+	 * @throws NullPointerException if the contact is null
+	 * @throws IllegalArgumentException if the contact does not exist
+	 * @author David Jones
+	 */
+	private void checkPageContact(Contact contact) {
+
+		if (contact == null) {
+			throw new NullPointerException("The contact cannot be null.");
+		}
+
+		if (!this.checkContactExists(contact)) {
+			throw new IllegalArgumentException("The contact does not exist. You can add a new contact using the addNewContact method.");
+		}
+	}
+
+	/**
+	 * Checks the cursor and limit a page of meetings is asked for with.
+	 *
+	 * @param  MeetingCursor the position the meetings must be after
+	 * @param  int the maximum number of meetings to return
+	 * @return void
+	 * @throws NullPointerException if the cursor is null
+	 * @throws IllegalArgumentException if the limit is negative
+	 * @author David Jones
+	 */
+	private static void checkPage(MeetingCursor cursor, int limit) {
+
+		if (cursor == null) {
+			throw new NullPointerException("The cursor cannot be null.");
+		}
+
+		if (limit < 0) {
+			throw new IllegalArgumentException("The limit cannot be negative.");
+		}
+	}
+
+	/**
+	 * Adds the contacts with the IDs from the name index to the set given,
+	 * keeping the order of the IDs.
+	 *
+	 * @param  List<Integer> the contact IDs
+	 * @param  Set<Contact> the set to add the contacts to
+	 * @return Set<Contact>
+	 * @author David Jones
+	 */
+	private Set<Contact> lookupContacts(List<Integer> keys, Set<Contact> contacts) {
+
+		Iterator<Integer> iterator = keys.iterator();
+		while (iterator.hasNext()) {
+			contacts.add(this.contacts.get(iterator.next()));
+		}
+
 		return contacts;
 	}
 
@@ -491,72 +1612,505 @@ public class ContactManagerImpl implements ContactManager {
 	}
 
 	/**
-	 * Checks that the cached file exists and returns a boolean outcome.
+	 * Looks a meeting up by ID. While a MappedStore has not been fully
+	 * loaded, meetings that are not in the map yet are read from it.
+	 * The caller must hold the read lock.
 	 *
-	 * @return boolean
+	 * @param  int the meeting ID
+	 * @return Meeting or null if there is no such meeting
+	 * @author David Jones
+	 */
+	private Meeting findMeeting(int id) {
+		Meeting meeting = this.meetings.get(id);
+		MappedStore deferred = this.deferredStore;
+
+		if (meeting == null && deferred != null) {
+			meeting = deferred.getMeeting(id);
+		}
+
+		return meeting;
+	}
+
+	/**
+	 * Looks a contact up by ID. While a MappedStore has not been fully
+	 * loaded, contacts that are not in the map yet are read from it.
+	 * The caller must hold the read lock.
+	 *
+	 * @param  int the contact ID
+	 * @return Contact or null if there is no such contact
+	 * @author David Jones
+	 */
+	private Contact findContact(int id) {
+		Contact contact = this.contacts.get(id);
+		MappedStore deferred = this.deferredStore;
+
+		if (contact == null && deferred != null) {
+			contact = deferred.getContact(id);
+		}
+
+		return contact;
+	}
+
+	/**
+	 * Called by a MappedStore while loading. Records are then read from the
+	 * store one at a time by ID until something needs all of them, such as
+	 * a query that goes through an index or any change.
+	 *
+	 * @param  MappedStore the store holding the records
+	 * @return void
+	 * @author David Jones
+	 */
+	void deferLoading(MappedStore store) {
+		this.deferredStore = store;
+	}
+
+	/**
+	 * Puts a contact read by a store in place of any loaded with the same
+	 * ID, and indexes it. A store that replays changes over the records it
+	 * has just loaded, as a JournalStore does, calls this from its load
+	 * rather than copying the maps.
+	 *
+	 * @param  Contact the contact
+	 * @return void
+	 * @author David Jones
+	 */
+	void replayContact(Contact contact) {
+		this.ensureLoaded();
+
+		this.lock.writeLock().lock();
+		try {
+			Contact previous = this.contacts.put(contact.getId(), contact);
+			if (previous != null) {
+				this.contactNameIndex.remove(previous);
+				this.contactNotesIndex.remove(previous.getId(), previous.getNotes());
+			}
+
+			this.contactNameIndex.add(contact);
+			this.contactNotesIndex.put(contact.getId(), contact.getNotes());
+			this.idAllocator.advanceContactIdTo(contact.getId());
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Puts a meeting read by a store in place of any loaded with the same
+	 * ID, and indexes it, like replayContact.
+	 *
+	 * @param  Meeting the meeting
+	 * @return void
+	 * @author David Jones
+	 */
+	void replayMeeting(Meeting meeting) {
+		this.ensureLoaded();
+
+		this.lock.writeLock().lock();
+		try {
+			Meeting previous = this.meetings.put(meeting.getId(), meeting);
+			if (previous != null) {
+				this.unindexMeeting(previous);
+			}
+
+			this.indexMeeting(meeting);
+			this.idAllocator.advanceMeetingIdTo(meeting.getId());
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads every record out of a deferred MappedStore and builds the
+	 * indexes. Does nothing once everything is loaded. This must be called
+	 * before taking either lock, as it takes the write lock itself.
+	 *
+	 * @return void
 	 * @author David Jones
 	 */
-	private boolean cacheFileExists() {
-		File cacheFile = new File(this.getFilename());
-		return cacheFile.exists();
+	private void ensureLoaded() {
+		if (this.deferredStore == null) {
+			return;
+		}
+
+		this.lock.writeLock().lock();
+		try {
+			MappedStore deferred = this.deferredStore;
+			if (deferred == null) {
+				return;
+			}
+
+			IntRecordMap<Contact> contacts = new IntRecordMap<Contact>();
+			RecordMap<Meeting> meetings = this.newMeetingMap(0);
+			deferred.loadAll(contacts, meetings);
+
+			this.replaceContacts(contacts);
+			this.replaceMeetings(meetings);
+			this.deferredStore = null;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
 	}
 
 	/**
-	 * Returns the data from the cached file and assigns it to the relevant properties.
+	 * Returns the data from the store and assigns it to the relevant properties.
 	 * This method will overwrite anything that is already saved. This should only be
 	 * run in the constructor.
 	 *
+	 * Starting empty when the saved data cannot be read would lose it on the
+	 * next flush, so the failure is passed on instead.
+	 *
 	 * @return void
+	 * @throws UncheckedIOException if the saved data cannot be read
 	 * @author David Jones
 	 */
 	private void setCachedData() {
-		if (this.cacheFileExists()) {
+		try {
+			this.store.load(this);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("The saved contacts could not be loaded.", ex);
+		}
+	}
 
-			try {
+	/**
+	 * {@inheritDoc}
+	 *
+	 * While background flushing is on, this only asks for a write and
+	 * returns. Any failure of an earlier background write is thrown here.
+	 *
+	 * @author David Jones
+	 */
+	@Override
+	public void flush() {
+		this.ensureLoaded();
+
+		this.lock.readLock().lock();
+		try {
+			if (this.backgroundFlusher != null) {
+				this.backgroundFlusher.throwLastFailure();
+				this.backgroundFlusher.request();
+				return;
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+
+		this.writeToStore();
+	}
+
+	/**
+	 * Saves everything like flush, returning a future that completes once
+	 * the data is on disk. Without background flushing the write happens
+	 * before this returns.
+	 *
+	 * @return CompletableFuture<Void>
+	 * @author David Jones
+	 */
+	public CompletableFuture<Void> flushAsync() {
+		this.ensureLoaded();
 
-				FileInputStream file    = new FileInputStream(this.FILENAME);
-				ObjectInputStream input = new ObjectInputStream(file);
+		this.lock.readLock().lock();
+		try {
+			if (this.backgroundFlusher != null) {
+				return this.backgroundFlusher.request();
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
 
-				LinkedHashMap<Integer, Meeting> meetings = (LinkedHashMap<Integer, Meeting>) input.readObject();
-				LinkedHashMap<Integer, Contact> contacts = (LinkedHashMap<Integer, Contact>) input.readObject();
+		CompletableFuture<Void> written = new CompletableFuture<Void>();
+		try {
+			this.writeToStore();
+			written.complete(null);
+		} catch (RuntimeException ex) {
+			written.completeExceptionally(ex);
+		}
 
-				this.setMeetings(meetings);
-				this.setContacts(contacts);
+		return written;
+	}
 
-				file.close();
-				input.close();
+	/**
+	 * Moves writes onto a background thread. Calls to flush are coalesced
+	 * into as few writes as possible, and every change is written within
+	 * the given number of milliseconds even if flush is not called.
+	 *
+	 * The thread does not keep the JVM running, so call
+	 * stopBackgroundFlush before exiting.
+	 *
+	 * @param  long the longest a change may wait before being written, in milliseconds
+	 * @return void
+	 * @throws IllegalStateException if background flushing is already on
+	 * @author David Jones
+	 */
+	public void startBackgroundFlush(long maxStalenessMillis) {
+		this.ensureLoaded();
 
-			} catch (Exception ex) {
-				ex.printStackTrace();
+		this.lock.writeLock().lock();
+		try {
+			if (this.backgroundFlusher != null) {
+				throw new IllegalStateException("Background flushing is already on.");
 			}
 
+			this.backgroundFlusher = new BackgroundFlusher(new Runnable() {
+				@Override
+				public void run() {
+					writeToStore();
+				}
+			}, maxStalenessMillis);
+		} finally {
+			this.lock.writeLock().unlock();
 		}
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Writes anything outstanding and goes back to writing on the thread
+	 * that calls flush. Does nothing if background flushing is off.
+	 *
+	 * @return void
+	 * @throws UncheckedIOException if the last write fails
+	 * @author David Jones
+	 */
+	public void stopBackgroundFlush() {
+		BackgroundFlusher flusher;
+
+		this.lock.writeLock().lock();
+		try {
+			flusher = this.backgroundFlusher;
+			this.backgroundFlusher = null;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+
+		if (flusher == null) {
+			return;
+		}
+
+		try {
+			flusher.close();
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+
+			throw ex;
+		}
+	}
+
+	/**
+	 * Stops background flushing as stopBackgroundFlush does and deletes
+	 * the files the old meetings were archived in. Changes not flushed are
+	 * not written. The manager cannot be used afterwards.
+	 *
+	 * @return void
+	 * @throws UncheckedIOException if the last background write fails
 	 * @author David Jones
 	 */
 	@Override
-	public void flush() {
-		
+	public void close() {
 		try {
-			// Delete the file to make sure we don't append to old data
-			if (this.cacheFileExists()) {
-				File cacheFile = new File(this.FILENAME);
-				cacheFile.delete();
+			this.stopBackgroundFlush();
+		} finally {
+			this.lock.writeLock().lock();
+			try {
+				List<TieredMeetingMap> open;
+				synchronized (this.openMeetingMaps) {
+					open = new ArrayList<TieredMeetingMap>(this.openMeetingMaps);
+					this.openMeetingMaps.clear();
+				}
+
+				for (int i = 0; i < open.size(); i++) {
+					open.get(i).close();
+				}
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Writes every contact and then every meeting to the writer, in ID
+	 * order. The records are copied out a range of IDs at a time, with the
+	 * read lock held only while each range is copied, so changes can carry
+	 * on while the copies are written. A record changed during the export
+	 * is written as it was when its range was copied, and one added during
+	 * it may or may not be written.
+	 *
+	 * @param  RecordWriter where to write the records
+	 * @return int the number of records written
+	 * @throws IOException if the records cannot be written
+	 * @author David Jones
+	 */
+	public int exportRecords(RecordWriter writer) throws IOException {
+		this.ensureLoaded();
+
+		if (writer == null) {
+			throw new NullPointerException("The writer cannot be null.");
+		}
+
+		List<ExchangeRecord> chunk = new ArrayList<ExchangeRecord>(EXPORT_CHUNK_SIZE);
+		int written = 0;
+
+		for (int kind = 0; kind < 2; kind++) {
+			boolean contactChunks = kind == 0;
+
+			for (int from = 1; ; from += EXPORT_CHUNK_SIZE) {
+				chunk.clear();
+
+				this.lock.readLock().lock();
+				try {
+					int last = contactChunks ? this.idAllocator.getLastContactId() : this.idAllocator.getLastMeetingId();
+					if (from > last) {
+						break;
+					}
+
+					int to = (int) Math.min((long) from + EXPORT_CHUNK_SIZE - 1, last);
+					for (int id = from; id <= to; id++) {
+						if (contactChunks) {
+							Contact contact = this.contacts.get(id);
+							if (contact != null) {
+								chunk.add(ExchangeRecord.of(contact));
+							}
+						} else {
+							Meeting meeting = this.meetings.get(id);
+							if (meeting != null) {
+								chunk.add(ExchangeRecord.of(meeting));
+							}
+						}
+					}
+				} finally {
+					this.lock.readLock().unlock();
+				}
+
+				for (int i = 0; i < chunk.size(); i++) {
+					writer.write(chunk.get(i));
+				}
+
+				written += chunk.size();
+			}
+		}
+
+		writer.flush();
+		return written;
+	}
+
+	/**
+	 * Tells the background flusher, if there is one, that something has
+	 * changed. The caller must hold the write lock.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	private void changed() {
+		if (this.backgroundFlusher != null) {
+			this.backgroundFlusher.changed();
+		}
+	}
+
+	/**
+	 * Saves everything to the store on the calling thread.
+	 *
+	 * Only the copying into a snapshot is done under the read lock. The
+	 * store writes the snapshot once the lock is let go, so changes can
+	 * carry on while it serializes and forces the files to disk. If the
+	 * write fails, the records it was to write are marked changed again.
+	 *
+	 * @return void
+	 * @throws UncheckedIOException if the data cannot be written
+	 * @author David Jones
+	 */
+	private void writeToStore() {
+		this.ensureLoaded();
+
+		// Only one flush may write the files at a time
+		synchronized (this.flushLock) {
+			StoreSnapshot snapshot;
+
+			this.lock.readLock().lock();
+			try {
+				DirtySet changes = this.dirtySet.takeChanges();
+				snapshot = this.snapshot(changes, this.store.recordsNeeded(changes));
+			} finally {
+				this.lock.readLock().unlock();
+			}
+
+			try {
+				this.store.flush(snapshot);
+
+			} catch (IOException ex) {
+				this.restoreChanges(snapshot.getDirtySet());
+				throw new UncheckedIOException("The contacts could not be saved.", ex);
+			} catch (RuntimeException ex) {
+				this.restoreChanges(snapshot.getDirtySet());
+				throw ex;
+			} finally {
+				snapshot.close();
 			}
+		}
+	}
+
+	/**
+	 * Copies every record and takes the changes out of the dirty set. The
+	 * caller must hold the read lock and the flush lock, which between them
+	 * keep anything else from touching the dirty set.
+	 *
+	 * @return StoreSnapshot
+	 * @author David Jones
+	 */
+	StoreSnapshot snapshot() {
+		return this.snapshot(this.dirtySet.takeChanges(), DirtySet.everything());
+	}
+
+	/**
+	 * Copies the records a store asked for into a snapshot carrying the
+	 * changes. Only when every record is asked for are the maps copied
+	 * whole; otherwise just the records with the IDs asked for are, so an
+	 * incremental flush costs what has changed rather than what is held.
+	 *
+	 * @param  DirtySet the changes taken out of the dirty set
+	 * @param  DirtySet the records the store will read
+	 * @return StoreSnapshot
+	 * @author David Jones
+	 */
+	private StoreSnapshot snapshot(DirtySet changes, DirtySet needed) {
+		IdAllocator lastIds = new IdAllocator(this.idAllocator.getLastContactId(), this.idAllocator.getLastMeetingId());
+
+		if (needed.isAllChanged()) {
+			return new StoreSnapshot(this.contacts.snapshot(), this.meetings.snapshot(), changes, lastIds);
+		}
 
-			FileOutputStream file     = new FileOutputStream(this.getFilename());
-			ObjectOutputStream output = new ObjectOutputStream(file);
+		return new StoreSnapshot(copyOf(this.contacts, needed.getContactIds()), copyOf(this.meetings, needed.getMeetingIds()), changes, lastIds);
+	}
+
+	/**
+	 * Copies the records with the given IDs, leaving out IDs with none.
+	 */
+	private static <V> RecordMap<V> copyOf(RecordMap<V> records, Set<Integer> ids) {
+		IntRecordMap<V> copy = new IntRecordMap<V>();
+
+		Iterator<Integer> iterator = ids.iterator();
+		while (iterator.hasNext()) {
+			int id = iterator.next();
+			V record = records.get(id);
+
+			if (record != null) {
+				copy.put(id, record);
+			}
+		}
 
-			output.writeObject(this.getMeetings());
-			output.writeObject(this.getContacts());
-			output.close();
-			file.close();
+		return copy;
+	}
 
-		} catch (Exception ex) {
-			ex.printStackTrace();
+	/**
+	 * Marks the changes a failed write was to save as changed again.
+	 *
+	 * @param  DirtySet the changes
+	 * @return void
+	 * @author David Jones
+	 */
+	private void restoreChanges(DirtySet changes) {
+		this.lock.writeLock().lock();
+		try {
+			this.dirtySet.addAll(changes);
+		} finally {
+			this.lock.writeLock().unlock();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+import java.io.IOException;
+
+/**
+ * Saves and loads the data held by a ContactManagerImpl.
+ *
+ * The snapshot a store is flushed with carries a DirtySet of the records
+ * changed since the last flush. That is the only place a store learns
+ * what has changed, so one that saves just the changes works from it
+ * alone. Such a store also says which records it will read, and the
+ * snapshot holds only those; stores that always save everything ask for
+ * all of them.
+ */
+public interface ContactManagerStore {
+
+	/**
+	* Loads the saved data into the contact manager, replacing anything it
+	* holds. Nothing is loaded if no data has been saved yet.
+	*
+	* @param contactManager the contact manager to load into
+	* @throws IOException if the saved data cannot be read
+	*/
+	void load(ContactManagerImpl contactManager) throws IOException;
+
+	/**
+	* Saves the data in a snapshot of the contact manager.
+	*
+	* This is called once the contact manager has let go of its lock, so
+	* changes may carry on meanwhile, but only one flush runs at a time.
+	*
+	* @param snapshot the data to save
+	* @throws IOException if the data cannot be written
+	*/
+	void flush(StoreSnapshot snapshot) throws IOException;
+
+	/**
+	* Says which records the snapshot for the next flush has to hold, given
+	* the changes it will carry. The contact manager copies those records
+	* while it holds its lock, so asking for fewer makes the copy cheaper.
+	* A set that reports everything changed asks for every record.
+	*
+	* This is called just before flush, and nothing else is flushed in
+	* between.
+	*
+	* @param changes the records changed since the last flush
+	* @return the records flush will read from the snapshot
+	*/
+	DirtySet recordsNeeded(DirtySet changes);
+}
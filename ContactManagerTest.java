@@ -3,6 +3,10 @@ import org.junit.*;
 
 import java.util.*;
 import java.io.*;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class ContactManagerTest {
 
@@ -15,6 +19,13 @@ public class ContactManagerTest {
  
 	@Before
 	public void setUp() {
+		// Make sure the cache file is deleted before the test begins
+		File cacheFile = new File(this.FILENAME);
+		if (cacheFile.exists()) {
+			cacheFile.delete();
+		}
+		new File(this.FILENAME + ".prev").delete();
+
 		Calendar futureDate = Calendar.getInstance();
 		futureDate.add(Calendar.YEAR, 1);
 		this.aFutureDate = futureDate;
@@ -32,13 +43,6 @@ public class ContactManagerTest {
 		Set<Contact> contacts  = contactManager.getContacts(contactId);
 		Object[] contactsArray = contacts.toArray();
 		this.contact = (Contact) contactsArray[0];
-
-		// Make sure the cache file is deleted before the test begins
-		File cacheFile = new File(this.FILENAME);
-		if (cacheFile.exists()) {
-			cacheFile.delete();
-		}
-
 	}
 
 	@Test(expected=NullPointerException.class)
@@ -132,6 +136,12 @@ public class ContactManagerTest {
 		this.contactManager.addNewPastMeeting(contacts, this.aPastDate, "My Notes");
 	}
 
+	@Test(expected=IllegalArgumentException.class)
+	public void testAddNexPastMeetingWithNonExistingContact() {
+		this.contacts.add(new ContactImpl(999, "Unknown", "This contact doesn't exist."));
+		this.contactManager.addNewPastMeeting(this.contacts, this.aPastDate, "My Notes");
+	}
+
 	@Test
 	public void testAddNexPastMeetingWithValidData() {
 		this.contactManager.addNewPastMeeting(this.contacts, this.aPastDate, "Hello Dave");
@@ -247,11 +257,16 @@ public class ContactManagerTest {
 		GregorianCalendar second = new GregorianCalendar(2017, 01, 02);
 		GregorianCalendar third  = new GregorianCalendar(2017, 01, 03);
 
-		this.contactManager.addFutureMeeting(this.contacts, third);
-		this.contactManager.addFutureMeeting(this.contacts, first);
-		this.contactManager.addFutureMeeting(this.contacts, second);
+		// Fix the clock before the dates above so they stay in the future
+		Clock clock = Clock.fixed(new GregorianCalendar(2016, 01, 01).toInstant(), ZoneId.systemDefault());
+		ContactManager contactManager = new ContactManagerImpl(clock);
+		contactManager.addNewContact("David Jones", "Some notes");
 
-		List<Meeting> meetings = this.contactManager.getFutureMeetingList(this.contact);
+		contactManager.addFutureMeeting(this.contacts, third);
+		contactManager.addFutureMeeting(this.contacts, first);
+		contactManager.addFutureMeeting(this.contacts, second);
+
+		List<Meeting> meetings = contactManager.getFutureMeetingList(this.contact);
 
 		Meeting firstMeeting = meetings.get(0);
 		Meeting secondMeeting = meetings.get(1);
@@ -274,6 +289,45 @@ public class ContactManagerTest {
 		assertTrue(success);
 	}
 
+	@Test
+	public void testMeetingDatesAreInTheZoneOfTheClock() {
+		TimeZone zone = TimeZone.getTimeZone("Pacific/Kiritimati");
+		Calendar date = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		date.clear();
+		date.set(2017, Calendar.FEBRUARY, 1, 12, 0);
+
+		Clock clock = Clock.fixed(date.toInstant().minusSeconds(86400), zone.toZoneId());
+		ContactManagerImpl contactManager = new ContactManagerImpl(clock);
+		contactManager.addNewContact("David Jones", "Some notes");
+		int id = contactManager.addFutureMeeting(this.contacts, date);
+
+		Calendar shown = contactManager.getMeeting(id).getDate();
+		assertEquals(zone, shown.getTimeZone());
+		assertEquals("Noon in UTC is the next day in the clock's zone.", 2, shown.get(Calendar.DAY_OF_MONTH));
+		assertEquals("The day shown should be the day the meeting is listed on.", id, contactManager.getMeetingListOn(shown).get(0).getId());
+	}
+
+	@Test
+	public void testMeetingBecomesPastWhenTheClockPassesIt() {
+		Calendar date = Calendar.getInstance();
+		date.add(Calendar.DAY_OF_MONTH, 1);
+
+		Clock before = Clock.fixed(date.toInstant().minusSeconds(60), ZoneId.systemDefault());
+		Clock after  = Clock.fixed(date.toInstant().plusSeconds(60), ZoneId.systemDefault());
+
+		ContactManagerImpl contactManager = new ContactManagerImpl(before);
+		contactManager.addNewContact("David Jones", "Some notes");
+		int id = contactManager.addFutureMeeting(this.contacts, date);
+
+		ContactManagerImpl laterContactManager = new ContactManagerImpl(after);
+		laterContactManager.setContacts(contactManager.getContacts());
+		laterContactManager.setMeetings(contactManager.getMeetings());
+
+		assertEquals("The meeting should be in the future before the clock passes it.", 1, contactManager.getFutureMeetingList(this.contact).size());
+		assertTrue(laterContactManager.getFutureMeetingList(this.contact).isEmpty());
+		assertEquals("Notes should be accepted once the clock has passed the meeting.", "Notes", laterContactManager.addMeetingNotes(id, "Notes").getNotes());
+	}
+
 	@Test(expected=IllegalArgumentException.class)
 	public void testAddNewContactEmptyStringName() {
 		this.contactManager.addNewContact("", "Some Notes");
@@ -284,6 +338,11 @@ public class ContactManagerTest {
 		this.contactManager.addNewContact("David Jones", "");
 	}
 
+	@Test(expected=IllegalArgumentException.class)
+	public void testAddNewContactEmptyStringNotInterned() {
+		this.contactManager.addNewContact(new String(""), "Some Notes");
+	}
+
 	@Test(expected=NullPointerException.class)
 	public void testAddNewContactNullName() {
 		this.contactManager.addNewContact(null, "Some Notes");
@@ -313,6 +372,41 @@ public class ContactManagerTest {
 		assertEquals("Adding new contacts does not increment the ID properly.", 3, thirdId);
 	}
 
+	@Test
+	public void testAddNewContactIdsContinueAfterFlush() {
+		ContactManager contactManager = new ContactManagerImpl();
+		int firstId = contactManager.addNewContact("David Jones", "Some Notes");
+		contactManager.flush();
+
+		ContactManager reloadedContactManager = new ContactManagerImpl();
+		int secondId = reloadedContactManager.addNewContact("John Smith", "Some Notes");
+
+		assertEquals("The ID after reloading should follow on from the last saved ID.", firstId + 1, secondId);
+	}
+
+	@Test
+	public void testReservedIdsAreNotHandedOutAgain() {
+		ContactManagerImpl contactManager = new ContactManagerImpl();
+		int firstReserved = contactManager.getIdAllocator().reserveContactIds(10);
+		int id = contactManager.addNewContact("John Smith", "Some Notes");
+
+		assertEquals("The next ID should come after the reserved block.", firstReserved + 10, id);
+	}
+
+	@Test
+	public void testReservingPastTheLargestIdIsRejected() {
+		IdAllocator idAllocator = new IdAllocator(Integer.MAX_VALUE - 5, 0);
+
+		try {
+			idAllocator.reserveContactIds(10);
+			fail("A block running past the largest int should be rejected.");
+		} catch (IllegalArgumentException ex) {
+			assertEquals("Nothing should be reserved.", Integer.MAX_VALUE - 5, idAllocator.getLastContactId());
+		}
+
+		assertEquals(Integer.MAX_VALUE - 4, idAllocator.reserveContactIds(5));
+	}
+
 	@Test(expected=NullPointerException.class)
 	public void testGetContactsNullName() {
 		String name = null;
@@ -353,6 +447,38 @@ public class ContactManagerTest {
 		assertEquals("Total number of contacts returned should be 2.", 2, contacts.size());
 	}
 
+	@Test
+	public void testGetContactsIgnoreCase() {
+		ContactManager contactManager = new ContactManagerImpl();
+
+		contactManager.addNewContact("David Jones", "Some Notes");
+		contactManager.addNewContact("DAVID JONES", "Some Notes");
+		contactManager.addNewContact("David", "Some Notes");
+
+		Set<Contact> contacts = contactManager.getContactsIgnoreCase("david jones");
+
+		assertEquals("Total number of contacts returned should be 2.", 2, contacts.size());
+	}
+
+	@Test
+	public void testGetContactsByPrefix() {
+		ContactManager contactManager = new ContactManagerImpl();
+
+		contactManager.addNewContact("David Jones", "Some Notes");
+		contactManager.addNewContact("dave Smith", "Some Notes");
+		contactManager.addNewContact("Jane Doe", "Some Notes");
+
+		Set<Contact> contacts = contactManager.getContactsByPrefix("Da");
+
+		assertEquals("Total number of contacts returned should be 2.", 2, contacts.size());
+		assertEquals("The contacts should be ordered by name.", "dave Smith", contacts.iterator().next().getName());
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testGetContactsByPrefixNullPrefix() {
+		this.contactManager.getContactsByPrefix(null);
+	}
+
 	@Test(expected=NullPointerException.class)
 	public void testGetContactsWithNoIds() {
 		int[] ids = null;
@@ -430,6 +556,54 @@ public class ContactManagerTest {
 		assertEquals("We are expecting 3 meetings to be returned.", 3, meetings.size());
 	}
 
+	@Test
+	public void testGetMeetingListOnInCorrectTimeOrder() {
+		Calendar evening = Calendar.getInstance();
+		evening.add(Calendar.MONTH, 1);
+		evening.set(Calendar.HOUR_OF_DAY, 18);
+
+		Calendar morning = (Calendar) evening.clone();
+		morning.set(Calendar.HOUR_OF_DAY, 9);
+
+		int eveningId = this.contactManager.addFutureMeeting(this.contacts, evening);
+		int morningId = this.contactManager.addFutureMeeting(this.contacts, morning);
+
+		List<Meeting> meetings = this.contactManager.getMeetingListOn(evening);
+
+		assertEquals("The morning meeting should be listed first.", morningId, meetings.get(0).getId());
+		assertEquals("The evening meeting should be listed second.", eveningId, meetings.get(1).getId());
+	}
+
+	@Test
+	public void testGetNextMeetingsReturnsTheEarliestFutureMeetings() {
+		Calendar later = Calendar.getInstance();
+		later.add(Calendar.YEAR, 2);
+
+		ContactManagerImpl contactManager = (ContactManagerImpl) this.contactManager;
+		contactManager.addFutureMeeting(this.contacts, later);
+		int soonestId = contactManager.addFutureMeeting(this.contacts, this.aFutureDate);
+		contactManager.addNewPastMeeting(this.contacts, this.aPastDate, "Some notes");
+
+		List<Meeting> meetings = contactManager.getNextMeetings(1);
+
+		assertEquals("Only one meeting should be returned.", 1, meetings.size());
+		assertEquals("The soonest future meeting should be returned.", soonestId, meetings.get(0).getId());
+	}
+
+	@Test
+	public void testGetMeetingListOnDoesNotChangeTheDates() {
+		Calendar date = Calendar.getInstance();
+		date.add(Calendar.MONTH, 1);
+		date.set(Calendar.HOUR_OF_DAY, 15);
+		long time = date.getTimeInMillis();
+
+		int id = this.contactManager.addFutureMeeting(this.contacts, date);
+		this.contactManager.getMeetingListOn(date);
+
+		assertEquals("The date passed in should not have been changed.", time, date.getTimeInMillis());
+		assertEquals("The stored meeting date should not have been changed.", time, this.contactManager.getMeeting(id).getDate().getTimeInMillis());
+	}
+
 	@Test(expected=NullPointerException.class)
 	public void testGetPastMeetingListForNullContact() {
 		this.contactManager.getPastMeetingListFor(null);
@@ -467,6 +641,30 @@ public class ContactManagerTest {
 		assertEquals("The list should have three items inside.", 3, pastMeetings.size());
 	}
 
+	@Test
+	public void testGetPastMeetingListForWhereTheContactIsNotPartOfEveryMeeting() {
+		int id = this.contactManager.addNewContact("Some guy", "Some notes");
+		Set<Contact> newContacts = this.contactManager.getContacts(id);
+
+		this.contactManager.addNewPastMeeting(this.contacts, this.aPastDate, "Some notes");
+		this.contactManager.addNewPastMeeting(newContacts, this.aPastDate, "Some notes");
+
+		List<PastMeeting> pastMeetings = this.contactManager.getPastMeetingListFor(this.contact);
+
+		assertEquals("The list should have one item inside.", 1, pastMeetings.size());
+	}
+
+	@Test
+	public void testGetPastMeetingListForIncludesMeetingsConvertedByAddMeetingNotes() {
+		this.contactManager.addNewPastMeeting(this.contacts, this.aPastDate, "Old notes");
+		this.contactManager.addMeetingNotes(1, "New notes");
+
+		List<PastMeeting> pastMeetings = this.contactManager.getPastMeetingListFor(this.contact);
+
+		assertEquals("The meeting should still be listed once with its new notes.", "New notes", pastMeetings.get(0).getNotes());
+		assertEquals("The list should have one item inside.", 1, pastMeetings.size());
+	}
+
 	@Test(expected=NullPointerException.class)
 	public void testAddMeetingNotesWithNullNotes() {
 		this.contactManager.addMeetingNotes(1, null);
@@ -492,6 +690,29 @@ public class ContactManagerTest {
 		assertEquals("The notes were not changed to the new version.", "New notes", pastMeetingWithNotes.getNotes());
 	}
 
+	@Test
+	public void testSearchContactNotesRanksTheBestMatchFirst() {
+		ContactManager contactManager = new ContactManagerImpl();
+
+		contactManager.addNewContact("David Jones", "Met at the conference.");
+		int bestId = contactManager.addNewContact("John Smith", "Conference speaker, conference organiser.");
+		contactManager.addNewContact("Jane Doe", "Plays tennis.");
+
+		List<Contact> contacts = contactManager.searchContactNotes("CONFERENCE");
+
+		assertEquals("Two contacts should match.", 2, contacts.size());
+		assertEquals("The contact using the word most should be first.", bestId, contacts.get(0).getId());
+	}
+
+	@Test
+	public void testSearchMeetingNotesFollowsAddMeetingNotes() {
+		this.contactManager.addNewPastMeeting(this.contacts, this.aPastDate, "Discussed the budget");
+		this.contactManager.addMeetingNotes(1, "Agreed the timetable");
+
+		assertTrue(this.contactManager.searchMeetingNotes("budget").isEmpty());
+		assertEquals("The meeting should be found by its new notes.", 1, this.contactManager.searchMeetingNotes("timetable").size());
+	}
+
 	@Test
 	public void testFlushCreatesTheFile() {
 		this.contactManager.addFutureMeeting(this.contacts, this.aFutureDate);
@@ -522,8 +743,234 @@ public class ContactManagerTest {
 		this.contactManager.flush();
 
 		ContactManagerImpl newContactManager = new ContactManagerImpl();
-		LinkedHashMap<Integer, Meeting> meetings = newContactManager.getMeetings();
+		Map<Integer, Meeting> meetings = newContactManager.getMeetings();
 
 		assertEquals("The contact manager should contain 2 meetings", 2, meetings.size());
 	}
-}	
\ No newline at end of file
+
+	@Test
+	public void testAddNewContactsGivesConsecutiveIds() {
+		int[] ids = this.contactManager.addNewContacts(Arrays.asList("John Smith", "Jane Doe"), Arrays.asList("Some notes", "Other notes"));
+
+		assertArrayEquals(new int[] {2, 3}, ids);
+		assertEquals("Jane Doe", this.contactManager.getContacts(3).iterator().next().getName());
+		assertEquals("The new contacts should be found by name.", 1, this.contactManager.getContacts("John Smith").size());
+		assertEquals("The new contacts should be found by their notes.", 1, this.contactManager.searchContactNotes("other").size());
+	}
+
+	@Test
+	public void testAddNewContactsAddsNothingIfAnyContactIsInvalid() {
+		try {
+			this.contactManager.addNewContacts(Arrays.asList("John Smith", ""), Arrays.asList("Some notes", "Some notes"));
+			fail("An empty name should be rejected.");
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+
+		assertEquals("No contact from the batch should be added.", 1, this.contactManager.getContacts("").size());
+		assertEquals("No IDs should be used up.", 2, this.contactManager.addNewContact("John Smith", "Some notes"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddNewContactsWithListsOfDifferentLengths() {
+		this.contactManager.addNewContacts(Arrays.asList("John Smith", "Jane Doe"), Arrays.asList("Some notes"));
+	}
+
+	@Test
+	public void testAddFutureAndPastMeetingsInBatches() {
+		List<Set<Contact>> participants = Arrays.asList(this.contacts, this.contacts);
+
+		int[] futureIds = this.contactManager.addFutureMeetings(participants, Arrays.asList(this.aFutureDate, this.aFutureDate));
+		int[] pastIds   = this.contactManager.addNewPastMeetings(participants, Arrays.asList(this.aPastDate, this.aPastDate), Arrays.asList("First notes", "Second notes"));
+
+		assertArrayEquals(new int[] {1, 2}, futureIds);
+		assertArrayEquals(new int[] {3, 4}, pastIds);
+		assertEquals("The future meetings should be indexed.", 2, this.contactManager.getFutureMeetingList(this.contact).size());
+		assertEquals("The past meetings should be indexed.", 2, this.contactManager.getPastMeetingListFor(this.contact).size());
+		assertEquals("Second notes", this.contactManager.getPastMeeting(4).getNotes());
+	}
+
+	@Test
+	public void testAddFutureMeetingsAddsNothingIfAnyDateIsInThePast() {
+		try {
+			this.contactManager.addFutureMeetings(Arrays.asList(this.contacts, this.contacts), Arrays.asList(this.aFutureDate, this.aPastDate));
+			fail("A past date should be rejected.");
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+
+		assertTrue("No meeting from the batch should be added.", this.contactManager.getFutureMeetingList(this.contact).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddNewPastMeetingsWithAnUnknownContact() {
+		Set<Contact> unknown = new HashSet<Contact>();
+		unknown.add(new ContactImpl(99, "John Smith", "Some notes"));
+
+		this.contactManager.addNewPastMeetings(Arrays.asList(this.contacts, unknown), Arrays.asList(this.aPastDate, this.aPastDate), Arrays.asList("Notes", "Notes"));
+	}
+
+	@Test
+	public void testPagingThroughFutureMeetingsWithACursor() {
+		List<Calendar> dates = new ArrayList<Calendar>();
+		for (int i = 0; i < 5; i++) {
+			Calendar date = (Calendar) this.aFutureDate.clone();
+			date.add(Calendar.DAY_OF_MONTH, 5 - i);
+			dates.add(date);
+		}
+		this.contactManager.addFutureMeetings(Collections.nCopies(5, this.contacts), dates);
+
+		List<Meeting> first = this.contactManager.getFutureMeetingList(this.contact, MeetingCursor.START, 2);
+		List<Meeting> second = this.contactManager.getFutureMeetingList(this.contact, MeetingCursor.after(first.get(1)), 2);
+		List<Meeting> third = this.contactManager.getFutureMeetingList(this.contact, MeetingCursor.after(second.get(1)), 2);
+
+		assertEquals("The pages should be in date order.", Arrays.asList(5, 4), Arrays.asList(first.get(0).getId(), first.get(1).getId()));
+		assertEquals("The pages should be in date order.", Arrays.asList(3, 2), Arrays.asList(second.get(0).getId(), second.get(1).getId()));
+		assertEquals("The last page should be short.", 1, third.size());
+		assertEquals(1, third.get(0).getId());
+	}
+
+	@Test
+	public void testACursorKeepsItsPlaceWhenMeetingsAreAdded() {
+		this.contactManager.addFutureMeetings(Collections.nCopies(3, this.contacts), Collections.nCopies(3, this.aFutureDate));
+
+		List<Meeting> first = this.contactManager.getFutureMeetingList(this.contact, MeetingCursor.START, 2);
+
+		// An earlier meeting should not push one of the first page onto the next
+		Calendar earlier = (Calendar) this.aFutureDate.clone();
+		earlier.add(Calendar.DAY_OF_MONTH, -1);
+		this.contactManager.addFutureMeeting(this.contacts, earlier);
+
+		List<Meeting> second = this.contactManager.getFutureMeetingList(this.contact, MeetingCursor.after(first.get(1)), 2);
+
+		assertEquals("Meetings at the same time should be ordered by ID.", 2, first.get(1).getId());
+		assertEquals("Only the meeting after the cursor should be returned.", 1, second.size());
+		assertEquals(3, second.get(0).getId());
+	}
+
+	@Test
+	public void testPagingThroughPastMeetingsSkipsFutureOnes() {
+		this.contactManager.addFutureMeeting(this.contacts, this.aFutureDate);
+		this.contactManager.addNewPastMeetings(Collections.nCopies(3, this.contacts), Collections.nCopies(3, this.aPastDate), Arrays.asList("First", "Second", "Third"));
+
+		List<PastMeeting> page = this.contactManager.getPastMeetingListFor(this.contact, MeetingCursor.START, 10);
+
+		assertEquals("Only the past meetings should be returned.", 3, page.size());
+		assertEquals("Third", page.get(2).getNotes());
+	}
+
+	@Test
+	public void testPagingThroughMeetingsOnADay() {
+		this.contactManager.addFutureMeetings(Collections.nCopies(3, this.contacts), Collections.nCopies(3, this.aFutureDate));
+
+		List<Meeting> page = this.contactManager.getMeetingListOn(this.aFutureDate, MeetingCursor.START, 2);
+
+		assertEquals(2, page.size());
+		assertEquals("The next page should hold the last meeting.", 3, this.contactManager.getMeetingListOn(this.aFutureDate, MeetingCursor.after(page.get(1)), 2).get(0).getId());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPagingWithANegativeLimit() {
+		this.contactManager.getFutureMeetingList(this.contact, MeetingCursor.START, -1);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testPagingWithANullCursor() {
+		this.contactManager.getMeetingListOn(this.aFutureDate, null, 10);
+	}
+
+	@Test
+	public void testStreamsMatchTheLists() {
+		int count = MeetingPageIterator.FIRST_PAGE_SIZE * 3 + 1;
+		this.contactManager.addFutureMeetings(Collections.nCopies(count, this.contacts), Collections.nCopies(count, this.aFutureDate));
+		this.contactManager.addNewPastMeetings(Collections.nCopies(count, this.contacts), Collections.nCopies(count, this.aPastDate), Collections.nCopies(count, "Notes"));
+
+		assertEquals(this.contactManager.getFutureMeetingList(this.contact), this.toList(this.contactManager.streamFutureMeetings(this.contact)));
+		assertEquals(this.contactManager.getPastMeetingListFor(this.contact), this.toList(this.contactManager.streamPastMeetingsFor(this.contact)));
+		assertEquals(this.contactManager.getMeetingListOn(this.aFutureDate), this.toList(this.contactManager.streamMeetingsOn(this.aFutureDate)));
+	}
+
+	@Test
+	public void testAStreamOnlyReadsWhatIsUsed() {
+		int count = MeetingPageIterator.FIRST_PAGE_SIZE * 3;
+		this.contactManager.addFutureMeetings(Collections.nCopies(count, this.contacts), Collections.nCopies(count, this.aFutureDate));
+
+		Stream<Meeting> stream = this.contactManager.streamFutureMeetings(this.contact);
+
+		// Added after the stream was made but before it was read
+		this.contactManager.addFutureMeeting(this.contacts, this.aFutureDate);
+
+		assertEquals("The stream should be read lazily.", count + 1, stream.count());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStreamingForAnUnknownContact() {
+		this.contactManager.streamPastMeetingsFor(new ContactImpl(99, "John Smith", "Some notes"));
+	}
+
+	private <T> List<T> toList(Stream<T> stream) {
+		List<T> list = new ArrayList<T>();
+
+		Iterator<T> iterator = stream.iterator();
+		while (iterator.hasNext()) {
+			list.add(iterator.next());
+		}
+
+		return list;
+	}
+	@Test
+	public void testFindMeetingsGivesTheSameOrderInParallel() {
+		ContactManagerImpl contactManager = (ContactManagerImpl) this.contactManager;
+
+		List<Calendar> dates = new ArrayList<Calendar>();
+		for (int i = 0; i < 200; i++) {
+			Calendar date = (Calendar) this.aFutureDate.clone();
+			date.add(Calendar.HOUR_OF_DAY, (i * 7) % 50);
+			dates.add(date);
+		}
+		contactManager.addFutureMeetings(Collections.nCopies(200, this.contacts), dates);
+
+		Predicate<Meeting> everyThird = new Predicate<Meeting>() {
+			@Override
+			public boolean test(Meeting meeting) {
+				return meeting.getId() % 3 == 0;
+			}
+		};
+
+		List<Meeting> sequential = contactManager.findMeetings(everyThird);
+		contactManager.setParallelScanThreshold(0);
+		List<Meeting> parallel = contactManager.findMeetings(everyThird);
+
+		assertEquals("Every third meeting should be found.", 66, sequential.size());
+		assertEquals("The parallel scan should give the same meetings in the same order.", sequential, parallel);
+
+		for (int i = 1; i < parallel.size(); i++) {
+			Meeting before = parallel.get(i - 1);
+			Meeting after  = parallel.get(i);
+
+			assertTrue("The meetings should be in date order.", new MeetingComparator().compare(before, after) <= 0);
+			if (new MeetingComparator().compare(before, after) == 0) {
+				assertTrue("Meetings at the same time should be in ID order.", before.getId() < after.getId());
+			}
+		}
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testFindMeetingsWithANullFilter() {
+		((ContactManagerImpl) this.contactManager).findMeetings(null);
+	}
+
+	@Test
+	public void testMeetingContactsAreTheManagersContacts() {
+		int otherId = this.contactManager.addNewContact("Jane Smith", "Other notes");
+		Set<Contact> contacts = new HashSet<Contact>(this.contacts);
+		contacts.add(new ContactImpl(otherId, "Jane Smith", "A copy"));
+
+		int id = this.contactManager.addFutureMeeting(contacts, this.aFutureDate);
+		MeetingImpl meeting = (MeetingImpl) this.contactManager.getFutureMeeting(id);
+
+		assertArrayEquals("The meeting should hold the contact IDs.", new int[] {this.contact.getId(), otherId}, meeting.getContactIds());
+		assertTrue("The meeting should have the other contact.", meeting.hasContact(otherId));
+		assertTrue("The meeting should give back the manager's contact.", meeting.getContacts().containsAll(this.contactManager.getContacts(otherId)));
+	}
+}
@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An inverted index from a contact ID to the IDs of the meetings that
+ * contact attends. Looking up the meetings for one contact only touches
+ * that contact's meetings rather than every meeting in the store.
+ *
+ * Each contact's meetings are held in a MeetingDateIndex so they come
+ * back in chronological order, and the indexes are found through an
+ * IntRecordMap so neither the contact IDs nor the entries are boxed.
+ */
+public class ContactMeetingIndex {
+
+	private IntRecordMap<MeetingDateIndex> meetingIds;
+
+	ContactMeetingIndex() {
+		this.meetingIds = new IntRecordMap<MeetingDateIndex>();
+	}
+
+	/**
+	 * Adds the meeting against every contact attending it.
+	 *
+	 * @param  Meeting the meeting to index
+	 * @return void
+	 * @author David Jones
+	 */
+	public void add(Meeting meeting) {
+
+		long time = MeetingImpl.timeOf(meeting);
+
+		int[] contactIds = MeetingImpl.contactIdsOf(meeting);
+		for (int i = 0; i < contactIds.length; i++) {
+			int contactId = contactIds[i];
+
+			MeetingDateIndex ids = this.meetingIds.get(contactId);
+			if (ids == null) {
+				ids = new MeetingDateIndex();
+				this.meetingIds.put(contactId, ids);
+			}
+
+			ids.add(meeting.getId(), time);
+		}
+	}
+
+	/**
+	 * Removes the meeting from every contact attending it.
+	 *
+	 * @param  Meeting the meeting to remove
+	 * @return void
+	 * @author David Jones
+	 */
+	public void remove(Meeting meeting) {
+
+		long time = MeetingImpl.timeOf(meeting);
+
+		int[] contactIds = MeetingImpl.contactIdsOf(meeting);
+		for (int i = 0; i < contactIds.length; i++) {
+			int contactId = contactIds[i];
+
+			MeetingDateIndex ids = this.meetingIds.get(contactId);
+			if (ids != null) {
+				ids.remove(meeting.getId(), time);
+
+				if (ids.size() == 0) {
+					this.meetingIds.remove(contactId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the IDs of the meetings the contact attends in chronological
+	 * order. The list is empty if the contact has no meetings.
+	 *
+	 * @param  int the contact ID
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> getMeetingIds(int contactId) {
+
+		MeetingDateIndex ids = this.meetingIds.get(contactId);
+		if (ids == null) {
+			return new ArrayList<Integer>();
+		}
+
+		return ids.all();
+	}
+
+	/**
+	 * Returns the IDs of the meetings the contact attends at or after the
+	 * given time in chronological order.
+	 *
+	 * @param  int the contact ID
+	 * @param  long the earliest time in epoch milliseconds
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> getMeetingIdsFrom(int contactId, long fromInclusive) {
+
+		MeetingDateIndex ids = this.meetingIds.get(contactId);
+		if (ids == null) {
+			return new ArrayList<Integer>();
+		}
+
+		return ids.from(fromInclusive);
+	}
+
+	/**
+	 * Returns the IDs of the meetings the contact attends after the given
+	 * position in chronological order, found as they are iterated over.
+	 *
+	 * @param  int the contact ID
+	 * @param  MeetingCursor the position the meetings must be after
+	 * @return Iterator<Integer>
+	 * @author David Jones
+	 */
+	public Iterator<Integer> getMeetingIdsAfter(int contactId, MeetingCursor cursor) {
+
+		MeetingDateIndex ids = this.meetingIds.get(contactId);
+		if (ids == null) {
+			return Collections.<Integer>emptyIterator();
+		}
+
+		return ids.after(cursor);
+	}
+
+	/**
+	 * Empties the index.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void clear() {
+		this.meetingIds.clear();
+	}
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index of contact IDs by name.
+ *
+ * Exact names are held in a hash map. Names folded to lower case are held
+ * in a sorted map as well, so case-insensitive and prefix lookups are a
+ * range scan over the names that match rather than a pass over every contact.
+ */
+public class ContactNameIndex {
+
+	private Map<String, Set<Integer>> exactNames;
+	private NavigableMap<String, Set<Integer>> foldedNames;
+
+	ContactNameIndex() {
+		this.exactNames  = new HashMap<String, Set<Integer>>();
+		this.foldedNames = new TreeMap<String, Set<Integer>>();
+	}
+
+	/**
+	 * Folds a name so lookups ignore case.
+	 *
+	 * @param  String the name
+	 * @return String
+	 * @author David Jones
+	 */
+	static String fold(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Adds a contact to the index.
+	 *
+	 * @param  Contact the contact to index
+	 * @return void
+	 * @author David Jones
+	 */
+	public void add(Contact contact) {
+		addTo(this.exactNames, contact.getName(), contact.getId());
+		addTo(this.foldedNames, fold(contact.getName()), contact.getId());
+	}
+
+	/**
+	 * Removes a contact from the index.
+	 *
+	 * @param  Contact the contact as it was when it was added
+	 * @return void
+	 * @author David Jones
+	 */
+	public void remove(Contact contact) {
+		removeFrom(this.exactNames, contact.getName(), contact.getId());
+		removeFrom(this.foldedNames, fold(contact.getName()), contact.getId());
+	}
+
+	/**
+	 * Returns the IDs of the contacts with exactly the name given.
+	 *
+	 * @param  String the name
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> getIds(String name) {
+
+		Set<Integer> ids = this.exactNames.get(name);
+		if (ids == null) {
+			return new ArrayList<Integer>();
+		}
+
+		return new ArrayList<Integer>(ids);
+	}
+
+	/**
+	 * Returns the IDs of the contacts with the name given, ignoring case.
+	 *
+	 * @param  String the name
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> getIdsIgnoreCase(String name) {
+
+		Set<Integer> ids = this.foldedNames.get(fold(name));
+		if (ids == null) {
+			return new ArrayList<Integer>();
+		}
+
+		return new ArrayList<Integer>(ids);
+	}
+
+	/**
+	 * Returns the IDs of the contacts whose name starts with the prefix
+	 * given, ignoring case. The IDs are ordered by name.
+	 *
+	 * @param  String the start of the name
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> getIdsByPrefix(String prefix) {
+
+		String folded = fold(prefix);
+		List<Integer> ids = new ArrayList<Integer>();
+
+		Iterator<Map.Entry<String, Set<Integer>>> iterator = this.foldedNames.tailMap(folded, true).entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Set<Integer>> entry = iterator.next();
+
+			if (!entry.getKey().startsWith(folded)) {
+				break;
+			}
+
+			ids.addAll(entry.getValue());
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Throws away the current index and builds it again from the contacts given.
+	 *
+	 * @param  Collection<Contact> every contact in the store
+	 * @return void
+	 * @author David Jones
+	 */
+	public void rebuild(Collection<Contact> contacts) {
+		this.exactNames.clear();
+		this.foldedNames.clear();
+
+		Iterator<Contact> iterator = contacts.iterator();
+		while (iterator.hasNext()) {
+			this.add(iterator.next());
+		}
+	}
+
+	private static void addTo(Map<String, Set<Integer>> names, String name, int id) {
+
+		Set<Integer> ids = names.get(name);
+		if (ids == null) {
+			ids = new LinkedHashSet<Integer>();
+			names.put(name, ids);
+		}
+
+		ids.add(id);
+	}
+
+	private static void removeFrom(Map<String, Set<Integer>> names, String name, int id) {
+
+		Set<Integer> ids = names.get(name);
+		if (ids != null && ids.remove(id) && ids.isEmpty()) {
+			names.remove(name);
+		}
+	}
+}
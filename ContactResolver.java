@@ -0,0 +1,31 @@
+import java.util.TimeZone;
+
+/**
+ * Turns the contact IDs held by a meeting back into the contacts.
+ *
+ * A meeting only keeps the IDs of the contacts attending it, and asks a
+ * resolver for the contacts themselves when they are read. The contact
+ * manager is the resolver for the meetings it holds, so a meeting always
+ * gives back the contacts the manager has now. It also gives the time
+ * zone the meeting shows its date in, so that a meeting and the manager
+ * agree on the day it falls on.
+ */
+public interface ContactResolver {
+
+	/**
+	 * Returns the contacts with the given IDs, in the same order. An ID
+	 * with no contact gives null in its place.
+	 *
+	 * @param  int[] the contact IDs
+	 * @return Contact[]
+	 */
+	Contact[] resolve(int[] ids);
+
+	/**
+	 * Returns the time zone meetings using this resolver show their dates
+	 * in. The caller may change the zone returned.
+	 *
+	 * @return TimeZone
+	 */
+	TimeZone getTimeZone();
+}
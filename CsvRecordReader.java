@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads records from CSV written by CsvRecordWriter, or by a spreadsheet
+ * using the same columns. The header row is optional.
+ *
+ * Rows are read one at a time, so memory use does not grow with the size
+ * of the input. An empty field is read as a missing value and a quoted
+ * empty field as an empty string.
+ */
+public class CsvRecordReader implements RecordReader {
+
+	private static final int COLUMNS = 6;
+
+	private final Reader input;
+	private final char[] buffer;
+	private int position;
+	private int limit;
+
+	private long line;
+	private long recordLine;
+	private boolean started;
+
+	CsvRecordReader(Reader input) {
+
+		if (input == null) {
+			throw new NullPointerException("The input cannot be null.");
+		}
+
+		this.input    = input;
+		this.buffer   = new char[65536];
+		this.position = 0;
+		this.limit    = 0;
+		this.line     = 1;
+		this.started  = false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public ExchangeRecord read() throws IOException {
+		List<String> fields = this.readRow();
+
+		if (!this.started) {
+			this.started = true;
+
+			if (fields != null && "kind".equals(fields.get(0))) {
+				fields = this.readRow();
+			}
+		}
+
+		if (fields == null) {
+			return null;
+		}
+
+		if (fields.size() != COLUMNS) {
+			throw new IOException("Line " + this.recordLine + " has " + fields.size() + " fields rather than " + COLUMNS + ".");
+		}
+
+		try {
+			String kind   = fields.get(0);
+			int id        = Integer.parseInt(fields.get(1));
+			String name   = fields.get(2);
+			String notes  = fields.get(3);
+			long time     = 0;
+			int[] contactIds = null;
+
+			if (!ExchangeRecord.CONTACT.equals(kind)) {
+				if (fields.get(4) == null) {
+					throw new IllegalArgumentException("A meeting must have a date.");
+				}
+
+				time       = ExchangeRecord.parseTime(fields.get(4));
+				contactIds = parseIds(fields.get(5));
+			}
+
+			return new ExchangeRecord(kind, id, name, notes, time, contactIds);
+
+		} catch (IllegalArgumentException ex) {
+			throw new IOException("Line " + this.recordLine + ": " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public long getLineNumber() {
+		return this.recordLine;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void close() throws IOException {
+		this.input.close();
+	}
+
+	/**
+	 * Reads the fields of the next row, or returns null at the end of the
+	 * input. Blank lines are skipped.
+	 */
+	private List<String> readRow() throws IOException {
+		int c = this.next();
+
+		while (c == '\r' || c == '\n') {
+			this.endOfLine(c);
+			c = this.next();
+		}
+
+		if (c < 0) {
+			return null;
+		}
+
+		this.recordLine = this.line;
+		List<String> fields = new ArrayList<String>(COLUMNS);
+		StringBuilder field = new StringBuilder();
+
+		while (true) {
+			field.setLength(0);
+			boolean quoted = false;
+
+			if (c == '"') {
+				quoted = true;
+
+				while (true) {
+					c = this.next();
+
+					if (c < 0) {
+						throw new IOException("Line " + this.recordLine + " has a quoted field that is never closed.");
+					}
+
+					if (c == '"') {
+						c = this.next();
+						if (c != '"') {
+							break;
+						}
+					} else if (c == '\n') {
+						this.line++;
+					}
+
+					field.append((char) c);
+				}
+			} else {
+				while (c >= 0 && c != ',' && c != '\r' && c != '\n') {
+					field.append((char) c);
+					c = this.next();
+				}
+			}
+
+			fields.add(field.length() == 0 && !quoted ? null : field.toString());
+
+			if (c == ',') {
+				c = this.next();
+				continue;
+			}
+
+			if (c == '\r' || c == '\n') {
+				this.endOfLine(c);
+			} else if (c >= 0) {
+				throw new IOException("Line " + this.recordLine + " has text after a closing quote.");
+			}
+
+			return fields;
+		}
+	}
+
+	private void endOfLine(int c) throws IOException {
+		if (c == '\r' && this.peek() == '\n') {
+			this.next();
+		}
+
+		this.line++;
+	}
+
+	private int next() throws IOException {
+		if (this.position == this.limit && !this.fill()) {
+			return -1;
+		}
+
+		return this.buffer[this.position++];
+	}
+
+	private int peek() throws IOException {
+		if (this.position == this.limit && !this.fill()) {
+			return -1;
+		}
+
+		return this.buffer[this.position];
+	}
+
+	private boolean fill() throws IOException {
+		int read = this.input.read(this.buffer, 0, this.buffer.length);
+
+		while (read == 0) {
+			read = this.input.read(this.buffer, 0, this.buffer.length);
+		}
+
+		if (read < 0) {
+			return false;
+		}
+
+		this.position = 0;
+		this.limit    = read;
+		return true;
+	}
+
+	private static int[] parseIds(String text) {
+		if (text == null) {
+			return new int[0];
+		}
+
+		String[] parts = text.trim().split(" +");
+		int[] ids = new int[parts.length];
+
+		for (int i = 0; i < parts.length; i++) {
+			ids[i] = Integer.parseInt(parts[i]);
+		}
+
+		return ids;
+	}
+}
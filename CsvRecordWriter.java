@@ -0,0 +1,108 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes records as CSV, one record to a row, under the header
+ *
+ *   kind,id,name,notes,date,contacts
+ *
+ * Dates are ISO-8601 instants and contacts are IDs separated by spaces.
+ * Fields are quoted when they hold a comma, a quote or a line break, with
+ * quotes doubled, as in RFC 4180.
+ */
+public class CsvRecordWriter implements RecordWriter {
+
+	static final String HEADER = "kind,id,name,notes,date,contacts";
+
+	private final Writer output;
+
+	CsvRecordWriter(Writer output) throws IOException {
+
+		if (output == null) {
+			throw new NullPointerException("The output cannot be null.");
+		}
+
+		this.output = output instanceof BufferedWriter ? output : new BufferedWriter(output, 65536);
+		this.output.write(HEADER);
+		this.output.write("\r\n");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void write(ExchangeRecord record) throws IOException {
+		this.output.write(record.getKind());
+		this.output.write(',');
+		this.output.write(Integer.toString(record.getId()));
+		this.output.write(',');
+		this.writeField(record.getName());
+		this.output.write(',');
+		this.writeField(record.getNotes());
+		this.output.write(',');
+
+		if (!record.isContact()) {
+			this.output.write(ExchangeRecord.formatTime(record.getTime()));
+		}
+
+		this.output.write(',');
+
+		int[] contactIds = record.getContactIds();
+		for (int i = 0; i < contactIds.length; i++) {
+			if (i > 0) {
+				this.output.write(' ');
+			}
+			this.output.write(Integer.toString(contactIds[i]));
+		}
+
+		this.output.write("\r\n");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.output.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void close() throws IOException {
+		this.output.close();
+	}
+
+	private void writeField(String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+
+		// An empty string is quoted so it can be told apart from a missing value
+		if (!quote && !value.isEmpty()) {
+			this.output.write(value);
+			return;
+		}
+
+		this.output.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				this.output.write('"');
+			}
+			this.output.write(c);
+		}
+		this.output.write('"');
+	}
+}
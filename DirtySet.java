@@ -0,0 +1,196 @@
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Records the IDs of the contacts and meetings changed since a store last
+ * wrote them, so that the store can write only those.
+ *
+ * Once more IDs are recorded than the limit, or the maps are replaced
+ * wholesale, the set stops recording IDs and reports that everything has
+ * changed instead. This keeps it small for stores that never clear it.
+ *
+ * The contact manager records changes while holding the write lock. When
+ * it flushes it takes the changes out into a snapshot for the store, and
+ * puts them back if the store fails to write them.
+ */
+public class DirtySet {
+
+	static final int DEFAULT_LIMIT = 65536;
+
+	private final int limit;
+	private final Set<Integer> contactIds;
+	private final Set<Integer> meetingIds;
+	private boolean allChanged;
+
+	DirtySet() {
+		this(DEFAULT_LIMIT);
+	}
+
+	DirtySet(int limit) {
+
+		if (limit < 0) {
+			throw new IllegalArgumentException("The limit cannot be negative.");
+		}
+
+		this.limit      = limit;
+		this.contactIds = new HashSet<Integer>();
+		this.meetingIds = new HashSet<Integer>();
+		this.allChanged = false;
+	}
+
+	/**
+	 * Returns a set that reports everything as changed, for a store to ask
+	 * for every record.
+	 *
+	 * @return DirtySet
+	 * @author David Jones
+	 */
+	static DirtySet everything() {
+		DirtySet everything = new DirtySet();
+		everything.allChanged();
+
+		return everything;
+	}
+
+	/**
+	 * Records that a contact was added or changed.
+	 *
+	 * @param  int the contact ID
+	 * @return void
+	 * @author David Jones
+	 */
+	public void contactChanged(int id) {
+		if (!this.allChanged) {
+			this.contactIds.add(id);
+			this.checkLimit();
+		}
+	}
+
+	/**
+	 * Records that a meeting was added or changed, including a future
+	 * meeting becoming a past meeting.
+	 *
+	 * @param  int the meeting ID
+	 * @return void
+	 * @author David Jones
+	 */
+	public void meetingChanged(int id) {
+		if (!this.allChanged) {
+			this.meetingIds.add(id);
+			this.checkLimit();
+		}
+	}
+
+	/**
+	 * Records that everything has changed.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void allChanged() {
+		this.allChanged = true;
+		this.contactIds.clear();
+		this.meetingIds.clear();
+	}
+
+	/**
+	 * Checks whether everything has to be treated as changed.
+	 *
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean isAllChanged() {
+		return this.allChanged;
+	}
+
+	/**
+	 * Returns the IDs of the changed contacts. Only meaningful while
+	 * isAllChanged is false.
+	 *
+	 * @return Set<Integer>
+	 * @author David Jones
+	 */
+	public Set<Integer> getContactIds() {
+		return Collections.unmodifiableSet(this.contactIds);
+	}
+
+	/**
+	 * Returns the IDs of the changed meetings. Only meaningful while
+	 * isAllChanged is false.
+	 *
+	 * @return Set<Integer>
+	 * @author David Jones
+	 */
+	public Set<Integer> getMeetingIds() {
+		return Collections.unmodifiableSet(this.meetingIds);
+	}
+
+	/**
+	 * Checks whether nothing has changed.
+	 *
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean isEmpty() {
+		return !this.allChanged && this.contactIds.isEmpty() && this.meetingIds.isEmpty();
+	}
+
+	/**
+	 * Forgets every change, once they are all written.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void clear() {
+		this.allChanged = false;
+		this.contactIds.clear();
+		this.meetingIds.clear();
+	}
+
+	/**
+	 * Moves every change into a new set, leaving this one empty.
+	 *
+	 * @return DirtySet the changes
+	 * @author David Jones
+	 */
+	public DirtySet takeChanges() {
+		DirtySet changes = new DirtySet(this.limit);
+		changes.addAll(this);
+		this.clear();
+
+		return changes;
+	}
+
+	/**
+	 * Records the changes in another set as well, for example ones taken
+	 * out for a write that then failed.
+	 *
+	 * @param  DirtySet the changes
+	 * @return void
+	 * @author David Jones
+	 */
+	public void addAll(DirtySet changes) {
+		if (changes.allChanged) {
+			this.allChanged();
+			return;
+		}
+
+		Iterator<Integer> iterator = changes.contactIds.iterator();
+		while (iterator.hasNext()) {
+			this.contactChanged(iterator.next());
+		}
+
+		iterator = changes.meetingIds.iterator();
+		while (iterator.hasNext()) {
+			this.meetingChanged(iterator.next());
+		}
+	}
+
+	private void checkLimit() {
+		if (this.contactIds.size() + this.meetingIds.size() > this.limit) {
+			this.allChanged();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * A single contact or meeting as it is exported and imported, with the
+ * contacts of a meeting given by ID.
+ *
+ * Every record has a kind and an ID. Contacts also have a name and notes.
+ * Meetings have a time and contact IDs, and past meetings have notes.
+ */
+public class ExchangeRecord {
+
+	static final String CONTACT        = "contact";
+	static final String FUTURE_MEETING = "future";
+	static final String PAST_MEETING   = "past";
+
+	private final String kind;
+	private final int id;
+	private final String name;
+	private final String notes;
+	private final long time;
+	private final int[] contactIds;
+
+	ExchangeRecord(String kind, int id, String name, String notes, long time, int[] contactIds) {
+
+		if (kind == null) {
+			throw new NullPointerException("The kind of record cannot be null.");
+		}
+
+		if (!kind.equals(CONTACT) && !kind.equals(FUTURE_MEETING) && !kind.equals(PAST_MEETING)) {
+			throw new IllegalArgumentException("Unknown kind of record '" + kind + "'.");
+		}
+
+		this.kind       = kind;
+		this.id         = id;
+		this.name       = name;
+		this.notes      = notes;
+		this.time       = time;
+		this.contactIds = contactIds == null ? new int[0] : contactIds.clone();
+	}
+
+	/**
+	 * Builds the record for a contact.
+	 *
+	 * @param  Contact the contact
+	 * @return ExchangeRecord
+	 * @author David Jones
+	 */
+	static ExchangeRecord of(Contact contact) {
+		return new ExchangeRecord(CONTACT, contact.getId(), contact.getName(), contact.getNotes(), 0, null);
+	}
+
+	/**
+	 * Builds the record for a meeting.
+	 *
+	 * @param  Meeting the meeting
+	 * @return ExchangeRecord
+	 * @author David Jones
+	 */
+	static ExchangeRecord of(Meeting meeting) {
+		int[] contactIds = MeetingImpl.contactIdsOf(meeting);
+
+		if (meeting instanceof PastMeeting) {
+			return new ExchangeRecord(PAST_MEETING, meeting.getId(), null, ((PastMeeting) meeting).getNotes(), MeetingImpl.timeOf(meeting), contactIds);
+		}
+
+		return new ExchangeRecord(FUTURE_MEETING, meeting.getId(), null, null, MeetingImpl.timeOf(meeting), contactIds);
+	}
+
+	/**
+	 * A getter for the kind of record: "contact", "future" or "past".
+	 * @return String
+	 * @author David Jones
+	 */
+	public String getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * Checks whether the record is a contact.
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean isContact() {
+		return this.kind.equals(CONTACT);
+	}
+
+	/**
+	 * A getter for the ID the record had when it was exported.
+	 * @return int
+	 * @author David Jones
+	 */
+	public int getId() {
+		return this.id;
+	}
+
+	/**
+	 * A getter for the contact name, or null for a meeting.
+	 * @return String
+	 * @author David Jones
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * A getter for the notes, or null for a future meeting.
+	 * @return String
+	 * @author David Jones
+	 */
+	public String getNotes() {
+		return this.notes;
+	}
+
+	/**
+	 * A getter for the meeting time in epoch milliseconds.
+	 * @return long
+	 * @author David Jones
+	 */
+	public long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * A getter for the IDs of the meeting's contacts.
+	 * @return int[]
+	 * @author David Jones
+	 */
+	public int[] getContactIds() {
+		return this.contactIds.clone();
+	}
+
+	/**
+	 * Formats a meeting time as an ISO-8601 instant, such as
+	 * "2016-03-01T10:15:30Z".
+	 *
+	 * @param  long the time in epoch milliseconds
+	 * @return String
+	 * @author David Jones
+	 */
+	static String formatTime(long time) {
+		return Instant.ofEpochMilli(time).toString();
+	}
+
+	/**
+	 * Parses a time written by formatTime.
+	 *
+	 * @param  String the ISO-8601 instant
+	 * @return long
+	 * @throws IllegalArgumentException if the text is not an instant
+	 * @author David Jones
+	 */
+	static long parseTime(String text) {
+		try {
+			return Instant.parse(text).toEpochMilli();
+		} catch (DateTimeParseException ex) {
+			throw new IllegalArgumentException("'" + text + "' is not an ISO-8601 instant.", ex);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.kind + " " + this.id + " " + Arrays.toString(this.contactIds);
+	}
+}
@@ -3,7 +3,14 @@ import java.util.Set;
 
 public class FutureMeetingImpl extends MeetingImpl implements FutureMeeting {
 
+	// Kept at the value of the class as first saved, like MeetingImpl
+	private static final long serialVersionUID = -5727558750579313108L;
+
 	FutureMeetingImpl(int id, Calendar date, Set<Contact> contacts) {
 		super(id, date, contacts);
 	}
+
+	FutureMeetingImpl(int id, long time, int[] contactIds, ContactResolver resolver) {
+		super(id, time, contactIds, resolver);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the IDs for contacts and meetings.
+ *
+ * The allocator keeps a high-water mark (the last ID handed out) for each
+ * type of record so the next ID can be produced in constant time instead of
+ * scanning every key in the store. The marks are saved alongside the data
+ * so they survive a flush and reload.
+ */
+public class IdAllocator implements Serializable {
+
+	// The value the JVM worked out for the class before it was declared, so saved allocators still load
+	private static final long serialVersionUID = -1373057086713411271L;
+
+	private final AtomicInteger lastContactId;
+	private final AtomicInteger lastMeetingId;
+
+	IdAllocator() {
+		this(0, 0);
+	}
+
+	IdAllocator(int lastContactId, int lastMeetingId) {
+
+		if (lastContactId < 0 || lastMeetingId < 0) {
+			throw new IllegalArgumentException("The last assigned IDs cannot be negative.");
+		}
+
+		this.lastContactId = new AtomicInteger(lastContactId);
+		this.lastMeetingId = new AtomicInteger(lastMeetingId);
+	}
+
+	/**
+	 * Returns the next free contact ID.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int nextContactId() {
+		return this.lastContactId.incrementAndGet();
+	}
+
+	/**
+	 * Returns the next free meeting ID.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int nextMeetingId() {
+		return this.lastMeetingId.incrementAndGet();
+	}
+
+	/**
+	 * Reserves a block of consecutive contact IDs in a single step and
+	 * returns the first ID in the block.
+	 *
+	 * @param  int the number of IDs to reserve
+	 * @return int
+	 * @throws IllegalArgumentException if the count is not positive or would run past the largest int
+	 * @author David Jones
+	 */
+	public int reserveContactIds(int count) {
+		return reserve(this.lastContactId, count);
+	}
+
+	/**
+	 * Reserves a block of consecutive meeting IDs in a single step and
+	 * returns the first ID in the block.
+	 *
+	 * @param  int the number of IDs to reserve
+	 * @return int
+	 * @throws IllegalArgumentException if the count is not positive or would run past the largest int
+	 * @author David Jones
+	 */
+	public int reserveMeetingIds(int count) {
+		return reserve(this.lastMeetingId, count);
+	}
+
+	/**
+	 * A getter for the last contact ID handed out.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int getLastContactId() {
+		return this.lastContactId.get();
+	}
+
+	/**
+	 * A getter for the last meeting ID handed out.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int getLastMeetingId() {
+		return this.lastMeetingId.get();
+	}
+
+	/**
+	 * Makes sure no contact ID up to and including the one given will be
+	 * handed out again.
+	 *
+	 * @param  int an ID that is already in use
+	 * @return void
+	 * @author David Jones
+	 */
+	void advanceContactIdTo(int id) {
+		advance(this.lastContactId, id);
+	}
+
+	/**
+	 * Makes sure no meeting ID up to and including the one given will be
+	 * handed out again.
+	 *
+	 * @param  int an ID that is already in use
+	 * @return void
+	 * @author David Jones
+	 */
+	void advanceMeetingIdTo(int id) {
+		advance(this.lastMeetingId, id);
+	}
+
+	/**
+	 * Works out the highest key in the set, or zero if the set is empty.
+	 *
+	 * @param  Set<Integer> the keys to look through
+	 * @return int
+	 * @author David Jones
+	 */
+	static int highestKey(Set<Integer> keys) {
+
+		int maxKey = 0;
+
+		Iterator<Integer> iterator = keys.iterator();
+		while (iterator.hasNext()) {
+			Integer i = iterator.next();
+
+			if (i > maxKey) {
+				maxKey = i;
+			}
+		}
+
+		return maxKey;
+	}
+
+	private static int reserve(AtomicInteger counter, int count) {
+
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one ID must be reserved.");
+		}
+
+		int current = counter.get();
+		while (true) {
+			if (count > Integer.MAX_VALUE - current) {
+				throw new IllegalArgumentException("Reserving " + count + " IDs after " + current + " would run past the largest ID.");
+			}
+
+			if (counter.compareAndSet(current, current + count)) {
+				return current + 1;
+			}
+
+			current = counter.get();
+		}
+	}
+
+	private static void advance(AtomicInteger counter, int id) {
+
+		int current = counter.get();
+		while (id > current && !counter.compareAndSet(current, id)) {
+			current = counter.get();
+		}
+	}
+}
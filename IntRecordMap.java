@@ -0,0 +1,472 @@
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from int IDs to records that keeps the order the records were put
+ * in, like a LinkedHashMap, without boxing the keys or allocating a node
+ * per entry.
+ *
+ * The entries are held in two arrays in the order they were added, one of
+ * keys and one of values, so iterating is a walk along the arrays. The
+ * hash table is a long array, probed linearly, holding each key next to
+ * its position in those arrays. A lookup compares keys in the table itself
+ * and then reads the value, without following a pointer to a node or a
+ * boxed key. A removed entry leaves a gap in the arrays that is closed up
+ * once gaps outnumber the entries.
+ *
+ * Putting a key that is already in the map replaces the value in place,
+ * and removing a key and putting it again moves it to the end, just as in
+ * a LinkedHashMap. Null values are not allowed. It is not safe for use by
+ * several threads unless they are reading only.
+ */
+public class IntRecordMap<V> extends AbstractMap<Integer, V> implements RecordMap<V> {
+
+	private static final int MIN_CAPACITY = 8;
+	private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+	private int[] keys;
+	private Object[] values;
+	private int end;
+	private int size;
+
+	private long[] slots;
+	private int shift;
+
+	private int modCount;
+
+	IntRecordMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Builds an empty map that can take the given number of entries before
+	 * it has to grow.
+	 *
+	 * @param int the expected number of entries
+	 */
+	IntRecordMap(int expectedSize) {
+
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("The expected size cannot be negative.");
+		}
+
+		int capacity = Math.max(expectedSize, MIN_CAPACITY);
+
+		this.keys   = new int[capacity];
+		this.values = new Object[capacity];
+		this.end    = 0;
+		this.size   = 0;
+		this.allocateSlots(capacity);
+	}
+
+	/**
+	 * Builds a map holding the entries of the map given, in its iteration order.
+	 *
+	 * @param Map<Integer, ? extends V> the entries to copy
+	 */
+	IntRecordMap(Map<Integer, ? extends V> map) {
+		this(map.size());
+		this.putAll(map);
+	}
+
+	/**
+	 * Returns the value for the key, or null if the key is not in the map.
+	 *
+	 * @param  int the key
+	 * @return V
+	 * @author David Jones
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int entry = this.find(key);
+		return entry < 0 ? null : (V) this.values[entry];
+	}
+
+	/**
+	 * Checks whether the key is in the map.
+	 *
+	 * @param  int the key
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean containsKey(int key) {
+		return this.find(key) >= 0;
+	}
+
+	/**
+	 * Puts the value against the key. A key already in the map keeps its
+	 * place in the order, and a new one goes at the end.
+	 *
+	 * @param  int the key
+	 * @param  V the value, which cannot be null
+	 * @return V the value the key had before, or null
+	 * @author David Jones
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+
+		if (value == null) {
+			throw new NullPointerException("The value cannot be null.");
+		}
+
+		int entry = this.find(key);
+		if (entry >= 0) {
+			V previous = (V) this.values[entry];
+			this.values[entry] = value;
+			return previous;
+		}
+
+		if (this.end == this.keys.length) {
+			this.makeRoom();
+		}
+
+		entry = this.end++;
+		this.keys[entry]   = key;
+		this.values[entry] = value;
+		this.size++;
+		this.modCount++;
+
+		// The table is kept at most half full so probes stay short
+		if (this.size * 2 > this.slots.length) {
+			this.allocateSlots(this.slots.length);
+			this.rehash();
+		} else {
+			this.insertSlot(key, entry);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Removes the key from the map.
+	 *
+	 * @param  int the key
+	 * @return V the value the key had, or null if it was not in the map
+	 * @author David Jones
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+
+		int slot = this.findSlot(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		int entry = entryAt(this.slots[slot]);
+		V previous = (V) this.values[entry];
+
+		this.values[entry] = null;
+		this.size--;
+		this.modCount++;
+		this.deleteSlot(slot);
+
+		// Close the gaps once they take up more room than the entries
+		if (this.end - this.size > Math.max(this.size, MIN_CAPACITY)) {
+			this.compact();
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Returns a copy of the map, made by copying its arrays.
+	 *
+	 * @return RecordMap<V>
+	 * @author David Jones
+	 */
+	public RecordMap<V> snapshot() {
+		IntRecordMap<V> copy = new IntRecordMap<V>(0);
+		copy.keys   = this.keys.clone();
+		copy.values = this.values.clone();
+		copy.slots  = this.slots.clone();
+		copy.shift  = this.shift;
+		copy.end    = this.end;
+		copy.size   = this.size;
+
+		return copy;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	@Override
+	public V get(Object key) {
+		return key instanceof Integer ? this.get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && this.containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public V put(Integer key, V value) {
+		return this.put(key.intValue(), value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return key instanceof Integer ? this.remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(this.values, 0, this.end, null);
+		Arrays.fill(this.slots, 0);
+		this.end  = 0;
+		this.size = 0;
+		this.modCount++;
+	}
+
+	@Override
+	public Set<Integer> keySet() {
+		return new AbstractSet<Integer>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return new EntryIterator<Integer>() {
+					@Override
+					Integer get(int entry) {
+						return keys[entry];
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+		};
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new EntryIterator<V>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					V get(int entry) {
+						return (V) values[entry];
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, V>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, V>>() {
+			@Override
+			public Iterator<Map.Entry<Integer, V>> iterator() {
+				return new EntryIterator<Map.Entry<Integer, V>>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					Map.Entry<Integer, V> get(int entry) {
+						return new AbstractMap.SimpleEntry<Integer, V>(keys[entry], (V) values[entry]) {
+							@Override
+							public V setValue(V value) {
+								super.setValue(value);
+								return IntRecordMap.this.put(this.getKey().intValue(), value);
+							}
+						};
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Walks the entries in the order they were added, skipping the gaps.
+	 */
+	private abstract class EntryIterator<T> implements Iterator<T> {
+
+		private int next = 0;
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		abstract T get(int entry);
+
+		@Override
+		public boolean hasNext() {
+			while (this.next < end && values[this.next] == null) {
+				this.next++;
+			}
+
+			return this.next < end;
+		}
+
+		@Override
+		public T next() {
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			this.last = this.next++;
+			return this.get(this.last);
+		}
+
+		@Override
+		public void remove() {
+			if (this.last < 0) {
+				throw new IllegalStateException();
+			}
+
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			int slot = findSlot(keys[this.last]);
+			values[this.last] = null;
+			size--;
+			modCount++;
+			deleteSlot(slot);
+
+			// Compacting would move the entries under the iterator, so the gap is left
+			this.expectedModCount = modCount;
+			this.last = -1;
+		}
+	}
+
+	private int find(int key) {
+		int slot = this.findSlot(key);
+		return slot < 0 ? -1 : entryAt(this.slots[slot]);
+	}
+
+	private int findSlot(int key) {
+		int mask = this.slots.length - 1;
+		int slot = (key * GOLDEN_RATIO) >>> this.shift;
+
+		while (true) {
+			long packed = this.slots[slot];
+			if (packed == 0) {
+				return -1;
+			}
+
+			if ((int) (packed >>> 32) == key) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void insertSlot(int key, int entry) {
+		int mask = this.slots.length - 1;
+		int slot = (key * GOLDEN_RATIO) >>> this.shift;
+
+		while (this.slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+
+		this.slots[slot] = ((long) key << 32) | (entry + 1);
+	}
+
+	/**
+	 * Empties a slot and moves later slots of the same probe run back into
+	 * it, so lookups never need to step over a deleted slot.
+	 */
+	private void deleteSlot(int slot) {
+		int mask = this.slots.length - 1;
+		int gap  = slot;
+		int next = (gap + 1) & mask;
+
+		while (this.slots[next] != 0) {
+			int home = ((int) (this.slots[next] >>> 32) * GOLDEN_RATIO) >>> this.shift;
+
+			// Move the slot back if its home is not between the gap and where it is
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				this.slots[gap] = this.slots[next];
+				gap = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		this.slots[gap] = 0;
+	}
+
+	private static int entryAt(long packed) {
+		return (int) packed - 1;
+	}
+
+	private void makeRoom() {
+		if (this.size < this.end) {
+			this.compact();
+		}
+
+		if (this.end == this.keys.length) {
+			int capacity = this.keys.length * 2;
+			this.keys   = Arrays.copyOf(this.keys, capacity);
+			this.values = Arrays.copyOf(this.values, capacity);
+		}
+	}
+
+	private void compact() {
+		int to = 0;
+		for (int from = 0; from < this.end; from++) {
+			if (this.values[from] != null) {
+				this.keys[to]   = this.keys[from];
+				this.values[to] = this.values[from];
+				to++;
+			}
+		}
+
+		Arrays.fill(this.values, to, this.end, null);
+		this.end = to;
+		this.modCount++;
+
+		Arrays.fill(this.slots, 0);
+		this.rehash();
+	}
+
+	private void allocateSlots(int entries) {
+		// A power of two at least twice the number of entries
+		int capacity = Integer.highestOneBit(Math.max(entries, MIN_CAPACITY) * 2 - 1) << 1;
+
+		this.slots = new long[capacity];
+		this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+	}
+
+	private void rehash() {
+		for (int entry = 0; entry < this.end; entry++) {
+			if (this.values[entry] != null) {
+				this.insertSlot(this.keys[entry], entry);
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+
+public class IntRecordMapTest {
+
+	@Test
+	public void testKeepsTheOrderEntriesWereAddedIn() {
+		IntRecordMap<String> map = new IntRecordMap<String>();
+		map.put(3, "three");
+		map.put(1, "one");
+		map.put(2, "two");
+
+		assertEquals(Arrays.asList(3, 1, 2), new ArrayList<Integer>(map.keySet()));
+		assertEquals(Arrays.asList("three", "one", "two"), new ArrayList<String>(map.values()));
+	}
+
+	@Test
+	public void testReplacingAValueKeepsItsPlace() {
+		IntRecordMap<String> map = new IntRecordMap<String>();
+		map.put(1, "one");
+		map.put(2, "two");
+
+		assertEquals("The old value should be returned.", "one", map.put(1, "uno"));
+		assertEquals(Arrays.asList(1, 2), new ArrayList<Integer>(map.keySet()));
+		assertEquals("uno", map.get(1));
+	}
+
+	@Test
+	public void testRemovingAndPuttingBackMovesToTheEnd() {
+		IntRecordMap<String> map = new IntRecordMap<String>();
+		map.put(1, "one");
+		map.put(2, "two");
+
+		map.remove(1);
+		map.put(1, "one");
+
+		assertEquals(Arrays.asList(2, 1), new ArrayList<Integer>(map.keySet()));
+	}
+
+	@Test
+	public void testASnapshotIsNotReachedByLaterChanges() {
+		IntRecordMap<String> map = new IntRecordMap<String>();
+		map.put(1, "one");
+		map.put(2, "two");
+
+		RecordMap<String> snapshot = map.snapshot();
+		map.put(1, "uno");
+		map.remove(2);
+		map.put(3, "three");
+
+		assertEquals(Arrays.asList(1, 2), new ArrayList<Integer>(snapshot.keySet()));
+		assertEquals("one", snapshot.get(1));
+		assertEquals("two", snapshot.get(2));
+		assertNull(snapshot.get(3));
+	}
+
+	@Test
+	public void testBehavesLikeALinkedHashMap() {
+		IntRecordMap<Integer> map = new IntRecordMap<Integer>();
+		LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>();
+		Random random = new Random(42);
+
+		for (int i = 0; i < 100000; i++) {
+			int key = random.nextInt(5000) - 1000;
+
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, i), map.put(key, Integer.valueOf(i)));
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		assertEquals(new ArrayList<Map.Entry<Integer, Integer>>(expected.entrySet()), new ArrayList<Map.Entry<Integer, Integer>>(map.entrySet()));
+		assertEquals("The maps should be equal.", expected, map);
+
+		for (int key = -1000; key < 4000; key++) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		IntRecordMap<String> map = new IntRecordMap<String>();
+		for (int i = 1; i <= 20; i++) {
+			map.put(i, "value");
+		}
+
+		Iterator<Integer> iterator = map.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() % 2 == 0) {
+				iterator.remove();
+			}
+		}
+
+		assertEquals(10, map.size());
+		assertFalse(map.containsKey(4));
+		assertTrue(map.containsKey(5));
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testAddingWhileIteratingThrows() {
+		IntRecordMap<String> map = new IntRecordMap<String>();
+		map.put(1, "one");
+		map.put(2, "two");
+
+		Iterator<Integer> iterator = map.keySet().iterator();
+		iterator.next();
+		map.put(3, "three");
+		iterator.next();
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullValuesAreRejected() {
+		new IntRecordMap<String>().put(1, null);
+	}
+}
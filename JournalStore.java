@@ -0,0 +1,353 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Saves the contact manager as a snapshot plus an append-only journal.
+ *
+ * A flush turns every contact and meeting added or changed since the last
+ * flush, which the snapshot it is given lists, into a small record,
+ * appends the records to the journal and forces them to disk, so its cost
+ * depends on how much has changed rather than on how much is stored. Once
+ * the journal holds enough records a flush writes a full snapshot instead
+ * and empties the journal.
+ *
+ * Loading reads the snapshot and then replays the journal over it, straight
+ * into the maps the snapshot was loaded into. Records replace whatever is
+ * stored under the same ID, so replaying a journal that is already in the
+ * snapshot does no harm. A record cut short by a
+ * crash, or failing its checksum, ends the replay and is cut off the
+ * journal so later records are appended after the last good one. For the
+ * same reason a flush cuts the journal back to the end of the last flush
+ * that succeeded before appending, so a write that failed partway leaves
+ * nothing behind for the next one to follow.
+ *
+ * Replacing all the contacts or meetings at once, with setContacts or
+ * setMeetings, marks everything changed, so the next flush writes a
+ * snapshot.
+ */
+public class JournalStore implements ContactManagerStore {
+
+	static final int DEFAULT_COMPACT_AFTER = 10000;
+
+	private static final byte CONTACT = 1;
+	private static final byte MEETING = 2;
+
+	private final ContactManagerStore snapshotStore;
+	private final String journalFilename;
+	private final int compactAfter;
+
+	private int journalRecords;
+	private long journalLength;
+
+	JournalStore(ContactManagerStore snapshotStore, String journalFilename) {
+		this(snapshotStore, journalFilename, DEFAULT_COMPACT_AFTER);
+	}
+
+	JournalStore(ContactManagerStore snapshotStore, String journalFilename, int compactAfter) {
+
+		if (snapshotStore == null) {
+			throw new NullPointerException("The snapshot store cannot be null.");
+		}
+
+		if (journalFilename == null) {
+			throw new NullPointerException("The journal filename cannot be null.");
+		}
+
+		if (compactAfter < 1) {
+			throw new IllegalArgumentException("The journal must hold at least one record before compacting.");
+		}
+
+		this.snapshotStore   = snapshotStore;
+		this.journalFilename = journalFilename;
+		this.compactAfter    = compactAfter;
+		this.journalRecords  = 0;
+		this.journalLength   = 0;
+	}
+
+	/**
+	 * A getter for the journal filename.
+	 * @return String
+	 * @author David Jones
+	 */
+	public String getJournalFilename() {
+		return this.journalFilename;
+	}
+
+	/**
+	 * Returns the number of records written to the journal since the last
+	 * snapshot.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int getJournalRecords() {
+		return this.journalRecords;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void load(ContactManagerImpl contactManager) throws IOException {
+		this.snapshotStore.load(contactManager);
+
+		File journal = new File(this.journalFilename);
+		if (!journal.exists()) {
+			this.journalRecords = 0;
+			this.journalLength  = 0;
+			return;
+		}
+
+		IntRecordMap<Contact> contacts = contactManager.getContacts();
+
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+		long journalLength = journal.length();
+		long validLength   = 0;
+		int records        = 0;
+
+		try {
+			byte[] record;
+			while ((record = readRecord(input, journalLength)) != null) {
+				DataInputStream body = new DataInputStream(new ByteArrayInputStream(record));
+				byte type = body.readByte();
+
+				if (type == CONTACT) {
+					contactManager.replayContact(RecordCodec.readContact(body, contactManager.getCompressedNotes()));
+				} else if (type == MEETING) {
+					contactManager.replayMeeting(RecordCodec.readMeeting(body, contacts, contactManager.getContactResolver(), contactManager.getMeetingNotes()));
+				} else {
+					throw new IOException("Unknown journal record type " + type + ".");
+				}
+
+				validLength += 8 + record.length;
+				records++;
+			}
+		} finally {
+			input.close();
+		}
+
+		if (validLength < journalLength) {
+			RandomAccessFile file = new RandomAccessFile(journal, "rw");
+			try {
+				file.setLength(validLength);
+			} finally {
+				file.close();
+			}
+		}
+
+		this.journalRecords = records;
+		this.journalLength  = validLength;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void flush(StoreSnapshot snapshot) throws IOException {
+		DirtySet dirtySet = snapshot.getDirtySet();
+
+		if (this.compactsOn(dirtySet)) {
+			this.compact(snapshot);
+			return;
+		}
+
+		if (dirtySet.isEmpty()) {
+			return;
+		}
+
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		int framed = records(snapshot, records);
+
+		if (framed == 0) {
+			return;
+		}
+
+		RandomAccessFile file = new RandomAccessFile(this.journalFilename, "rw");
+		try {
+			// Anything past the last good flush is what is left of a write that failed
+			file.setLength(this.journalLength);
+			file.seek(this.journalLength);
+			this.write(file, records.toByteArray());
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+
+		this.journalRecords += framed;
+		this.journalLength  += records.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Only the changed records are journalled, so only those are asked
+	 * for, unless the flush is going to compact, which writes everything.
+	 *
+	 * @author David Jones
+	 */
+	@Override
+	public DirtySet recordsNeeded(DirtySet changes) {
+		return this.compactsOn(changes) ? DirtySet.everything() : changes;
+	}
+
+	/**
+	 * Checks whether a flush with these changes writes a full snapshot
+	 * rather than adding to the journal.
+	 */
+	private boolean compactsOn(DirtySet changes) {
+		int changed = changes.getContactIds().size() + changes.getMeetingIds().size();
+		return changes.isAllChanged() || this.journalRecords + changed >= this.compactAfter;
+	}
+
+	/**
+	 * Writes the records to the journal at its current position. Tests
+	 * override this to fail partway through a write.
+	 *
+	 * @param  RandomAccessFile the journal
+	 * @param  byte[] the framed records
+	 * @return void
+	 * @author David Jones
+	 */
+	void write(RandomAccessFile file, byte[] records) throws IOException {
+		file.write(records);
+	}
+
+	/**
+	 * Writes a full snapshot and empties the journal.
+	 *
+	 * @param  StoreSnapshot what to save
+	 * @return void
+	 * @author David Jones
+	 */
+	public void compact(StoreSnapshot snapshot) throws IOException {
+		this.snapshotStore.flush(snapshot);
+
+		// Only empty the journal once the snapshot holds everything in it
+		FileOutputStream file = new FileOutputStream(this.journalFilename, false);
+		try {
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+
+		this.journalRecords = 0;
+		this.journalLength  = 0;
+	}
+
+	/**
+	 * Frames the changed contacts and then the changed meetings, each with
+	 * its length and checksum. IDs are handed out in order, so going by ID
+	 * replays new records in the order they were made. A changed ID with
+	 * no record makes no frame.
+	 *
+	 * @param  StoreSnapshot the snapshot being flushed
+	 * @param  ByteArrayOutputStream where to write the frames
+	 * @return int the number of records framed
+	 * @author David Jones
+	 */
+	private static int records(StoreSnapshot snapshot, ByteArrayOutputStream records) throws IOException {
+		DataOutputStream output = new DataOutputStream(records);
+		int framed = 0;
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		DataOutputStream recordOutput = new DataOutputStream(record);
+
+		int[] contactIds = sortedIds(snapshot.getDirtySet().getContactIds());
+		for (int i = 0; i < contactIds.length; i++) {
+			Contact contact = snapshot.getContacts().get(contactIds[i]);
+			if (contact != null) {
+				record.reset();
+				recordOutput.writeByte(CONTACT);
+				RecordCodec.writeContact(recordOutput, contact);
+				frame(output, record.toByteArray());
+				framed++;
+			}
+		}
+
+		int[] meetingIds = sortedIds(snapshot.getDirtySet().getMeetingIds());
+		for (int i = 0; i < meetingIds.length; i++) {
+			Meeting meeting = snapshot.getMeetings().get(meetingIds[i]);
+			if (meeting != null) {
+				record.reset();
+				recordOutput.writeByte(MEETING);
+				RecordCodec.writeMeeting(recordOutput, meeting);
+				frame(output, record.toByteArray());
+				framed++;
+			}
+		}
+
+		output.flush();
+		return framed;
+	}
+
+	private static void frame(DataOutputStream output, byte[] record) throws IOException {
+		CRC32 checksum = new CRC32();
+		checksum.update(record);
+
+		output.writeInt(record.length);
+		output.writeInt((int) checksum.getValue());
+		output.write(record);
+	}
+
+	private static int[] sortedIds(Set<Integer> ids) {
+		int[] sorted = new int[ids.size()];
+		int i = 0;
+
+		Iterator<Integer> iterator = ids.iterator();
+		while (iterator.hasNext()) {
+			sorted[i++] = iterator.next();
+		}
+
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Reads the next framed record, or returns null at the end of the
+	 * journal or at a record that was not written in full.
+	 *
+	 * @param  DataInputStream where to read from
+	 * @param  long the length of the journal, which no record can be longer than
+	 * @return byte[]
+	 * @author David Jones
+	 */
+	private static byte[] readRecord(DataInputStream input, long journalLength) throws IOException {
+		try {
+			int length   = input.readInt();
+			int expected = input.readInt();
+
+			if (length < 1 || length > journalLength) {
+				return null;
+			}
+
+			byte[] record = new byte[length];
+			input.readFully(record);
+
+			CRC32 checksum = new CRC32();
+			checksum.update(record);
+
+			if ((int) checksum.getValue() != expected) {
+				return null;
+			}
+
+			return record;
+
+		} catch (EOFException ex) {
+			return null;
+		}
+	}
+}
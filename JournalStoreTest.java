@@ -0,0 +1,258 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+
+public class JournalStoreTest {
+
+	private final String SNAPSHOT = "journal-test.txt";
+	private final String JOURNAL  = "journal-test.journal";
+
+	private Calendar aFutureDate;
+	private Calendar aPastDate;
+
+	@Before
+	public void setUp() {
+		Calendar futureDate = Calendar.getInstance();
+		futureDate.add(Calendar.YEAR, 1);
+		this.aFutureDate = futureDate;
+
+		Calendar pastDate = Calendar.getInstance();
+		pastDate.set(2010, 01, 01);
+		this.aPastDate = pastDate;
+
+		this.deleteFiles();
+	}
+
+	@After
+	public void tearDown() {
+		this.deleteFiles();
+	}
+
+	@Test
+	public void testFlushAppendsOnlyTheChangesToTheJournal() {
+		ContactManagerImpl contactManager = this.newContactManager(100);
+		int contactId = contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.flush();
+
+		long lengthAfterFirstFlush = new File(JOURNAL).length();
+
+		Set<Contact> contacts = contactManager.getContacts(contactId);
+		contactManager.addFutureMeeting(contacts, this.aFutureDate);
+		contactManager.flush();
+
+		JournalStore store = (JournalStore) contactManager.getStore();
+
+		assertFalse(new File(SNAPSHOT).exists());
+		assertTrue(new File(JOURNAL).length() > lengthAfterFirstFlush);
+		assertEquals("The journal should hold one record per change.", 2, store.getJournalRecords());
+	}
+
+	@Test
+	public void testLoadReplaysTheJournal() {
+		ContactManagerImpl contactManager = this.newContactManager(100);
+		int contactId = contactManager.addNewContact("David Jones", "Some notes");
+		Set<Contact> contacts = contactManager.getContacts(contactId);
+
+		contactManager.addFutureMeeting(contacts, this.aFutureDate);
+		contactManager.addNewPastMeeting(contacts, this.aPastDate, "Old notes");
+		contactManager.addMeetingNotes(2, "New notes");
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = this.newContactManager(100);
+
+		assertEquals("The contact manager should contain 1 contact", 1, reloaded.getContacts("").size());
+		assertEquals("The contact manager should contain 2 meetings", 2, reloaded.getMeetings().size());
+		assertEquals("The latest notes should win.", "New notes", reloaded.getPastMeeting(2).getNotes());
+		assertEquals("New IDs should follow on from the journal.", 2, reloaded.addNewContact("John Smith", "Some notes"));
+	}
+
+	@Test
+	public void testFlushCompactsTheJournalIntoASnapshot() {
+		ContactManagerImpl contactManager = this.newContactManager(3);
+		contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.addNewContact("John Smith", "Some notes");
+		contactManager.flush();
+		contactManager.addNewContact("Jane Doe", "Some notes");
+		contactManager.flush();
+
+		assertTrue(new File(SNAPSHOT).exists());
+		assertEquals("The journal should be empty after compacting.", 0, new File(JOURNAL).length());
+
+		ContactManagerImpl reloaded = this.newContactManager(3);
+		assertEquals("The contact manager should contain 3 contacts", 3, reloaded.getContacts("").size());
+	}
+
+	@Test
+	public void testLoadIgnoresATornRecordAtTheEnd() throws IOException {
+		ContactManagerImpl contactManager = this.newContactManager(100);
+		contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.flush();
+
+		FileOutputStream journal = new FileOutputStream(JOURNAL, true);
+		journal.write(new byte[] {0, 0, 0, 40, 1, 2});
+		journal.close();
+
+		ContactManagerImpl reloaded = this.newContactManager(100);
+		reloaded.addNewContact("John Smith", "Some notes");
+		reloaded.flush();
+
+		ContactManagerImpl reloadedAgain = this.newContactManager(100);
+		assertEquals("The contact manager should contain 2 contacts", 2, reloadedAgain.getContacts("").size());
+	}
+
+	@Test
+	public void testReplacedContactsAreSaved() {
+		ContactManagerImpl contactManager = this.newContactManager(100);
+		contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.flush();
+
+		Map<Integer, Contact> contacts = new LinkedHashMap<Integer, Contact>(contactManager.getContacts());
+		contacts.put(7, new ContactImpl(7, "John Smith", "Some notes"));
+		contactManager.setContacts(contacts);
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = this.newContactManager(100);
+		assertEquals(Arrays.asList(1, 7), new ArrayList<Integer>(reloaded.getContacts().keySet()));
+	}
+
+	@Test
+	public void testAFlushAfterAFailedWriteLeavesNoTornRecord() {
+		final boolean[] fail = {false};
+		JournalStore store = new JournalStore(new SerializedStore(SNAPSHOT), JOURNAL, 100) {
+			@Override
+			void write(RandomAccessFile file, byte[] records) throws IOException {
+				if (fail[0]) {
+					file.write(records, 0, records.length / 2);
+					throw new IOException("The disk is full.");
+				}
+
+				super.write(file, records);
+			}
+		};
+
+		ContactManagerImpl contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), store);
+		contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.flush();
+
+		contactManager.addNewContact("John Smith", "Some notes");
+		contactManager.addNewContact("Jane Doe", "Some notes");
+		fail[0] = true;
+
+		try {
+			contactManager.flush();
+			fail("The failed write should be reported.");
+		} catch (UncheckedIOException ex) {
+			// Expected
+		}
+
+		fail[0] = false;
+		contactManager.addNewContact("Ann Lee", "Some notes");
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = this.newContactManager(100);
+		assertEquals("Every contact after the failed write should be replayed.", 4, reloaded.getContacts().size());
+	}
+
+	@Test
+	public void testLoadReplaysIntoTheMapsTheSnapshotWasLoadedInto() {
+		ContactManagerImpl contactManager = this.newContactManager(3);
+		int davidId = contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.addNewPastMeeting(contactManager.getContacts(davidId), this.aPastDate, "Old notes");
+		contactManager.addNewContact("John Smith", "Some notes");
+		contactManager.flush();
+
+		int janeId = contactManager.addNewContact("Jane Doe", "Some notes");
+		contactManager.addMeetingNotes(1, "Changed notes");
+		contactManager.flush();
+
+		final List<Object> loaded = new ArrayList<Object>();
+		JournalStore store = new JournalStore(new SerializedStore(SNAPSHOT) {
+			@Override
+			public void load(ContactManagerImpl contactManager) throws IOException {
+				super.load(contactManager);
+				loaded.add(contactManager.getContacts());
+				loaded.add(contactManager.getMeetings());
+			}
+		}, JOURNAL, 3);
+
+		ContactManagerImpl reloaded = new ContactManagerImpl(Clock.systemDefaultZone(), store);
+		Contact david = reloaded.getContacts(davidId).iterator().next();
+
+		assertSame("The journal should be replayed into the contacts loaded.", loaded.get(0), reloaded.getContacts());
+		assertSame("The journal should be replayed into the meetings loaded.", loaded.get(1), reloaded.getMeetings());
+		assertEquals(Arrays.asList(janeId), new ArrayList<Integer>(ids(reloaded.getContacts("Jane Doe"))));
+		assertEquals("Changed notes", reloaded.getPastMeeting(1).getNotes());
+		assertEquals(1, reloaded.searchMeetingNotes("changed").size());
+		assertEquals(0, reloaded.searchMeetingNotes("old").size());
+		assertEquals("Replayed meetings should be indexed.", 1, reloaded.getPastMeetingListFor(david).size());
+		assertEquals(2, store.getJournalRecords());
+		assertTrue(new File(SNAPSHOT).exists());
+	}
+
+	@Test
+	public void testOnlyRecordsWrittenAreCounted() throws IOException {
+		JournalStore store = new JournalStore(new SerializedStore(SNAPSHOT), JOURNAL, 100);
+		IntRecordMap<Contact> contacts = new IntRecordMap<Contact>();
+		contacts.put(1, new ContactImpl(1, "David Jones", "Some notes"));
+
+		DirtySet dirtySet = new DirtySet();
+		dirtySet.contactChanged(1);
+		dirtySet.contactChanged(2);
+		dirtySet.meetingChanged(1);
+
+		store.flush(new StoreSnapshot(contacts, new IntRecordMap<Meeting>(), dirtySet, new IdAllocator()));
+		assertEquals("Changed IDs with no record should not be counted.", 1, store.getJournalRecords());
+	}
+
+	@Test
+	public void testAFlushToTheJournalCopiesOnlyTheChangedRecords() {
+		final List<Integer> copied = new ArrayList<Integer>();
+		JournalStore store = new JournalStore(new SerializedStore(SNAPSHOT), JOURNAL, 100) {
+			@Override
+			public void flush(StoreSnapshot snapshot) throws IOException {
+				copied.clear();
+				copied.add(snapshot.getContacts().size());
+				copied.add(snapshot.getMeetings().size());
+				super.flush(snapshot);
+			}
+		};
+
+		ContactManagerImpl contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), store);
+		for (int i = 0; i < 5; i++) {
+			int id = contactManager.addNewContact("David Jones", "Some notes");
+			contactManager.addFutureMeeting(contactManager.getContacts(id), this.aFutureDate);
+		}
+		contactManager.flush();
+
+		contactManager.addNewContact("Jane Doe", "Some notes");
+		contactManager.flush();
+
+		assertEquals("Only the new contact should be copied.", Arrays.asList(1, 0), copied);
+		assertEquals(6, this.newContactManager(100).getContacts("").size());
+	}
+
+	private static Set<Integer> ids(Set<Contact> contacts) {
+		Set<Integer> ids = new LinkedHashSet<Integer>();
+
+		Iterator<Contact> iterator = contacts.iterator();
+		while (iterator.hasNext()) {
+			ids.add(iterator.next().getId());
+		}
+
+		return ids;
+	}
+
+	private ContactManagerImpl newContactManager(int compactAfter) {
+		JournalStore store = new JournalStore(new SerializedStore(SNAPSHOT), JOURNAL, compactAfter);
+		return new ContactManagerImpl(Clock.systemDefaultZone(), store);
+	}
+
+	private void deleteFiles() {
+		new File(SNAPSHOT).delete();
+		new File(SNAPSHOT + ".prev").delete();
+		new File(JOURNAL).delete();
+	}
+}
@@ -0,0 +1,281 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads records from JSON Lines written by JsonLinesRecordWriter, or by
+ * another tool using the same fields. Fields may come in any order and
+ * unknown fields holding strings, numbers, booleans or null are ignored.
+ *
+ * Lines are read one at a time, so memory use does not grow with the size
+ * of the input. Blank lines are skipped.
+ */
+public class JsonLinesRecordReader implements RecordReader {
+
+	private final BufferedReader input;
+	private long line;
+
+	// The line being parsed and the position in it
+	private String text;
+	private int position;
+
+	JsonLinesRecordReader(Reader input) {
+
+		if (input == null) {
+			throw new NullPointerException("The input cannot be null.");
+		}
+
+		this.input = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input, 65536);
+		this.line  = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public ExchangeRecord read() throws IOException {
+		String text;
+
+		do {
+			text = this.input.readLine();
+			if (text == null) {
+				return null;
+			}
+			this.line++;
+		} while (text.trim().isEmpty());
+
+		this.text     = text;
+		this.position = 0;
+
+		try {
+			return this.parseRecord();
+		} catch (IllegalArgumentException ex) {
+			throw new IOException("Line " + this.line + ": " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public long getLineNumber() {
+		return this.line;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void close() throws IOException {
+		this.input.close();
+	}
+
+	private ExchangeRecord parseRecord() {
+		String kind   = null;
+		Integer id    = null;
+		String name   = null;
+		String notes  = null;
+		String date   = null;
+		int[] contactIds = null;
+
+		this.expect('{');
+
+		if (this.peek() != '}') {
+			do {
+				String key = this.parseString();
+				this.expect(':');
+
+				if (key.equals("kind")) {
+					kind = this.parseString();
+				} else if (key.equals("id")) {
+					id = (int) this.parseNumber();
+				} else if (key.equals("name")) {
+					name = this.parseNullableString();
+				} else if (key.equals("notes")) {
+					notes = this.parseNullableString();
+				} else if (key.equals("date")) {
+					date = this.parseNullableString();
+				} else if (key.equals("contacts")) {
+					contactIds = this.parseIds();
+				} else {
+					this.skipValue();
+				}
+			} while (this.accept(','));
+		}
+
+		this.expect('}');
+
+		if (this.peek() != -1) {
+			throw new IllegalArgumentException("There is text after the end of the object.");
+		}
+
+		if (kind == null || id == null) {
+			throw new IllegalArgumentException("A record must have a kind and an ID.");
+		}
+
+		long time = 0;
+		if (!ExchangeRecord.CONTACT.equals(kind)) {
+			if (date == null) {
+				throw new IllegalArgumentException("A meeting must have a date.");
+			}
+
+			time = ExchangeRecord.parseTime(date);
+		}
+
+		return new ExchangeRecord(kind, id, name, notes, time, contactIds);
+	}
+
+	private String parseNullableString() {
+		if (this.peek() == 'n') {
+			this.expectWord("null");
+			return null;
+		}
+
+		return this.parseString();
+	}
+
+	private String parseString() {
+		this.expect('"');
+		StringBuilder value = new StringBuilder();
+
+		while (true) {
+			if (this.position >= this.text.length()) {
+				throw new IllegalArgumentException("A string is never closed.");
+			}
+
+			char c = this.text.charAt(this.position++);
+
+			if (c == '"') {
+				return value.toString();
+			}
+
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+
+			if (this.position >= this.text.length()) {
+				throw new IllegalArgumentException("A string ends in the middle of an escape.");
+			}
+
+			char escape = this.text.charAt(this.position++);
+			switch (escape) {
+				case '"':  value.append('"'); break;
+				case '\\': value.append('\\'); break;
+				case '/':  value.append('/'); break;
+				case 'b':  value.append('\b'); break;
+				case 'f':  value.append('\f'); break;
+				case 'n':  value.append('\n'); break;
+				case 'r':  value.append('\r'); break;
+				case 't':  value.append('\t'); break;
+				case 'u':
+					if (this.position + 4 > this.text.length()) {
+						throw new IllegalArgumentException("A string ends in the middle of an escape.");
+					}
+					value.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+					this.position += 4;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown escape '\\" + escape + "'.");
+			}
+		}
+	}
+
+	private long parseNumber() {
+		return Long.parseLong(this.skipNumber());
+	}
+
+	private String skipNumber() {
+		this.skipWhitespace();
+		int start = this.position;
+
+		while (this.position < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.position)) >= 0) {
+			this.position++;
+		}
+
+		String number = this.text.substring(start, this.position);
+		if (number.isEmpty()) {
+			throw new IllegalArgumentException("A number was expected at column " + (start + 1) + ".");
+		}
+
+		return number;
+	}
+
+	private int[] parseIds() {
+		List<Integer> ids = new ArrayList<Integer>();
+
+		this.expect('[');
+		if (this.peek() != ']') {
+			do {
+				ids.add((int) this.parseNumber());
+			} while (this.accept(','));
+		}
+		this.expect(']');
+
+		int[] result = new int[ids.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ids.get(i);
+		}
+
+		return result;
+	}
+
+	private void skipValue() {
+		int c = this.peek();
+
+		if (c == '"') {
+			this.parseString();
+		} else if (c == 'n') {
+			this.expectWord("null");
+		} else if (c == 't') {
+			this.expectWord("true");
+		} else if (c == 'f') {
+			this.expectWord("false");
+		} else if (c == '[') {
+			this.parseIds();
+		} else {
+			this.skipNumber();
+		}
+	}
+
+	private void expectWord(String word) {
+		this.skipWhitespace();
+
+		if (!this.text.startsWith(word, this.position)) {
+			throw new IllegalArgumentException("'" + word + "' was expected at column " + (this.position + 1) + ".");
+		}
+
+		this.position += word.length();
+	}
+
+	private void expect(char expected) {
+		if (!this.accept(expected)) {
+			throw new IllegalArgumentException("'" + expected + "' was expected at column " + (this.position + 1) + ".");
+		}
+	}
+
+	private boolean accept(char expected) {
+		if (this.peek() == expected) {
+			this.position++;
+			return true;
+		}
+
+		return false;
+	}
+
+	private int peek() {
+		this.skipWhitespace();
+		return this.position < this.text.length() ? this.text.charAt(this.position) : -1;
+	}
+
+	private void skipWhitespace() {
+		while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+			this.position++;
+		}
+	}
+}
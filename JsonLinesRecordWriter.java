@@ -0,0 +1,109 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes records as JSON Lines, one JSON object to a line, such as
+ *
+ *   {"kind":"contact","id":1,"name":"David Jones","notes":"Some notes"}
+ *   {"kind":"past","id":2,"date":"2016-03-01T10:15:30Z","contacts":[1],"notes":"Agreed the budget"}
+ *
+ * Dates are ISO-8601 instants. Fields without a value are left out.
+ */
+public class JsonLinesRecordWriter implements RecordWriter {
+
+	private final Writer output;
+
+	JsonLinesRecordWriter(Writer output) {
+
+		if (output == null) {
+			throw new NullPointerException("The output cannot be null.");
+		}
+
+		this.output = output instanceof BufferedWriter ? output : new BufferedWriter(output, 65536);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void write(ExchangeRecord record) throws IOException {
+		this.output.write("{\"kind\":");
+		this.writeString(record.getKind());
+		this.output.write(",\"id\":");
+		this.output.write(Integer.toString(record.getId()));
+
+		if (record.getName() != null) {
+			this.output.write(",\"name\":");
+			this.writeString(record.getName());
+		}
+
+		if (!record.isContact()) {
+			this.output.write(",\"date\":");
+			this.writeString(ExchangeRecord.formatTime(record.getTime()));
+			this.output.write(",\"contacts\":[");
+
+			int[] contactIds = record.getContactIds();
+			for (int i = 0; i < contactIds.length; i++) {
+				if (i > 0) {
+					this.output.write(',');
+				}
+				this.output.write(Integer.toString(contactIds[i]));
+			}
+
+			this.output.write(']');
+		}
+
+		if (record.getNotes() != null) {
+			this.output.write(",\"notes\":");
+			this.writeString(record.getNotes());
+		}
+
+		this.output.write("}\n");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.output.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void close() throws IOException {
+		this.output.close();
+	}
+
+	private void writeString(String value) throws IOException {
+		this.output.write('"');
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			switch (c) {
+				case '"':  this.output.write("\\\""); break;
+				case '\\': this.output.write("\\\\"); break;
+				case '\n': this.output.write("\\n"); break;
+				case '\r': this.output.write("\\r"); break;
+				case '\t': this.output.write("\\t"); break;
+				case '\b': this.output.write("\\b"); break;
+				case '\f': this.output.write("\\f"); break;
+				default:
+					if (c < 0x20) {
+						this.output.write(String.format("\\u%04x", (int) c));
+					} else {
+						this.output.write(c);
+					}
+			}
+		}
+
+		this.output.write('"');
+	}
+}
@@ -0,0 +1,651 @@
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves the contact manager to a file that is memory-mapped when loaded,
+ * so the contact manager is usable as soon as the file is mapped.
+ *
+ * Loading only maps the file and reads its footer. Single contacts and
+ * meetings are then decoded straight from the mapped file when asked for
+ * by ID, using the sorted ID-to-offset tables at the end of the file.
+ * Everything is decoded into the contact manager the first time a query
+ * needs its indexes or a change is made (see loadAll).
+ *
+ * The file is laid out as:
+ *
+ *   magic "CMGM", format version
+ *   strings: each as length and UTF-8 bytes
+ *   string offsets: one int per string
+ *   contacts: id, name string, notes string (12 bytes each)
+ *   meetings: type, id, epoch millis, contact count, contact IDs,
+ *             and a notes string for past meetings
+ *   contact index: (id, offset) pairs sorted by id
+ *   meeting index: (id, offset) pairs sorted by id
+ *   footer: section offsets and counts, last contact and meeting IDs,
+ *           CRC32 of the records, CRC32 of the rest, magic
+ *
+ * Offsets are ints, so a file is limited to 2GB. A flush goes through an
+ * AtomicFile, which writes a new file and renames it into place, so a file
+ * that is still mapped is never changed underneath its readers.
+ *
+ * Loading does not read the whole file. It checks that the file is the
+ * length its trailer gives and checks the CRC of the header, the string
+ * offsets, the indexes and the footer, which is what finding a record
+ * depends on. Each record is checked to lie within its section as it is
+ * read, and the CRC of the strings and records is checked by loadAll,
+ * which reads them all anyway. If the current file fails the checks made
+ * on loading, the previous generation is mapped instead. Version 1 files
+ * have no CRCs in the footer and are only checked for their length. Files
+ * in any other format are loaded in full through BinaryStore.
+ */
+public class MappedStore implements ContactManagerStore {
+
+	static final int MAGIC   = 0x434D474D;
+	static final int VERSION = 2;
+
+	private static final int CONTACT_SIZE   = 12;
+	private static final int INDEX_SIZE     = 8;
+	private static final int FOOTER_SIZE    = 48;
+	private static final int V1_FOOTER_SIZE = 44;
+
+	private final String filename;
+	private final AtomicFile atomicFile;
+	private ContactResolver resolver;
+	private CompressedNotes contactNotes;
+	private CompressedNotes meetingNotes;
+
+	private ByteBuffer buffer;
+	private int stringOffsetsPos;
+	private int contactsPos;
+	private int contactCount;
+	private int meetingsPos;
+	private int meetingCount;
+	private int contactIndexPos;
+	private int meetingIndexPos;
+	private int stringCount;
+	private int recordsChecksum;
+	private boolean checksummed;
+
+	MappedStore(String filename) {
+
+		if (filename == null) {
+			throw new NullPointerException("The filename cannot be null.");
+		}
+
+		this.filename   = filename;
+		this.atomicFile = new AtomicFile(filename);
+	}
+
+	/**
+	 * A getter for the filename.
+	 * @return String
+	 * @author David Jones
+	 */
+	public String getFilename() {
+		return this.filename;
+	}
+
+	/**
+	 * Returns whether the store has a mapped file that has not yet been
+	 * loaded in full.
+	 *
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean isMapped() {
+		return this.buffer != null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Only maps the file. The contact manager is told to come back to this
+	 * store for records until it loads everything.
+	 *
+	 * @author David Jones
+	 */
+	@Override
+	public void load(ContactManagerImpl contactManager) throws IOException {
+		List<File> generations = this.atomicFile.completeGenerations();
+		IOException failure = null;
+
+		for (int i = 0; i < generations.size(); i++) {
+			try {
+				this.map(generations.get(i), contactManager);
+				return;
+			} catch (IOException ex) {
+				if (failure == null) {
+					failure = ex;
+				} else {
+					failure.addSuppressed(ex);
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Maps one generation of the file and checks what finding records
+	 * depends on, leaving the contact manager untouched if it fails.
+	 */
+	private void map(File file, ContactManagerImpl contactManager) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		MappedByteBuffer mapped;
+
+		try {
+			long length = AtomicFile.contentLength(file);
+
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("The file '" + file + "' is larger than 2GB.");
+			}
+
+			if (length < 8 + V1_FOOTER_SIZE || readMagic(randomAccessFile) != MAGIC) {
+				randomAccessFile.close();
+				new BinaryStore(this.filename).load(contactManager);
+				return;
+			}
+
+			mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+		} finally {
+			randomAccessFile.close();
+		}
+
+		int version = mapped.getInt(4);
+		if (version != VERSION && version != 1) {
+			throw new IOException("Unsupported file version " + version + ".");
+		}
+
+		int footer = mapped.capacity() - (version == 1 ? V1_FOOTER_SIZE : FOOTER_SIZE);
+		if (footer < 8 || mapped.getInt(mapped.capacity() - 4) != MAGIC) {
+			throw new IOException("The file '" + file + "' was not written in full.");
+		}
+
+		int stringOffsetsPos = mapped.getInt(footer);
+		int contactsPos      = mapped.getInt(footer + 4);
+		int contactCount     = mapped.getInt(footer + 8);
+		int meetingsPos      = mapped.getInt(footer + 12);
+		int meetingCount     = mapped.getInt(footer + 16);
+		int contactIndexPos  = mapped.getInt(footer + 20);
+		int meetingIndexPos  = mapped.getInt(footer + 24);
+
+		if (version != 1 && mapped.getInt(footer + 40) != (int) MappedStore.indexChecksum(mapped, stringOffsetsPos, contactsPos, contactIndexPos, footer)) {
+			throw new IOException("The file '" + file + "' failed the checksum of its indexes.");
+		}
+
+		if (8 > stringOffsetsPos || stringOffsetsPos > contactsPos || (contactsPos - stringOffsetsPos) % 4 != 0
+			|| contactCount < 0 || meetingCount < 0
+			|| (long) contactsPos + (long) contactCount * CONTACT_SIZE != meetingsPos
+			|| meetingsPos > contactIndexPos
+			|| (long) contactIndexPos + (long) contactCount * INDEX_SIZE != meetingIndexPos
+			|| (long) meetingIndexPos + (long) meetingCount * INDEX_SIZE != footer) {
+			throw new IOException("The file '" + file + "' has sections that do not fit together.");
+		}
+
+		this.stringOffsetsPos = stringOffsetsPos;
+		this.contactsPos      = contactsPos;
+		this.contactCount     = contactCount;
+		this.meetingsPos      = meetingsPos;
+		this.meetingCount     = meetingCount;
+		this.contactIndexPos  = contactIndexPos;
+		this.meetingIndexPos  = meetingIndexPos;
+		this.stringCount      = (contactsPos - stringOffsetsPos) / 4;
+		this.checksummed      = version != 1;
+		this.recordsChecksum  = version != 1 ? mapped.getInt(footer + 36) : 0;
+		this.buffer           = mapped;
+		this.resolver         = contactManager.getContactResolver();
+		this.contactNotes     = contactManager.getCompressedNotes();
+		this.meetingNotes     = contactManager.getMeetingNotes();
+
+		contactManager.getIdAllocator().advanceContactIdTo(mapped.getInt(footer + 28));
+		contactManager.getIdAllocator().advanceMeetingIdTo(mapped.getInt(footer + 32));
+		contactManager.deferLoading(this);
+	}
+
+	/**
+	 * Decodes the contact with the given ID from the mapped file, or
+	 * returns null if there is none.
+	 *
+	 * @param  int the contact ID
+	 * @return Contact
+	 * @author David Jones
+	 */
+	public Contact getContact(int id) {
+		int offset = findOffset(this.buffer, this.contactIndexPos, this.contactCount, id);
+		if (offset < 0) {
+			return null;
+		}
+
+		return this.readContact(offset, null);
+	}
+
+	/**
+	 * Decodes the meeting with the given ID from the mapped file, or
+	 * returns null if there is none. Its contacts are looked up through
+	 * the contact manager when they are read.
+	 *
+	 * @param  int the meeting ID
+	 * @return Meeting
+	 * @author David Jones
+	 */
+	public Meeting getMeeting(int id) {
+		int offset = findOffset(this.buffer, this.meetingIndexPos, this.meetingCount, id);
+		if (offset < 0) {
+			return null;
+		}
+
+		return this.readMeeting(offset, null);
+	}
+
+	/**
+	 * Decodes every contact and meeting into the maps given, in the order
+	 * they were saved, and lets go of the mapped file. The strings and
+	 * records are checked against their CRC first.
+	 *
+	 * @param  Map<Integer, Contact> the map to put the contacts in
+	 * @param  Map<Integer, Meeting> the map to put the meetings in
+	 * @return void
+	 * @throws UncheckedIOException if the records fail their checksum
+	 * @author David Jones
+	 */
+	public void loadAll(Map<Integer, Contact> contacts, Map<Integer, Meeting> meetings) {
+		if (this.checksummed) {
+			CRC32 checksum = new CRC32();
+			update(checksum, this.buffer, 8, this.stringOffsetsPos);
+			update(checksum, this.buffer, this.contactsPos, this.contactIndexPos);
+
+			if ((int) checksum.getValue() != this.recordsChecksum) {
+				throw damaged(this.filename, "failed the checksum of its records");
+			}
+		}
+
+		for (int i = 0; i < this.contactCount; i++) {
+			Contact contact = this.readContact(this.contactsPos + i * CONTACT_SIZE, this.contactNotes);
+			contacts.put(contact.getId(), contact);
+		}
+
+		int offset = this.meetingsPos;
+		for (int i = 0; i < this.meetingCount; i++) {
+			Meeting meeting = this.readMeeting(offset, this.meetingNotes);
+			meetings.put(meeting.getId(), meeting);
+			offset += meetingLength(this.buffer, offset);
+		}
+
+		this.buffer = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void flush(StoreSnapshot snapshot) throws IOException {
+		CheckedOutputStream file = this.atomicFile.startWrite();
+
+		try {
+			DataOutputStream output = new DataOutputStream(file);
+
+			write(output, snapshot);
+			output.flush();
+
+		} catch (IOException ex) {
+			this.atomicFile.failWrite(file);
+			throw ex;
+		}
+
+		this.atomicFile.finishWrite(file);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public DirtySet recordsNeeded(DirtySet changes) {
+		// The whole file is rewritten, indexes and all
+		return DirtySet.everything();
+	}
+
+	/**
+	 * Writes the whole file.
+	 *
+	 * @param  DataOutputStream where to write
+	 * @param  StoreSnapshot what to save
+	 * @return void
+	 * @author David Jones
+	 */
+	static void write(DataOutputStream file, StoreSnapshot snapshot) throws IOException {
+		Map<Integer, Contact> contacts = snapshot.getContacts();
+		Map<Integer, Meeting> meetings = snapshot.getMeetings();
+
+		CRC32 indexes = new CRC32();
+		CRC32 records = new CRC32();
+		SectionChecksum checksum = new SectionChecksum(file);
+		DataOutputStream output = new DataOutputStream(checksum);
+
+		checksum.into(indexes);
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+
+		// Intern every name and note so each is only written once
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		Iterator<Contact> contactIterator = contacts.values().iterator();
+		while (contactIterator.hasNext()) {
+			Contact contact = contactIterator.next();
+			intern(contact.getName(), strings);
+			intern(contact.getNotes(), strings);
+		}
+
+		Iterator<Meeting> meetingIterator = meetings.values().iterator();
+		while (meetingIterator.hasNext()) {
+			Meeting meeting = meetingIterator.next();
+			if (meeting instanceof PastMeeting) {
+				intern(((PastMeeting) meeting).getNotes(), strings);
+			}
+		}
+
+		checksum.into(records);
+		int[] stringOffsets = new int[strings.size()];
+		int i = 0;
+		Iterator<String> stringIterator = strings.keySet().iterator();
+		while (stringIterator.hasNext()) {
+			stringOffsets[i++] = output.size();
+			RecordCodec.writeString(output, stringIterator.next());
+		}
+
+		checksum.into(indexes);
+		int stringOffsetsPos = output.size();
+		for (i = 0; i < stringOffsets.length; i++) {
+			output.writeInt(stringOffsets[i]);
+		}
+
+		checksum.into(records);
+		int contactsPos = output.size();
+		long[] contactIndex = new long[contacts.size()];
+		i = 0;
+		contactIterator = contacts.values().iterator();
+		while (contactIterator.hasNext()) {
+			Contact contact = contactIterator.next();
+			contactIndex[i++] = indexEntry(contact.getId(), output.size());
+
+			output.writeInt(contact.getId());
+			output.writeInt(strings.get(contact.getName()));
+			output.writeInt(strings.get(contact.getNotes()));
+		}
+
+		int meetingsPos = output.size();
+		long[] meetingIndex = new long[meetings.size()];
+		i = 0;
+		meetingIterator = meetings.values().iterator();
+		while (meetingIterator.hasNext()) {
+			Meeting meeting = meetingIterator.next();
+			boolean past = meeting instanceof PastMeeting;
+			meetingIndex[i++] = indexEntry(meeting.getId(), output.size());
+
+			output.writeByte(past ? RecordCodec.PAST_MEETING : RecordCodec.FUTURE_MEETING);
+			output.writeInt(meeting.getId());
+			output.writeLong(MeetingImpl.timeOf(meeting));
+
+			int[] participants = MeetingImpl.contactIdsOf(meeting);
+			output.writeInt(participants.length);
+
+			for (int j = 0; j < participants.length; j++) {
+				int contactId = participants[j];
+
+				if (!contacts.containsKey(contactId)) {
+					throw new IOException("Meeting " + meeting.getId() + " refers to the unknown contact " + contactId + ".");
+				}
+
+				output.writeInt(contactId);
+			}
+
+			if (past) {
+				output.writeInt(strings.get(((PastMeeting) meeting).getNotes()));
+			}
+		}
+
+		checksum.into(indexes);
+		int contactIndexPos = output.size();
+		writeIndex(output, contactIndex);
+
+		int meetingIndexPos = output.size();
+		writeIndex(output, meetingIndex);
+
+		if (output.size() < 0) {
+			throw new IOException("The data is too large for a file of 2GB.");
+		}
+
+		output.writeInt(stringOffsetsPos);
+		output.writeInt(contactsPos);
+		output.writeInt(contacts.size());
+		output.writeInt(meetingsPos);
+		output.writeInt(meetings.size());
+		output.writeInt(contactIndexPos);
+		output.writeInt(meetingIndexPos);
+		output.writeInt(snapshot.getIdAllocator().getLastContactId());
+		output.writeInt(snapshot.getIdAllocator().getLastMeetingId());
+
+		checksum.into(null);
+		output.writeInt((int) records.getValue());
+		output.writeInt((int) indexes.getValue());
+		output.writeInt(MAGIC);
+		output.flush();
+	}
+
+	/**
+	 * Decodes a contact. Contacts being loaded keep their notes in the
+	 * compressed notes given; one looked up on its own, with none given,
+	 * holds them itself, so lookups add nothing to the contact manager.
+	 */
+	private Contact readContact(int offset, CompressedNotes compressedNotes) {
+		if (offset < this.contactsPos || offset > this.meetingsPos - CONTACT_SIZE || (offset - this.contactsPos) % CONTACT_SIZE != 0) {
+			throw damaged(this.filename, "has a contact out of place at " + offset);
+		}
+
+		return new ContactImpl(this.buffer.getInt(offset), this.readString(this.buffer.getInt(offset + 4)), this.readString(this.buffer.getInt(offset + 8)), compressedNotes);
+	}
+
+	/**
+	 * Decodes a meeting. Only the IDs of its contacts are read, and the
+	 * meeting looks the contacts up through the contact manager. Past
+	 * meetings keep their notes as readContact's contacts do.
+	 */
+	private Meeting readMeeting(int offset, CompressedNotes compressedNotes) {
+		ByteBuffer buffer = this.buffer;
+
+		if (offset < this.meetingsPos || offset > this.contactIndexPos - 17) {
+			throw damaged(this.filename, "has a meeting out of place at " + offset);
+		}
+
+		byte type = buffer.get(offset);
+		int id    = buffer.getInt(offset + 1);
+		long time = buffer.getLong(offset + 5);
+
+		int participantCount = buffer.getInt(offset + 13);
+		if ((type != RecordCodec.PAST_MEETING && type != RecordCodec.FUTURE_MEETING)
+			|| participantCount < 0 || participantCount > (this.contactIndexPos - offset - 17) / 4) {
+			throw damaged(this.filename, "has a damaged meeting at " + offset);
+		}
+
+		int[] participants = new int[participantCount];
+		for (int i = 0; i < participants.length; i++) {
+			participants[i] = buffer.getInt(offset + 17 + i * 4);
+		}
+
+		if (type == RecordCodec.PAST_MEETING) {
+			if (offset + 21 + participants.length * 4 > this.contactIndexPos) {
+				throw damaged(this.filename, "has a damaged meeting at " + offset);
+			}
+
+			String notes = this.readString(buffer.getInt(offset + 17 + participants.length * 4));
+			return new PastMeetingImpl(id, time, participants, this.resolver, compressedNotes, notes);
+		}
+
+		return new FutureMeetingImpl(id, time, participants, this.resolver);
+	}
+
+	private String readString(int index) {
+		ByteBuffer buffer = this.buffer;
+
+		if (index < 0 || index >= this.stringCount) {
+			throw damaged(this.filename, "refers to the missing string " + index);
+		}
+
+		int offset = buffer.getInt(this.stringOffsetsPos + index * 4);
+		if (offset < 8 || offset > this.stringOffsetsPos - 4) {
+			throw damaged(this.filename, "has string " + index + " out of place");
+		}
+
+		int length = buffer.getInt(offset);
+		if (length < 0 || length > this.stringOffsetsPos - offset - 4) {
+			throw damaged(this.filename, "has string " + index + " running past its section");
+		}
+
+		// Work on a duplicate so readers on other threads do not share a position
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset + 4);
+
+		byte[] bytes = new byte[length];
+		view.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the CRC32 of the header, the string offsets, the indexes and
+	 * the footer before the checksums.
+	 */
+	private static long indexChecksum(ByteBuffer buffer, int stringOffsetsPos, int contactsPos, int contactIndexPos, int footer) throws IOException {
+		if (stringOffsetsPos < 8 || contactsPos < stringOffsetsPos || contactIndexPos < contactsPos || footer < contactIndexPos) {
+			throw new IOException("The footer of the file gives sections out of order.");
+		}
+
+		CRC32 checksum = new CRC32();
+		update(checksum, buffer, 0, 8);
+		update(checksum, buffer, stringOffsetsPos, contactsPos);
+		update(checksum, buffer, contactIndexPos, footer + 36);
+
+		return checksum.getValue();
+	}
+
+	private static void update(CRC32 checksum, ByteBuffer buffer, int from, int to) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(from);
+		view.limit(to);
+		checksum.update(view);
+	}
+
+	private static UncheckedIOException damaged(String filename, String problem) {
+		return new UncheckedIOException(new IOException("The file '" + filename + "' " + problem + "."));
+	}
+
+	private static int meetingLength(ByteBuffer buffer, int offset) {
+		int participantCount = buffer.getInt(offset + 13);
+		int length = 17 + participantCount * 4;
+
+		if (buffer.get(offset) == RecordCodec.PAST_MEETING) {
+			length += 4;
+		}
+
+		return length;
+	}
+
+	/**
+	 * Binary searches an (id, offset) table for the ID and returns its
+	 * offset, or -1 if it is not there.
+	 */
+	private static int findOffset(ByteBuffer buffer, int indexPos, int count, int id) {
+		int low  = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+			int middle    = (low + high) >>> 1;
+			int middleId  = buffer.getInt(indexPos + middle * INDEX_SIZE);
+
+			if (middleId < id) {
+				low = middle + 1;
+			} else if (middleId > id) {
+				high = middle - 1;
+			} else {
+				return buffer.getInt(indexPos + middle * INDEX_SIZE + 4);
+			}
+		}
+
+		return -1;
+	}
+
+	private static long indexEntry(int id, int offset) {
+		return ((long) id << 32) | (offset & 0xFFFFFFFFL);
+	}
+
+	private static void writeIndex(DataOutputStream output, long[] index) throws IOException {
+		// IDs are positive so sorting the packed entries sorts them by ID
+		Arrays.sort(index);
+
+		for (int i = 0; i < index.length; i++) {
+			output.writeInt((int) (index[i] >>> 32));
+			output.writeInt((int) index[i]);
+		}
+	}
+
+	private static void intern(String value, Map<String, Integer> strings) {
+		if (!strings.containsKey(value)) {
+			strings.put(value, strings.size());
+		}
+	}
+
+	/**
+	 * Passes writes through, adding them to whichever checksum is current.
+	 */
+	private static class SectionChecksum extends FilterOutputStream {
+
+		private CRC32 checksum;
+
+		SectionChecksum(OutputStream output) {
+			super(output);
+		}
+
+		void into(CRC32 checksum) {
+			this.checksum = checksum;
+		}
+
+		@Override
+		public void write(int value) throws IOException {
+			this.out.write(value);
+			if (this.checksum != null) {
+				this.checksum.update(value);
+			}
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			this.out.write(bytes, offset, length);
+			if (this.checksum != null) {
+				this.checksum.update(bytes, offset, length);
+			}
+		}
+	}
+
+	private static int readMagic(RandomAccessFile file) throws IOException {
+		file.seek(0);
+		return file.readInt();
+	}
+}
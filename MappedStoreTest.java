@@ -0,0 +1,160 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+
+public class MappedStoreTest {
+
+	private final String FILENAME = "mapped-test.txt";
+
+	private Calendar aFutureDate;
+	private Calendar aPastDate;
+
+	@Before
+	public void setUp() {
+		Calendar futureDate = Calendar.getInstance();
+		futureDate.add(Calendar.YEAR, 1);
+		this.aFutureDate = futureDate;
+
+		Calendar pastDate = Calendar.getInstance();
+		pastDate.set(2010, 01, 01);
+		this.aPastDate = pastDate;
+
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	@After
+	public void tearDown() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	@Test
+	public void testFlushAndLoadKeepsEverything() {
+		this.saveTwoContactsAndTwoMeetings();
+
+		ContactManagerImpl reloaded = this.newContactManager(new MappedStore(FILENAME));
+		Contact john = reloaded.getContacts(2).iterator().next();
+
+		assertEquals("The contact name should be kept.", "John Smith", john.getName());
+		assertEquals("The meeting should keep both contacts.", 2, reloaded.getMeeting(1).getContacts().size());
+		assertEquals("The meeting date should be kept.", this.aFutureDate.getTimeInMillis(), reloaded.getMeeting(1).getDate().getTimeInMillis());
+		assertEquals("The past meeting notes should be kept.", "Past notes", reloaded.getPastMeeting(2).getNotes());
+		assertEquals("John should be found through the contact index.", 2, reloaded.getFutureMeetingList(john).size() + reloaded.getPastMeetingListFor(john).size());
+		assertEquals("New IDs should follow on from the saved ones.", 3, reloaded.addNewContact("Jane Doe", "Some notes"));
+	}
+
+	@Test
+	public void testGettingByIdReadsFromTheMappedFile() {
+		this.saveTwoContactsAndTwoMeetings();
+
+		MappedStore store = new MappedStore(FILENAME);
+		ContactManagerImpl reloaded = this.newContactManager(store);
+
+		assertEquals("The contact should be read from the file.", "David Jones", reloaded.getContacts(1).iterator().next().getName());
+		assertEquals("The meeting should be read from the file.", "Past notes", reloaded.getPastMeeting(2).getNotes());
+		assertNull("A missing meeting should still return null.", reloaded.getMeeting(99));
+		assertTrue("Getting by ID should not load everything.", store.isMapped());
+	}
+
+	@Test
+	public void testQueryingAnIndexLoadsEverything() {
+		this.saveTwoContactsAndTwoMeetings();
+
+		MappedStore store = new MappedStore(FILENAME);
+		ContactManagerImpl reloaded = this.newContactManager(store);
+
+		assertEquals("Both contacts should be found by name.", 2, reloaded.getContacts("").size());
+		assertFalse("The mapped file should be let go once everything is loaded.", store.isMapped());
+		assertEquals("The meetings should be kept in the order they were saved.", Arrays.asList(1, 2), new ArrayList<Integer>(reloaded.getMeetings().keySet()));
+	}
+
+	@Test
+	public void testAChangeLoadsEverythingFirst() {
+		this.saveTwoContactsAndTwoMeetings();
+
+		MappedStore store = new MappedStore(FILENAME);
+		ContactManagerImpl reloaded = this.newContactManager(store);
+		reloaded.addNewContact("Jane Doe", "Some notes");
+		reloaded.flush();
+
+		ContactManagerImpl again = this.newContactManager(new MappedStore(FILENAME));
+
+		assertFalse("Adding a contact should load everything first.", store.isMapped());
+		assertEquals("The saved contacts and the new one should all be kept.", 3, again.getContacts("").size());
+		assertEquals("The saved meetings should all be kept.", 2, again.getMeetings().size());
+	}
+
+	@Test
+	public void testLoadReadsTheBinaryFormat() {
+		ContactManagerImpl contactManager = this.newContactManager(new BinaryStore(FILENAME));
+		int id = contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.addNewPastMeeting(contactManager.getContacts(id), this.aPastDate, "Past notes");
+		contactManager.flush();
+
+		MappedStore store = new MappedStore(FILENAME);
+		ContactManagerImpl reloaded = this.newContactManager(store);
+
+		assertFalse("A file in another format should be loaded in full.", store.isMapped());
+		assertEquals("The contact manager should contain 1 contact", 1, reloaded.getContacts("").size());
+		assertEquals("The past meeting notes should be kept.", "Past notes", reloaded.getPastMeeting(1).getNotes());
+	}
+
+	@Test
+	public void testLoadingChecksTheRecordsOnlyWhenReadingThemAll() throws IOException {
+		this.saveTwoContactsAndTwoMeetings();
+		this.flipByte(12);
+
+		MappedStore store = new MappedStore(FILENAME);
+		ContactManagerImpl reloaded = this.newContactManager(store);
+		assertTrue("Loading should not read the records.", store.isMapped());
+
+		try {
+			reloaded.getContacts("");
+			fail("The damaged record should be found when everything is read.");
+		} catch (UncheckedIOException ex) {
+			assertTrue(ex.getMessage().contains("checksum"));
+		}
+	}
+
+	@Test
+	public void testADamagedIndexFallsBackToThePreviousGeneration() throws IOException {
+		this.saveTwoContactsAndTwoMeetings();
+
+		ContactManagerImpl contactManager = this.newContactManager(new MappedStore(FILENAME));
+		contactManager.addNewContact("Jane Doe", "Some notes");
+		contactManager.flush();
+
+		// The last byte of the meeting index, just before the footer
+		this.flipByte(new File(FILENAME).length() - AtomicFile.TRAILER_SIZE - 48 - 1);
+
+		ContactManagerImpl reloaded = this.newContactManager(new MappedStore(FILENAME));
+		assertEquals("The contacts from the previous flush should be loaded.", 2, reloaded.getContacts("").size());
+	}
+
+	private void saveTwoContactsAndTwoMeetings() {
+		ContactManagerImpl contactManager = this.newContactManager(new MappedStore(FILENAME));
+		int davidId = contactManager.addNewContact("David Jones", "Some notes");
+		int johnId  = contactManager.addNewContact("John Smith", "Some notes");
+
+		contactManager.addFutureMeeting(contactManager.getContacts(davidId, johnId), this.aFutureDate);
+		contactManager.addNewPastMeeting(contactManager.getContacts(johnId), this.aPastDate, "Past notes");
+		contactManager.flush();
+	}
+
+	private void flipByte(long position) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(FILENAME, "rw");
+		file.seek(position);
+		int value = file.read();
+		file.seek(position);
+		file.write(value ^ 0xFF);
+		file.close();
+	}
+
+	private ContactManagerImpl newContactManager(ContactManagerStore store) {
+		return new ContactManagerImpl(Clock.systemDefaultZone(), store);
+	}
+}
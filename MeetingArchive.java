@@ -0,0 +1,498 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+/**
+ * An on-disk segment of meetings that are no longer needed in memory.
+ *
+ * Meetings are appended to the file in the form RecordCodec writes, each
+ * after its length, and only the position of each meeting is kept in
+ * memory. Reading a meeting decodes it from the file into a new object,
+ * which looks its contacts up through the resolver the archive was built
+ * with and holds its own notes.
+ *
+ * A removed or replaced meeting leaves its bytes behind until they take up
+ * more of the file than the live meetings, when the live meetings are
+ * copied into a fresh file. The file is a scratch file for the life of the
+ * archive: it is emptied when the archive is opened and deleted when it is
+ * closed, as the store remains the copy that is kept.
+ *
+ * A snapshot of the archive reads the meetings as they were when it was
+ * taken while the archive carries on changing. New meetings only ever go
+ * on the end of the file, so all the snapshot needs is a copy of the
+ * positions, and while any snapshot is open the archive puts off
+ * compacting, emptying or deleting the file.
+ *
+ * Reading a meeting takes no lock: it reads from its position in the
+ * file without moving the file pointer, so any number of threads read at
+ * once, a snapshot alongside changes to its archive. Changes are
+ * synchronized, and need the same exclusive access from readers of the
+ * archive itself as the map holding it does.
+ */
+public class MeetingArchive {
+
+	static final int MIN_COMPACT_WASTE = 1 << 20;
+
+	private final File file;
+	private final ContactResolver resolver;
+	private final RecordMap<Long> positions;
+	private final MeetingArchive owner;
+
+	private volatile RandomAccessFile data;
+	private long length;
+	private long waste;
+	private int snapshots;
+	private boolean closing;
+
+	/**
+	 * Opens an empty archive in the file given, replacing anything in it.
+	 *
+	 * @param File the file to keep the meetings in
+	 * @param ContactResolver where the meetings read back look their contacts up
+	 * @throws UncheckedIOException if the file cannot be opened
+	 */
+	MeetingArchive(File file, ContactResolver resolver) {
+
+		if (file == null) {
+			throw new NullPointerException("The file cannot be null.");
+		}
+
+		if (resolver == null) {
+			throw new NullPointerException("The contact resolver cannot be null.");
+		}
+
+		this.file      = file;
+		this.resolver  = resolver;
+		this.positions = new IntRecordMap<Long>();
+		this.owner     = null;
+		this.length    = 0;
+		this.waste     = 0;
+
+		try {
+			this.data = new RandomAccessFile(file, "rw");
+			this.data.setLength(0);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("The meeting archive '" + file + "' could not be opened.", ex);
+		}
+	}
+
+	/**
+	 * Builds a snapshot of the archive given, reading its file.
+	 */
+	private MeetingArchive(MeetingArchive owner) {
+		this.file      = owner.file;
+		this.resolver  = owner.resolver;
+		this.positions = owner.positions.snapshot();
+		this.owner     = owner;
+		this.data      = owner.data;
+		this.length    = owner.length;
+		this.waste     = owner.waste;
+	}
+
+	/**
+	 * A getter for the file the meetings are kept in.
+	 * @return File
+	 * @author David Jones
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * A getter for the resolver the meetings read back look their contacts up through.
+	 * @return ContactResolver
+	 * @author David Jones
+	 */
+	public ContactResolver getResolver() {
+		return this.resolver;
+	}
+
+	/**
+	 * Reads the meeting with the given ID back from the file, or returns
+	 * null if it is not in the archive.
+	 *
+	 * @param  int the meeting ID
+	 * @return Meeting
+	 * @throws UncheckedIOException if the meeting cannot be read
+	 * @author David Jones
+	 */
+	public Meeting get(int id) {
+		Long position = this.positions.get(id);
+		if (position == null) {
+			return null;
+		}
+
+		while (true) {
+			FileChannel channel = this.data.getChannel();
+
+			try {
+				ByteBuffer length = ByteBuffer.allocate(4);
+				readFully(channel, length, position.longValue());
+
+				ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+				readFully(channel, record, position.longValue() + 4);
+
+				return RecordCodec.readMeeting(new DataInputStream(new ByteArrayInputStream(record.array())), null, this.resolver, null);
+			} catch (ClosedByInterruptException ex) {
+				// Interrupting a read closes the channel for every reader
+				this.reopen(channel);
+				throw new UncheckedIOException("Reading meeting " + id + " from the archive was interrupted.", ex);
+			} catch (ClosedChannelException ex) {
+				// Another reader was interrupted, so read again from the file opened in its place
+				this.reopen(channel);
+			} catch (IOException ex) {
+				throw new UncheckedIOException("Meeting " + id + " could not be read from the archive.", ex);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the meeting with the given ID is in the archive.
+	 *
+	 * @param  int the meeting ID
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean containsKey(int id) {
+		return this.positions.containsKey(id);
+	}
+
+	/**
+	 * Writes the meeting to the end of the file, in place of any meeting
+	 * with the same ID.
+	 *
+	 * @param  Meeting the meeting
+	 * @return void
+	 * @throws UncheckedIOException if the meeting cannot be written
+	 * @author David Jones
+	 */
+	public synchronized void put(Meeting meeting) {
+		this.checkWritable();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+		try {
+			DataOutputStream output = new DataOutputStream(bytes);
+			output.writeInt(0);
+			RecordCodec.writeMeeting(output, meeting);
+			output.flush();
+
+			byte[] record = bytes.toByteArray();
+			int recordLength = record.length - 4;
+			record[0] = (byte) (recordLength >>> 24);
+			record[1] = (byte) (recordLength >>> 16);
+			record[2] = (byte) (recordLength >>> 8);
+			record[3] = (byte) recordLength;
+
+			this.data.seek(this.length);
+			this.data.write(record);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Meeting " + meeting.getId() + " could not be written to the archive.", ex);
+		}
+
+		Long previous = this.positions.put(meeting.getId(), Long.valueOf(this.length));
+		this.length += bytes.size();
+
+		if (previous != null) {
+			this.discard(previous.longValue());
+		}
+	}
+
+	/**
+	 * Removes the meeting with the given ID from the archive.
+	 *
+	 * @param  int the meeting ID
+	 * @return boolean whether the meeting was in the archive
+	 * @author David Jones
+	 */
+	public synchronized boolean remove(int id) {
+		this.checkWritable();
+		Long position = this.positions.remove(id);
+		if (position == null) {
+			return false;
+		}
+
+		this.discard(position.longValue());
+		return true;
+	}
+
+	/**
+	 * Returns the number of meetings in the archive.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public synchronized int size() {
+		return this.positions.size();
+	}
+
+	/**
+	 * Returns the length of the file in bytes, including the bytes left by
+	 * removed meetings that have not been compacted away yet.
+	 *
+	 * @return long
+	 * @author David Jones
+	 */
+	public synchronized long getFileLength() {
+		return this.length;
+	}
+
+	/**
+	 * Removes every meeting and empties the file.
+	 *
+	 * @return void
+	 * @throws UncheckedIOException if the file cannot be emptied
+	 * @author David Jones
+	 */
+	public synchronized void clear() {
+		this.checkWritable();
+
+		if (this.snapshots > 0) {
+			// The snapshots still read the file, so it is only emptied once compacted
+			this.positions.clear();
+			this.waste = this.length;
+			return;
+		}
+
+		try {
+			this.data.setLength(0);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("The meeting archive '" + this.file + "' could not be emptied.", ex);
+		}
+
+		this.positions.clear();
+		this.length = 0;
+		this.waste  = 0;
+	}
+
+	/**
+	 * Returns a copy of the archive that reads the meetings it holds now,
+	 * whatever is done to the archive afterwards. The copy cannot be
+	 * changed, and has to be closed when it is finished with.
+	 *
+	 * @return MeetingArchive
+	 * @throws IllegalStateException if the archive is closed
+	 * @author David Jones
+	 */
+	public synchronized MeetingArchive snapshot() {
+		if (this.owner != null) {
+			return this.owner.snapshot();
+		}
+
+		if (this.closing) {
+			throw new IllegalStateException("The meeting archive '" + this.file + "' is closed.");
+		}
+
+		this.snapshots++;
+		return new MeetingArchive(this);
+	}
+
+	/**
+	 * Returns the IDs of the meetings in the order they were archived.
+	 * Removing an ID through the iterator removes the meeting. The IDs may
+	 * not be read while the archive is being changed in another way.
+	 *
+	 * @return Iterator<Integer>
+	 * @author David Jones
+	 */
+	public Iterator<Integer> ids() {
+		final Iterator<Integer> iterator = this.positions.keySet().iterator();
+
+		return new Iterator<Integer>() {
+			private Integer last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Integer next() {
+				this.last = iterator.next();
+				return this.last;
+			}
+
+			@Override
+			public void remove() {
+				checkWritable();
+
+				synchronized (MeetingArchive.this) {
+					long position = positions.get(this.last.intValue()).longValue();
+					iterator.remove();
+					waste += recordLengthAt(position);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Closes and deletes the file. The archive cannot be used afterwards.
+	 * While snapshots are open the file is kept until the last is closed.
+	 * Closing a snapshot only lets go of the file.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public synchronized void close() {
+		if (this.owner != null) {
+			if (!this.closing) {
+				this.closing = true;
+				this.owner.release();
+			}
+
+			return;
+		}
+
+		this.closing = true;
+		this.positions.clear();
+
+		if (this.snapshots == 0) {
+			this.closeFile();
+		}
+	}
+
+	/**
+	 * Lets go of a snapshot, doing whatever was put off while it was open.
+	 */
+	private synchronized void release() {
+		this.snapshots--;
+
+		if (this.snapshots > 0) {
+			return;
+		}
+
+		if (this.closing) {
+			this.closeFile();
+		} else if (this.waste >= MIN_COMPACT_WASTE && this.waste * 2 > this.length) {
+			this.compact();
+		}
+	}
+
+	/**
+	 * Opens the file again in place of a channel closed by an interrupted
+	 * read, unless another reader has already done so. A snapshot reopens
+	 * the file of its archive, which it shares.
+	 */
+	private void reopen(FileChannel closed) {
+		MeetingArchive archive = this.owner != null ? this.owner : this;
+
+		synchronized (archive) {
+			if (archive.closing && archive.snapshots == 0) {
+				throw new IllegalStateException("The meeting archive '" + this.file + "' is closed.");
+			}
+
+			if (archive.data.getChannel() == closed) {
+				try {
+					archive.data = new RandomAccessFile(archive.file, "rw");
+				} catch (IOException ex) {
+					throw new UncheckedIOException("The meeting archive '" + this.file + "' could not be opened again.", ex);
+				}
+			}
+
+			this.data = archive.data;
+		}
+	}
+
+	private void checkWritable() {
+		if (this.owner != null) {
+			throw new UnsupportedOperationException("A snapshot of the meeting archive cannot be changed.");
+		}
+	}
+
+	private void closeFile() {
+		try {
+			this.data.close();
+		} catch (IOException ex) {
+			// The file is deleted next, so there is nothing left to lose
+		}
+
+		this.file.delete();
+	}
+
+	/**
+	 * Counts the record at the position as waste, and copies the live
+	 * meetings into a fresh file once waste is most of the file.
+	 */
+	private void discard(long position) {
+		this.waste += this.recordLengthAt(position);
+
+		if (this.snapshots == 0 && this.waste >= MIN_COMPACT_WASTE && this.waste * 2 > this.length) {
+			this.compact();
+		}
+	}
+
+	/**
+	 * Fills the buffer from the position in the file. A positional read
+	 * leaves the file pointer where it is, so it needs no lock.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("The meeting archive ends in the middle of a meeting.");
+			}
+		}
+	}
+
+	private long recordLengthAt(long position) {
+		try {
+			this.data.seek(position);
+			return 4L + this.data.readInt();
+		} catch (IOException ex) {
+			throw new UncheckedIOException("The meeting archive '" + this.file + "' could not be read.", ex);
+		}
+	}
+
+	/**
+	 * Copies the live meetings, in order, into a fresh file that then takes
+	 * the place of the old one.
+	 */
+	private void compact() {
+		File compacted = new File(this.file.getPath() + ".compact");
+
+		try {
+			RandomAccessFile output = new RandomAccessFile(compacted, "rw");
+			long position = 0;
+
+			try {
+				output.setLength(0);
+
+				Iterator<Integer> iterator = this.positions.keySet().iterator();
+				while (iterator.hasNext()) {
+					int id = iterator.next();
+
+					this.data.seek(this.positions.get(id).longValue());
+					byte[] record = new byte[4 + this.data.readInt()];
+					this.data.seek(this.positions.get(id).longValue());
+					this.data.readFully(record);
+
+					output.write(record);
+					this.positions.put(id, Long.valueOf(position));
+					position += record.length;
+				}
+			} finally {
+				output.close();
+			}
+
+			this.data.close();
+			if (!this.file.delete() || !compacted.renameTo(this.file)) {
+				throw new IOException("The compacted meeting archive could not replace '" + this.file + "'.");
+			}
+
+			this.data   = new RandomAccessFile(this.file, "rw");
+			this.length = position;
+			this.waste  = 0;
+		} catch (IOException ex) {
+			throw new UncheckedIOException("The meeting archive '" + this.file + "' could not be compacted.", ex);
+		}
+	}
+}
@@ -8,6 +8,6 @@ public class MeetingComparator implements Comparator<Meeting> {
 
 	@Override
 	public int compare(Meeting meeting1, Meeting meeting2) {
-        return meeting1.getDate().compareTo(meeting2.getDate());
+        return Long.compare(MeetingImpl.timeOf(meeting1), MeetingImpl.timeOf(meeting2));
     }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+/**
+ * A position in a chronological list of meetings, used to ask for the
+ * page of meetings that comes after it.
+ *
+ * Meetings are ordered by their time and then by their ID, so a cursor
+ * holds both. Unlike an offset, a cursor still points at the same place
+ * when meetings are added or changed between one page and the next.
+ */
+public final class MeetingCursor {
+
+	/**
+	 * The position before every meeting, for asking for the first page.
+	 */
+	public static final MeetingCursor START = new MeetingCursor(Long.MIN_VALUE, Integer.MIN_VALUE);
+
+	private final long time;
+	private final int id;
+
+	MeetingCursor(long time, int id) {
+		this.time = time;
+		this.id   = id;
+	}
+
+	/**
+	 * Returns the position just after the meeting given, which is normally
+	 * the last meeting of the page before.
+	 *
+	 * @param  Meeting the meeting
+	 * @return MeetingCursor
+	 * @throws NullPointerException if the meeting is null
+	 * @author David Jones
+	 */
+	public static MeetingCursor after(Meeting meeting) {
+
+		if (meeting == null) {
+			throw new NullPointerException("The meeting cannot be null.");
+		}
+
+		return new MeetingCursor(MeetingImpl.timeOf(meeting), meeting.getId());
+	}
+
+	/**
+	 * A getter for the time of the position in epoch milliseconds.
+	 * @return long
+	 * @author David Jones
+	 */
+	public long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * A getter for the meeting ID of the position.
+	 * @return int
+	 * @author David Jones
+	 */
+	public int getId() {
+		return this.id;
+	}
+
+	/**
+	 * Returns the later of this position and the start of the given time.
+	 *
+	 * @param  long the time in epoch milliseconds
+	 * @return MeetingCursor
+	 * @author David Jones
+	 */
+	MeetingCursor atLeast(long time) {
+
+		if (this.time < time) {
+			return new MeetingCursor(time, Integer.MIN_VALUE);
+		}
+
+		return this;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+
+		if (!(object instanceof MeetingCursor)) {
+			return false;
+		}
+
+		MeetingCursor cursor = (MeetingCursor) object;
+		return this.time == cursor.time && this.id == cursor.id;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Long.hashCode(this.time) + this.id;
+	}
+
+	@Override
+	public String toString() {
+		return "MeetingCursor[" + this.time + ", " + this.id + "]";
+	}
+}
@@ -0,0 +1,432 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A secondary index of meeting IDs ordered by the time of the meeting,
+ * keyed by epoch milliseconds. Meetings at the same time are ordered by
+ * their ID. Every query is a range scan over the ordered keys so the
+ * results come back already sorted chronologically.
+ *
+ * The entries are held in blocks of sorted primitive arrays, one of times
+ * and one of IDs, rather than in a tree of boxed keys, so an entry costs
+ * twelve bytes and a little slack instead of several objects. A block is
+ * found by a binary search on the last entry of each block, and an entry
+ * within it by a second binary search. A full block is split in two,
+ * except when an entry goes on the very end, as most meetings do, when a
+ * new block is started so the blocks left behind stay full. An empty block
+ * is dropped. The arrays of a small index grow as they fill, so an index
+ * holding a few meetings, such as one contact's, stays small.
+ *
+ * It is not safe for use by several threads unless they are reading only.
+ */
+public class MeetingDateIndex {
+
+	static final int BLOCK_SIZE = 256;
+
+	private static final int MIN_BLOCK_CAPACITY = 4;
+
+	private Block[] blocks;
+	private int blockCount;
+	private int size;
+
+	MeetingDateIndex() {
+		this.blocks     = new Block[1];
+		this.blockCount = 0;
+		this.size       = 0;
+	}
+
+	/**
+	 * Adds a meeting to the index.
+	 *
+	 * @param  int the meeting ID
+	 * @param  long the time of the meeting in epoch milliseconds
+	 * @return void
+	 * @author David Jones
+	 */
+	public void add(int id, long time) {
+
+		if (this.blockCount == 0) {
+			this.insertBlock(0, new Block(MIN_BLOCK_CAPACITY));
+		}
+
+		int blockIndex = this.blockFor(time, id);
+		Block block = this.blocks[blockIndex];
+
+		int position = block.search(time, id);
+		if (position >= 0) {
+			return;
+		}
+
+		position = -position - 1;
+
+		if (block.count == BLOCK_SIZE) {
+			if (blockIndex == this.blockCount - 1 && position == BLOCK_SIZE) {
+				// Appending, so start a new block and leave this one full
+				block = new Block(MIN_BLOCK_CAPACITY);
+				this.insertBlock(blockIndex + 1, block);
+				position = 0;
+			} else {
+				Block upper = block.split();
+				this.insertBlock(blockIndex + 1, upper);
+
+				if (position > block.count) {
+					position -= block.count;
+					block = upper;
+				}
+			}
+		}
+
+		block.insert(position, time, id);
+		this.size++;
+	}
+
+	/**
+	 * Removes a meeting from the index.
+	 *
+	 * @param  int the meeting ID
+	 * @param  long the time the meeting was indexed under
+	 * @return void
+	 * @author David Jones
+	 */
+	public void remove(int id, long time) {
+
+		if (this.blockCount == 0) {
+			return;
+		}
+
+		int blockIndex = this.blockFor(time, id);
+		Block block = this.blocks[blockIndex];
+
+		int position = block.search(time, id);
+		if (position < 0) {
+			return;
+		}
+
+		block.delete(position);
+		this.size--;
+
+		if (block.count == 0) {
+			System.arraycopy(this.blocks, blockIndex + 1, this.blocks, blockIndex, this.blockCount - blockIndex - 1);
+			this.blocks[--this.blockCount] = null;
+		}
+	}
+
+	/**
+	 * Returns the number of meetings in the index.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns every meeting ID in chronological order.
+	 *
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> all() {
+		return this.collect(0, 0, Long.MAX_VALUE, false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the IDs of the meetings at or after the given time in
+	 * chronological order.
+	 *
+	 * @param  long the earliest time in epoch milliseconds
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> from(long fromInclusive) {
+		long start = this.seek(fromInclusive, Integer.MIN_VALUE);
+		return this.collect(blockOf(start), offsetOf(start), Long.MAX_VALUE, false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the IDs of the meetings before the given time in
+	 * chronological order.
+	 *
+	 * @param  long the time in epoch milliseconds the meetings must be before
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> before(long toExclusive) {
+		return this.collect(0, 0, toExclusive, true, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the IDs of the meetings between the two times in
+	 * chronological order.
+	 *
+	 * @param  long the earliest time in epoch milliseconds
+	 * @param  long the time in epoch milliseconds the meetings must be before
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> between(long fromInclusive, long toExclusive) {
+
+		if (toExclusive <= fromInclusive) {
+			return new ArrayList<Integer>();
+		}
+
+		long start = this.seek(fromInclusive, Integer.MIN_VALUE);
+		return this.collect(blockOf(start), offsetOf(start), toExclusive, true, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns at most the given number of meeting IDs at or after the given
+	 * time in chronological order.
+	 *
+	 * @param  long the earliest time in epoch milliseconds
+	 * @param  int the maximum number of IDs to return
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> next(long fromInclusive, int limit) {
+
+		if (limit < 0) {
+			throw new IllegalArgumentException("The limit cannot be negative.");
+		}
+
+		long start = this.seek(fromInclusive, Integer.MIN_VALUE);
+		return this.collect(blockOf(start), offsetOf(start), Long.MAX_VALUE, false, limit);
+	}
+
+	/**
+	 * Returns the IDs of the meetings after the given position in
+	 * chronological order. The IDs are found as they are iterated over, so
+	 * nothing past the last one read is looked at. The index must not be
+	 * changed while the iterator is in use.
+	 *
+	 * @param  MeetingCursor the position the meetings must be after
+	 * @return Iterator<Integer>
+	 * @author David Jones
+	 */
+	public Iterator<Integer> after(MeetingCursor cursor) {
+
+		long found = this.seek(cursor.getTime(), cursor.getId());
+		if (this.isAt(found, cursor.getTime(), cursor.getId())) {
+			found++;
+		}
+
+		final long start = found;
+
+		return new Iterator<Integer>() {
+
+			private int blockIndex = blockOf(start);
+			private int offset = offsetOf(start);
+
+			@Override
+			public boolean hasNext() {
+				while (this.blockIndex < blockCount && this.offset >= blocks[this.blockIndex].count) {
+					this.blockIndex++;
+					this.offset = 0;
+				}
+
+				return this.blockIndex < blockCount;
+			}
+
+			@Override
+			public Integer next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				return blocks[this.blockIndex].ids[this.offset++];
+			}
+		};
+	}
+
+	/**
+	 * Empties the index.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void clear() {
+		this.blocks     = new Block[1];
+		this.blockCount = 0;
+		this.size       = 0;
+	}
+
+	/**
+	 * Finds the block an entry belongs in: the first whose last entry is
+	 * at or after it, or the last block if the entry is after them all.
+	 */
+	private int blockFor(long time, int id) {
+		int low = 0;
+		int high = this.blockCount - 1;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			Block block = this.blocks[middle];
+
+			if (compare(block.times[block.count - 1], block.ids[block.count - 1], time, id) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the position of the first entry at or after the time and ID
+	 * given, packed by position, which is past the end if there is none.
+	 */
+	private long seek(long time, int id) {
+		if (this.blockCount == 0) {
+			return position(0, 0);
+		}
+
+		int blockIndex = this.blockFor(time, id);
+		int offset = this.blocks[blockIndex].search(time, id);
+
+		return position(blockIndex, offset >= 0 ? offset : -offset - 1);
+	}
+
+	private boolean isAt(long position, long time, int id) {
+		int blockIndex = blockOf(position);
+		int offset = offsetOf(position);
+
+		if (blockIndex >= this.blockCount || offset >= this.blocks[blockIndex].count) {
+			return false;
+		}
+
+		return this.blocks[blockIndex].times[offset] == time && this.blocks[blockIndex].ids[offset] == id;
+	}
+
+	/**
+	 * Gathers the IDs from a position onwards, stopping at the limit or,
+	 * if bounded, at the first meeting at or after the end time.
+	 */
+	private List<Integer> collect(int blockIndex, int offset, long toExclusive, boolean bounded, int limit) {
+
+		List<Integer> ids = new ArrayList<Integer>();
+
+		for (; blockIndex < this.blockCount && ids.size() < limit; blockIndex++, offset = 0) {
+			Block block = this.blocks[blockIndex];
+
+			for (; offset < block.count && ids.size() < limit; offset++) {
+				if (bounded && block.times[offset] >= toExclusive) {
+					return ids;
+				}
+
+				ids.add(block.ids[offset]);
+			}
+		}
+
+		return ids;
+	}
+
+	private void insertBlock(int blockIndex, Block block) {
+		if (this.blockCount == this.blocks.length) {
+			this.blocks = Arrays.copyOf(this.blocks, this.blockCount * 2);
+		}
+
+		System.arraycopy(this.blocks, blockIndex, this.blocks, blockIndex + 1, this.blockCount - blockIndex);
+		this.blocks[blockIndex] = block;
+		this.blockCount++;
+	}
+
+	private static int compare(long time, int id, long otherTime, int otherId) {
+		if (time != otherTime) {
+			return time < otherTime ? -1 : 1;
+		}
+
+		return Integer.compare(id, otherId);
+	}
+
+	private static long position(int blockIndex, int offset) {
+		return ((long) blockIndex << 32) | offset;
+	}
+
+	private static int blockOf(long position) {
+		return (int) (position >>> 32);
+	}
+
+	private static int offsetOf(long position) {
+		return (int) position;
+	}
+
+	/**
+	 * A run of entries in order, in arrays that grow up to BLOCK_SIZE.
+	 */
+	private static class Block {
+
+		private long[] times;
+		private int[] ids;
+		private int count;
+
+		Block(int capacity) {
+			this.times = new long[capacity];
+			this.ids   = new int[capacity];
+			this.count = 0;
+		}
+
+		/**
+		 * Returns the offset of the entry, or -(insertion point) - 1 if it
+		 * is not in the block, as Arrays.binarySearch does.
+		 */
+		int search(long time, int id) {
+			int low = 0;
+			int high = this.count - 1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int comparison = compare(this.times[middle], this.ids[middle], time, id);
+
+				if (comparison < 0) {
+					low = middle + 1;
+				} else if (comparison > 0) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+
+			return -low - 1;
+		}
+
+		void insert(int offset, long time, int id) {
+			if (this.count == this.times.length) {
+				int capacity = Math.min(this.times.length * 2, BLOCK_SIZE);
+				this.times = Arrays.copyOf(this.times, capacity);
+				this.ids   = Arrays.copyOf(this.ids, capacity);
+			}
+
+			System.arraycopy(this.times, offset, this.times, offset + 1, this.count - offset);
+			System.arraycopy(this.ids, offset, this.ids, offset + 1, this.count - offset);
+			this.times[offset] = time;
+			this.ids[offset]   = id;
+			this.count++;
+		}
+
+		void delete(int offset) {
+			System.arraycopy(this.times, offset + 1, this.times, offset, this.count - offset - 1);
+			System.arraycopy(this.ids, offset + 1, this.ids, offset, this.count - offset - 1);
+			this.count--;
+		}
+
+		/**
+		 * Moves the upper half of this full block into a new block.
+		 */
+		Block split() {
+			int half = this.count / 2;
+			Block upper = new Block(BLOCK_SIZE);
+
+			upper.count = this.count - half;
+			System.arraycopy(this.times, half, upper.times, 0, upper.count);
+			System.arraycopy(this.ids, half, upper.ids, 0, upper.count);
+			this.count = half;
+
+			return upper;
+		}
+	}
+}
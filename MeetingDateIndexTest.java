@@ -0,0 +1,108 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+
+public class MeetingDateIndexTest {
+
+	@Test
+	public void testMeetingsComeBackInOrderOfTimeAndThenId() {
+		MeetingDateIndex index = new MeetingDateIndex();
+		index.add(3, 200);
+		index.add(1, 300);
+		index.add(5, 100);
+		index.add(2, 200);
+		index.add(2, 200);
+
+		assertEquals("Adding a meeting twice should not count it twice.", 4, index.size());
+		assertEquals(Arrays.asList(5, 2, 3, 1), index.all());
+		assertEquals(Arrays.asList(2, 3, 1), index.from(200));
+		assertEquals(Arrays.asList(5), index.before(200));
+		assertEquals(Arrays.asList(2, 3), index.between(150, 300));
+		assertEquals(Arrays.asList(2), index.next(101, 1));
+
+		index.remove(3, 100);
+		assertEquals("A meeting should only be removed from under its own time.", 4, index.size());
+		index.remove(3, 200);
+		assertEquals(Arrays.asList(5, 2, 1), index.all());
+	}
+
+	@Test
+	public void testAppendingInOrderFillsTheBlocks() {
+		MeetingDateIndex index = new MeetingDateIndex();
+		int count = MeetingDateIndex.BLOCK_SIZE * 10;
+
+		for (int i = 0; i < count; i++) {
+			index.add(i, 1000L * i);
+		}
+
+		assertEquals(count, index.size());
+		assertEquals(MeetingDateIndex.BLOCK_SIZE, index.before(1000L * MeetingDateIndex.BLOCK_SIZE).size());
+		assertEquals(Arrays.asList(count - 1), index.from(1000L * (count - 1)));
+	}
+
+	@Test
+	public void testHoldsTheSameMeetingsAsATreeSet() {
+		MeetingDateIndex index = new MeetingDateIndex();
+		TreeSet<long[]> expected = new TreeSet<long[]>(new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]);
+			}
+		});
+
+		Random random = new Random(42);
+		for (int i = 0; i < 50000; i++) {
+			int id = random.nextInt(3000);
+			long time = random.nextInt(500) * 1000L;
+
+			if (random.nextInt(3) == 0) {
+				index.remove(id, time);
+				expected.remove(new long[] {time, id});
+			} else {
+				index.add(id, time);
+				expected.add(new long[] {time, id});
+			}
+
+			if (i % 5000 == 0) {
+				assertEquals(ids(expected), index.all());
+			}
+		}
+
+		assertEquals(expected.size(), index.size());
+		assertEquals(ids(expected), index.all());
+
+		for (int i = 0; i < 200; i++) {
+			long from = random.nextInt(520) * 1000L - 10000;
+			long to = from + random.nextInt(50) * 1000L;
+			int id = random.nextInt(3000);
+
+			assertEquals(ids(expected.tailSet(new long[] {from, Integer.MIN_VALUE}, true)), index.from(from));
+			assertEquals(ids(expected.headSet(new long[] {from, Integer.MIN_VALUE}, false)), index.before(from));
+			assertEquals(ids(expected.subSet(new long[] {from, Integer.MIN_VALUE}, true, new long[] {to, Integer.MIN_VALUE}, false)), index.between(from, to));
+
+			List<Integer> after = new ArrayList<Integer>();
+			Iterator<Integer> iterator = index.after(new MeetingCursor(from, id));
+			while (iterator.hasNext()) {
+				after.add(iterator.next());
+			}
+
+			assertEquals(ids(expected.tailSet(new long[] {from, id}, false)), after);
+		}
+
+		index.clear();
+		assertEquals(0, index.size());
+		assertTrue(index.all().isEmpty());
+	}
+
+	private static List<Integer> ids(Set<long[]> entries) {
+		List<Integer> ids = new ArrayList<Integer>();
+
+		Iterator<long[]> iterator = entries.iterator();
+		while (iterator.hasNext()) {
+			ids.add((int) iterator.next()[1]);
+		}
+
+		return ids;
+	}
+}
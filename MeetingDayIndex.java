@@ -0,0 +1,153 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * An index of meeting IDs bucketed by the day the meeting falls on.
+ *
+ * Each meeting's day is worked out once, when it is added, as an epoch day
+ * (the number of days since 1 January 1970) in the index's time zone.
+ * A lookup for a day is then a single hash lookup that returns the
+ * meetings of that day in chronological order.
+ */
+public class MeetingDayIndex {
+
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	private Map<Long, MeetingDateIndex> meetingIds;
+	private TimeZone timeZone;
+
+	MeetingDayIndex(TimeZone timeZone) {
+
+		if (timeZone == null) {
+			throw new NullPointerException("The time zone cannot be null.");
+		}
+
+		this.meetingIds = new HashMap<Long, MeetingDateIndex>();
+		this.timeZone   = timeZone;
+	}
+
+	/**
+	 * Works out the epoch day for a point in time in the index's time zone.
+	 *
+	 * @param  long the time in epoch milliseconds
+	 * @return long
+	 * @author David Jones
+	 */
+	public long epochDayOf(long time) {
+		return Math.floorDiv(time + this.timeZone.getOffset(time), MILLIS_PER_DAY);
+	}
+
+	/**
+	 * Works out the epoch day for the calendar date shown by the calendar,
+	 * whatever its time of day or time zone. The calendar is not changed.
+	 *
+	 * @param  Calendar the date
+	 * @return long
+	 * @author David Jones
+	 */
+	public static long epochDayOf(Calendar date) {
+
+		int year  = date.get(Calendar.YEAR);
+		int month = date.get(Calendar.MONTH) + 1;
+		int day   = date.get(Calendar.DAY_OF_MONTH);
+
+		return LocalDate.of(year, month, day).toEpochDay();
+	}
+
+	/**
+	 * Adds a meeting to the bucket for its day.
+	 *
+	 * @param  int the meeting ID
+	 * @param  long the time of the meeting in epoch milliseconds
+	 * @return void
+	 * @author David Jones
+	 */
+	public void add(int id, long time) {
+
+		long epochDay = this.epochDayOf(time);
+
+		MeetingDateIndex ids = this.meetingIds.get(epochDay);
+		if (ids == null) {
+			ids = new MeetingDateIndex();
+			this.meetingIds.put(epochDay, ids);
+		}
+
+		ids.add(id, time);
+	}
+
+	/**
+	 * Removes a meeting from the bucket for its day.
+	 *
+	 * @param  int the meeting ID
+	 * @param  long the time the meeting was indexed under
+	 * @return void
+	 * @author David Jones
+	 */
+	public void remove(int id, long time) {
+
+		long epochDay = this.epochDayOf(time);
+
+		MeetingDateIndex ids = this.meetingIds.get(epochDay);
+		if (ids != null) {
+			ids.remove(id, time);
+
+			if (ids.size() == 0) {
+				this.meetingIds.remove(epochDay);
+			}
+		}
+	}
+
+	/**
+	 * Returns the IDs of the meetings on the given epoch day in
+	 * chronological order.
+	 *
+	 * @param  long the epoch day
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> on(long epochDay) {
+
+		MeetingDateIndex ids = this.meetingIds.get(epochDay);
+		if (ids == null) {
+			return new ArrayList<Integer>();
+		}
+
+		return ids.all();
+	}
+
+	/**
+	 * Returns the IDs of the meetings on the given epoch day after the
+	 * given position in chronological order, found as they are iterated over.
+	 *
+	 * @param  long the epoch day
+	 * @param  MeetingCursor the position the meetings must be after
+	 * @return Iterator<Integer>
+	 * @author David Jones
+	 */
+	public Iterator<Integer> after(long epochDay, MeetingCursor cursor) {
+
+		MeetingDateIndex ids = this.meetingIds.get(epochDay);
+		if (ids == null) {
+			return Collections.<Integer>emptyIterator();
+		}
+
+		return ids.after(cursor);
+	}
+
+	/**
+	 * Empties the index.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void clear() {
+		this.meetingIds.clear();
+	}
+}
@@ -1,18 +1,48 @@
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TimeZone;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
+/**
+ * The date of a meeting is held as epoch milliseconds rather than as a
+ * Calendar. This keeps each meeting small and lets dates be compared as
+ * plain longs. getDate() builds a Calendar on each call, so changing the
+ * returned Calendar does not change the meeting. The Calendar is in the
+ * time zone of the resolver: the zone of the contact manager's clock for
+ * the meetings it holds, the zone of the date given for a meeting built
+ * from a Calendar, and the default zone for a deserialized meeting.
+ *
+ * The contacts are held as a sorted array of contact IDs rather than as a
+ * set of contacts, and are looked up through a ContactResolver when they
+ * are read. getContacts() returns a read-only view that resolves them on
+ * each pass, and checking whether a contact attends is a binary search.
+ *
+ * The serialVersionUID is the one of the class as it was first saved, with
+ * the date as a Calendar and the contacts as a set, and meetings saved in
+ * that form are read into the new fields, showing the date in the zone it
+ * was saved in.
+ */
 public abstract class MeetingImpl implements Meeting, Serializable {
 
+	private static final long serialVersionUID = -7854304703530761012L;
+
 	private int id;
-	private Calendar date;
-	private Set<Contact> contacts;
-	
+	private long time;
+	private int[] contactIds;
+	private transient ContactResolver resolver;
+
 	MeetingImpl(int id, Calendar date, Set<Contact> contacts) {
 
-		if (id < 1) {
-			throw new IllegalArgumentException("ID must be equal to or greater than one.");
-		}
+		checkId(id);
 
 		if (date == null) {
 			throw new NullPointerException("Date can't be null.");
@@ -26,9 +56,96 @@ public abstract class MeetingImpl implements Meeting, Serializable {
 			throw new IllegalArgumentException("The set on contacts must have at least one contact inside it.");
 		}
 
-		this.id 	  = id;
-		this.date 	  = date;
-		this.contacts = contacts;
+		this.id 	    = id;
+		this.time 	    = date.getTimeInMillis();
+		this.contactIds = idsOf(contacts);
+		this.resolver   = new FixedContacts(contacts.toArray(new Contact[contacts.size()]), this.contactIds, date.getTimeZone());
+	}
+
+	/**
+	 * Builds a meeting that looks its contacts up through the resolver
+	 * given, normally the contact manager holding it.
+	 *
+	 * @param int the meeting ID
+	 * @param long the time of the meeting in epoch milliseconds
+	 * @param int[] the IDs of the contacts attending, in any order
+	 * @param ContactResolver where to look the contacts up
+	 */
+	MeetingImpl(int id, long time, int[] contactIds, ContactResolver resolver) {
+
+		checkId(id);
+
+		if (contactIds == null) {
+			throw new NullPointerException("Contacts can't be null.");
+		}
+
+		if (resolver == null) {
+			throw new NullPointerException("The contact resolver can't be null.");
+		}
+
+		if (contactIds.length == 0) {
+			throw new IllegalArgumentException("The set on contacts must have at least one contact inside it.");
+		}
+
+		this.id 	    = id;
+		this.time 	    = time;
+		this.contactIds = sortedIds(contactIds.clone());
+		this.resolver   = resolver;
+	}
+
+	/**
+	 * Returns the time of a meeting in epoch milliseconds. Meetings built
+	 * from this class are read directly, any others go through getDate().
+	 *
+	 * @param  Meeting the meeting
+	 * @return long
+	 * @author David Jones
+	 */
+	static long timeOf(Meeting meeting) {
+
+		if (meeting instanceof MeetingImpl) {
+			return ((MeetingImpl) meeting).getTimeInMillis();
+		}
+
+		return meeting.getDate().getTimeInMillis();
+	}
+
+	/**
+	 * Returns the sorted IDs of the contacts attending a meeting. Meetings
+	 * built from this class hand over their own array without resolving
+	 * any contacts, so it must not be changed.
+	 *
+	 * @param  Meeting the meeting
+	 * @return int[]
+	 * @author David Jones
+	 */
+	static int[] contactIdsOf(Meeting meeting) {
+
+		if (meeting instanceof MeetingImpl) {
+			return ((MeetingImpl) meeting).contactIds;
+		}
+
+		return idsOf(meeting.getContacts());
+	}
+
+	/**
+	 * Returns the IDs of the contacts given, sorted and without repeats.
+	 *
+	 * @param  Collection<Contact> the contacts
+	 * @return int[]
+	 * @author David Jones
+	 */
+	static int[] idsOf(Collection<Contact> contacts) {
+
+		int[] ids = new int[contacts.size()];
+
+		int i = 0;
+		Iterator<Contact> iterator = contacts.iterator();
+		while (iterator.hasNext()) {
+			ids[i++] = iterator.next().getId();
+		}
+
+		return sortedIds(ids);
 	}
 
 	public int getId() {
@@ -36,10 +153,215 @@ public abstract class MeetingImpl implements Meeting, Serializable {
 	}
 
 	public Calendar getDate() {
-		return this.date;
+		Calendar date = Calendar.getInstance(this.resolver.getTimeZone());
+		date.setTimeInMillis(this.time);
+
+		return date;
+	}
+
+	/**
+	 * Returns the time of the meeting in epoch milliseconds.
+	 *
+	 * @return long
+	 * @author David Jones
+	 */
+	public long getTimeInMillis() {
+		return this.time;
 	}
 
+	/**
+	 * Returns the IDs of the contacts attending the meeting in ascending order.
+	 *
+	 * @return int[]
+	 * @author David Jones
+	 */
+	public int[] getContactIds() {
+		return this.contactIds.clone();
+	}
+
+	/**
+	 * Checks whether the contact with the given ID attends the meeting,
+	 * without looking any contacts up.
+	 *
+	 * @param  int the contact ID
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean hasContact(int contactId) {
+		return Arrays.binarySearch(this.contactIds, contactId) >= 0;
+	}
+
+	/**
+	 * Returns a read-only view of the contacts attending the meeting. The
+	 * contacts are looked up each time the view is iterated, and an ID that
+	 * no longer has a contact is skipped.
+	 *
+	 * @return Set<Contact>
+	 * @author David Jones
+	 */
 	public Set<Contact> getContacts() {
-		return this.contacts;
+		return new AbstractSet<Contact>() {
+			@Override
+			public Iterator<Contact> iterator() {
+				return new ContactIterator(resolver.resolve(contactIds));
+			}
+
+			@Override
+			public int size() {
+				return contactIds.length;
+			}
+
+			@Override
+			public boolean contains(Object object) {
+
+				if (!(object instanceof Contact)) {
+					return false;
+				}
+
+				int contactId = ((Contact) object).getId();
+				if (!hasContact(contactId)) {
+					return false;
+				}
+
+				return object.equals(resolver.resolve(new int[] {contactId})[0]);
+			}
+		};
+	}
+
+	private static void checkId(int id) {
+		if (id < 1) {
+			throw new IllegalArgumentException("ID must be equal to or greater than one.");
+		}
+	}
+
+	private static int[] sortedIds(int[] ids) {
+		Arrays.sort(ids);
+
+		int length = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (length == 0 || ids[i] != ids[length - 1]) {
+				ids[length++] = ids[i];
+			}
+		}
+
+		return length == ids.length ? ids : Arrays.copyOf(ids, length);
+	}
+
+	/**
+	 * Writes the contacts themselves after the IDs, so a meeting read back
+	 * on its own still has them.
+	 */
+	private void writeObject(ObjectOutputStream output) throws IOException {
+		output.defaultWriteObject();
+		output.writeObject(this.resolver.resolve(this.contactIds));
+	}
+
+	/**
+	 * Reads a meeting in either form it has been saved in. One saved with a
+	 * Calendar and a set of contacts has neither of the new fields.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = input.readFields();
+		this.id = fields.get("id", 0);
+
+		if (fields.defaulted("time")) {
+			Calendar date = (Calendar) fields.get("date", null);
+			Set<Contact> contacts = (Set<Contact>) fields.get("contacts", null);
+
+			if (date == null || contacts == null) {
+				throw new InvalidObjectException("Meeting " + this.id + " was saved without its date or contacts.");
+			}
+
+			this.time       = date.getTimeInMillis();
+			this.contactIds = idsOf(contacts);
+			this.resolver   = new FixedContacts(contacts.toArray(new Contact[contacts.size()]), this.contactIds, date.getTimeZone());
+			return;
+		}
+
+		this.time       = fields.get("time", 0L);
+		this.contactIds = (int[]) fields.get("contactIds", null);
+		this.resolver   = new FixedContacts((Contact[]) input.readObject(), this.contactIds, TimeZone.getDefault());
+	}
+
+	/**
+	 * Walks the resolved contacts, skipping the IDs that had none.
+	 */
+	private static class ContactIterator implements Iterator<Contact> {
+
+		private final Contact[] contacts;
+		private int next = 0;
+
+		ContactIterator(Contact[] contacts) {
+			this.contacts = contacts;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (this.next < this.contacts.length && this.contacts[this.next] == null) {
+				this.next++;
+			}
+
+			return this.next < this.contacts.length;
+		}
+
+		@Override
+		public Contact next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			return this.contacts[this.next++];
+		}
+	}
+
+	/**
+	 * Resolves IDs against contacts held by the meeting itself, for meetings
+	 * built from a set of contacts rather than by a contact manager.
+	 */
+	private static class FixedContacts implements ContactResolver {
+
+		private final int[] ids;
+		private final Contact[] contacts;
+		private final TimeZone timeZone;
+
+		/**
+		 * @param Contact[] the contacts, in any order
+		 * @param int[] their IDs, sorted and without repeats
+		 * @param TimeZone the zone to show the date in
+		 */
+		FixedContacts(Contact[] contacts, int[] ids, TimeZone timeZone) {
+			this.ids      = ids;
+			this.contacts = new Contact[this.ids.length];
+			this.timeZone = (TimeZone) timeZone.clone();
+
+			// The first contact seen for an ID wins, as it would in a set
+			for (int i = contacts.length - 1; i >= 0; i--) {
+				if (contacts[i] != null) {
+					int index = Arrays.binarySearch(this.ids, contacts[i].getId());
+
+					if (index >= 0) {
+						this.contacts[index] = contacts[i];
+					}
+				}
+			}
+		}
+
+		@Override
+		public Contact[] resolve(int[] ids) {
+			Contact[] resolved = new Contact[ids.length];
+
+			for (int i = 0; i < ids.length; i++) {
+				int index = Arrays.binarySearch(this.ids, ids[i]);
+				resolved[i] = index >= 0 ? this.contacts[index] : null;
+			}
+
+			return resolved;
+		}
+
+		@Override
+		public TimeZone getTimeZone() {
+			return (TimeZone) this.timeZone.clone();
+		}
 	}
-}
\ No newline at end of file
+}
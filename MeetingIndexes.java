@@ -0,0 +1,120 @@
+import java.util.TimeZone;
+
+/**
+ * The indexes the contact manager keeps over its meetings: by contact, by
+ * time, by day and by the words of the notes. Adding and removing a
+ * meeting goes to all of them together, so they always hold the same
+ * meetings.
+ *
+ * A TieredMeetingMap can keep a set of these up to date while a store
+ * fills it, so the indexes are built from each meeting as it is loaded
+ * rather than by reading the archived meetings back afterwards.
+ *
+ * It is not safe for use by several threads unless they are reading only.
+ */
+public class MeetingIndexes {
+
+	private final ContactMeetingIndex contactIndex;
+	private final MeetingDateIndex dateIndex;
+	private final MeetingDayIndex dayIndex;
+	private final NotesIndex notesIndex;
+
+	/**
+	 * Builds empty indexes.
+	 *
+	 * @param TimeZone the time zone the days of the meetings are worked out in
+	 */
+	MeetingIndexes(TimeZone timeZone) {
+		this.contactIndex = new ContactMeetingIndex();
+		this.dateIndex    = new MeetingDateIndex();
+		this.dayIndex     = new MeetingDayIndex(timeZone);
+		this.notesIndex   = new NotesIndex();
+	}
+
+	/**
+	 * A getter for the index of meetings by the contacts attending them.
+	 * @return ContactMeetingIndex
+	 * @author David Jones
+	 */
+	public ContactMeetingIndex getContactIndex() {
+		return this.contactIndex;
+	}
+
+	/**
+	 * A getter for the index of meetings by time.
+	 * @return MeetingDateIndex
+	 * @author David Jones
+	 */
+	public MeetingDateIndex getDateIndex() {
+		return this.dateIndex;
+	}
+
+	/**
+	 * A getter for the index of meetings by day.
+	 * @return MeetingDayIndex
+	 * @author David Jones
+	 */
+	public MeetingDayIndex getDayIndex() {
+		return this.dayIndex;
+	}
+
+	/**
+	 * A getter for the index of the notes of past meetings.
+	 * @return NotesIndex
+	 * @author David Jones
+	 */
+	public NotesIndex getNotesIndex() {
+		return this.notesIndex;
+	}
+
+	/**
+	 * Adds the meeting to every index.
+	 *
+	 * @param  Meeting the meeting
+	 * @return void
+	 * @author David Jones
+	 */
+	public void add(Meeting meeting) {
+		long time = MeetingImpl.timeOf(meeting);
+
+		this.contactIndex.add(meeting);
+		this.dateIndex.add(meeting.getId(), time);
+		this.dayIndex.add(meeting.getId(), time);
+
+		if (meeting instanceof PastMeeting) {
+			this.notesIndex.put(meeting.getId(), ((PastMeeting) meeting).getNotes());
+		}
+	}
+
+	/**
+	 * Removes the meeting from every index.
+	 *
+	 * @param  Meeting the meeting as it was when it was added
+	 * @return void
+	 * @author David Jones
+	 */
+	public void remove(Meeting meeting) {
+		long time = MeetingImpl.timeOf(meeting);
+
+		this.contactIndex.remove(meeting);
+		this.dateIndex.remove(meeting.getId(), time);
+		this.dayIndex.remove(meeting.getId(), time);
+
+		if (meeting instanceof PastMeeting) {
+			this.notesIndex.remove(meeting.getId(), ((PastMeeting) meeting).getNotes());
+		}
+	}
+
+	/**
+	 * Empties every index.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void clear() {
+		this.contactIndex.clear();
+		this.dateIndex.clear();
+		this.dayIndex.clear();
+		this.notesIndex.clear();
+	}
+}
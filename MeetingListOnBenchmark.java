@@ -0,0 +1,74 @@
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures the cost of a single getMeetingListOn query against a store
+ * holding a large number of meetings.
+ *
+ * Run with: java MeetingListOnBenchmark [meetings] [queries]
+ * The defaults are 1,000,000 meetings and 100,000 queries. The meetings
+ * are spread over roughly three years so each day holds about a thousand.
+ */
+public class MeetingListOnBenchmark {
+
+	private static final int DAYS = 1000;
+
+	public static void main(String[] args) {
+
+		int meetingCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int queryCount   = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+		ContactManagerImpl contactManager = new ContactManagerImpl();
+		int contactId = contactManager.addNewContact("David Jones", "Some notes");
+		Set<Contact> contacts = new HashSet<Contact>(contactManager.getContacts(contactId));
+
+		Calendar firstDay = Calendar.getInstance();
+		firstDay.add(Calendar.DAY_OF_MONTH, -DAYS - 1);
+
+		Random random = new Random(42);
+		long loadStart = System.nanoTime();
+
+		for (int i = 0; i < meetingCount; i++) {
+			Calendar date = (Calendar) firstDay.clone();
+			date.add(Calendar.DAY_OF_MONTH, random.nextInt(DAYS));
+			date.set(Calendar.HOUR_OF_DAY, random.nextInt(24));
+			date.set(Calendar.MINUTE, random.nextInt(60));
+
+			contactManager.addNewPastMeeting(contacts, date, "Some notes");
+		}
+
+		long loadTime = System.nanoTime() - loadStart;
+		System.out.printf("Loaded %d meetings in %d ms%n", meetingCount, loadTime / 1000000);
+
+		Calendar[] days = new Calendar[DAYS];
+		for (int i = 0; i < DAYS; i++) {
+			days[i] = (Calendar) firstDay.clone();
+			days[i].add(Calendar.DAY_OF_MONTH, i);
+		}
+
+		// Warm up so the timed run measures compiled code
+		long checksum = runQueries(contactManager, days, queryCount, random);
+
+		long queryStart = System.nanoTime();
+		checksum += runQueries(contactManager, days, queryCount, random);
+		long queryTime = System.nanoTime() - queryStart;
+
+		System.out.printf("%d queries, %.1f us per query, %.1f meetings per result (checksum %d)%n",
+			queryCount, queryTime / 1000.0 / queryCount, checksum / 2.0 / queryCount, checksum);
+	}
+
+	private static long runQueries(ContactManager contactManager, Calendar[] days, int queryCount, Random random) {
+
+		long total = 0;
+
+		for (int i = 0; i < queryCount; i++) {
+			List<Meeting> meetings = contactManager.getMeetingListOn(days[random.nextInt(days.length)]);
+			total += meetings.size();
+		}
+
+		return total;
+	}
+}
@@ -0,0 +1,105 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a chronological list of meetings a page at a time, asking for the
+ * next page only once the last one has been read.
+ *
+ * Each page is read from the contact manager under its own read lock and
+ * picks up after the last meeting of the page before, so meetings can be
+ * added between pages without anything being skipped or repeated. Pages
+ * start small, so a caller that stops after a few meetings only pays for
+ * those, and double up to a limit for callers that read on.
+ */
+public class MeetingPageIterator<T extends Meeting> implements Iterator<T> {
+
+	static final int FIRST_PAGE_SIZE = 16;
+	static final int MAX_PAGE_SIZE = 1024;
+
+	/**
+	 * Reads one page of meetings.
+	 */
+	interface PageSource<T extends Meeting> {
+
+		/**
+		 * Returns at most the given number of meetings after the position
+		 * in chronological order.
+		 *
+		 * @param  MeetingCursor the position the meetings must be after
+		 * @param  int the maximum number of meetings to return
+		 * @return List<T>
+		 */
+		List<T> page(MeetingCursor cursor, int limit);
+	}
+
+	private final PageSource<T> source;
+	private List<T> page;
+	private int index;
+	private int pageSize;
+	private boolean lastPage;
+
+	MeetingPageIterator(PageSource<T> source) {
+
+		if (source == null) {
+			throw new NullPointerException("The page source cannot be null.");
+		}
+
+		this.source   = source;
+		this.page     = null;
+		this.index    = 0;
+		this.pageSize = FIRST_PAGE_SIZE;
+		this.lastPage = false;
+	}
+
+	/**
+	 * Returns a sequential, ordered stream over the meetings from the source.
+	 * Nothing is read until the stream is used.
+	 *
+	 * @param  PageSource<T> the source of the pages
+	 * @return Stream<T>
+	 * @author David Jones
+	 */
+	static <T extends Meeting> Stream<T> stream(PageSource<T> source) {
+		Iterator<T> iterator = new MeetingPageIterator<T>(source);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.page != null && this.index < this.page.size()) {
+			return true;
+		}
+
+		if (this.lastPage) {
+			return false;
+		}
+
+		MeetingCursor cursor = MeetingCursor.START;
+		if (this.page != null) {
+			cursor = MeetingCursor.after(this.page.get(this.page.size() - 1));
+			this.pageSize = Math.min(this.pageSize * 2, MAX_PAGE_SIZE);
+		}
+
+		this.page  = this.source.page(cursor, this.pageSize);
+		this.index = 0;
+
+		// A short page means there is nothing after it
+		this.lastPage = this.page.size() < this.pageSize;
+
+		return !this.page.isEmpty();
+	}
+
+	@Override
+	public T next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		return this.page.get(this.index++);
+	}
+}
@@ -3,6 +3,11 @@ import org.junit.*;
 import java.util.Calendar;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.TimeZone;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 public class MeetingTest {
 
@@ -61,4 +66,91 @@ public class MeetingTest {
 		Meeting meeting = new MockMeeting(1, this.aDate, this.contacts);
 		assertEquals("The contacts set passed into the constructor does not match", this.contacts, meeting.getContacts());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testChangingTheDatePassedInDoesNotChangeTheMeeting() {
+		Meeting meeting = new MockMeeting(1, this.aDate, this.contacts);
+		long time = this.aDate.getTimeInMillis();
+
+		this.aDate.add(Calendar.DAY_OF_MONTH, 1);
+
+		assertEquals("The meeting date should not follow changes to the date passed in", time, meeting.getDate().getTimeInMillis());
+	}
+
+	@Test
+	public void testChangingTheReturnedDateDoesNotChangeTheMeeting() {
+		Meeting meeting = new MockMeeting(1, this.aDate, this.contacts);
+		long time = this.aDate.getTimeInMillis();
+
+		meeting.getDate().add(Calendar.DAY_OF_MONTH, 1);
+
+		assertEquals("The meeting date should not follow changes to a returned date", time, meeting.getDate().getTimeInMillis());
+	}
+
+	@Test
+	public void testContactIdsAreSortedWithoutRepeats() {
+		this.contacts.add(new ContactImpl(7, "Jane Smith"));
+		this.contacts.add(new ContactImpl(3, "John Smith"));
+		this.contacts.add(new ContactImpl(3, "John Smith Again"));
+
+		MeetingImpl meeting = new MockMeeting(1, this.aDate, this.contacts);
+
+		assertArrayEquals("The contact IDs should be sorted without repeats.", new int[] {1, 3, 7}, meeting.getContactIds());
+		assertEquals("The contacts should not repeat an ID.", 3, meeting.getContacts().size());
+		assertTrue("The meeting should have contact 7.", meeting.hasContact(7));
+		assertFalse("The meeting should not have contact 2.", meeting.hasContact(2));
+	}
+
+	@Test
+	public void testDateIsInTheZoneOfTheDateGiven() {
+		Calendar date = Calendar.getInstance(TimeZone.getTimeZone("Pacific/Kiritimati"));
+		Meeting meeting = new FutureMeetingImpl(1, date, this.contacts);
+
+		assertEquals(date.getTimeZone(), meeting.getDate().getTimeZone());
+		assertEquals(date.get(Calendar.DAY_OF_MONTH), meeting.getDate().get(Calendar.DAY_OF_MONTH));
+	}
+
+	@Test
+	public void testContactsAreResolvedOnEachRead() {
+		final Contact[] current = {new ContactImpl(5, "Before")};
+		ContactResolver resolver = new ContactResolver() {
+			@Override
+			public Contact[] resolve(int[] ids) {
+				return new Contact[] {current[0]};
+			}
+
+			@Override
+			public TimeZone getTimeZone() {
+				return TimeZone.getTimeZone("UTC");
+			}
+		};
+
+		Meeting meeting = new FutureMeetingImpl(1, this.aDate.getTimeInMillis(), new int[] {5}, resolver);
+		assertEquals("The first contact should be resolved.", "Before", meeting.getContacts().iterator().next().getName());
+
+		current[0] = new ContactImpl(5, "After");
+		assertEquals("The contact should be resolved again.", "After", meeting.getContacts().iterator().next().getName());
+		assertTrue("The view should contain the current contact.", meeting.getContacts().contains(current[0]));
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testTheContactsCannotBeChanged() {
+		Meeting meeting = new MockMeeting(1, this.aDate, this.contacts);
+		meeting.getContacts().add(new ContactImpl(2, "Jane Smith"));
+	}
+
+	@Test
+	public void testSerializingKeepsTheContacts() throws Exception {
+		Meeting meeting = new FutureMeetingImpl(1, this.aDate, this.contacts);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(bytes);
+		output.writeObject(meeting);
+		output.close();
+
+		Meeting copy = (Meeting) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		assertEquals("The copy should have the same contact.", "David Jones", copy.getContacts().iterator().next().getName());
+		assertEquals("The copy should have one contact.", 1, copy.getContacts().size());
+	}
+}
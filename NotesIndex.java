@@ -0,0 +1,249 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An inverted text index over notes.
+ *
+ * Notes are split into lower-case words. For each word the index keeps a
+ * postings list of the IDs of the records using it and how often they use
+ * it. A search only visits the postings lists of the words searched for,
+ * and ranks the records found by term frequency weighted by how rare each
+ * word is (tf-idf).
+ *
+ * A postings list is a sorted int array of IDs beside a short array of
+ * counts, so a word used by a record costs six bytes rather than a boxed
+ * entry in a map; only the distinct words are objects. Nothing is kept
+ * per record, so removing a record takes the notes it was indexed with
+ * and splits them again to find its postings.
+ *
+ * It is not safe for use by several threads unless they are reading only.
+ */
+public class NotesIndex {
+
+	private static final int MIN_POSTINGS_CAPACITY = 2;
+
+	private final Map<String, Postings> postings;
+	private int documentCount;
+
+	NotesIndex() {
+		this.postings      = new HashMap<String, Postings>();
+		this.documentCount = 0;
+	}
+
+	/**
+	 * Splits the text into lower-case words, counting how often each is used.
+	 * Anything that is not a letter or a digit separates words.
+	 *
+	 * @param  String the text to split
+	 * @return Map<String, Integer>
+	 * @author David Jones
+	 */
+	static Map<String, Integer> tokenize(String text) {
+
+		Map<String, Integer> terms = new LinkedHashMap<String, Integer>();
+		int length = text.length();
+		int start  = -1;
+
+		for (int i = 0; i <= length; i++) {
+			boolean wordCharacter = i < length && Character.isLetterOrDigit(text.charAt(i));
+
+			if (wordCharacter && start < 0) {
+				start = i;
+			} else if (!wordCharacter && start >= 0) {
+				String term = text.substring(start, i).toLowerCase(Locale.ROOT);
+				Integer count = terms.get(term);
+				terms.put(term, count == null ? 1 : count + 1);
+				start = -1;
+			}
+		}
+
+		return terms;
+	}
+
+	/**
+	 * Indexes the notes for a record. A record already in the index has to
+	 * be removed, with the notes it was indexed with, first.
+	 *
+	 * @param  int the ID of the record
+	 * @param  String the notes
+	 * @return void
+	 * @author David Jones
+	 */
+	public void put(int id, String notes) {
+
+		Map<String, Integer> terms = tokenize(notes);
+		if (terms.isEmpty()) {
+			return;
+		}
+
+		this.documentCount++;
+
+		Iterator<Map.Entry<String, Integer>> iterator = terms.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Integer> term = iterator.next();
+
+			Postings ids = this.postings.get(term.getKey());
+			if (ids == null) {
+				ids = new Postings();
+				this.postings.put(term.getKey(), ids);
+			}
+
+			ids.add(id, term.getValue());
+		}
+	}
+
+	/**
+	 * Removes a record from the index.
+	 *
+	 * @param  int the ID of the record
+	 * @param  String the notes the record was indexed with
+	 * @return void
+	 * @author David Jones
+	 */
+	public void remove(int id, String notes) {
+
+		Map<String, Integer> terms = tokenize(notes);
+		boolean removed = false;
+
+		Iterator<String> iterator = terms.keySet().iterator();
+		while (iterator.hasNext()) {
+			String term = iterator.next();
+
+			Postings ids = this.postings.get(term);
+			if (ids == null || !ids.remove(id)) {
+				continue;
+			}
+
+			removed = true;
+			if (ids.size == 0) {
+				this.postings.remove(term);
+			}
+		}
+
+		if (removed) {
+			this.documentCount--;
+		}
+	}
+
+	/**
+	 * Returns the IDs of the records whose notes use any of the words in the
+	 * query, best match first. Records with the same score are ordered by ID.
+	 *
+	 * @param  String the words to search for
+	 * @return List<Integer>
+	 * @author David Jones
+	 */
+	public List<Integer> search(String query) {
+
+		final Map<Integer, Double> scores = new HashMap<Integer, Double>();
+		int documentCount = this.documentCount;
+
+		Iterator<String> termIterator = tokenize(query).keySet().iterator();
+		while (termIterator.hasNext()) {
+			Postings ids = this.postings.get(termIterator.next());
+			if (ids == null) {
+				continue;
+			}
+
+			double inverseDocumentFrequency = Math.log(1.0 + (double) documentCount / ids.size);
+
+			for (int i = 0; i < ids.size; i++) {
+				Double score = scores.get(ids.ids[i]);
+				double termScore = ids.counts[i] * inverseDocumentFrequency;
+
+				scores.put(ids.ids[i], score == null ? termScore : score + termScore);
+			}
+		}
+
+		List<Integer> ranked = new ArrayList<Integer>(scores.keySet());
+		Collections.sort(ranked, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer id1, Integer id2) {
+				int byScore = Double.compare(scores.get(id2), scores.get(id1));
+				return byScore != 0 ? byScore : Integer.compare(id1, id2);
+			}
+		});
+
+		return ranked;
+	}
+
+	/**
+	 * Empties the index.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void clear() {
+		this.postings.clear();
+		this.documentCount = 0;
+	}
+
+	/**
+	 * The records using one word: their IDs in order, and beside each how
+	 * often the record uses the word, capped at what a short holds. Most
+	 * records are added in order of ID, so adding is usually an append.
+	 */
+	private static class Postings {
+
+		private int[] ids;
+		private short[] counts;
+		private int size;
+
+		Postings() {
+			this.ids    = new int[MIN_POSTINGS_CAPACITY];
+			this.counts = new short[MIN_POSTINGS_CAPACITY];
+			this.size   = 0;
+		}
+
+		void add(int id, int count) {
+			short capped = (short) Math.min(count, Short.MAX_VALUE);
+
+			int position = Arrays.binarySearch(this.ids, 0, this.size, id);
+			if (position >= 0) {
+				this.counts[position] = capped;
+				return;
+			}
+
+			position = -position - 1;
+
+			if (this.size == this.ids.length) {
+				this.ids    = Arrays.copyOf(this.ids, this.size * 2);
+				this.counts = Arrays.copyOf(this.counts, this.size * 2);
+			}
+
+			System.arraycopy(this.ids, position, this.ids, position + 1, this.size - position);
+			System.arraycopy(this.counts, position, this.counts, position + 1, this.size - position);
+
+			this.ids[position]    = id;
+			this.counts[position] = capped;
+			this.size++;
+		}
+
+		boolean remove(int id) {
+			int position = Arrays.binarySearch(this.ids, 0, this.size, id);
+			if (position < 0) {
+				return false;
+			}
+
+			System.arraycopy(this.ids, position + 1, this.ids, position, this.size - position - 1);
+			System.arraycopy(this.counts, position + 1, this.counts, position, this.size - position - 1);
+			this.size--;
+
+			// Give back the room of a list that has shrunk to a quarter
+			if (this.size > MIN_POSTINGS_CAPACITY && this.size * 4 <= this.ids.length) {
+				this.ids    = Arrays.copyOf(this.ids, this.ids.length / 2);
+				this.counts = Arrays.copyOf(this.counts, this.counts.length / 2);
+			}
+
+			return true;
+		}
+	}
+}
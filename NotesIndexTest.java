@@ -0,0 +1,56 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+
+public class NotesIndexTest {
+
+	@Test
+	public void testRecordsAreRankedByHowOftenTheyUseTheWords() {
+		NotesIndex index = new NotesIndex();
+		index.put(3, "Budget, budget and more budget.");
+		index.put(1, "The budget was discussed.");
+		index.put(2, "Nothing about money.");
+
+		assertEquals(Arrays.asList(3, 1), index.search("BUDGET"));
+		assertEquals("Records with the same score should be ordered by ID.", Arrays.asList(1, 2), index.search("the nothing"));
+		assertTrue(index.search("missing").isEmpty());
+	}
+
+	@Test
+	public void testARecordIsRemovedByTheNotesItWasIndexedWith() {
+		NotesIndex index = new NotesIndex();
+		index.put(1, "Old notes");
+		index.put(2, "Other notes");
+
+		index.remove(1, "Old notes");
+		index.put(1, "New notes");
+
+		assertTrue(index.search("old").isEmpty());
+		assertEquals(Arrays.asList(1), index.search("new"));
+		assertEquals(Arrays.asList(1, 2), index.search("notes"));
+
+		index.remove(1, "New notes");
+		index.remove(2, "Other notes");
+		assertTrue(index.search("notes").isEmpty());
+	}
+
+	@Test
+	public void testPostingsAddedOutOfOrderAreKeptSorted() {
+		NotesIndex index = new NotesIndex();
+		for (int id = 100; id > 0; id--) {
+			index.put(id, "Shared");
+		}
+
+		for (int id = 2; id <= 100; id += 2) {
+			index.remove(id, "Shared");
+		}
+
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int id = 1; id <= 100; id += 2) {
+			expected.add(id);
+		}
+
+		assertEquals(expected, index.search("shared"));
+	}
+}
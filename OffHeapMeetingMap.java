@@ -0,0 +1,758 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map of meetings by ID that holds the meetings outside the Java heap,
+ * so a long meeting history gives the garbage collector nothing to trace.
+ *
+ * Each field of a meeting is kept in its own column of direct buffers: the
+ * ID, the time, the kind of meeting, and the offsets of its contact IDs and
+ * its notes, which are appended to two data areas. Columns and data areas
+ * grow a buffer at a time and are never copied to grow. The hash table from
+ * ID to entry is a column too, probed linearly just as in IntRecordMap.
+ *
+ * A meeting is decoded into a new object each time it is read, and looks
+ * its contacts up through the resolver the map was built with, so meetings
+ * from this map should be compared by ID. Entries keep the order they were
+ * put in. A removed or replaced meeting leaves its data behind until such
+ * leftovers outnumber the meetings, when the live meetings are copied into
+ * fresh buffers and the old ones are left for the collector to free.
+ *
+ * Reads only use absolute positions, so any number of threads may read at
+ * once. Changes need the same exclusive access as for IntRecordMap.
+ */
+public class OffHeapMeetingMap extends AbstractMap<Integer, Meeting> implements RecordMap<Meeting> {
+
+	static final int CHUNK_SHIFT = 14;
+	static final int BLOCK_SIZE = 1 << 20;
+
+	private static final int MIN_CAPACITY = 8;
+	private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+	private static final byte REMOVED = 0;
+	private static final byte FUTURE  = 1;
+	private static final byte PAST    = 2;
+
+	private final ContactResolver resolver;
+
+	private Table table;
+	private int end;
+	private int size;
+	private int waste;
+
+	private Column slots;
+	private int slotCount;
+	private int shift;
+
+	private int modCount;
+
+	OffHeapMeetingMap(ContactResolver resolver) {
+		this(resolver, MIN_CAPACITY);
+	}
+
+	/**
+	 * Builds an empty map whose hash table can take the given number of
+	 * meetings before it has to grow.
+	 *
+	 * @param ContactResolver where the meetings read back look their contacts up
+	 * @param int the expected number of meetings
+	 */
+	OffHeapMeetingMap(ContactResolver resolver, int expectedSize) {
+
+		if (resolver == null) {
+			throw new NullPointerException("The contact resolver cannot be null.");
+		}
+
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("The expected size cannot be negative.");
+		}
+
+		this.resolver = resolver;
+		this.table    = new Table();
+		this.end      = 0;
+		this.size     = 0;
+		this.waste    = 0;
+		this.allocateSlots(expectedSize);
+	}
+
+	/**
+	 * A getter for the resolver the meetings read back look their contacts up through.
+	 * @return ContactResolver
+	 * @author David Jones
+	 */
+	public ContactResolver getResolver() {
+		return this.resolver;
+	}
+
+	/**
+	 * Returns the meeting with the given ID, decoded into a new object, or
+	 * null if it is not in the map.
+	 *
+	 * @param  int the meeting ID
+	 * @return Meeting
+	 * @author David Jones
+	 */
+	public Meeting get(int key) {
+		int entry = this.find(key);
+		return entry < 0 ? null : this.meetingAt(entry);
+	}
+
+	/**
+	 * Checks whether the meeting with the given ID is in the map.
+	 *
+	 * @param  int the meeting ID
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean containsKey(int key) {
+		return this.find(key) >= 0;
+	}
+
+	/**
+	 * Copies the meeting into the map. A meeting already in the map keeps
+	 * its place in the order, and a new one goes at the end.
+	 *
+	 * @param  int the meeting ID
+	 * @param  Meeting the meeting, which cannot be null
+	 * @return Meeting the meeting the ID had before, or null
+	 * @throws IllegalArgumentException if the meeting has a different ID
+	 * @author David Jones
+	 */
+	public Meeting put(int key, Meeting meeting) {
+
+		if (meeting == null) {
+			throw new NullPointerException("The meeting cannot be null.");
+		}
+
+		if (meeting.getId() != key) {
+			throw new IllegalArgumentException("The meeting " + meeting.getId() + " cannot be put under the ID " + key + ".");
+		}
+
+		int entry = this.find(key);
+		if (entry >= 0) {
+			Meeting previous = this.meetingAt(entry);
+			this.table.write(entry, meeting);
+			this.waste++;
+			this.compactIfWasteful();
+
+			return previous;
+		}
+
+		entry = this.end++;
+		this.table.ensureLength(this.end);
+		this.table.write(entry, meeting);
+		this.size++;
+		this.modCount++;
+
+		// The table is kept at most half full so probes stay short
+		if (this.size * 2 > this.slotCount) {
+			this.allocateSlots(this.slotCount);
+			this.rehash();
+		} else {
+			this.insertSlot(key, entry);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Removes the meeting with the given ID from the map.
+	 *
+	 * @param  int the meeting ID
+	 * @return Meeting the meeting the ID had, or null if it was not in the map
+	 * @author David Jones
+	 */
+	public Meeting remove(int key) {
+
+		int slot = this.findSlot(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		int entry = entryAt(this.slots.getLong(slot));
+		Meeting previous = this.meetingAt(entry);
+
+		this.table.kinds.putByte(entry, REMOVED);
+		this.size--;
+		this.waste++;
+		this.modCount++;
+		this.deleteSlot(slot);
+		this.compactIfWasteful();
+
+		return previous;
+	}
+
+	/**
+	 * Returns a copy of the map, made by copying its buffers in bulk into
+	 * new direct buffers, so the copy is outside the heap too.
+	 *
+	 * @return RecordMap<Meeting>
+	 * @author David Jones
+	 */
+	public RecordMap<Meeting> snapshot() {
+		OffHeapMeetingMap copy = new OffHeapMeetingMap(this.resolver, 0);
+		copy.table     = this.table.copy();
+		copy.end       = this.end;
+		copy.size      = this.size;
+		copy.waste     = this.waste;
+		copy.slots     = this.slots.copy();
+		copy.slotCount = this.slotCount;
+		copy.shift     = this.shift;
+
+		return copy;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	@Override
+	public Meeting get(Object key) {
+		return key instanceof Integer ? this.get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && this.containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public Meeting put(Integer key, Meeting meeting) {
+		return this.put(key.intValue(), meeting);
+	}
+
+	@Override
+	public Meeting remove(Object key) {
+		return key instanceof Integer ? this.remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public void clear() {
+		this.table = new Table();
+		this.end   = 0;
+		this.size  = 0;
+		this.waste = 0;
+		this.modCount++;
+		this.allocateSlots(MIN_CAPACITY);
+	}
+
+	@Override
+	public Set<Integer> keySet() {
+		return new AbstractSet<Integer>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return new EntryIterator<Integer>() {
+					@Override
+					Integer get(int entry) {
+						return table.ids.getInt(entry);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+		};
+	}
+
+	@Override
+	public Collection<Meeting> values() {
+		return new AbstractCollection<Meeting>() {
+			@Override
+			public Iterator<Meeting> iterator() {
+				return new EntryIterator<Meeting>() {
+					@Override
+					Meeting get(int entry) {
+						return meetingAt(entry);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, Meeting>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, Meeting>>() {
+			@Override
+			public Iterator<Map.Entry<Integer, Meeting>> iterator() {
+				return new EntryIterator<Map.Entry<Integer, Meeting>>() {
+					@Override
+					Map.Entry<Integer, Meeting> get(int entry) {
+						return new AbstractMap.SimpleEntry<Integer, Meeting>(table.ids.getInt(entry), meetingAt(entry)) {
+							@Override
+							public Meeting setValue(Meeting meeting) {
+								super.setValue(meeting);
+								return OffHeapMeetingMap.this.put(this.getKey().intValue(), meeting);
+							}
+						};
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Walks the entries in the order they were added, skipping the gaps.
+	 */
+	private abstract class EntryIterator<T> implements Iterator<T> {
+
+		private int next = 0;
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		abstract T get(int entry);
+
+		@Override
+		public boolean hasNext() {
+			while (this.next < end && table.kinds.getByte(this.next) == REMOVED) {
+				this.next++;
+			}
+
+			return this.next < end;
+		}
+
+		@Override
+		public T next() {
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			this.last = this.next++;
+			return this.get(this.last);
+		}
+
+		@Override
+		public void remove() {
+			if (this.last < 0) {
+				throw new IllegalStateException();
+			}
+
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			int slot = findSlot(table.ids.getInt(this.last));
+			table.kinds.putByte(this.last, REMOVED);
+			size--;
+			waste++;
+			modCount++;
+			deleteSlot(slot);
+
+			// Compacting would move the entries under the iterator, so the gap is left
+			this.expectedModCount = modCount;
+			this.last = -1;
+		}
+	}
+
+	private Meeting meetingAt(int entry) {
+		Table table = this.table;
+
+		int id         = table.ids.getInt(entry);
+		long time      = table.times.getLong(entry);
+		int[] contacts = table.readContactIds(entry);
+
+		if (table.kinds.getByte(entry) == PAST) {
+			return new PastMeetingImpl(id, time, contacts, this.resolver, table.readNotes(entry));
+		}
+
+		return new FutureMeetingImpl(id, time, contacts, this.resolver);
+	}
+
+	private int find(int key) {
+		int slot = this.findSlot(key);
+		return slot < 0 ? -1 : entryAt(this.slots.getLong(slot));
+	}
+
+	private int findSlot(int key) {
+		int mask = this.slotCount - 1;
+		int slot = (key * GOLDEN_RATIO) >>> this.shift;
+
+		while (true) {
+			long packed = this.slots.getLong(slot);
+			if (packed == 0) {
+				return -1;
+			}
+
+			if ((int) (packed >>> 32) == key) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void insertSlot(int key, int entry) {
+		int mask = this.slotCount - 1;
+		int slot = (key * GOLDEN_RATIO) >>> this.shift;
+
+		while (this.slots.getLong(slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+
+		this.slots.putLong(slot, ((long) key << 32) | (entry + 1));
+	}
+
+	/**
+	 * Empties a slot and moves later slots of the same probe run back into
+	 * it, as in IntRecordMap.
+	 */
+	private void deleteSlot(int slot) {
+		int mask = this.slotCount - 1;
+		int gap  = slot;
+		int next = (gap + 1) & mask;
+
+		while (this.slots.getLong(next) != 0) {
+			long packed = this.slots.getLong(next);
+			int home = ((int) (packed >>> 32) * GOLDEN_RATIO) >>> this.shift;
+
+			// Move the slot back if its home is not between the gap and where it is
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				this.slots.putLong(gap, packed);
+				gap = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		this.slots.putLong(gap, 0);
+	}
+
+	private static int entryAt(long packed) {
+		return (int) packed - 1;
+	}
+
+	private void compactIfWasteful() {
+		if (this.waste > Math.max(this.size, MIN_CAPACITY)) {
+			this.compact();
+		}
+	}
+
+	private void compact() {
+		Table compacted = new Table();
+		compacted.ensureLength(this.size);
+
+		int to = 0;
+		for (int from = 0; from < this.end; from++) {
+			if (this.table.kinds.getByte(from) != REMOVED) {
+				compacted.copy(to++, this.table, from);
+			}
+		}
+
+		this.table = compacted;
+		this.end   = to;
+		this.waste = 0;
+		this.modCount++;
+
+		this.allocateSlots(this.size);
+		this.rehash();
+	}
+
+	private void allocateSlots(int entries) {
+		// A power of two at least twice the number of entries
+		int capacity = Integer.highestOneBit(Math.max(entries, MIN_CAPACITY) * 2 - 1) << 1;
+
+		this.slots     = new Column(8, capacity);
+		this.slotCount = capacity;
+		this.shift     = 32 - Integer.numberOfTrailingZeros(capacity);
+	}
+
+	private void rehash() {
+		for (int entry = 0; entry < this.end; entry++) {
+			if (this.table.kinds.getByte(entry) != REMOVED) {
+				this.insertSlot(this.table.ids.getInt(entry), entry);
+			}
+		}
+	}
+
+	private static ByteBuffer allocate(int capacity) {
+		return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Copies the whole of a buffer into a new one with the same position.
+	 */
+	private static ByteBuffer copyOf(ByteBuffer buffer) {
+		ByteBuffer source = buffer.duplicate();
+		source.clear();
+
+		ByteBuffer copy = allocate(buffer.capacity());
+		copy.put(source);
+		copy.position(buffer.position());
+
+		return copy;
+	}
+
+	/**
+	 * The columns and data areas holding the meetings, one row per entry.
+	 */
+	private static final class Table {
+
+		final Column ids;
+		final Column times;
+		final Column kinds;
+		final Column contactOffsets;
+		final Column notesOffsets;
+		final DataArea contactData;
+		final DataArea notesData;
+
+		Table() {
+			this(new Column(4), new Column(8), new Column(1), new Column(8), new Column(8), new DataArea(), new DataArea());
+		}
+
+		private Table(Column ids, Column times, Column kinds, Column contactOffsets, Column notesOffsets, DataArea contactData, DataArea notesData) {
+			this.ids            = ids;
+			this.times          = times;
+			this.kinds          = kinds;
+			this.contactOffsets = contactOffsets;
+			this.notesOffsets   = notesOffsets;
+			this.contactData    = contactData;
+			this.notesData      = notesData;
+		}
+
+		Table copy() {
+			return new Table(this.ids.copy(), this.times.copy(), this.kinds.copy(), this.contactOffsets.copy(), this.notesOffsets.copy(), this.contactData.copy(), this.notesData.copy());
+		}
+
+		void ensureLength(int length) {
+			this.ids.ensureLength(length);
+			this.times.ensureLength(length);
+			this.kinds.ensureLength(length);
+			this.contactOffsets.ensureLength(length);
+			this.notesOffsets.ensureLength(length);
+		}
+
+		void write(int entry, Meeting meeting) {
+			boolean past = meeting instanceof PastMeeting;
+
+			this.ids.putInt(entry, meeting.getId());
+			this.times.putLong(entry, MeetingImpl.timeOf(meeting));
+			this.contactOffsets.putLong(entry, this.contactData.appendInts(MeetingImpl.contactIdsOf(meeting)));
+			this.notesOffsets.putLong(entry, past ? this.notesData.appendBytes(((PastMeeting) meeting).getNotes().getBytes(StandardCharsets.UTF_8)) : -1);
+			this.kinds.putByte(entry, past ? PAST : FUTURE);
+		}
+
+		void copy(int entry, Table from, int fromEntry) {
+			long notesOffset = from.notesOffsets.getLong(fromEntry);
+
+			this.ids.putInt(entry, from.ids.getInt(fromEntry));
+			this.times.putLong(entry, from.times.getLong(fromEntry));
+			this.contactOffsets.putLong(entry, this.contactData.appendInts(from.contactData.readInts(from.contactOffsets.getLong(fromEntry))));
+			this.notesOffsets.putLong(entry, notesOffset < 0 ? -1 : this.notesData.appendBytes(from.notesData.readBytes(notesOffset)));
+			this.kinds.putByte(entry, from.kinds.getByte(fromEntry));
+		}
+
+		int[] readContactIds(int entry) {
+			return this.contactData.readInts(this.contactOffsets.getLong(entry));
+		}
+
+		String readNotes(int entry) {
+			return new String(this.notesData.readBytes(this.notesOffsets.getLong(entry)), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * A column of fixed-width values held in direct buffers of
+	 * 2^CHUNK_SHIFT values each, added as the column grows.
+	 */
+	private static final class Column {
+
+		private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+		private final int width;
+		private ByteBuffer[] chunks;
+
+		Column(int width) {
+			this.width  = width;
+			this.chunks = new ByteBuffer[0];
+		}
+
+		Column(int width, int length) {
+			this(width);
+			this.ensureLength(length);
+		}
+
+		void ensureLength(int length) {
+			int needed = (int) (((long) length + CHUNK_MASK) >>> CHUNK_SHIFT);
+
+			if (needed > this.chunks.length) {
+				int allocated = this.chunks.length;
+				this.chunks = Arrays.copyOf(this.chunks, needed);
+
+				for (int i = allocated; i < needed; i++) {
+					this.chunks[i] = allocate(this.width << CHUNK_SHIFT);
+				}
+			}
+		}
+
+		Column copy() {
+			Column copy = new Column(this.width);
+			copy.chunks = new ByteBuffer[this.chunks.length];
+
+			for (int i = 0; i < this.chunks.length; i++) {
+				copy.chunks[i] = copyOf(this.chunks[i]);
+			}
+
+			return copy;
+		}
+
+		byte getByte(int index) {
+			return this.chunks[index >>> CHUNK_SHIFT].get((index & CHUNK_MASK) * this.width);
+		}
+
+		int getInt(int index) {
+			return this.chunks[index >>> CHUNK_SHIFT].getInt((index & CHUNK_MASK) * this.width);
+		}
+
+		long getLong(int index) {
+			return this.chunks[index >>> CHUNK_SHIFT].getLong((index & CHUNK_MASK) * this.width);
+		}
+
+		void putByte(int index, byte value) {
+			this.chunks[index >>> CHUNK_SHIFT].put((index & CHUNK_MASK) * this.width, value);
+		}
+
+		void putInt(int index, int value) {
+			this.chunks[index >>> CHUNK_SHIFT].putInt((index & CHUNK_MASK) * this.width, value);
+		}
+
+		void putLong(int index, long value) {
+			this.chunks[index >>> CHUNK_SHIFT].putLong((index & CHUNK_MASK) * this.width, value);
+		}
+	}
+
+	/**
+	 * Length-prefixed values appended to direct buffers. The first blocks
+	 * are small so a small map stays small, and they double up to
+	 * BLOCK_SIZE bytes, or more for a value that would not fit. An offset
+	 * holds the number of the block in its high half and the position in
+	 * its low half.
+	 */
+	private static final class DataArea {
+
+		private final List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+		private ByteBuffer current;
+
+		DataArea copy() {
+			DataArea copy = new DataArea();
+
+			for (int i = 0; i < this.blocks.size(); i++) {
+				copy.blocks.add(copyOf(this.blocks.get(i)));
+			}
+
+			if (this.current != null) {
+				copy.current = copy.blocks.get(copy.blocks.size() - 1);
+			}
+
+			return copy;
+		}
+
+		long appendInts(int[] values) {
+			long offset = this.reserve(4 + values.length * 4);
+			ByteBuffer block = this.block(offset);
+			int position = (int) offset;
+
+			block.putInt(position, values.length);
+			for (int i = 0; i < values.length; i++) {
+				block.putInt(position + 4 + i * 4, values[i]);
+			}
+
+			return offset;
+		}
+
+		long appendBytes(byte[] values) {
+			long offset = this.reserve(4 + values.length);
+			ByteBuffer block = this.block(offset);
+
+			block.putInt((int) offset, values.length);
+
+			ByteBuffer target = block.duplicate();
+			target.position((int) offset + 4);
+			target.put(values);
+
+			return offset;
+		}
+
+		int[] readInts(long offset) {
+			ByteBuffer block = this.block(offset);
+			int position = (int) offset;
+
+			int[] values = new int[block.getInt(position)];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = block.getInt(position + 4 + i * 4);
+			}
+
+			return values;
+		}
+
+		byte[] readBytes(long offset) {
+			ByteBuffer block = this.block(offset);
+
+			byte[] values = new byte[block.getInt((int) offset)];
+
+			ByteBuffer source = block.duplicate();
+			source.position((int) offset + 4);
+			source.get(values);
+
+			return values;
+		}
+
+		private ByteBuffer block(long offset) {
+			return this.blocks.get((int) (offset >>> 32));
+		}
+
+		/**
+		 * Makes room for a value at the end of the current block, starting
+		 * a new block if it does not fit.
+		 */
+		private long reserve(int length) {
+			if (this.current == null || this.current.remaining() < length) {
+				this.current = allocate(Math.max(BLOCK_SIZE >>> Math.max(0, 8 - this.blocks.size()), length));
+				this.blocks.add(this.current);
+			}
+
+			int position = this.current.position();
+			this.current.position(position + length);
+
+			return ((long) (this.blocks.size() - 1) << 32) | position;
+		}
+	}
+}
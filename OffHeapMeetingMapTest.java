@@ -0,0 +1,179 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+
+public class OffHeapMeetingMapTest {
+
+	private final String FILENAME = "off-heap-test.txt";
+
+	private ContactResolver resolver;
+
+	@Before
+	public void setUp() {
+		this.resolver = new ContactResolver() {
+			@Override
+			public Contact[] resolve(int[] ids) {
+				Contact[] contacts = new Contact[ids.length];
+				for (int i = 0; i < ids.length; i++) {
+					contacts[i] = new ContactImpl(ids[i], "Contact " + ids[i]);
+				}
+
+				return contacts;
+			}
+
+			@Override
+			public TimeZone getTimeZone() {
+				return TimeZone.getTimeZone("UTC");
+			}
+		};
+
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	@After
+	public void tearDown() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+	}
+
+	@Test
+	public void testMeetingsAreReadBack() {
+		OffHeapMeetingMap map = new OffHeapMeetingMap(this.resolver);
+		map.put(1, new FutureMeetingImpl(1, 1000L, new int[] {7, 3}, this.resolver));
+		map.put(2, new PastMeetingImpl(2, 2000L, new int[] {3}, this.resolver, "Notes \u00e9\u4e2d"));
+
+		MeetingImpl future = (MeetingImpl) map.get(1);
+		PastMeeting past   = (PastMeeting) map.get(2);
+
+		assertTrue("The first meeting should be a future meeting.", future instanceof FutureMeeting);
+		assertEquals(1000L, future.getTimeInMillis());
+		assertArrayEquals(new int[] {3, 7}, future.getContactIds());
+		assertEquals("Contact 7", ((MeetingImpl) map.get(1)).getContacts().toArray(new Contact[0])[1].getName());
+		assertEquals("The notes should survive encoding.", "Notes \u00e9\u4e2d", past.getNotes());
+		assertNull(map.get(3));
+	}
+
+	@Test
+	public void testNotesLargerThanABlockAreKept() {
+		char[] notes = new char[OffHeapMeetingMap.BLOCK_SIZE + 10];
+		Arrays.fill(notes, 'x');
+
+		OffHeapMeetingMap map = new OffHeapMeetingMap(this.resolver);
+		map.put(1, new PastMeetingImpl(1, 0L, new int[] {1}, this.resolver, "short"));
+		map.put(2, new PastMeetingImpl(2, 0L, new int[] {1}, this.resolver, new String(notes)));
+		map.put(3, new PastMeetingImpl(3, 0L, new int[] {1}, this.resolver, "after"));
+
+		assertEquals("short", ((PastMeeting) map.get(1)).getNotes());
+		assertEquals(notes.length, ((PastMeeting) map.get(2)).getNotes().length());
+		assertEquals("after", ((PastMeeting) map.get(3)).getNotes());
+	}
+
+	@Test
+	public void testBehavesLikeALinkedHashMap() {
+		OffHeapMeetingMap map = new OffHeapMeetingMap(this.resolver);
+		LinkedHashMap<Integer, String> expected = new LinkedHashMap<Integer, String>();
+		Random random = new Random(42);
+
+		for (int i = 0; i < 100000; i++) {
+			int key = 1 + random.nextInt(5000);
+
+			if (random.nextInt(3) == 0) {
+				Meeting removed = map.remove(key);
+				assertEquals(expected.remove(key), removed == null ? null : ((PastMeeting) removed).getNotes());
+			} else {
+				String notes = "Notes " + i;
+				Meeting previous = map.put(key, new PastMeetingImpl(key, i, new int[] {1 + random.nextInt(100)}, this.resolver, notes));
+				assertEquals(expected.put(key, notes), previous == null ? null : ((PastMeeting) previous).getNotes());
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		assertEquals(new ArrayList<Integer>(expected.keySet()), new ArrayList<Integer>(map.keySet()));
+
+		Iterator<Meeting> iterator = map.values().iterator();
+		Iterator<String> notes = expected.values().iterator();
+		while (iterator.hasNext()) {
+			assertEquals(notes.next(), ((PastMeeting) iterator.next()).getNotes());
+		}
+	}
+
+	@Test
+	public void testIteratorRemoveLeavesTheRestInOrder() {
+		OffHeapMeetingMap map = new OffHeapMeetingMap(this.resolver);
+		for (int i = 1; i <= 10; i++) {
+			map.put(i, new FutureMeetingImpl(i, i, new int[] {1}, this.resolver));
+		}
+
+		Iterator<Integer> iterator = map.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() % 2 == 0) {
+				iterator.remove();
+			}
+		}
+
+		assertEquals(Arrays.asList(1, 3, 5, 7, 9), new ArrayList<Integer>(map.keySet()));
+		assertFalse(map.containsKey(4));
+	}
+
+	@Test
+	public void testASnapshotIsNotReachedByLaterChanges() {
+		OffHeapMeetingMap map = new OffHeapMeetingMap(this.resolver);
+		for (int i = 1; i <= 100; i++) {
+			map.put(i, new PastMeetingImpl(i, i * 1000L, new int[] {i, 500 + i}, this.resolver, "Notes " + i));
+		}
+
+		RecordMap<Meeting> snapshot = map.snapshot();
+		for (int i = 1; i <= 100; i++) {
+			if (i % 2 == 0) {
+				map.remove(i);
+			} else {
+				map.put(i, new PastMeetingImpl(i, i * 1000L, new int[] {1}, this.resolver, "Changed " + i));
+			}
+		}
+
+		map.put(101, new FutureMeetingImpl(101, 0L, new int[] {1}, this.resolver));
+
+		assertEquals(100, snapshot.size());
+		for (int i = 1; i <= 100; i++) {
+			assertEquals("Notes " + i, ((PastMeeting) snapshot.get(i)).getNotes());
+			assertArrayEquals(new int[] {i, 500 + i}, ((MeetingImpl) snapshot.get(i)).getContactIds());
+		}
+
+		assertNull(snapshot.get(101));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAMeetingMustBePutUnderItsOwnId() {
+		new OffHeapMeetingMap(this.resolver).put(2, new FutureMeetingImpl(1, 0L, new int[] {1}, this.resolver));
+	}
+
+	@Test
+	public void testContactManagerKeepsItsMeetingsOffTheHeap() {
+		Calendar future = Calendar.getInstance();
+		future.add(Calendar.YEAR, 1);
+		Calendar past = Calendar.getInstance();
+		past.add(Calendar.YEAR, -1);
+
+		ContactManagerImpl contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME), true);
+		int davidId = contactManager.addNewContact("David Jones", "Some notes");
+		Contact david = contactManager.getContacts(davidId).iterator().next();
+
+		int futureId = contactManager.addFutureMeeting(contactManager.getContacts(davidId), future);
+		contactManager.addNewPastMeeting(contactManager.getContacts(davidId), past, "Past notes");
+
+		assertTrue("The meetings should be held off the heap.", contactManager.getMeetings() instanceof OffHeapMeetingMap);
+		assertEquals(futureId, contactManager.getFutureMeetingList(david).get(0).getId());
+		assertEquals("Past notes", contactManager.getPastMeetingListFor(david).get(0).getNotes());
+		assertSame("The meeting should give back the manager's contact.", david, contactManager.getMeeting(futureId).getContacts().iterator().next());
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(FILENAME), true);
+		assertTrue("The loaded meetings should be held off the heap.", reloaded.getMeetings() instanceof OffHeapMeetingMap);
+		assertEquals("Past notes", reloaded.getPastMeetingListFor(david).get(0).getNotes());
+		assertEquals(1, reloaded.getFutureMeetingList(david).size());
+	}
+}
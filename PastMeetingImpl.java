@@ -1,9 +1,21 @@
 import java.util.Set;
 import java.util.Calendar;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 
+/**
+ * The notes are either held as a String or, for meetings held by a contact
+ * manager, as a handle into its CompressedNotes, in which case getNotes()
+ * reads them back from there.
+ */
 public class PastMeetingImpl extends MeetingImpl implements PastMeeting {
 
+	// Kept at the value of the class as first saved, like MeetingImpl
+	private static final long serialVersionUID = -1439375712851190832L;
+
 	private String notes;
+	private transient CompressedNotes compressedNotes;
+	private transient int notesHandle;
 
 	PastMeetingImpl(int id, Calendar date, Set<Contact> contacts, String notes) {
 		super(id, date, contacts);
@@ -15,11 +27,76 @@ public class PastMeetingImpl extends MeetingImpl implements PastMeeting {
 		this.notes = notes;
 	}
 
-	public String getNotes() {
-		if (this.notes != null) {
-			return this.notes;
+	PastMeetingImpl(int id, long time, int[] contactIds, ContactResolver resolver, String notes) {
+		super(id, time, contactIds, resolver);
+
+		if (notes == null) {
+			throw new NullPointerException("Notes cannot be null.");
+		}
+
+		this.notes = notes;
+	}
+
+	/**
+	 * Builds a past meeting whose notes are added to the compressed notes
+	 * given rather than held by the meeting. With no compressed notes given
+	 * the meeting holds them itself.
+	 *
+	 * @param int the meeting ID
+	 * @param long the time of the meeting in epoch milliseconds
+	 * @param int[] the IDs of the contacts attending, in any order
+	 * @param ContactResolver where to look the contacts up
+	 * @param CompressedNotes where to keep the notes
+	 * @param String the notes
+	 */
+	PastMeetingImpl(int id, long time, int[] contactIds, ContactResolver resolver, CompressedNotes compressedNotes, String notes) {
+		super(id, time, contactIds, resolver);
+
+		if (notes == null) {
+			throw new NullPointerException("Notes cannot be null.");
+		}
+
+		if (compressedNotes == null) {
+			this.notes = notes;
 		} else {
-			return null;
+			this.compressedNotes = compressedNotes;
+			this.notesHandle     = compressedNotes.add(notes);
 		}
 	}
-}
\ No newline at end of file
+
+	public String getNotes() {
+		if (this.compressedNotes != null) {
+			return this.compressedNotes.get(this.notesHandle);
+		}
+
+		return this.notes;
+	}
+
+	/**
+	 * A getter for the compressed notes the notes are kept in, or null if
+	 * the meeting holds them itself.
+	 * @return CompressedNotes
+	 * @author David Jones
+	 */
+	CompressedNotes getCompressedNotes() {
+		return this.compressedNotes;
+	}
+
+	/**
+	 * A getter for the handle of the notes in the compressed notes.
+	 * @return int
+	 * @author David Jones
+	 */
+	int getNotesHandle() {
+		return this.notesHandle;
+	}
+
+	/**
+	 * Writes the notes themselves, so a meeting read back on its own still has them.
+	 */
+	private void writeObject(ObjectOutputStream output) throws IOException {
+		ObjectOutputStream.PutField fields = output.putFields();
+		fields.put("notes", this.getNotes());
+		output.writeFields();
+	}
+}
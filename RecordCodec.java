@@ -0,0 +1,155 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes and reads single contacts and meetings in a compact binary form.
+ *
+ * Strings are written as a length followed by their UTF-8 bytes. Meetings
+ * refer to their contacts by ID, so a contact is only ever written once.
+ */
+public class RecordCodec {
+
+	static final byte FUTURE_MEETING = 1;
+	static final byte PAST_MEETING   = 2;
+
+	private RecordCodec() {
+	}
+
+	/**
+	 * Writes a string as its length in bytes followed by its UTF-8 bytes.
+	 *
+	 * @param  DataOutput where to write
+	 * @param  String the string
+	 * @return void
+	 * @author David Jones
+	 */
+	static void writeString(DataOutput output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by writeString.
+	 *
+	 * @param  DataInput where to read from
+	 * @return String
+	 * @author David Jones
+	 */
+	static String readString(DataInput input) throws IOException {
+		int length = input.readInt();
+
+		if (length < 0) {
+			throw new IOException("A string cannot have a negative length.");
+		}
+
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a contact.
+	 *
+	 * @param  DataOutput where to write
+	 * @param  Contact the contact
+	 * @return void
+	 * @author David Jones
+	 */
+	static void writeContact(DataOutput output, Contact contact) throws IOException {
+		output.writeInt(contact.getId());
+		writeString(output, contact.getName());
+		writeString(output, contact.getNotes());
+	}
+
+	/**
+	 * Reads a contact written by writeContact, keeping its notes in the
+	 * compressed notes given.
+	 *
+	 * @param  DataInput where to read from
+	 * @param  CompressedNotes where the contact keeps its notes, or null
+	 * @return Contact
+	 * @author David Jones
+	 */
+	static Contact readContact(DataInput input, CompressedNotes compressedNotes) throws IOException {
+		int id       = input.readInt();
+		String name  = readString(input);
+		String notes = readString(input);
+
+		return new ContactImpl(id, name, notes, compressedNotes);
+	}
+
+	/**
+	 * Writes a meeting, referring to its contacts by ID.
+	 *
+	 * @param  DataOutput where to write
+	 * @param  Meeting the meeting
+	 * @return void
+	 * @author David Jones
+	 */
+	static void writeMeeting(DataOutput output, Meeting meeting) throws IOException {
+		boolean past = meeting instanceof PastMeeting;
+
+		output.writeByte(past ? PAST_MEETING : FUTURE_MEETING);
+		output.writeInt(meeting.getId());
+		output.writeLong(MeetingImpl.timeOf(meeting));
+
+		int[] contactIds = MeetingImpl.contactIdsOf(meeting);
+		output.writeInt(contactIds.length);
+
+		for (int i = 0; i < contactIds.length; i++) {
+			output.writeInt(contactIds[i]);
+		}
+
+		if (past) {
+			writeString(output, ((PastMeeting) meeting).getNotes());
+		}
+	}
+
+	/**
+	 * Reads a meeting written by writeMeeting, checking its contacts are
+	 * in the map given. The meeting looks them up through the resolver, and
+	 * a past meeting keeps its notes in the compressed notes given.
+	 *
+	 * @param  DataInput where to read from
+	 * @param  Map<Integer, Contact> the contacts the meeting can refer to, or null not to check them
+	 * @param  ContactResolver where the meeting looks its contacts up
+	 * @param  CompressedNotes where a past meeting keeps its notes, or null
+	 * @return Meeting
+	 * @author David Jones
+	 */
+	static Meeting readMeeting(DataInput input, Map<Integer, Contact> contacts, ContactResolver resolver, CompressedNotes compressedNotes) throws IOException {
+		byte type = input.readByte();
+		int id    = input.readInt();
+		long time = input.readLong();
+
+		int count = input.readInt();
+		if (count < 1) {
+			throw new IOException("Meeting " + id + " has no contacts.");
+		}
+
+		int[] participants = new int[count];
+		for (int i = 0; i < count; i++) {
+			int contactId = input.readInt();
+
+			if (contacts != null && !contacts.containsKey(contactId)) {
+				throw new IOException("Meeting " + id + " refers to the unknown contact " + contactId + ".");
+			}
+
+			participants[i] = contactId;
+		}
+
+		if (type == PAST_MEETING) {
+			return new PastMeetingImpl(id, time, participants, resolver, compressedNotes, readString(input));
+		} else if (type == FUTURE_MEETING) {
+			return new FutureMeetingImpl(id, time, participants, resolver);
+		}
+
+		throw new IOException("Unknown meeting type " + type + ".");
+	}
+}
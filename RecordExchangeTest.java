@@ -0,0 +1,191 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+
+public class RecordExchangeTest {
+
+	private ContactManagerImpl contactManager;
+	private Calendar aFutureDate;
+	private Calendar aPastDate;
+
+	@Before
+	public void setUp() {
+		Calendar futureDate = Calendar.getInstance();
+		futureDate.add(Calendar.YEAR, 1);
+		this.aFutureDate = futureDate;
+
+		Calendar pastDate = Calendar.getInstance();
+		pastDate.set(2010, 01, 01);
+		this.aPastDate = pastDate;
+
+		this.contactManager = this.newContactManager();
+
+		int davidId = this.contactManager.addNewContact("David Jones", "Likes \"quotes\", commas\nand new lines");
+		int johnId  = this.contactManager.addNewContact("J\u00f6hn Smith", "Some notes");
+
+		this.contactManager.addFutureMeeting(this.contactManager.getContacts(davidId, johnId), this.aFutureDate);
+		this.contactManager.addNewPastMeeting(this.contactManager.getContacts(johnId), this.aPastDate, "Agreed, finally");
+	}
+
+	@Test
+	public void testCsvRoundTrip() throws IOException {
+		StringWriter output = new StringWriter();
+		assertEquals("Every record should be written.", 4, this.contactManager.exportRecords(new CsvRecordWriter(output)));
+
+		ContactManagerImpl imported = this.newContactManager();
+		int count = new RecordImporter(imported).importRecords(new CsvRecordReader(new StringReader(output.toString())));
+
+		assertEquals("Every record should be imported.", 4, count);
+		this.assertSameRecords(imported);
+	}
+
+	@Test
+	public void testJsonLinesRoundTrip() throws IOException {
+		StringWriter output = new StringWriter();
+		this.contactManager.exportRecords(new JsonLinesRecordWriter(output));
+
+		ContactManagerImpl imported = this.newContactManager();
+		int count = new RecordImporter(imported).importRecords(new JsonLinesRecordReader(new StringReader(output.toString())));
+
+		assertEquals("Every record should be imported.", 4, count);
+		this.assertSameRecords(imported);
+	}
+
+	@Test
+	public void testExportWritesRecordsInIdOrderAcrossChunks() throws IOException {
+		List<String> names = new ArrayList<String>();
+		List<String> notes = new ArrayList<String>();
+		for (int i = 0; i < ContactManagerImpl.EXPORT_CHUNK_SIZE * 2; i++) {
+			names.add("Contact " + i);
+			notes.add("Notes " + i);
+		}
+
+		this.contactManager.addNewContacts(names, notes);
+
+		final List<Integer> ids = new ArrayList<Integer>();
+		int count = this.contactManager.exportRecords(new RecordWriter() {
+			@Override
+			public void write(ExchangeRecord record) {
+				ids.add(record.isContact() ? record.getId() : -record.getId());
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+
+		int contacts = ContactManagerImpl.EXPORT_CHUNK_SIZE * 2 + 2;
+		assertEquals(contacts + 2, count);
+		for (int i = 0; i < contacts; i++) {
+			assertEquals(Integer.valueOf(i + 1), ids.get(i));
+		}
+
+		assertEquals(Arrays.asList(-1, -2), ids.subList(contacts, ids.size()));
+	}
+
+	@Test
+	public void testChangesCarryOnWhileTheExportWrites() throws Exception {
+		final Thread adder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				contactManager.addNewContact("Jane Doe", "Added during the export");
+			}
+		});
+
+		this.contactManager.exportRecords(new RecordWriter() {
+			@Override
+			public void write(ExchangeRecord record) {
+				if (adder.getState() == Thread.State.NEW) {
+					adder.start();
+
+					try {
+						adder.join(5000);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+
+					assertFalse("The contact should be added while the records are written.", adder.isAlive());
+				}
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+
+		adder.join();
+		assertEquals(3, this.contactManager.getContacts("").size());
+	}
+
+	@Test
+	public void testImportGivesNewIdsAndKeepsReferences() throws IOException {
+		ContactManagerImpl imported = this.newContactManager();
+		imported.addNewContact("Jane Doe", "Already here");
+
+		String input = "{\"kind\":\"contact\",\"id\":7,\"name\":\"David Jones\",\"notes\":\"Some notes\"}\n"
+			+ "{\"kind\":\"past\",\"id\":3,\"date\":\"2010-02-01T10:00:00Z\",\"contacts\":[7],\"notes\":\"Notes\",\"extra\":1.5}\n";
+
+		RecordImporter importer = new RecordImporter(imported);
+		importer.importRecords(new JsonLinesRecordReader(new StringReader(input)));
+
+		assertEquals("The contact should be given the next free ID.", Integer.valueOf(2), importer.getImportedContactId(7));
+		assertEquals("The meeting should refer to the imported contact.", 2, imported.getPastMeeting(1).getContacts().iterator().next().getId());
+	}
+
+	@Test
+	public void testImportTurnsAFutureMeetingThatHasPassedIntoAPastMeeting() throws IOException {
+		String input = "kind,id,name,notes,date,contacts\r\n"
+			+ "contact,1,David Jones,Some notes,,\r\n"
+			+ "future,1,,,2010-02-01T10:00:00Z,1\r\n";
+
+		ContactManagerImpl imported = this.newContactManager();
+		new RecordImporter(imported).importRecords(new CsvRecordReader(new StringReader(input)));
+
+		assertEquals("The meeting should now be a past meeting.", "", imported.getPastMeeting(1).getNotes());
+	}
+
+	@Test(expected = IOException.class)
+	public void testImportRejectsAMeetingWithAnUnknownContact() throws IOException {
+		String input = "future,1,,,2030-02-01T10:00:00Z,5\n";
+		new RecordImporter(this.newContactManager()).importRecords(new CsvRecordReader(new StringReader(input)));
+	}
+
+	@Test
+	public void testReadersReportTheLineOfABadRecord() {
+		String input = "contact,1,David Jones,Some notes,,\n\"multi\nline\",2\n";
+
+		try {
+			CsvRecordReader reader = new CsvRecordReader(new StringReader(input));
+			reader.read();
+			reader.read();
+			fail("The second record should be rejected.");
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().startsWith("Line 2"));
+		}
+	}
+
+	private void assertSameRecords(ContactManagerImpl imported) {
+		assertEquals("Both contacts should be imported.", 2, imported.getContacts("").size());
+		assertEquals("Names should be kept.", "J\u00f6hn Smith", imported.getContacts(2).iterator().next().getName());
+		assertEquals("Awkward notes should be kept.", "Likes \"quotes\", commas\nand new lines", imported.getContacts(1).iterator().next().getNotes());
+		assertEquals("The future meeting should keep both contacts.", 2, imported.getFutureMeeting(1).getContacts().size());
+		assertEquals("The future meeting date should be kept.", this.aFutureDate.getTimeInMillis(), imported.getFutureMeeting(1).getDate().getTimeInMillis());
+		assertEquals("The past meeting notes should be kept.", "Agreed, finally", imported.getPastMeeting(2).getNotes());
+	}
+
+	private ContactManagerImpl newContactManager() {
+		// A store that is never flushed, so no file is written
+		return new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore("exchange-unused.txt"));
+	}
+}
@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Streams records from a RecordReader into a contact manager through its
+ * batch insert methods.
+ *
+ * Records are gathered into batches of the same kind, so memory use is
+ * bounded by the batch size. The only thing kept for the whole import is
+ * the map from the contact IDs in the input to the IDs the contacts are
+ * given, which meetings need to find their contacts. A meeting may only
+ * refer to contacts that come before it in the input.
+ *
+ * A future meeting whose date has passed by the time it is imported is
+ * added as a past meeting with empty notes.
+ */
+public class RecordImporter {
+
+	static final int DEFAULT_BATCH_SIZE = 10000;
+
+	private final ContactManagerImpl contactManager;
+	private final int batchSize;
+	private final Map<Integer, Integer> contactIds;
+
+	private String batchKind;
+	private long batchLine;
+	private final List<String> names;
+	private final List<String> notes;
+	private final List<Integer> oldIds;
+	private final List<Set<Contact>> participants;
+	private final List<Calendar> dates;
+	private int imported;
+
+	RecordImporter(ContactManagerImpl contactManager) {
+		this(contactManager, DEFAULT_BATCH_SIZE);
+	}
+
+	RecordImporter(ContactManagerImpl contactManager, int batchSize) {
+
+		if (contactManager == null) {
+			throw new NullPointerException("The contact manager cannot be null.");
+		}
+
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("A batch must hold at least one record.");
+		}
+
+		this.contactManager = contactManager;
+		this.batchSize      = batchSize;
+		this.contactIds     = new HashMap<Integer, Integer>();
+		this.names          = new ArrayList<String>();
+		this.notes          = new ArrayList<String>();
+		this.oldIds         = new ArrayList<Integer>();
+		this.participants   = new ArrayList<Set<Contact>>();
+		this.dates          = new ArrayList<Calendar>();
+	}
+
+	/**
+	 * Imports every record from the reader. Batches already added stay
+	 * added if a later record is rejected.
+	 *
+	 * @param  RecordReader where to read the records from
+	 * @return int the number of records imported
+	 * @throws IOException if the input cannot be read, is not well formed,
+	 *         or holds a record the contact manager rejects
+	 * @author David Jones
+	 */
+	public int importRecords(RecordReader reader) throws IOException {
+		ExchangeRecord record;
+
+		while ((record = reader.read()) != null) {
+			String kind = record.getKind();
+
+			if (!record.isContact() && record.getTime() <= this.contactManager.getClock().millis()) {
+				kind = ExchangeRecord.PAST_MEETING;
+			}
+
+			if (!kind.equals(this.batchKind) || this.oldIds.size() + this.participants.size() >= this.batchSize) {
+				this.addBatch();
+				this.batchKind = kind;
+				this.batchLine = reader.getLineNumber();
+			}
+
+			if (record.isContact()) {
+				this.oldIds.add(record.getId());
+				this.names.add(record.getName());
+				this.notes.add(record.getNotes());
+			} else {
+				this.participants.add(this.findContacts(record, reader.getLineNumber()));
+				this.dates.add(this.toCalendar(record.getTime()));
+
+				if (kind.equals(ExchangeRecord.PAST_MEETING)) {
+					this.notes.add(record.getNotes() == null ? "" : record.getNotes());
+				}
+			}
+		}
+
+		this.addBatch();
+
+		int count = this.imported;
+		this.imported = 0;
+		return count;
+	}
+
+	/**
+	 * Returns the ID a contact was given on import, or null if no contact
+	 * with that ID in the input has been imported.
+	 *
+	 * @param  int the contact ID in the input
+	 * @return Integer
+	 * @author David Jones
+	 */
+	public Integer getImportedContactId(int inputId) {
+		return this.contactIds.get(inputId);
+	}
+
+	private Set<Contact> findContacts(ExchangeRecord record, long line) throws IOException {
+		int[] inputIds = record.getContactIds();
+		int[] ids = new int[inputIds.length];
+
+		for (int i = 0; i < inputIds.length; i++) {
+			Integer id = this.contactIds.get(inputIds[i]);
+
+			if (id == null) {
+				throw new IOException("Line " + line + ": meeting " + record.getId() + " refers to contact " + inputIds[i] + ", which has not been imported.");
+			}
+
+			ids[i] = id;
+		}
+
+		return this.contactManager.getContacts(ids);
+	}
+
+	private void addBatch() throws IOException {
+		if (this.batchKind == null) {
+			return;
+		}
+
+		try {
+			if (this.batchKind.equals(ExchangeRecord.CONTACT)) {
+				int[] ids = this.contactManager.addNewContacts(this.names, this.notes);
+
+				for (int i = 0; i < ids.length; i++) {
+					this.contactIds.put(this.oldIds.get(i), ids[i]);
+				}
+
+				this.imported += ids.length;
+
+			} else if (this.batchKind.equals(ExchangeRecord.PAST_MEETING)) {
+				this.imported += this.contactManager.addNewPastMeetings(this.participants, this.dates, this.notes).length;
+			} else {
+				this.imported += this.contactManager.addFutureMeetings(this.participants, this.dates).length;
+			}
+
+		} catch (IllegalArgumentException ex) {
+			throw new IOException("The batch starting on line " + this.batchLine + " was rejected: " + ex.getMessage(), ex);
+		} catch (NullPointerException ex) {
+			throw new IOException("The batch starting on line " + this.batchLine + " was rejected: " + ex.getMessage(), ex);
+		} finally {
+			this.batchKind = null;
+			this.names.clear();
+			this.notes.clear();
+			this.oldIds.clear();
+			this.participants.clear();
+			this.dates.clear();
+		}
+	}
+
+	/**
+	 * Builds a date in the zone of the contact manager's clock, as the
+	 * contact manager's own dates are.
+	 */
+	private Calendar toCalendar(long time) {
+		Calendar date = Calendar.getInstance(TimeZone.getTimeZone(this.contactManager.getClock().getZone()));
+		date.setTimeInMillis(time);
+		return date;
+	}
+}
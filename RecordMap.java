@@ -0,0 +1,51 @@
+import java.util.Map;
+
+/**
+ * A map from int IDs to records that can be read and changed without
+ * boxing the keys. The contact manager keeps its contacts and meetings in
+ * maps of this kind.
+ */
+public interface RecordMap<V> extends Map<Integer, V> {
+
+	/**
+	 * Returns the value for the key, or null if the key is not in the map.
+	 *
+	 * @param  int the key
+	 * @return V
+	 */
+	V get(int key);
+
+	/**
+	 * Checks whether the key is in the map.
+	 *
+	 * @param  int the key
+	 * @return boolean
+	 */
+	boolean containsKey(int key);
+
+	/**
+	 * Puts the value against the key.
+	 *
+	 * @param  int the key
+	 * @param  V the value, which cannot be null
+	 * @return V the value the key had before, or null
+	 */
+	V put(int key, V value);
+
+	/**
+	 * Removes the key from the map.
+	 *
+	 * @param  int the key
+	 * @return V the value the key had, or null if it was not in the map
+	 */
+	V remove(int key);
+
+	/**
+	 * Returns a copy of the map that later changes to this map do not
+	 * reach, made as cheaply as the kind of map allows, for reading while
+	 * this map carries on changing. The copy is not to be changed.
+	 *
+	 * @return RecordMap<V>
+	 */
+	RecordMap<V> snapshot();
+}
@@ -0,0 +1,24 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads contacts and meetings, one record at a time, from a text format
+ * written by a RecordWriter or by another tool.
+ */
+public interface RecordReader extends Closeable {
+
+	/**
+	* Reads the next record.
+	*
+	* @return the next record, or null at the end of the input
+	* @throws IOException if the input cannot be read or is not well formed
+	*/
+	ExchangeRecord read() throws IOException;
+
+	/**
+	* Returns the line the last record read started on, for error messages.
+	*
+	* @return the line number, counting from 1
+	*/
+	long getLineNumber();
+}
@@ -0,0 +1,24 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes contacts and meetings, one record at a time, to a text format
+ * that other tools can read.
+ */
+public interface RecordWriter extends Closeable {
+
+	/**
+	* Writes a record.
+	*
+	* @param record the contact or meeting to write
+	* @throws IOException if the record cannot be written
+	*/
+	void write(ExchangeRecord record) throws IOException;
+
+	/**
+	* Writes out anything buffered.
+	*
+	* @throws IOException if the records cannot be written
+	*/
+	void flush() throws IOException;
+}
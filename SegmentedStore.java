@@ -0,0 +1,541 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves the contact manager as a set of segment files, so a flush only
+ * rewrites the segments holding records that have changed.
+ *
+ * Contacts and meetings are split into segments by ID, with a fixed number
+ * of IDs to each segment. The contact manager's DirtySet says which records
+ * have changed since the last flush, and only their segments are written.
+ *
+ * A flush never changes a segment file in place. Each segment written is a
+ * new file named after the flush that wrote it, for example
+ * "contacts.txt.m3.17" for meeting segment 3 written by flush 17. Once the
+ * new segments are on disk the manifest, which lists the file holding each
+ * segment, is replaced through an AtomicFile. A crash before that leaves
+ * the old manifest and every file it lists in place. Segment files that
+ * neither the new manifest nor the previous one lists are then deleted,
+ * and loading deletes any temporary segment file a crash left half
+ * written.
+ *
+ * Loading reads the segments in order, so records come back in ID order
+ * rather than the order the contact manager held them in. The two only
+ * differ where the contact manager moved a record to the end, as it does
+ * a meeting given notes with addMeetingNotes, and that meeting comes back
+ * in the place of its ID. The lists of meetings are sorted by date and do
+ * not depend on either order.
+ *
+ * The manifest is laid out as:
+ *
+ *   magic "CMGS", format version, flush number
+ *   last contact ID, last meeting ID
+ *   contact segments: count, then segment number and flush number
+ *   meeting segments: count, then segment number and flush number
+ *
+ * and each segment as:
+ *
+ *   magic "CMGG", record count, then records written by RecordCodec
+ *
+ * A file in any other format is loaded through BinaryStore, and the first
+ * flush after that writes every segment.
+ */
+public class SegmentedStore implements ContactManagerStore {
+
+	static final int MAGIC                = 0x434D4753;
+	static final int SEGMENT_MAGIC        = 0x434D4747;
+	static final int VERSION              = 1;
+	static final int DEFAULT_SEGMENT_SIZE = 4096;
+
+	private final String filename;
+	private final AtomicFile manifest;
+	private final int segmentSize;
+
+	private long flushNumber;
+	private TreeMap<Integer, Long> contactSegments;
+	private TreeMap<Integer, Long> meetingSegments;
+	private int segmentsWritten;
+
+	SegmentedStore(String filename) {
+		this(filename, DEFAULT_SEGMENT_SIZE);
+	}
+
+	SegmentedStore(String filename, int segmentSize) {
+
+		if (filename == null) {
+			throw new NullPointerException("The filename cannot be null.");
+		}
+
+		if (segmentSize < 1) {
+			throw new IllegalArgumentException("A segment must hold at least one ID.");
+		}
+
+		this.filename    = filename;
+		this.manifest    = new AtomicFile(filename);
+		this.segmentSize = segmentSize;
+		this.flushNumber = 0;
+	}
+
+	/**
+	 * A getter for the filename of the manifest.
+	 * @return String
+	 * @author David Jones
+	 */
+	public String getFilename() {
+		return this.filename;
+	}
+
+	/**
+	 * Returns the number of segment files written by the last flush.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int getSegmentsWritten() {
+		return this.segmentsWritten;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void load(ContactManagerImpl contactManager) throws IOException {
+		final TreeMap<Integer, Long> contactSegments = new TreeMap<Integer, Long>();
+		final TreeMap<Integer, Long> meetingSegments = new TreeMap<Integer, Long>();
+		final long[] header = new long[3];
+		final boolean[] segmented = new boolean[1];
+
+		// Read through read rather than openRead, so a manifest that fails its checksum falls back to the previous one
+		boolean exists = this.manifest.read(new AtomicFile.Reader() {
+			@Override
+			public void read(InputStream file) throws IOException {
+				DataInputStream input = new DataInputStream(new BufferedInputStream(file));
+				contactSegments.clear();
+				meetingSegments.clear();
+
+				segmented[0] = input.readInt() == MAGIC;
+				if (!segmented[0]) {
+					return;
+				}
+
+				int version = input.readInt();
+				if (version != VERSION) {
+					throw new IOException("Unsupported file version " + version + ".");
+				}
+
+				header[0] = input.readLong();
+				header[1] = input.readInt();
+				header[2] = input.readInt();
+
+				readSegmentList(input, contactSegments);
+				readSegmentList(input, meetingSegments);
+			}
+		});
+
+		if (!exists) {
+			return;
+		}
+
+		if (!segmented[0]) {
+			new BinaryStore(this.filename).load(contactManager);
+			return;
+		}
+
+		long flushNumber  = header[0];
+		int lastContactId = (int) header[1];
+		int lastMeetingId = (int) header[2];
+
+		IntRecordMap<Contact> contacts = new IntRecordMap<Contact>();
+		Iterator<Map.Entry<Integer, Long>> iterator = contactSegments.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, Long> segment = iterator.next();
+			this.readContactSegment(this.segmentFilename('c', segment.getKey(), segment.getValue()), contacts, contactManager.getCompressedNotes());
+		}
+
+		RecordMap<Meeting> meetings = contactManager.newMeetingMap(0);
+		iterator = meetingSegments.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, Long> segment = iterator.next();
+			this.readMeetingSegment(this.segmentFilename('m', segment.getKey(), segment.getValue()), contacts, meetings, contactManager.getContactResolver(), contactManager.getMeetingNotes());
+		}
+
+		contactManager.setContacts(contacts);
+		contactManager.setMeetings(meetings);
+		contactManager.getIdAllocator().advanceContactIdTo(lastContactId);
+		contactManager.getIdAllocator().advanceMeetingIdTo(lastMeetingId);
+
+		// No flush is running yet, so any temporary segment file is left from a crash
+		this.deleteTemporarySegments();
+
+		this.flushNumber     = flushNumber;
+		this.contactSegments = contactSegments;
+		this.meetingSegments = meetingSegments;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Writes the segments holding changed records, or every segment if the
+	 * store has no manifest yet or everything has changed, and then the
+	 * manifest.
+	 *
+	 * @author David Jones
+	 */
+	@Override
+	public void flush(StoreSnapshot snapshot) throws IOException {
+		DirtySet dirtySet = snapshot.getDirtySet();
+		Map<Integer, Contact> contacts = snapshot.getContacts();
+		Map<Integer, Meeting> meetings = snapshot.getMeetings();
+
+		boolean everything = this.contactSegments == null || dirtySet.isAllChanged();
+		if (!everything && dirtySet.isEmpty()) {
+			this.segmentsWritten = 0;
+			return;
+		}
+
+		Set<Integer> dirtyContactSegments = this.segmentsOf(everything ? contacts.keySet() : dirtySet.getContactIds());
+		Set<Integer> dirtyMeetingSegments = this.segmentsOf(everything ? meetings.keySet() : dirtySet.getMeetingIds());
+
+		TreeMap<Integer, Long> contactSegments = everything ? new TreeMap<Integer, Long>() : new TreeMap<Integer, Long>(this.contactSegments);
+		TreeMap<Integer, Long> meetingSegments = everything ? new TreeMap<Integer, Long>() : new TreeMap<Integer, Long>(this.meetingSegments);
+
+		long flushNumber = this.flushNumber + 1;
+		List<File> written = new ArrayList<File>();
+
+		try {
+			Iterator<Integer> iterator = dirtyContactSegments.iterator();
+			while (iterator.hasNext()) {
+				int segment = iterator.next();
+				String segmentFilename = this.segmentFilename('c', segment, flushNumber);
+
+				written.add(new File(segmentFilename));
+				this.writeContactSegment(segmentFilename, segment, contacts);
+				contactSegments.put(segment, flushNumber);
+			}
+
+			iterator = dirtyMeetingSegments.iterator();
+			while (iterator.hasNext()) {
+				int segment = iterator.next();
+				String segmentFilename = this.segmentFilename('m', segment, flushNumber);
+
+				written.add(new File(segmentFilename));
+				this.writeMeetingSegment(segmentFilename, segment, meetings);
+				meetingSegments.put(segment, flushNumber);
+			}
+
+			this.writeManifest(snapshot, flushNumber, contactSegments, meetingSegments);
+
+		} catch (IOException ex) {
+			// None of these are listed in a manifest yet
+			Iterator<File> files = written.iterator();
+			while (files.hasNext()) {
+				files.next().delete();
+			}
+
+			throw ex;
+		}
+
+		// The old manifest is now the previous generation, so its files stay
+		Set<String> keep = new HashSet<String>();
+		this.addFilenames(keep, 'c', contactSegments);
+		this.addFilenames(keep, 'm', meetingSegments);
+
+		if (this.contactSegments != null) {
+			this.addFilenames(keep, 'c', this.contactSegments);
+			this.addFilenames(keep, 'm', this.meetingSegments);
+		}
+
+		this.deleteSegmentsExcept(keep);
+
+		this.flushNumber     = flushNumber;
+		this.contactSegments = contactSegments;
+		this.meetingSegments = meetingSegments;
+		this.segmentsWritten = written.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * A segment is rewritten whole, so every ID in a segment holding a
+	 * change is asked for, or every record when flush writes every
+	 * segment.
+	 *
+	 * @author David Jones
+	 */
+	@Override
+	public DirtySet recordsNeeded(DirtySet changes) {
+		if (this.contactSegments == null || changes.isAllChanged()) {
+			return DirtySet.everything();
+		}
+
+		DirtySet needed = new DirtySet();
+
+		Iterator<Integer> iterator = this.segmentsOf(changes.getContactIds()).iterator();
+		while (iterator.hasNext()) {
+			int first = iterator.next() * this.segmentSize;
+			for (int id = first; id < first + this.segmentSize; id++) {
+				needed.contactChanged(id);
+			}
+		}
+
+		iterator = this.segmentsOf(changes.getMeetingIds()).iterator();
+		while (iterator.hasNext()) {
+			int first = iterator.next() * this.segmentSize;
+			for (int id = first; id < first + this.segmentSize; id++) {
+				needed.meetingChanged(id);
+			}
+		}
+
+		// A set that outgrows its limit asks for every record instead
+		return needed;
+	}
+
+	private void writeManifest(StoreSnapshot snapshot, long flushNumber, TreeMap<Integer, Long> contactSegments, TreeMap<Integer, Long> meetingSegments) throws IOException {
+		CheckedOutputStream file = this.manifest.startWrite();
+
+		try {
+			DataOutputStream output = new DataOutputStream(file);
+
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(flushNumber);
+			output.writeInt(snapshot.getIdAllocator().getLastContactId());
+			output.writeInt(snapshot.getIdAllocator().getLastMeetingId());
+
+			writeSegmentList(output, contactSegments);
+			writeSegmentList(output, meetingSegments);
+			output.flush();
+
+		} catch (IOException ex) {
+			this.manifest.failWrite(file);
+			throw ex;
+		}
+
+		this.manifest.finishWrite(file);
+	}
+
+	private void writeContactSegment(String segmentFilename, int segment, Map<Integer, Contact> contacts) throws IOException {
+		List<Contact> records = new ArrayList<Contact>();
+
+		int first = segment * this.segmentSize;
+		for (int id = first; id < first + this.segmentSize; id++) {
+			Contact contact = contacts.get(id);
+			if (contact != null) {
+				records.add(contact);
+			}
+		}
+
+		AtomicFile atomicFile = new AtomicFile(segmentFilename);
+		CheckedOutputStream file = atomicFile.startWrite();
+
+		try {
+			DataOutputStream output = new DataOutputStream(file);
+			output.writeInt(SEGMENT_MAGIC);
+			output.writeInt(records.size());
+
+			Iterator<Contact> iterator = records.iterator();
+			while (iterator.hasNext()) {
+				RecordCodec.writeContact(output, iterator.next());
+			}
+
+			output.flush();
+
+		} catch (IOException ex) {
+			atomicFile.failWrite(file);
+			throw ex;
+		}
+
+		atomicFile.finishWrite(file);
+	}
+
+	private void writeMeetingSegment(String segmentFilename, int segment, Map<Integer, Meeting> meetings) throws IOException {
+		List<Meeting> records = new ArrayList<Meeting>();
+
+		int first = segment * this.segmentSize;
+		for (int id = first; id < first + this.segmentSize; id++) {
+			Meeting meeting = meetings.get(id);
+			if (meeting != null) {
+				records.add(meeting);
+			}
+		}
+
+		AtomicFile atomicFile = new AtomicFile(segmentFilename);
+		CheckedOutputStream file = atomicFile.startWrite();
+
+		try {
+			DataOutputStream output = new DataOutputStream(file);
+			output.writeInt(SEGMENT_MAGIC);
+			output.writeInt(records.size());
+
+			Iterator<Meeting> iterator = records.iterator();
+			while (iterator.hasNext()) {
+				RecordCodec.writeMeeting(output, iterator.next());
+			}
+
+			output.flush();
+
+		} catch (IOException ex) {
+			atomicFile.failWrite(file);
+			throw ex;
+		}
+
+		atomicFile.finishWrite(file);
+	}
+
+	private void readContactSegment(String segmentFilename, Map<Integer, Contact> contacts, CompressedNotes compressedNotes) throws IOException {
+		DataInputStream input = openSegment(segmentFilename);
+
+		try {
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				Contact contact = RecordCodec.readContact(input, compressedNotes);
+				contacts.put(contact.getId(), contact);
+			}
+
+			checkSegmentEnd(input, segmentFilename);
+		} finally {
+			input.close();
+		}
+	}
+
+	private void readMeetingSegment(String segmentFilename, Map<Integer, Contact> contacts, Map<Integer, Meeting> meetings, ContactResolver resolver, CompressedNotes compressedNotes) throws IOException {
+		DataInputStream input = openSegment(segmentFilename);
+
+		try {
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				Meeting meeting = RecordCodec.readMeeting(input, contacts, resolver, compressedNotes);
+				meetings.put(meeting.getId(), meeting);
+			}
+
+			checkSegmentEnd(input, segmentFilename);
+		} finally {
+			input.close();
+		}
+	}
+
+	private static DataInputStream openSegment(String segmentFilename) throws IOException {
+		InputStream file = new AtomicFile(segmentFilename).openRead();
+		if (file == null) {
+			throw new IOException("The segment file '" + segmentFilename + "' is missing.");
+		}
+
+		DataInputStream input = new DataInputStream(new BufferedInputStream(file, 65536));
+		if (input.readInt() != SEGMENT_MAGIC) {
+			input.close();
+			throw new IOException("The file '" + segmentFilename + "' is not a segment.");
+		}
+
+		return input;
+	}
+
+	/**
+	 * Checks that a segment has nothing after its records. Reading up to the
+	 * end is also what checks the checksum of the segment file.
+	 */
+	private static void checkSegmentEnd(DataInputStream input, String segmentFilename) throws IOException {
+		if (input.read() >= 0) {
+			throw new IOException("The segment file '" + segmentFilename + "' has data after its records.");
+		}
+	}
+
+	private Set<Integer> segmentsOf(Set<Integer> ids) {
+		Set<Integer> segments = new TreeSet<Integer>();
+
+		Iterator<Integer> iterator = ids.iterator();
+		while (iterator.hasNext()) {
+			segments.add(iterator.next() / this.segmentSize);
+		}
+
+		return segments;
+	}
+
+	private String segmentFilename(char type, int segment, long flushNumber) {
+		return this.filename + "." + type + segment + "." + flushNumber;
+	}
+
+	private void addFilenames(Set<String> filenames, char type, Map<Integer, Long> segments) {
+		Iterator<Map.Entry<Integer, Long>> iterator = segments.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, Long> segment = iterator.next();
+			filenames.add(new File(this.segmentFilename(type, segment.getKey(), segment.getValue())).getName());
+		}
+	}
+
+	/**
+	 * Deletes every segment file of this store that is not in the set.
+	 */
+	private void deleteSegmentsExcept(Set<String> keep) {
+		File[] files = this.segmentFiles();
+
+		for (int i = 0; i < files.length; i++) {
+			if (!keep.contains(files[i].getName())) {
+				files[i].delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the temporary files of segment writes that never finished.
+	 */
+	private void deleteTemporarySegments() {
+		File[] files = this.segmentFiles();
+
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().endsWith(".tmp")) {
+				files[i].delete();
+			}
+		}
+	}
+
+	/**
+	 * Lists the segment files of this store, including temporary ones.
+	 */
+	private File[] segmentFiles() {
+		File manifestFile = new File(this.filename).getAbsoluteFile();
+		final String prefix = manifestFile.getName() + ".";
+
+		File[] files = manifestFile.getParentFile().listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File directory, String name) {
+				return name.startsWith(prefix) && name.substring(prefix.length()).matches("[cm][0-9]+\\.[0-9]+(\\.tmp)?");
+			}
+		});
+
+		return files == null ? new File[0] : files;
+	}
+
+	private static void writeSegmentList(DataOutputStream output, Map<Integer, Long> segments) throws IOException {
+		output.writeInt(segments.size());
+
+		Iterator<Map.Entry<Integer, Long>> iterator = segments.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, Long> segment = iterator.next();
+			output.writeInt(segment.getKey());
+			output.writeLong(segment.getValue());
+		}
+	}
+
+	private static void readSegmentList(DataInputStream input, Map<Integer, Long> segments) throws IOException {
+		int count = input.readInt();
+		for (int i = 0; i < count; i++) {
+			int segment = input.readInt();
+			segments.put(segment, input.readLong());
+		}
+	}
+}
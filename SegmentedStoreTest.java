@@ -0,0 +1,220 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+
+public class SegmentedStoreTest {
+
+	private final String FILENAME = "segmented-test.txt";
+	private final int SEGMENT_SIZE = 10;
+
+	private Calendar aFutureDate;
+	private Calendar aPastDate;
+
+	@Before
+	public void setUp() {
+		Calendar futureDate = Calendar.getInstance();
+		futureDate.add(Calendar.YEAR, 1);
+		this.aFutureDate = futureDate;
+
+		Calendar pastDate = Calendar.getInstance();
+		pastDate.set(2010, 01, 01);
+		this.aPastDate = pastDate;
+
+		this.deleteFiles();
+	}
+
+	@After
+	public void tearDown() {
+		this.deleteFiles();
+	}
+
+	@Test
+	public void testFlushAndLoadKeepsEverything() {
+		ContactManagerImpl contactManager = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		this.addContactsAndMeetings(contactManager, 25);
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		Contact contact = reloaded.getContacts(1).iterator().next();
+
+		assertEquals("Every contact should be kept.", 25, reloaded.getContacts("").size());
+		assertEquals("Every meeting should be kept.", 50, reloaded.getMeetings().size());
+		assertEquals("The past meeting notes should be kept.", "Past notes", reloaded.getPastMeeting(2).getNotes());
+		assertEquals("The contact should be found through the contact index.", 2, reloaded.getFutureMeetingList(contact).size() + reloaded.getPastMeetingListFor(contact).size());
+		assertEquals("New IDs should follow on from the saved ones.", 26, reloaded.addNewContact("Jane Doe", "Some notes"));
+	}
+
+	@Test
+	public void testFlushOnlyWritesChangedSegments() {
+		SegmentedStore store = new SegmentedStore(FILENAME, SEGMENT_SIZE);
+		ContactManagerImpl contactManager = this.newContactManager(store);
+		this.addContactsAndMeetings(contactManager, 25);
+		contactManager.flush();
+
+		assertEquals("The first flush should write every segment.", 3 + 6, store.getSegmentsWritten());
+
+		contactManager.addNewContact("Jane Doe", "Some notes");
+		contactManager.flush();
+
+		assertEquals("Only the contact segment holding the new contact should be written.", 1, store.getSegmentsWritten());
+
+		contactManager.flush();
+
+		assertEquals("Nothing should be written when nothing has changed.", 0, store.getSegmentsWritten());
+	}
+
+	@Test
+	public void testAddingMeetingNotesIsWritten() {
+		SegmentedStore store = new SegmentedStore(FILENAME, SEGMENT_SIZE);
+		ContactManagerImpl contactManager = this.newContactManager(store);
+		this.addContactsAndMeetings(contactManager, 25);
+		contactManager.flush();
+
+		contactManager.addMeetingNotes(42, "New notes");
+		contactManager.flush();
+
+		assertEquals("Only the meeting segment holding the meeting should be written.", 1, store.getSegmentsWritten());
+
+		ContactManagerImpl reloaded = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		assertEquals("The new notes should be kept.", "New notes", reloaded.getPastMeeting(42).getNotes());
+		assertEquals("The other segments should be loaded unchanged.", 50, reloaded.getMeetings().size());
+	}
+
+	@Test
+	public void testOldSegmentFilesAreDeleted() {
+		ContactManagerImpl contactManager = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		contactManager.addNewContact("David Jones", "Some notes");
+
+		for (int i = 0; i < 5; i++) {
+			contactManager.addNewContact("John Smith", "Some notes");
+			contactManager.flush();
+		}
+
+		// One segment file for the current manifest and one for the previous
+		assertEquals(2, this.segmentFiles().length);
+	}
+
+	@Test
+	public void testLoadDeletesSegmentsLeftHalfWritten() throws IOException {
+		ContactManagerImpl contactManager = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		this.addContactsAndMeetings(contactManager, 5);
+		contactManager.flush();
+		int segments = this.segmentFiles().length;
+
+		File halfWritten = new File(FILENAME + ".c0.2.tmp");
+		new FileOutputStream(halfWritten).close();
+
+		ContactManagerImpl reloaded = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		assertFalse("The temporary segment should be deleted.", halfWritten.exists());
+		assertEquals(5, reloaded.getContacts("").size());
+		assertEquals("The segments in use should be kept.", segments, this.segmentFiles().length);
+	}
+
+	@Test
+	public void testRecordsAreLoadedInIdOrder() {
+		ContactManagerImpl contactManager = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		int id = contactManager.addNewContact("David Jones", "Some notes");
+		for (int i = 0; i < 3; i++) {
+			contactManager.addNewPastMeeting(contactManager.getContacts(id), this.aPastDate, "Past notes");
+		}
+
+		contactManager.addMeetingNotes(1, "More notes");
+		assertEquals(Arrays.asList(2, 3, 1), new ArrayList<Integer>(contactManager.getMeetings().keySet()));
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Integer>(reloaded.getMeetings().keySet()));
+	}
+
+	@Test
+	public void testLoadFallsBackToThePreviousManifest() throws IOException {
+		ContactManagerImpl contactManager = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		contactManager.addNewContact("David Jones", "Some notes");
+		contactManager.flush();
+		contactManager.addNewContact("John Smith", "Some notes");
+		contactManager.flush();
+
+		RandomAccessFile manifest = new RandomAccessFile(FILENAME, "rw");
+		manifest.seek(8);
+		manifest.write(0xFF);
+		manifest.close();
+
+		ContactManagerImpl reloaded = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		assertEquals("The contacts from the previous flush should be loaded.", 1, reloaded.getContacts("").size());
+	}
+
+	@Test
+	public void testLoadReadsTheBinaryFormat() {
+		ContactManagerImpl contactManager = this.newContactManager(new BinaryStore(FILENAME));
+		this.addContactsAndMeetings(contactManager, 5);
+		contactManager.flush();
+
+		SegmentedStore store = new SegmentedStore(FILENAME, SEGMENT_SIZE);
+		ContactManagerImpl reloaded = this.newContactManager(store);
+		assertEquals("Every contact should be loaded.", 5, reloaded.getContacts("").size());
+
+		reloaded.flush();
+		assertEquals("The first flush should write every segment.", 1 + 2, store.getSegmentsWritten());
+	}
+
+	@Test
+	public void testAFlushCopiesOnlyTheSegmentsItWrites() {
+		final List<Integer> copied = new ArrayList<Integer>();
+		SegmentedStore store = new SegmentedStore(FILENAME, SEGMENT_SIZE) {
+			@Override
+			public void flush(StoreSnapshot snapshot) throws IOException {
+				copied.clear();
+				copied.add(snapshot.getContacts().size());
+				copied.add(snapshot.getMeetings().size());
+				super.flush(snapshot);
+			}
+		};
+
+		ContactManagerImpl contactManager = this.newContactManager(store);
+		this.addContactsAndMeetings(contactManager, 25);
+		contactManager.flush();
+		assertEquals("The first flush writes every segment.", Arrays.asList(25, 50), copied);
+
+		contactManager.addNewContact("Jane Doe", "Some notes");
+		contactManager.flush();
+		assertEquals("Only the contacts in the segment of the new one should be copied.", Arrays.asList(7, 0), copied);
+
+		ContactManagerImpl reloaded = this.newContactManager(new SegmentedStore(FILENAME, SEGMENT_SIZE));
+		assertEquals(26, reloaded.getContacts("").size());
+		assertEquals(50, reloaded.getMeetings().size());
+	}
+
+	private void addContactsAndMeetings(ContactManagerImpl contactManager, int count) {
+		for (int i = 0; i < count; i++) {
+			int id = contactManager.addNewContact("David Jones", "Some notes");
+			contactManager.addFutureMeeting(contactManager.getContacts(id), this.aFutureDate);
+			contactManager.addNewPastMeeting(contactManager.getContacts(id), this.aPastDate, "Past notes");
+		}
+	}
+
+	private ContactManagerImpl newContactManager(ContactManagerStore store) {
+		return new ContactManagerImpl(Clock.systemDefaultZone(), store);
+	}
+
+	private File[] segmentFiles() {
+		return new File(".").listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File directory, String name) {
+				return name.startsWith(FILENAME + ".") && !name.endsWith(".prev");
+			}
+		});
+	}
+
+	private void deleteFiles() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+
+		File[] files = this.segmentFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+	}
+}
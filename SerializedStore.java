@@ -0,0 +1,136 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.LinkedHashMap;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves the whole contact manager to a single file using Java
+ * serialization. Every flush rewrites the file from scratch through an
+ * AtomicFile, so a failed flush leaves the last saved file in place.
+ */
+public class SerializedStore implements ContactManagerStore {
+
+	private final String filename;
+	private final AtomicFile atomicFile;
+
+	SerializedStore(String filename) {
+
+		if (filename == null) {
+			throw new NullPointerException("The filename cannot be null.");
+		}
+
+		this.filename   = filename;
+		this.atomicFile = new AtomicFile(filename);
+	}
+
+	/**
+	 * A getter for the filename.
+	 * @return String
+	 * @author David Jones
+	 */
+	public String getFilename() {
+		return this.filename;
+	}
+
+	/**
+	 * Checks that the file exists and returns a boolean outcome.
+	 *
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean fileExists() {
+		return this.atomicFile.exists();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void load(final ContactManagerImpl contactManager) throws IOException {
+		this.atomicFile.read(new AtomicFile.Reader() {
+			@Override
+			public void read(InputStream file) throws IOException {
+				SerializedStore.read(file, contactManager);
+			}
+		});
+	}
+
+	/**
+	 * Reads the serialized maps and ID allocator into the contact manager.
+	 *
+	 * @param  InputStream where to read from
+	 * @param  ContactManagerImpl the contact manager to load into
+	 * @return void
+	 * @author David Jones
+	 */
+	@SuppressWarnings("unchecked")
+	static void read(InputStream file, ContactManagerImpl contactManager) throws IOException {
+		ObjectInputStream input = new ObjectInputStream(file);
+
+		try {
+			LinkedHashMap<Integer, Meeting> meetings = (LinkedHashMap<Integer, Meeting>) input.readObject();
+			LinkedHashMap<Integer, Contact> contacts = (LinkedHashMap<Integer, Contact>) input.readObject();
+
+			// Files saved before the high-water marks were added end here
+			IdAllocator idAllocator = null;
+			try {
+				idAllocator = (IdAllocator) input.readObject();
+			} catch (EOFException ex) {
+				// The setters work out the marks from the keys
+			}
+
+			// Only now has the whole file, and so its checksum, been read
+			contactManager.setContacts(contacts);
+			contactManager.setMeetings(meetings);
+
+			if (idAllocator != null) {
+				contactManager.getIdAllocator().advanceContactIdTo(idAllocator.getLastContactId());
+				contactManager.getIdAllocator().advanceMeetingIdTo(idAllocator.getLastMeetingId());
+			}
+
+		} catch (ClassNotFoundException ex) {
+			throw new IOException("The saved file holds an unknown class.", ex);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void flush(StoreSnapshot snapshot) throws IOException {
+		CheckedOutputStream file = this.atomicFile.startWrite();
+
+		try {
+			ObjectOutputStream output = new ObjectOutputStream(file);
+
+			// Written as LinkedHashMaps, which is what the format has always held
+			output.writeObject(new LinkedHashMap<Integer, Meeting>(snapshot.getMeetings()));
+			output.writeObject(new LinkedHashMap<Integer, Contact>(snapshot.getContacts()));
+			output.writeObject(snapshot.getIdAllocator());
+			output.flush();
+
+		} catch (IOException ex) {
+			this.atomicFile.failWrite(file);
+			throw ex;
+		}
+
+		this.atomicFile.finishWrite(file);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public DirtySet recordsNeeded(DirtySet changes) {
+		// Both maps are serialized whole
+		return DirtySet.everything();
+	}
+}
@@ -0,0 +1,116 @@
+import java.io.File;
+import java.time.Clock;
+import java.util.Calendar;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares save time, load time and file size of the Java serialization
+ * format (SerializedStore), the binary format (BinaryStore) and the
+ * memory-mapped format (MappedStore). For the mapped format the time to
+ * open the file and read one meeting is shown as well, as that is all
+ * a caller that only looks records up by ID ever waits for.
+ *
+ * Run with: java StorageFormatBenchmark [contacts] [meetings] [contacts per meeting]
+ * The defaults are 100,000 contacts, 1,000,000 meetings and 3 contacts per
+ * meeting. Give the JVM a few gigabytes of heap for the defaults.
+ */
+public class StorageFormatBenchmark {
+
+	private static final String SERIALIZED_FILENAME = "benchmark-serialized.txt";
+	private static final String BINARY_FILENAME     = "benchmark-binary.txt";
+	private static final String MAPPED_FILENAME     = "benchmark-mapped.txt";
+
+	public static void main(String[] args) throws Exception {
+
+		int contactCount       = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int meetingCount       = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		int contactsPerMeeting = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		new File(SERIALIZED_FILENAME).delete();
+		new File(BINARY_FILENAME).delete();
+		new File(MAPPED_FILENAME).delete();
+
+		ContactManagerImpl contactManager = build(contactCount, meetingCount, contactsPerMeeting);
+		System.out.printf("%d contacts, %d meetings, %d contacts per meeting%n", contactCount, meetingCount, contactsPerMeeting);
+
+		run("serialized", SERIALIZED_FILENAME, new SerializedStore(SERIALIZED_FILENAME), contactManager);
+		run("binary", BINARY_FILENAME, new BinaryStore(BINARY_FILENAME), contactManager);
+		run("mapped", MAPPED_FILENAME, new MappedStore(MAPPED_FILENAME), contactManager);
+
+		System.gc();
+
+		long openStart = System.nanoTime();
+		ContactManagerImpl opened = new ContactManagerImpl(Clock.systemDefaultZone(), new MappedStore(MAPPED_FILENAME));
+		opened.getMeeting(meetingCount / 2);
+		long openTime = System.nanoTime() - openStart;
+
+		System.out.printf("%-10s open and read one meeting %6d ms%n", "mapped", openTime / 1000000);
+
+		new File(SERIALIZED_FILENAME).delete();
+		new File(BINARY_FILENAME).delete();
+		new File(MAPPED_FILENAME).delete();
+	}
+
+	private static void run(String name, String filename, ContactManagerStore store, ContactManagerImpl contactManager) throws Exception {
+
+		long saveStart = System.nanoTime();
+		store.flush(contactManager.snapshot());
+		long saveTime = System.nanoTime() - saveStart;
+
+		System.gc();
+
+		long loadStart = System.nanoTime();
+		ContactManagerImpl loaded = new ContactManagerImpl(Clock.systemDefaultZone(), store);
+		int loadedMeetings = loaded.getMeetings().size();
+		long loadTime = System.nanoTime() - loadStart;
+
+		if (loadedMeetings != contactManager.getMeetings().size()) {
+			throw new IllegalStateException("The " + name + " store lost meetings.");
+		}
+
+		long size = new File(filename).length();
+
+		System.out.printf("%-10s save %6d ms, load %6d ms (includes index rebuild), %8.1f MB%n",
+			name, saveTime / 1000000, loadTime / 1000000, size / 1024.0 / 1024.0);
+	}
+
+	private static ContactManagerImpl build(int contactCount, int meetingCount, int contactsPerMeeting) {
+
+		// Use a store that is never written to so the working directory is left alone
+		ContactManagerImpl contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore("benchmark-unused.txt"));
+		Random random = new Random(42);
+
+		IntRecordMap<Contact> contacts = new IntRecordMap<Contact>(contactCount);
+		for (int id = 1; id <= contactCount; id++) {
+			contacts.put(id, new ContactImpl(id, "Contact " + random.nextInt(contactCount / 2 + 1), "Met at event " + random.nextInt(100)));
+		}
+
+		Calendar now = Calendar.getInstance();
+		IntRecordMap<Meeting> meetings = new IntRecordMap<Meeting>(meetingCount);
+		ContactResolver resolver = contactManager.getContactResolver();
+
+		for (int id = 1; id <= meetingCount; id++) {
+			Set<Contact> participants = new LinkedHashSet<Contact>();
+			while (participants.size() < Math.min(contactsPerMeeting, contactCount)) {
+				participants.add(contacts.get(1 + random.nextInt(contactCount)));
+			}
+
+			Calendar date = (Calendar) now.clone();
+			date.add(Calendar.MINUTE, random.nextInt(2000000) - 1000000);
+
+			int[] contactIds = MeetingImpl.idsOf(participants);
+			if (date.before(now)) {
+				meetings.put(id, new PastMeetingImpl(id, date.getTimeInMillis(), contactIds, resolver, "Follow up on item " + random.nextInt(1000)));
+			} else {
+				meetings.put(id, new FutureMeetingImpl(id, date.getTimeInMillis(), contactIds, resolver));
+			}
+		}
+
+		contactManager.setContacts(contacts);
+		contactManager.setMeetings(meetings);
+
+		return contactManager;
+	}
+}
@@ -0,0 +1,94 @@
+import java.util.Map;
+
+/**
+ * What a store writes when the contact manager is flushed: the contacts
+ * and meetings as they were at one moment, the records changed since the
+ * last flush and the last IDs handed out. The contacts and meetings are
+ * every record, or only the ones the store asked for through
+ * ContactManagerStore.recordsNeeded.
+ *
+ * The contact manager copies all of this while it is locked against
+ * changes and then lets go of the lock, so the store serializes and
+ * forces its files to disk while the contact manager carries on. Nothing
+ * in a snapshot changes, and a store can hold on to the records in it.
+ */
+public class StoreSnapshot {
+
+	private final RecordMap<Contact> contacts;
+	private final RecordMap<Meeting> meetings;
+	private final DirtySet dirtySet;
+	private final IdAllocator idAllocator;
+
+	/**
+	 * Builds a snapshot from copies the caller has made.
+	 *
+	 * @param RecordMap<Contact> a copy of the contacts, or of those asked for
+	 * @param RecordMap<Meeting> a copy of the meetings, or of those asked for
+	 * @param DirtySet the records changed since the last flush
+	 * @param IdAllocator an allocator holding the last IDs handed out
+	 */
+	StoreSnapshot(RecordMap<Contact> contacts, RecordMap<Meeting> meetings, DirtySet dirtySet, IdAllocator idAllocator) {
+
+		if (contacts == null || meetings == null || dirtySet == null || idAllocator == null) {
+			throw new NullPointerException("The contacts, meetings, changes and IDs cannot be null.");
+		}
+
+		this.contacts    = contacts;
+		this.meetings    = meetings;
+		this.dirtySet    = dirtySet;
+		this.idAllocator = idAllocator;
+	}
+
+	/**
+	 * A getter for the contacts. A copy of every record is in the order the
+	 * contact manager keeps them.
+	 * @return Map<Integer, Contact>
+	 * @author David Jones
+	 */
+	public Map<Integer, Contact> getContacts() {
+		return this.contacts;
+	}
+
+	/**
+	 * A getter for the meetings. A copy of every record is in the order the
+	 * contact manager keeps them.
+	 * @return Map<Integer, Meeting>
+	 * @author David Jones
+	 */
+	public Map<Integer, Meeting> getMeetings() {
+		return this.meetings;
+	}
+
+	/**
+	 * A getter for the records changed since the last flush. The contact
+	 * manager puts them back if the flush fails, so a store need not
+	 * clear them.
+	 * @return DirtySet
+	 * @author David Jones
+	 */
+	public DirtySet getDirtySet() {
+		return this.dirtySet;
+	}
+
+	/**
+	 * A getter for an allocator holding the last IDs handed out.
+	 * @return IdAllocator
+	 * @author David Jones
+	 */
+	public IdAllocator getIdAllocator() {
+		return this.idAllocator;
+	}
+
+	/**
+	 * Lets go of anything the copies hold open, such as the file of an
+	 * archive of old meetings.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void close() {
+		if (this.meetings instanceof TieredMeetingMap) {
+			((TieredMeetingMap) this.meetings).close();
+		}
+	}
+}
@@ -0,0 +1,437 @@
+import java.time.Clock;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map of meetings by ID that keeps recent and upcoming meetings in
+ * memory and old ones on disk.
+ *
+ * A meeting whose date is further in the past than the horizon goes into
+ * a MeetingArchive when it is put, and any other meeting into the map for
+ * the hot meetings, which is whatever kind of map the contact manager
+ * would otherwise hold its meetings in. Meetings still in memory when they
+ * pass the horizon stay there until archive is called. A meeting read
+ * from the archive is decoded into a new object each time, so meetings
+ * from this map should be compared by ID.
+ *
+ * The archived meetings come first in the iteration order, each tier in
+ * the order its meetings were put in. Any number of threads may read at
+ * once. Changes need the same exclusive access as for the hot map.
+ *
+ * The map can be given a set of MeetingIndexes to keep up to date as
+ * meetings are put and removed. A store loading meetings into the map then
+ * builds the indexes from each meeting as it goes in, and the contact
+ * manager takes them over without reading the archive back.
+ */
+public class TieredMeetingMap extends AbstractMap<Integer, Meeting> implements RecordMap<Meeting> {
+
+	private final RecordMap<Meeting> hot;
+	private final MeetingArchive archive;
+	private final Clock clock;
+	private final long horizonMillis;
+	private MeetingIndexes indexes;
+
+	/**
+	 * Builds a map that archives meetings older than the horizon.
+	 *
+	 * @param RecordMap<Meeting> an empty map to hold the hot meetings
+	 * @param MeetingArchive an empty archive to hold the old meetings
+	 * @param Clock the clock the age of a meeting is measured by
+	 * @param long how long ago in milliseconds a meeting must have been to be archived
+	 */
+	TieredMeetingMap(RecordMap<Meeting> hot, MeetingArchive archive, Clock clock, long horizonMillis) {
+
+		if (hot == null || archive == null || clock == null) {
+			throw new NullPointerException("The hot map, archive and clock cannot be null.");
+		}
+
+		if (horizonMillis < 0) {
+			throw new IllegalArgumentException("The horizon cannot be negative.");
+		}
+
+		this.hot           = hot;
+		this.archive       = archive;
+		this.clock         = clock;
+		this.horizonMillis = horizonMillis;
+	}
+
+	/**
+	 * A getter for the archive the old meetings are kept in.
+	 * @return MeetingArchive
+	 * @author David Jones
+	 */
+	public MeetingArchive getArchive() {
+		return this.archive;
+	}
+
+	/**
+	 * Starts keeping the indexes given up to date with every meeting put
+	 * into or removed from the map. The indexes must hold the meetings the
+	 * map holds, so are empty if the map is.
+	 *
+	 * @param  MeetingIndexes the indexes
+	 * @return void
+	 * @author David Jones
+	 */
+	public void keepIndexes(MeetingIndexes indexes) {
+		this.indexes = indexes;
+	}
+
+	/**
+	 * Stops keeping indexes up to date and hands them back, or null if
+	 * none were kept.
+	 *
+	 * @return MeetingIndexes
+	 * @author David Jones
+	 */
+	public MeetingIndexes takeIndexes() {
+		MeetingIndexes indexes = this.indexes;
+		this.indexes = null;
+		return indexes;
+	}
+
+	/**
+	 * Returns the number of meetings held in memory.
+	 *
+	 * @return int
+	 * @author David Jones
+	 */
+	public int getHotSize() {
+		return this.hot.size();
+	}
+
+	/**
+	 * Checks whether the meeting with the given ID is held in memory.
+	 *
+	 * @param  int the meeting ID
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean isHot(int key) {
+		return this.hot.containsKey(key);
+	}
+
+	/**
+	 * Returns the meeting with the given ID, or null if it is not in the map.
+	 *
+	 * @param  int the meeting ID
+	 * @return Meeting
+	 * @author David Jones
+	 */
+	public Meeting get(int key) {
+		Meeting meeting = this.hot.get(key);
+		return meeting != null ? meeting : this.archive.get(key);
+	}
+
+	/**
+	 * Checks whether the meeting with the given ID is in the map.
+	 *
+	 * @param  int the meeting ID
+	 * @return boolean
+	 * @author David Jones
+	 */
+	public boolean containsKey(int key) {
+		return this.hot.containsKey(key) || this.archive.containsKey(key);
+	}
+
+	/**
+	 * Puts the meeting in the archive if it is older than the horizon, and
+	 * in memory otherwise, taking out any meeting with the same ID.
+	 *
+	 * @param  int the meeting ID
+	 * @param  Meeting the meeting, which cannot be null
+	 * @return Meeting the meeting the ID had before, or null
+	 * @throws IllegalArgumentException if the meeting has a different ID
+	 * @author David Jones
+	 */
+	public Meeting put(int key, Meeting meeting) {
+
+		if (meeting == null) {
+			throw new NullPointerException("The meeting cannot be null.");
+		}
+
+		if (meeting.getId() != key) {
+			throw new IllegalArgumentException("The meeting " + meeting.getId() + " cannot be put under the ID " + key + ".");
+		}
+
+		if (MeetingImpl.timeOf(meeting) < this.archiveBefore()) {
+			Meeting previous = this.hot.remove(key);
+			if (previous == null) {
+				previous = this.archive.get(key);
+			}
+
+			this.archive.put(meeting);
+			this.reindex(previous, meeting);
+			return previous;
+		}
+
+		Meeting previous = this.archive.get(key);
+		if (previous != null) {
+			this.archive.remove(key);
+		}
+
+		Meeting replaced = this.hot.put(key, meeting);
+		previous = previous != null ? previous : replaced;
+
+		this.reindex(previous, meeting);
+		return previous;
+	}
+
+	/**
+	 * Removes the meeting with the given ID from the map.
+	 *
+	 * @param  int the meeting ID
+	 * @return Meeting the meeting the ID had, or null if it was not in the map
+	 * @author David Jones
+	 */
+	public Meeting remove(int key) {
+		Meeting previous = this.hot.remove(key);
+
+		if (previous == null) {
+			previous = this.archive.get(key);
+			if (previous != null) {
+				this.archive.remove(key);
+			}
+		}
+
+		this.reindex(previous, null);
+		return previous;
+	}
+
+	/**
+	 * Moves the meetings held in memory that are now older than the
+	 * horizon into the archive.
+	 *
+	 * @return int the number of meetings archived
+	 * @author David Jones
+	 */
+	public int archive() {
+		long before = this.archiveBefore();
+		List<Meeting> old = new ArrayList<Meeting>();
+
+		Iterator<Meeting> iterator = this.hot.values().iterator();
+		while (iterator.hasNext()) {
+			Meeting meeting = iterator.next();
+
+			if (MeetingImpl.timeOf(meeting) < before) {
+				old.add(meeting);
+			}
+		}
+
+		for (int i = 0; i < old.size(); i++) {
+			this.archive.put(old.get(i));
+			this.hot.remove(old.get(i).getId());
+		}
+
+		return old.size();
+	}
+
+	/**
+	 * Closes the archive and deletes its file. The map cannot be used afterwards.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	public void close() {
+		this.archive.close();
+	}
+
+	/**
+	 * Returns a copy of the map, made of a copy of the hot map and a
+	 * snapshot of the archive. The copy has to be closed when it is
+	 * finished with, which lets go of the archive without deleting it.
+	 *
+	 * @return RecordMap<Meeting>
+	 * @author David Jones
+	 */
+	public RecordMap<Meeting> snapshot() {
+		return new TieredMeetingMap(this.hot.snapshot(), this.archive.snapshot(), this.clock, this.horizonMillis);
+	}
+
+	/**
+	 * Moves a meeting in the indexes being kept, if any, from how it was
+	 * to how it is. Either may be null.
+	 */
+	private void reindex(Meeting previous, Meeting meeting) {
+		if (this.indexes == null) {
+			return;
+		}
+
+		if (previous != null) {
+			this.indexes.remove(previous);
+		}
+
+		if (meeting != null) {
+			this.indexes.add(meeting);
+		}
+	}
+
+	private long archiveBefore() {
+		return this.clock.millis() - this.horizonMillis;
+	}
+
+	@Override
+	public int size() {
+		return this.hot.size() + this.archive.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	@Override
+	public Meeting get(Object key) {
+		return key instanceof Integer ? this.get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && this.containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public Meeting put(Integer key, Meeting meeting) {
+		return this.put(key.intValue(), meeting);
+	}
+
+	@Override
+	public Meeting remove(Object key) {
+		return key instanceof Integer ? this.remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public void clear() {
+		this.hot.clear();
+		this.archive.clear();
+
+		if (this.indexes != null) {
+			this.indexes.clear();
+		}
+	}
+
+	@Override
+	public Set<Integer> keySet() {
+		return new AbstractSet<Integer>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return new TierIterator<Integer>() {
+					@Override
+					Integer get(int key) {
+						return key;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return TieredMeetingMap.this.size();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+		};
+	}
+
+	@Override
+	public Collection<Meeting> values() {
+		return new AbstractCollection<Meeting>() {
+			@Override
+			public Iterator<Meeting> iterator() {
+				return new TierIterator<Meeting>() {
+					@Override
+					Meeting get(int key) {
+						return TieredMeetingMap.this.get(key);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return TieredMeetingMap.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, Meeting>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, Meeting>>() {
+			@Override
+			public Iterator<Map.Entry<Integer, Meeting>> iterator() {
+				return new TierIterator<Map.Entry<Integer, Meeting>>() {
+					@Override
+					Map.Entry<Integer, Meeting> get(int key) {
+						return new AbstractMap.SimpleEntry<Integer, Meeting>(key, TieredMeetingMap.this.get(key)) {
+							@Override
+							public Meeting setValue(Meeting meeting) {
+								super.setValue(meeting);
+								return TieredMeetingMap.this.put(this.getKey().intValue(), meeting);
+							}
+						};
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return TieredMeetingMap.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Walks the IDs of the archived meetings and then those of the hot
+	 * meetings. Removing goes to whichever tier the last ID came from.
+	 */
+	private abstract class TierIterator<T> implements Iterator<T> {
+
+		private final Iterator<Integer> archived = archive.ids();
+		private final Iterator<Integer> held = hot.keySet().iterator();
+		private Iterator<Integer> last;
+		private int lastKey;
+
+		abstract T get(int key);
+
+		@Override
+		public boolean hasNext() {
+			return this.archived.hasNext() || this.held.hasNext();
+		}
+
+		@Override
+		public T next() {
+			if (this.archived.hasNext()) {
+				this.last = this.archived;
+			} else if (this.held.hasNext()) {
+				this.last = this.held;
+			} else {
+				throw new NoSuchElementException();
+			}
+
+			this.lastKey = this.last.next().intValue();
+			return this.get(this.lastKey);
+		}
+
+		@Override
+		public void remove() {
+			if (this.last == null) {
+				throw new IllegalStateException();
+			}
+
+			Meeting removed = indexes != null ? TieredMeetingMap.this.get(this.lastKey) : null;
+
+			this.last.remove();
+			this.last = null;
+			reindex(removed, null);
+		}
+	}
+}
@@ -0,0 +1,352 @@
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.*;
+import java.io.*;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+public class TieredMeetingMapTest {
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private final String FILENAME = "tiered-test.txt";
+	private final File DIRECTORY = new File("tiered-test-archive");
+
+	private ContactResolver resolver;
+	private long now;
+	private Clock clock;
+
+	@Before
+	public void setUp() {
+		this.resolver = new ContactResolver() {
+			@Override
+			public Contact[] resolve(int[] ids) {
+				Contact[] contacts = new Contact[ids.length];
+				for (int i = 0; i < ids.length; i++) {
+					contacts[i] = new ContactImpl(ids[i], "Contact " + ids[i]);
+				}
+
+				return contacts;
+			}
+
+			@Override
+			public TimeZone getTimeZone() {
+				return TimeZone.getTimeZone("UTC");
+			}
+		};
+
+		this.now = 1000 * DAY;
+		this.clock = new Clock() {
+			@Override
+			public ZoneId getZone() {
+				return ZoneOffset.UTC;
+			}
+
+			@Override
+			public Clock withZone(ZoneId zone) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Instant instant() {
+				return Instant.ofEpochMilli(now);
+			}
+		};
+
+		this.tearDown();
+		DIRECTORY.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		new File(FILENAME).delete();
+		new File(FILENAME + ".prev").delete();
+
+		File[] files = DIRECTORY.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				files[i].delete();
+			}
+		}
+
+		DIRECTORY.delete();
+	}
+
+	private TieredMeetingMap newMap() {
+		return new TieredMeetingMap(new IntRecordMap<Meeting>(), new MeetingArchive(new File(DIRECTORY, "meetings.archive"), this.resolver), this.clock, 30 * DAY);
+	}
+
+	private PastMeeting past(int id, long time, String notes) {
+		return new PastMeetingImpl(id, time, new int[] {1, id % 10 + 2}, this.resolver, notes);
+	}
+
+	@Test
+	public void testOldMeetingsAreArchivedWhenPut() {
+		TieredMeetingMap map = this.newMap();
+		map.put(1, this.past(1, this.now - 100 * DAY, "Old notes \u00e9\u4e2d"));
+		map.put(2, this.past(2, this.now - DAY, "Recent notes"));
+		map.put(3, new FutureMeetingImpl(3, this.now + DAY, new int[] {1}, this.resolver));
+
+		assertFalse("The old meeting should be archived.", map.isHot(1));
+		assertTrue(map.isHot(2));
+		assertTrue(map.isHot(3));
+		assertEquals(3, map.size());
+		assertEquals(2, map.getHotSize());
+
+		PastMeeting old = (PastMeeting) map.get(1);
+		assertEquals("Old notes \u00e9\u4e2d", old.getNotes());
+		assertEquals(this.now - 100 * DAY, ((MeetingImpl) old).getTimeInMillis());
+		assertArrayEquals(new int[] {1, 3}, ((MeetingImpl) old).getContactIds());
+		assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Integer>(map.keySet()));
+		assertNull(map.get(4));
+		map.close();
+	}
+
+	@Test
+	public void testMeetingsPastTheHorizonAreMovedByArchive() {
+		TieredMeetingMap map = this.newMap();
+		for (int i = 1; i <= 10; i++) {
+			map.put(i, this.past(i, this.now - i * DAY, "Notes " + i));
+		}
+
+		assertEquals(10, map.getHotSize());
+
+		this.now += 25 * DAY;
+		assertEquals("Meetings now more than 30 days old should move.", 5, map.archive());
+		assertEquals(5, map.getHotSize());
+		assertEquals(10, map.size());
+
+		for (int i = 1; i <= 10; i++) {
+			assertEquals(i <= 5, map.isHot(i));
+			assertEquals("Notes " + i, ((PastMeeting) map.get(i)).getNotes());
+		}
+
+		assertEquals("Putting an archived meeting with a recent date should bring it back.", "Notes 10", ((PastMeeting) map.put(10, this.past(10, this.now, "Moved"))).getNotes());
+		assertTrue(map.isHot(10));
+		assertEquals("Notes 9", ((PastMeeting) map.remove(9)).getNotes());
+		assertFalse(map.containsKey(9));
+		assertEquals(9, map.size());
+		map.close();
+	}
+
+	@Test
+	public void testHoldsTheSameMeetingsAsAHashMap() {
+		TieredMeetingMap map = this.newMap();
+		MeetingArchive archive = map.getArchive();
+		Map<Integer, String> expected = new HashMap<Integer, String>();
+		Random random = new Random(42);
+
+		char[] padding = new char[2000];
+		Arrays.fill(padding, 'p');
+
+		for (int i = 0; i < 20000; i++) {
+			int key = 1 + random.nextInt(500);
+
+			if (random.nextInt(4) == 0) {
+				Meeting removed = map.remove(key);
+				assertEquals(expected.remove(key), removed == null ? null : ((PastMeeting) removed).getNotes());
+			} else {
+				String notes = "Notes " + i + new String(padding, 0, random.nextInt(padding.length));
+				Meeting previous = map.put(key, this.past(key, this.now - random.nextInt(60) * DAY, notes));
+				assertEquals(expected.put(key, notes), previous == null ? null : ((PastMeeting) previous).getNotes());
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		assertEquals(expected.keySet(), new HashSet<Integer>(map.keySet()));
+		assertTrue("Removed meetings should be compacted away.", archive.getFileLength() < 2 * MeetingArchive.MIN_COMPACT_WASTE + archive.size() * 2100L);
+
+		Iterator<Map.Entry<Integer, Meeting>> iterator = map.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, Meeting> entry = iterator.next();
+			assertEquals(expected.get(entry.getKey()), ((PastMeeting) entry.getValue()).getNotes());
+
+			if (entry.getKey() % 2 == 0) {
+				iterator.remove();
+				expected.remove(entry.getKey());
+			}
+		}
+
+		assertEquals(expected.keySet(), new HashSet<Integer>(map.keySet()));
+		map.close();
+		assertFalse("Closing should delete the archive file.", archive.getFile().exists());
+	}
+
+	@Test
+	public void testASnapshotKeepsReadingTheArchiveAsItWas() {
+		TieredMeetingMap map = this.newMap();
+		MeetingArchive archive = map.getArchive();
+
+		char[] padding = new char[100000];
+		Arrays.fill(padding, 'p');
+
+		for (int i = 1; i <= 5; i++) {
+			map.put(i, this.past(i, this.now - 100 * DAY, "Notes " + i));
+		}
+
+		TieredMeetingMap snapshot = (TieredMeetingMap) map.snapshot();
+
+		// Enough rewrites to compact the archive, which has to wait for the snapshot
+		for (int j = 0; j < 50; j++) {
+			map.put(1, this.past(1, this.now - 100 * DAY, "Changed" + new String(padding)));
+		}
+
+		map.remove(2);
+		map.close();
+
+		assertEquals(5, snapshot.size());
+		for (int i = 1; i <= 5; i++) {
+			assertEquals("Notes " + i, ((PastMeeting) snapshot.get(i)).getNotes());
+		}
+
+		assertTrue("The file should be kept while the snapshot is open.", archive.getFile().exists());
+		snapshot.close();
+		assertFalse("The file should go once the snapshot is closed.", archive.getFile().exists());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAMeetingMustBePutUnderItsOwnId() {
+		TieredMeetingMap map = this.newMap();
+		try {
+			map.put(2, this.past(1, this.now - 100 * DAY, "Notes"));
+		} finally {
+			map.close();
+		}
+	}
+
+	@Test
+	public void testContactManagerFindsArchivedMeetings() {
+		Calendar old = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		old.setTimeInMillis(this.now - 100 * DAY);
+		Calendar recent = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		recent.setTimeInMillis(this.now - DAY);
+		Calendar future = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		future.setTimeInMillis(this.now + DAY);
+
+		ContactManagerImpl contactManager = new ContactManagerImpl(this.clock, new BinaryStore(FILENAME), false, DIRECTORY, 30 * DAY);
+		int davidId = contactManager.addNewContact("David Jones", "Some notes");
+		Contact david = contactManager.getContacts(davidId).iterator().next();
+
+		contactManager.addNewPastMeeting(contactManager.getContacts(davidId), old, "Old notes");
+		contactManager.addNewPastMeeting(contactManager.getContacts(davidId), recent, "Recent notes");
+		contactManager.addFutureMeeting(contactManager.getContacts(davidId), future);
+
+		TieredMeetingMap meetings = (TieredMeetingMap) contactManager.getMeetings();
+		assertEquals("Only the old meeting should be archived.", 2, meetings.getHotSize());
+		assertEquals(2, contactManager.getPastMeetingListFor(david).size());
+
+		int oldId = contactManager.getMeetingListOn(old).get(0).getId();
+		assertFalse(meetings.isHot(oldId));
+		assertEquals("Old notes", contactManager.getPastMeeting(oldId).getNotes());
+		assertEquals(1, contactManager.searchMeetingNotes("old").size());
+
+		PastMeeting updated = contactManager.addMeetingNotes(oldId, "More notes");
+		assertEquals("More notes", updated.getNotes());
+		assertFalse("Updated notes should stay in the archive.", meetings.isHot(oldId));
+
+		this.now += 30 * DAY;
+		assertEquals(1, contactManager.archiveMeetings());
+		assertEquals(1, meetings.getHotSize());
+		contactManager.flush();
+
+		ContactManagerImpl reloaded = new ContactManagerImpl(this.clock, new BinaryStore(FILENAME), false, DIRECTORY, 30 * DAY);
+		assertEquals(1, ((TieredMeetingMap) reloaded.getMeetings()).getHotSize());
+		assertEquals(2, reloaded.getPastMeetingListFor(david).size());
+		assertEquals(3, reloaded.getMeetings().size());
+		assertEquals("The archive of the first map loaded should be deleted once replaced.", 2, DIRECTORY.listFiles().length);
+
+		contactManager.close();
+		reloaded.close();
+		assertEquals("Closing the managers should delete their archives.", 0, DIRECTORY.listFiles().length);
+	}
+
+	@Test
+	public void testIndexesAreKeptAsMeetingsArePut() {
+		TieredMeetingMap map = this.newMap();
+		map.keepIndexes(new MeetingIndexes(TimeZone.getTimeZone("UTC")));
+
+		map.put(1, this.past(1, this.now - 100 * DAY, "Archived notes"));
+		map.put(2, this.past(2, this.now - DAY, "Recent notes"));
+		map.put(3, this.past(3, this.now - 90 * DAY, "Removed notes"));
+		map.put(1, this.past(1, this.now - 80 * DAY, "Replaced notes"));
+		map.remove(3);
+
+		MeetingIndexes indexes = map.takeIndexes();
+		assertNull("The indexes should only be handed over once.", map.takeIndexes());
+		assertEquals(Arrays.asList(1, 2), indexes.getDateIndex().all());
+		assertEquals(Arrays.asList(1), indexes.getContactIndex().getMeetingIds(3));
+		assertEquals(Arrays.asList(1), indexes.getNotesIndex().search("replaced"));
+		assertTrue(indexes.getNotesIndex().search("archived").isEmpty());
+		assertTrue(indexes.getNotesIndex().search("removed").isEmpty());
+
+		map.put(4, this.past(4, this.now - 100 * DAY, "Later notes"));
+		assertEquals("Indexes handed over should no longer change with the map.", 2, indexes.getDateIndex().size());
+		map.close();
+	}
+
+	@Test
+	public void testArchivedMeetingsAreReadByManyThreadsAtOnce() throws Exception {
+		final TieredMeetingMap map = this.newMap();
+		for (int i = 1; i <= 200; i++) {
+			map.put(i, this.past(i, this.now - 100 * DAY, "Notes " + i));
+		}
+
+		final TieredMeetingMap snapshot = (TieredMeetingMap) map.snapshot();
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread[] readers = new Thread[4];
+
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 20; j++) {
+							for (int i = 1; i <= 200; i++) {
+								assertEquals("Notes " + i, ((PastMeeting) snapshot.get(i)).getNotes());
+							}
+						}
+					} catch (Throwable ex) {
+						failures.add(ex);
+					}
+				}
+			});
+			readers[t].start();
+		}
+
+		// The snapshot is read while the archive carries on changing
+		for (int i = 201; i <= 400; i++) {
+			map.put(i, this.past(i, this.now - 100 * DAY, "Notes " + i));
+		}
+
+		for (int t = 0; t < readers.length; t++) {
+			readers[t].join();
+		}
+
+		assertEquals(Collections.<Throwable>emptyList(), failures);
+		assertEquals("Notes 400", ((PastMeeting) map.get(400)).getNotes());
+		snapshot.close();
+		map.close();
+	}
+
+	@Test
+	public void testAnInterruptedReadLeavesTheArchiveReadable() {
+		TieredMeetingMap map = this.newMap();
+		map.put(1, this.past(1, this.now - 100 * DAY, "Notes"));
+
+		Thread.currentThread().interrupt();
+		try {
+			map.get(1);
+			fail("An interrupted read should fail.");
+		} catch (UncheckedIOException ex) {
+			assertTrue(Thread.interrupted());
+		}
+
+		assertEquals("Notes", ((PastMeeting) map.get(1)).getNotes());
+		map.put(2, this.past(2, this.now - 100 * DAY, "More notes"));
+		assertEquals("More notes", ((PastMeeting) map.get(2)).getNotes());
+		map.close();
+	}
+}
@@ -0,0 +1,208 @@
+import java.io.File;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import cwcm.benchmarks.ContactManagerDriver;
+
+/**
+ * Runs the benchmarks against a ContactManagerImpl saving to a BinaryStore.
+ *
+ * This lives in the default package, next to the contact manager, and is
+ * loaded by name from the benchmarks in cwcm.benchmarks.
+ */
+public class ContactManagerBenchmarkDriver implements ContactManagerDriver {
+
+	private static final int BATCH_SIZE = 10000;
+	private static final int PARTICIPANT_SETS = 1024;
+
+	private ContactManagerImpl contactManager;
+	private String filename;
+	private int[] contactIds;
+	private Contact[] contacts;
+	private List<Set<Contact>> participantSets;
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void setUp(int contactCount, int meetingCount, int contactsPerMeeting, String filename) {
+
+		if (contactsPerMeeting < 1 || contactsPerMeeting > contactCount) {
+			throw new IllegalArgumentException("There must be between 1 and " + contactCount + " contacts per meeting.");
+		}
+
+		this.filename = filename;
+		this.tearDown();
+		this.contactManager = new ContactManagerImpl(Clock.systemDefaultZone(), new BinaryStore(filename));
+
+		Random random = new Random(42);
+
+		this.contactIds = new int[contactCount];
+		for (int start = 0; start < contactCount; start += BATCH_SIZE) {
+			int end = Math.min(start + BATCH_SIZE, contactCount);
+
+			List<String> names = new ArrayList<String>(end - start);
+			List<String> notes = new ArrayList<String>(end - start);
+			for (int i = start; i < end; i++) {
+				names.add(this.getContactName(i));
+				notes.add("Notes about contact " + i);
+			}
+
+			int[] ids = this.contactManager.addNewContacts(names, notes);
+			System.arraycopy(ids, 0, this.contactIds, start, ids.length);
+		}
+
+		List<Contact> contacts = new ArrayList<Contact>(this.contactManager.getContacts().values());
+		this.contacts = contacts.toArray(new Contact[contacts.size()]);
+
+		this.participantSets = new ArrayList<Set<Contact>>(PARTICIPANT_SETS);
+		for (int i = 0; i < PARTICIPANT_SETS; i++) {
+			Set<Contact> participants = new HashSet<Contact>();
+			while (participants.size() < contactsPerMeeting) {
+				participants.add(contacts.get(random.nextInt(contacts.size())));
+			}
+			this.participantSets.add(participants);
+		}
+
+		for (int start = 0; start < meetingCount; start += BATCH_SIZE) {
+			int end = Math.min(start + BATCH_SIZE, meetingCount);
+
+			List<Set<Contact>> futureContacts = new ArrayList<Set<Contact>>();
+			List<Calendar> futureDates = new ArrayList<Calendar>();
+			List<Set<Contact>> pastContacts = new ArrayList<Set<Contact>>();
+			List<Calendar> pastDates = new ArrayList<Calendar>();
+			List<String> pastNotes = new ArrayList<String>();
+
+			for (int i = start; i < end; i++) {
+				Set<Contact> participants = this.participantSets.get(random.nextInt(PARTICIPANT_SETS));
+
+				// Mostly spread by day, so each day holds a similar number of meetings
+				Calendar date = Calendar.getInstance();
+				date.add(Calendar.DAY_OF_MONTH, 1 + i % 365);
+				date.set(Calendar.HOUR_OF_DAY, 9 + random.nextInt(8));
+
+				if (i % 2 == 0) {
+					futureContacts.add(participants);
+					futureDates.add(date);
+				} else {
+					date.add(Calendar.YEAR, -1);
+					pastContacts.add(participants);
+					pastDates.add(date);
+					pastNotes.add("Notes about meeting " + i);
+				}
+			}
+
+			this.contactManager.addFutureMeetings(futureContacts, futureDates);
+			this.contactManager.addNewPastMeetings(pastContacts, pastDates, pastNotes);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public int getParticipantSetCount() {
+		return this.participantSets.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public String getContactName(int contact) {
+		// Padded so that no name is part of another
+		return String.format("Contact %07d", contact);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public int getContactId(int contact) {
+		return this.contactIds[contact];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public int addNewContact(String name, String notes) {
+		return this.contactManager.addNewContact(name, notes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public int addFutureMeeting(int participantSet, Calendar date) {
+		return this.contactManager.addFutureMeeting(this.participantSets.get(participantSet), date);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Collection<?> getFutureMeetingList(int contact) {
+		return this.contactManager.getFutureMeetingList(this.contacts[contact]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Collection<?> getMeetingListOn(Calendar date) {
+		return this.contactManager.getMeetingListOn(date);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Collection<?> getContacts(String name) {
+		return this.contactManager.getContacts(name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public Collection<?> getContacts(int... ids) {
+		return this.contactManager.getContacts(ids);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void flush() {
+		this.contactManager.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @author David Jones
+	 */
+	@Override
+	public void tearDown() {
+		new File(this.filename).delete();
+		new File(this.filename + ".prev").delete();
+		new File(this.filename + ".tmp").delete();
+	}
+}
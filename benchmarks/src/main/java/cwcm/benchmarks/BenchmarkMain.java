@@ -0,0 +1,37 @@
+package cwcm.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, adding the GC
+ * profiler so every run also reports the allocation rate.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar [JMH options]
+ * For example -p size=1000,10000 to leave out the larger stores.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+
+		if (commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return;
+		}
+
+		Options options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build();
+		Runner runner = new Runner(options);
+
+		if (commandLine.shouldList()) {
+			runner.list();
+			return;
+		}
+
+		runner.run();
+	}
+}
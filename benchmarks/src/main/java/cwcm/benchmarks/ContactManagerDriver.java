@@ -0,0 +1,97 @@
+package cwcm.benchmarks;
+
+import java.util.Calendar;
+import java.util.Collection;
+
+/**
+ * What the benchmarks need from a contact manager.
+ *
+ * JMH will not generate code for benchmarks in the default package, and a
+ * class in a named package cannot refer to the default package where the
+ * contact manager lives. So the benchmarks call through this interface,
+ * which ContactManagerBenchmarkDriver implements from the default package.
+ * It is an ordinary interface call, so nothing reflective is measured.
+ *
+ * Contacts and participant sets are referred to by their position in the
+ * data built by setUp, so the benchmarks never touch the contact types.
+ */
+public interface ContactManagerDriver {
+
+	/**
+	 * Builds a contact manager saving to the file given and fills it with
+	 * the number of contacts and meetings given. Half of the meetings are
+	 * in the past year and half in the next, spread evenly by day.
+	 *
+	 * @param  int the number of contacts
+	 * @param  int the number of meetings
+	 * @param  int the number of contacts attending each meeting
+	 * @param  String the file to save to
+	 * @return void
+	 */
+	void setUp(int contactCount, int meetingCount, int contactsPerMeeting, String filename);
+
+	/**
+	 * Returns the number of distinct participant sets built by setUp.
+	 *
+	 * @return int
+	 */
+	int getParticipantSetCount();
+
+	/**
+	 * Returns the name of the contact at the position given.
+	 *
+	 * @param  int the position of the contact
+	 * @return String
+	 */
+	String getContactName(int contact);
+
+	/**
+	 * Returns the ID of the contact at the position given.
+	 *
+	 * @param  int the position of the contact
+	 * @return int
+	 */
+	int getContactId(int contact);
+
+	/**
+	 * Calls addNewContact.
+	 */
+	int addNewContact(String name, String notes);
+
+	/**
+	 * Calls addFutureMeeting with one of the participant sets built by setUp.
+	 */
+	int addFutureMeeting(int participantSet, Calendar date);
+
+	/**
+	 * Calls getFutureMeetingList for the contact at the position given.
+	 */
+	Collection<?> getFutureMeetingList(int contact);
+
+	/**
+	 * Calls getMeetingListOn.
+	 */
+	Collection<?> getMeetingListOn(Calendar date);
+
+	/**
+	 * Calls getContacts with a name.
+	 */
+	Collection<?> getContacts(String name);
+
+	/**
+	 * Calls getContacts with IDs.
+	 */
+	Collection<?> getContacts(int... ids);
+
+	/**
+	 * Calls flush.
+	 */
+	void flush();
+
+	/**
+	 * Deletes everything the contact manager saved.
+	 *
+	 * @return void
+	 */
+	void tearDown();
+}
@@ -0,0 +1,25 @@
+package cwcm.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A store built again before every iteration, for benchmarks that add to
+ * it. The store then only grows by what one iteration adds.
+ */
+@State(Scope.Benchmark)
+public class FreshStoreState extends Store {
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		this.build();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws Exception {
+		this.destroy();
+	}
+}
@@ -0,0 +1,28 @@
+package cwcm.benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Steps through the contacts, days and participant sets for one thread,
+ * so each call asks for something different without a random number
+ * generator in the measured code.
+ */
+@State(Scope.Thread)
+public class Position {
+
+	private int next;
+
+	/**
+	 * Returns the next position below the bound, wrapping around.
+	 *
+	 * @param  int the number of positions
+	 * @return int
+	 * @author David Jones
+	 */
+	public int next(int bound) {
+		// A large odd step spreads the calls over the whole store
+		this.next = (this.next + 0x9E3779B1) & Integer.MAX_VALUE;
+		return this.next % bound;
+	}
+}
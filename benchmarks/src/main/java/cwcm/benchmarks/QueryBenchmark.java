@@ -0,0 +1,43 @@
+package cwcm.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The queries of ContactManager against a store that does not change.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+	@Benchmark
+	public Collection<?> getFutureMeetingList(StoreState store, Position position) {
+		return store.driver.getFutureMeetingList(position.next(store.size));
+	}
+
+	@Benchmark
+	public Collection<?> getMeetingListOn(StoreState store, Position position) {
+		return store.driver.getMeetingListOn(store.days[position.next(store.days.length)]);
+	}
+
+	@Benchmark
+	public Collection<?> getContactsByName(StoreState store, Position position) {
+		return store.driver.getContacts(store.driver.getContactName(position.next(store.size)));
+	}
+
+	@Benchmark
+	public Collection<?> getContactsById(StoreState store, Position position) {
+		return store.driver.getContacts(store.driver.getContactId(position.next(store.size)));
+	}
+}
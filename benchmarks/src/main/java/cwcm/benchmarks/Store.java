@@ -0,0 +1,72 @@
+package cwcm.benchmarks;
+
+import java.io.File;
+import java.util.Calendar;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A contact manager filled with the number of contacts and meetings the
+ * benchmark is run with, plus the arguments the benchmarks pass to it.
+ *
+ * The benchmarks use StoreState or FreshStoreState, which only differ in
+ * how often the store is built again.
+ */
+@State(Scope.Benchmark)
+public abstract class Store {
+
+	private static final String DRIVER = "ContactManagerBenchmarkDriver";
+	private static final int DAYS = 365;
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int size;
+
+	@Param({"1", "5", "20"})
+	public int contactsPerMeeting;
+
+	public ContactManagerDriver driver;
+	public Calendar[] days;
+	public Calendar futureDate;
+
+	private File file;
+
+	/**
+	 * Loads the driver and fills the store with the same number of contacts
+	 * and meetings.
+	 *
+	 * @return void
+	 * @throws Exception if the driver cannot be loaded
+	 * @author David Jones
+	 */
+	protected void build() throws Exception {
+		this.driver = Class.forName(DRIVER).asSubclass(ContactManagerDriver.class).getDeclaredConstructor().newInstance();
+
+		this.file = File.createTempFile("contacts-benchmark", ".txt");
+		this.driver.setUp(this.size, this.size, this.contactsPerMeeting, this.file.getPath());
+
+		// The days the meetings fall on, from a year ago to a year ahead
+		this.days = new Calendar[DAYS * 2];
+		for (int i = 0; i < this.days.length; i++) {
+			Calendar day = Calendar.getInstance();
+			day.add(Calendar.DAY_OF_MONTH, i - DAYS);
+			this.days[i] = day;
+		}
+
+		this.futureDate = Calendar.getInstance();
+		this.futureDate.add(Calendar.YEAR, 2);
+	}
+
+	/**
+	 * Deletes the files the store saved.
+	 *
+	 * @return void
+	 * @author David Jones
+	 */
+	protected void destroy() {
+		if (this.driver != null) {
+			this.driver.tearDown();
+		}
+	}
+}
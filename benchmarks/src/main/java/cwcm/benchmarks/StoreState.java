@@ -0,0 +1,24 @@
+package cwcm.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A store built once for the whole run, for benchmarks that do not change it.
+ */
+@State(Scope.Benchmark)
+public class StoreState extends Store {
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		this.destroy();
+	}
+}
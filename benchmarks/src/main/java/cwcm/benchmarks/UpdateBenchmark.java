@@ -0,0 +1,33 @@
+package cwcm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding contacts and meetings. The store is built again before every
+ * iteration, so it only grows by what one iteration adds.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateBenchmark {
+
+	@Benchmark
+	public int addNewContact(FreshStoreState store) {
+		return store.driver.addNewContact("New Contact", "Some notes");
+	}
+
+	@Benchmark
+	public int addFutureMeeting(FreshStoreState store, Position position) {
+		return store.driver.addFutureMeeting(position.next(store.driver.getParticipantSetCount()), store.futureDate);
+	}
+}